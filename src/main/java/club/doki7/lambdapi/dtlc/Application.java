@@ -12,14 +12,17 @@ import club.doki7.lambdapi.syntax.Node;
 import club.doki7.lambdapi.syntax.PNode;
 import club.doki7.lambdapi.syntax.Parse;
 import club.doki7.lambdapi.syntax.Token;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 public final class Application implements AsciiColor {
     static void main() {
@@ -28,12 +31,17 @@ public final class Application implements AsciiColor {
         elab.registerTermFormer(IndNat.Zero.class);
         elab.registerTermFormer(IndNat.Succ.class);
         elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
         elab.registerTermFormer(IndVec.Vec.class);
         elab.registerTermFormer(IndVec.Nil.class);
         elab.registerTermFormer(IndVec.Cons.class);
         elab.registerTermFormer(IndVec.VecElim.class);
+        elab.registerVecLiteral(IndVec.VecLit::new);
 
         Globals globals = Globals.empty();
+        DependencyGraph graph = new DependencyGraph();
+        ModuleCache modules = new ModuleCache();
+        ResultCache results = new ResultCache(ResultCache.configuredRoot());
 
         System.out.println("=== Dependent Typed Lambda Calculus ===");
         System.out.println("Commands:");
@@ -44,6 +52,9 @@ public final class Application implements AsciiColor {
         System.out.println("  :env                     - Show current environment and type context");
         System.out.println("  :tf                      - Show available term formers");
         System.out.println("  :include <file>          - Load and execute file");
+        System.out.println("  :load <file>             - Load checked file lazily as a library");
+        System.out.println("  :strategy [value|need]   - Show or set evaluation strategy");
+        System.out.println("  :stats                   - Show cache statistics");
         System.out.println("  :clear, :cls             - Clear environment and type context");
         System.out.println("  :quit, :q                - Exit REPL");
         System.out.println();
@@ -67,6 +78,9 @@ public final class Application implements AsciiColor {
                 case ":clear":
                 case ":cls":
                     globals.clear();
+                    graph.clear();
+                    modules.clear();
+                    results.clear();
                     System.out.println(
                             ANSI_GREEN
                             + "You got to put the past behind you before you can move on."
@@ -74,19 +88,19 @@ public final class Application implements AsciiColor {
                     );
                     continue;
                 case ":env":
-                    if (!globals.values().isEmpty()) {
-                        for (Map.Entry<String, Value> entry : globals.values().entrySet()) {
-                            String name = entry.getKey();
-                            Value value = entry.getValue();
-                            Type type = globals.types().get(name);
-                            boolean isAxiom = value instanceof Value.NFree;
+                    Globals.Snapshot snapshot = globals.snapshot();
+                    if (!snapshot.isEmpty()) {
+                        // 读回结果缓存在槽位上，反复列出环境不会重复计算
+                        snapshot.forEach(slot -> {
+                            String name = slot.name;
+                            boolean isAxiom = slot.isAxiom();
                             if (isAxiom) {
                                 System.out.println(
                                         ANSI_ITALIC + ANSI_CYAN
                                         + "\t"
                                         + name
                                         + " : "
-                                        + Eval.reify(type.value())
+                                        + slot.foldedType()
                                         + ANSI_RESET
                                 );
                             } else {
@@ -95,17 +109,31 @@ public final class Application implements AsciiColor {
                                         + "\t"
                                         + name
                                         + " : "
-                                        + Eval.reify(type.value())
+                                        + slot.foldedType()
                                         + "\n\t\t= "
-                                        + Eval.reify(value)
+                                        + slot.normalForm()
                                         + ANSI_RESET
                                 );
                             }
-                        }
+                        });
                     } else {
                         System.out.println(ANSI_GREEN + "Environment is empty." + ANSI_RESET);
                     }
                     continue;
+                case ":stats":
+                    ConversionCache cache = globals.snapshot().conversionCache();
+                    System.out.println(
+                            ANSI_GREEN
+                            + "Conversion cache: "
+                            + cache.hits() + " hit(s), "
+                            + cache.misses() + " miss(es), "
+                            + cache.size() + " entry(ies)\n"
+                            + "Result cache: "
+                            + results.hits() + " hit(s), "
+                            + results.misses() + " miss(es)"
+                            + ANSI_RESET
+                    );
+                    continue;
                 case ":tf":
                     if (!elab.termFormers.isEmpty()) {
                         for (Elab.TermFormer former : elab.termFormers.values()) {
@@ -124,10 +152,44 @@ public final class Application implements AsciiColor {
                     continue;
             }
 
+            if (line.equals(":strategy") || line.startsWith(":strategy ")) {
+                String strategy = line.substring(":strategy".length()).trim();
+                switch (strategy) {
+                    case "" -> {}
+                    case "value" -> globals.setStrategy(Eval.Strategy.CALL_BY_VALUE);
+                    case "need" -> globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+                    default -> {
+                        System.out.println(
+                                ANSI_RED
+                                + "Unknown evaluation strategy: " + strategy
+                                + ", expected value or need"
+                                + ANSI_RESET
+                        );
+                        continue;
+                    }
+                }
+                System.out.println(
+                        ANSI_GREEN + "Evaluation strategy: " + globals.strategy() + ANSI_RESET
+                );
+                continue;
+            }
+
+            if (line.startsWith(":load ")) {
+                String filePath = line.substring(":load ".length()).trim();
+                try {
+                    loadLibrary(filePath, elab, globals, graph, modules, results);
+                } catch (IOException e) {
+                    System.out.println(ANSI_RED + "Error reading file: " + e.getMessage() + ANSI_RESET);
+                } catch (LPiException e) {
+                    System.out.println(ANSI_RED + "Error: " + e.getMessage() + ANSI_RESET);
+                }
+                continue;
+            }
+
             if (line.startsWith(":include ")) {
                 String filePath = line.substring(":include ".length()).trim();
                 try {
-                    includeFile(filePath, elab, globals);
+                    includeFile(filePath, elab, globals, graph, modules, results);
                 } catch (IOException e) {
                     System.out.println(ANSI_RED + "Error reading file: " + e.getMessage() + ANSI_RESET);
                 } catch (LPiException e) {
@@ -136,14 +198,18 @@ public final class Application implements AsciiColor {
                 continue;
             }
 
+            int size = globals.snapshot().size();
             try {
-                processInput(line, elab, globals);
+                processInput(line, elab, globals, graph, results);
             } catch (LPiException e) {
                 System.out.println(ANSI_RED + "Error: " + e.getMessage() + ANSI_RESET);
             } catch (Exception e) {
                 System.out.println(ANSI_RED + "Unexpected error: " + e.getMessage() + ANSI_RESET);
                 e.printStackTrace(System.out);
             }
+            if (globals.snapshot().size() != size) {
+                modules.entered(line);
+            }
         }
 
         scanner.close();
@@ -155,10 +221,13 @@ public final class Application implements AsciiColor {
                            + ANSI_RESET);
     }
 
-    private static void processInput(
+    /// 处理一行不是命令的输入：表达式或者声明
+    static void processInput(
             String input,
             Elab elab,
-            Globals globals
+            Globals globals,
+            DependencyGraph graph,
+            ResultCache results
     ) throws ParseException, ElabException, TypeCheckException {
         ArrayList<Token> tokens = Token.tokenize(input);
         if (tokens.isEmpty()) {
@@ -170,12 +239,12 @@ public final class Application implements AsciiColor {
             && firstTokenKind != Token.Kind.KW_DEFUN
             && firstTokenKind != Token.Kind.KW_CHECK) {
             Node expr = Parse.parseExpr(tokens);
-            checkAndEval(expr, elab, globals, false);
+            checkAndEval(expr, elab, globals, graph, results, false);
         } else {
             PNode program = Parse.parseProgram(tokens);
             if (program instanceof PNode.Program(var items)) {
                 for (PNode item : items) {
-                    processDeclaration(item, elab, globals);
+                    processDeclaration(item, elab, globals, graph, results);
                 }
             }
         }
@@ -184,57 +253,214 @@ public final class Application implements AsciiColor {
     private static void processDeclaration(
             PNode decl,
             Elab elab,
-            Globals globals
+            Globals globals,
+            DependencyGraph graph,
+            ResultCache results
     ) throws ElabException, TypeCheckException {
-        switch (decl) {
-            case PNode.Axiom(List<Token> names, Node typeNode) -> {
-                String namesStr = String.join(
-                        ", ",
-                        names.stream().map(t -> t.lexeme).toList()
-                );
+        if (decl instanceof PNode.Program(var items)) {
+            for (PNode item : items) {
+                processDeclaration(item, elab, globals, graph, results);
+            }
+            return;
+        }
+
+        commitDeclaration(
+                checkDeclaration(decl, elab, globals.snapshot(), results),
+                elab,
+                globals,
+                graph,
+                results
+        );
+    }
+
+    /// 在快照上检查声明，不修改全局定义表，所以可以在多个线程中同时进行
+    ///
+    /// 展开之后先按词项的键查询结果缓存，命中时不再检查，只求值
+    private static Checked checkDeclaration(
+            PNode decl,
+            Elab elab,
+            Globals.Snapshot snapshot,
+            ResultCache results
+    ) throws ElabException, TypeCheckException {
+        return switch (decl) {
+            case PNode.Axiom axiom -> {
+                Term typeTerm = elab.elab(axiom.type(), snapshot);
+                String key = results.key('A', typeTerm);
+                if (key != null && results.lookup(key, snapshot, axiom.type()) != null) {
+                    yield new CheckedAxiom(axiom, typeTerm, Type.of(Eval.eval(typeTerm, snapshot)), key);
+                }
+
+                Type type = Type.of(InferCheck.inferEval((Term.Inferable) typeTerm, snapshot).value());
+                if (key != null) {
+                    results.store(key, new ResultCache.Result(null, null), snapshot);
+                }
+                yield new CheckedAxiom(axiom, typeTerm, type, key);
+            }
+            case PNode.Defun defun -> {
+                Node valueNode = defun.value();
+                Term term = elab.elab(valueNode, snapshot);
+                String key = results.key('D', term);
+                ResultCache.Result result = key != null ? results.lookup(key, snapshot, valueNode) : null;
+                if (result != null && result.normalForm() != null && result.type() != null) {
+                    // 正规形式中没有剩下的计算，由它重建定义的值，不再求值展开得到的词项
+                    Type type = Type.of(Eval.eval(result.type(), snapshot));
+                    Value value = Compile.evalDefinition(result.normalForm(), snapshot);
+                    yield new CheckedDefun(defun, term, value, type, key);
+                }
 
-                Term typeTerm = elab.elab(typeNode);
-                InferCheck.infer((Term.Inferable) typeTerm, globals);
-                Type type = Type.of(Eval.eval(typeTerm, globals.values()));
-                for (Token name : names) {
-                    globals.values().put(name.lexeme, Value.vFree(typeNode, new Name.Global(name.lexeme)));
-                    globals.types().put(name.lexeme, type);
+                InferCheck.Typed typed = InferCheck.inferEval((Term.Inferable) term, snapshot);
+                // 定义是函数时会被反复调用，编译它的函数体；其他定义直接使用检查时求出的值
+                Value value = typed.value() instanceof Value.VLam
+                        ? Compile.eval(term, snapshot)
+                        : null;
+                if (value == null) {
+                    value = typed.value();
+                }
+                if (key != null) {
+                    Term normalForm = Eval.reify(typed.value());
+                    Term type = Eval.reifyFolded(typed.type().value());
+                    results.store(key, new ResultCache.Result(normalForm, type), snapshot);
+                }
+                yield new CheckedDefun(defun, term, value, typed.type(), key);
+            }
+            case PNode.Check(Node termNode) -> checkExpr(termNode, elab, snapshot, results, true);
+            case PNode.Program _ -> throw new IllegalStateException(
+                    "Nested program should be processed item by item"
+            );
+        };
+    }
+
+    /// 按源码顺序提交检查完毕的声明并输出结果。重新定义已有的名字时，接着重新检查依赖它的定义
+    private static void commitDeclaration(
+            Checked checked,
+            Elab elab,
+            Globals globals,
+            DependencyGraph graph,
+            ResultCache results
+    ) {
+        switch (checked) {
+            case CheckedAxiom(PNode.Axiom decl, Term _, Type type, String _) -> {
+                List<String> names = DependencyGraph.definedNames(decl);
+                // 库中的定义不在依赖图中，所以按全局定义表判断是否重新定义
+                Globals.Snapshot snapshot = globals.snapshot();
+                List<String> redefined = names.stream().filter(n -> snapshot.lookup(n) != null).toList();
+                for (String name : names) {
+                    define(checked, name, globals, graph, results);
                 }
 
                 System.out.println(ANSI_CYAN + ANSI_ITALIC
                                    + "postulated "
-                                   + namesStr + " : " + Eval.reify(type.value())
+                                   + String.join(", ", names) + " : " + Eval.reifyFolded(type.value())
                                    + ANSI_RESET);
+                recheckDependents(redefined, elab, globals, graph, results);
             }
-            case PNode.Defun(Token name, Node valueNode) -> {
-                Term term = elab.elab(valueNode);
-                Type type = InferCheck.infer((Term.Inferable) term, globals);
-                Value value = Eval.eval(term, globals.values());
-
-                globals.values().put(name.lexeme, value);
-                globals.types().put(name.lexeme, type);
+            case CheckedDefun(PNode.Defun decl, Term _, Value _, Type _, String _) -> {
+                String name = decl.name().lexeme;
+                boolean redefined = globals.snapshot().lookup(name) != null;
+                Globals.Slot slot = define(checked, name, globals, graph, results);
 
                 System.out.println(ANSI_GREEN
                                    + "defined "
-                                   + name.lexeme
-                                   + " : " + Eval.reify(type.value())
-                                   + "\n\t= " + Eval.reify(value)
+                                   + name
+                                   + " : " + slot.foldedType()
+                                   + "\n\t= " + slot.normalForm()
                                    + ANSI_RESET);
+                if (redefined) {
+                    recheckDependents(List.of(name), elab, globals, graph, results);
+                }
             }
-            case PNode.Check(Node termNode) -> checkAndEval(termNode, elab, globals, true);
-            case PNode.Program(var items) -> {
-                for (PNode item : items) {
-                    processDeclaration(item, elab, globals);
+            case CheckedExpr(Node expr, Term normalForm, Type type, boolean explicitCheck) -> {
+                if (explicitCheck) {
+                    System.out.println(
+                            ANSI_GREEN
+                            + "checked " + expr + "\n"
+                            + "\t= " + normalForm + "\n"
+                            + "\t: " + Eval.reifyFolded(type.value())
+                            + ANSI_RESET
+                    );
+                } else {
+                    System.out.println(ANSI_GREEN + normalForm + " : " + Eval.reifyFolded(type.value()) + ANSI_RESET);
                 }
             }
         }
     }
 
-    private static void includeFile(
+    /// 把检查完毕的声明定义的名字 `name` 加入全局定义表和依赖图，并记下槽位在结果缓存中的摘要
+    private static Globals.Slot define(
+            Checked checked,
+            String name,
+            Globals globals,
+            DependencyGraph graph,
+            ResultCache results
+    ) {
+        Globals.Slot slot;
+        String key;
+        switch (checked) {
+            case CheckedAxiom(PNode.Axiom decl, Term _, Type type, String axiomKey) -> {
+                graph.define(name, decl);
+                slot = globals.define(name, Value.vFree(decl.type(), new Name.Global(name)), type);
+                key = axiomKey;
+            }
+            case CheckedDefun(PNode.Defun decl, Term _, Value value, Type type, String defunKey) -> {
+                graph.define(name, decl);
+                slot = globals.define(name, value, type);
+                key = defunKey;
+            }
+            case CheckedExpr _ -> throw new IllegalStateException("Expression does not define names");
+        }
+        if (key != null) {
+            results.defined(slot, key);
+        }
+        return slot;
+    }
+
+    /// 重新检查直接或间接用到 `redefined` 的定义
+    ///
+    /// 按原来定义的先后，用到的名字有变化的定义重新检查并换成新的定义。不再通过检查的定义保留原来的值
+    /// 并报告错误，只通过它间接用到 `redefined` 的定义也就不必重新检查
+    private static void recheckDependents(
+            List<String> redefined,
+            Elab elab,
+            Globals globals,
+            DependencyGraph graph,
+            ResultCache results
+    ) {
+        if (redefined.isEmpty()) {
+            return;
+        }
+
+        HashSet<String> changed = new HashSet<>(redefined);
+        for (DependencyGraph.Entry entry : graph.dependents(redefined)) {
+            if (Collections.disjoint(entry.uses(), changed)) {
+                continue;
+            }
+
+            try {
+                Checked checked = checkDeclaration(entry.decl(), elab, globals.snapshot(), results);
+                Globals.Slot slot = define(checked, entry.name(), globals, graph, results);
+                changed.add(entry.name());
+                System.out.println(ANSI_YELLOW
+                                   + "rechecked " + slot.name + " : " + slot.foldedType()
+                                   + ANSI_RESET);
+            } catch (LPiException e) {
+                System.out.println(ANSI_RED
+                                   + "Error: " + entry.name()
+                                   + " no longer type checks, keeping its previous definition: "
+                                   + e.getMessage()
+                                   + ANSI_RESET);
+            }
+        }
+    }
+
+    /// 加载文件。源文件和之前的会话都没有变化时直接从模块缓存读回检查结果，否则检查之后写入缓存
+    static void includeFile(
             String filePath,
             Elab elab,
-            Globals globals
-    ) throws IOException, ParseException, ElabException, TypeCheckException {
+            Globals globals,
+            DependencyGraph graph,
+            ModuleCache modules,
+            ResultCache results
+    ) throws IOException, LPiException {
         Path path = Path.of(filePath);
         String content = Files.readString(path);
         ArrayList<Token> tokens = Token.tokenize(content);
@@ -243,36 +469,205 @@ public final class Application implements AsciiColor {
         }
 
         PNode program = Parse.parseProgram(tokens);
-        if (program instanceof PNode.Program(var items)) {
-            for (PNode item : items) {
-                processDeclaration(item, elab, globals);
+        List<PNode> items = Scheduler.flatten(List.of(program));
+        byte[] source = ModuleCache.hash(content);
+        Path cachePath = ModuleCache.cachePath(path);
+        ModuleCache.Reader reader = ModuleCache.open(cachePath, source, modules.upstream(), items.size());
+
+        // 加载到一半失败时，会话的状态不再能由之前的输入重现
+        boolean loaded = false;
+        try {
+            if (reader != null) {
+                for (PNode item : items) {
+                    Globals.Snapshot snapshot = globals.snapshot();
+                    ModuleCache.Decl decl;
+                    try {
+                        decl = reader.next(item, snapshot);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(cachePath);
+                        throw e;
+                    }
+                    commitDeclaration(restore(item, decl, snapshot, results), elab, globals, graph, results);
+                }
+            } else {
+                ModuleCache.Writer writer = new ModuleCache.Writer(source, modules.upstream(), globals);
+                // 互不依赖的声明并行检查，提交和输出仍然按源码顺序进行
+                Scheduler.run(
+                        ForkJoinPool.commonPool(),
+                        items,
+                        globals,
+                        (decl, snapshot) -> checkDeclaration(decl, elab, snapshot, results),
+                        checked -> {
+                            writer.add(declOf(checked), cache(checked), keyOf(checked));
+                            commitDeclaration(checked, elab, globals, graph, results);
+                        }
+                );
+                try {
+                    writer.write(cachePath);
+                } catch (IOException _) {
+                    // 缓存只是加速手段，写不进去时下次重新检查即可
+                }
+            }
+            loaded = true;
+        } finally {
+            if (loaded) {
+                modules.loaded(source);
+            } else {
+                modules.invalidate();
             }
         }
 
-        System.out.println(ANSI_GREEN + "Loaded: " + path.toAbsolutePath() + ANSI_RESET);
+        System.out.println(ANSI_GREEN
+                           + "Loaded: " + path.toAbsolutePath()
+                           + (reader != null ? " (cached)" : "")
+                           + ANSI_RESET);
+    }
+
+    /// 把文件作为库延迟加载：只映射模块缓存，定义在第一次用到时才解码，不输出模块中的声明
+    ///
+    /// 库中的定义不加入依赖图，重新定义它们用到的名字时不会重新检查它们，就像已经编译好的库一样。
+    /// 没有可用的模块缓存时按 `:include` 检查整个文件，同时写入缓存
+    static void loadLibrary(
+            String filePath,
+            Elab elab,
+            Globals globals,
+            DependencyGraph graph,
+            ModuleCache modules,
+            ResultCache results
+    ) throws IOException, LPiException {
+        Path path = Path.of(filePath);
+        byte[] source = ModuleCache.hash(path);
+        ModuleCache.Library library = ModuleCache.library(
+                ModuleCache.cachePath(path),
+                source,
+                modules.upstream(),
+                results::defined
+        );
+        if (library == null) {
+            includeFile(filePath, elab, globals, graph, modules, results);
+            return;
+        }
+
+        globals.load(library);
+        modules.loaded(source);
+        System.out.println(ANSI_GREEN
+                           + "Loaded: " + path.toAbsolutePath()
+                           + " (lazily, " + library.size() + " definition(s))"
+                           + ANSI_RESET);
+    }
+
+    private static PNode declOf(Checked checked) {
+        return switch (checked) {
+            case CheckedAxiom axiom -> axiom.decl();
+            case CheckedDefun defun -> defun.decl();
+            case CheckedExpr expr -> new PNode.Check(expr.expr());
+        };
+    }
+
+    private static @Nullable String keyOf(Checked checked) {
+        return switch (checked) {
+            case CheckedAxiom axiom -> axiom.key();
+            case CheckedDefun defun -> defun.key();
+            case CheckedExpr _ -> null;
+        };
+    }
+
+    /// 写入模块缓存的内容：公理和定义保留展开得到的词项，类型和正规形式读回为词项
+    private static ModuleCache.Decl cache(Checked checked) {
+        return switch (checked) {
+            case CheckedAxiom(PNode.Axiom _, Term type, Type _, String _) -> new ModuleCache.Axiom(type);
+            case CheckedDefun(PNode.Defun _, Term term, Value _, Type type, String _) ->
+                    new ModuleCache.Defun(term, Eval.reifyFolded(type.value()));
+            case CheckedExpr(Node _, Term normalForm, Type type, boolean _) ->
+                    new ModuleCache.Check(normalForm, Eval.reifyFolded(type.value()));
+        };
+    }
+
+    /// 从模块缓存读回的声明只需要求值，不再检查。展开得到的词项仍然算出结果缓存的键，
+    /// 之后检查的声明引用这些定义时可以命中结果缓存
+    private static Checked restore(
+            PNode item,
+            ModuleCache.Decl decl,
+            Globals.Snapshot snapshot,
+            ResultCache results
+    ) {
+        return switch (decl) {
+            case ModuleCache.Axiom(Term type) -> new CheckedAxiom(
+                    (PNode.Axiom) item,
+                    type,
+                    Type.of(Eval.eval(type, snapshot)),
+                    results.key('A', type)
+            );
+            case ModuleCache.Defun(Term term, Term type) -> new CheckedDefun(
+                    (PNode.Defun) item,
+                    term,
+                    Compile.evalDefinition(term, snapshot),
+                    Type.of(Eval.eval(type, snapshot)),
+                    results.key('D', term)
+            );
+            case ModuleCache.Check(Term normalForm, Term type) -> new CheckedExpr(
+                    ((PNode.Check) item).term(),
+                    normalForm,
+                    Type.of(Eval.eval(type, snapshot)),
+                    true
+            );
+        };
     }
 
     private static void checkAndEval(
             Node expr,
             Elab elab,
             Globals globals,
+            DependencyGraph graph,
+            ResultCache results,
             boolean explicitCheck
     ) throws ElabException, TypeCheckException {
-        Term term = elab.elab(expr);
-        Type type = InferCheck.infer((Term.Inferable) term, globals);
-        Value value = Eval.eval(term, globals.values());
-        Term normalForm = Eval.reify(value);
-
-        if (explicitCheck) {
-            System.out.println(
-                    ANSI_GREEN
-                    + "checked " + expr + "\n"
-                    + "\t= " + normalForm + "\n"
-                    + "\t: " + Eval.reify(type.value())
-                    + ANSI_RESET
-            );
-        } else {
-            System.out.println(ANSI_GREEN + normalForm + " : " + Eval.reify(type.value()) + ANSI_RESET);
+        commitDeclaration(
+                checkExpr(expr, elab, globals.snapshot(), results, explicitCheck),
+                elab,
+                globals,
+                graph,
+                results
+        );
+    }
+
+    private static CheckedExpr checkExpr(
+            Node expr,
+            Elab elab,
+            Globals.Snapshot snapshot,
+            ResultCache results,
+            boolean explicitCheck
+    ) throws ElabException, TypeCheckException {
+        Term term = elab.elab(expr, snapshot);
+        String key = results.key('C', term);
+        ResultCache.Result result = key != null ? results.lookup(key, snapshot, expr) : null;
+        if (result != null && result.normalForm() != null && result.type() != null) {
+            Type type = Type.of(Eval.eval(result.type(), snapshot));
+            return new CheckedExpr(expr, result.normalForm(), type, explicitCheck);
         }
+
+        InferCheck.Typed typed = InferCheck.inferEval((Term.Inferable) term, snapshot);
+        Term normalForm = Eval.reify(typed.value());
+        if (key != null) {
+            results.store(key, new ResultCache.Result(normalForm, Eval.reifyFolded(typed.type().value())), snapshot);
+        }
+        return new CheckedExpr(expr, normalForm, typed.type(), explicitCheck);
     }
+
+    /// 检查完毕、尚未提交的声明
+    private sealed interface Checked {}
+
+    /// `key` 是声明在结果缓存中的键，为 `null` 时不缓存
+    private record CheckedAxiom(PNode.Axiom decl, Term term, Type type, @Nullable String key)
+            implements Checked {}
+
+    private record CheckedDefun(PNode.Defun decl, Term term, Value value, Type type, @Nullable String key)
+            implements Checked {}
+
+    private record CheckedExpr(
+            Node expr,
+            Term normalForm,
+            Type type,
+            boolean explicitCheck
+    ) implements Checked {}
 }
@@ -0,0 +1,50 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.util.SkewList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/// 一阶闭包：尚未求值的函数体和它捕获的环境，由 {@link Eval#apply} 统一应用
+///
+/// 函数体使用 de Bruijn 索引，因此结构相等即 α-等价。`globals` 是创建闭包时全局定义表的快照，
+/// `code` 是由 {@link Compile} 生成的函数体（如果有的话），二者都不参与相等性比较
+public record Closure(
+        @NotNull Term.Checkable body,
+        @NotNull SkewList<Value> env,
+        @NotNull Globals.Snapshot globals,
+        @Nullable Code code
+) {
+    /// 编译后的函数体，在已经加入参数的环境中计算函数体的值
+    @FunctionalInterface
+    public interface Code {
+        @NotNull Value run(@NotNull SkewList<Value> env, @NotNull Globals.Snapshot globals);
+    }
+
+    public Closure(
+            @NotNull Term.Checkable body,
+            @NotNull SkewList<Value> env,
+            @NotNull Globals.Snapshot globals
+    ) {
+        this(body, env, globals, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Closure closure)) return false;
+
+        return body.equals(closure.body) && env.equals(closure.env);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(body, env);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "Closure(" + body + ")";
+    }
+}
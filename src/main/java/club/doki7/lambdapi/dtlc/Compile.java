@@ -0,0 +1,254 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.SkewList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/// 把通过类型检查的定义编译成 JVM 字节码
+///
+/// 每个函数体编译成一个实现 {@link Closure.Code} 的隐藏类。λ 和 Pi 类型仍然求值为 `VLam` 和 `VPi`，
+/// 只是闭包额外带上编译后的函数体，所以读回、相等性比较和粘合求值都与解释器完全一致。
+/// 解释器 {@link Eval} 仍然是语义的参考实现：遇到无法编译的词项时返回 `null`，由调用方退回解释器
+///
+/// 生成的代码使用 Java 调用栈求值嵌套的应用，因此只编译嵌套深度不超过 {@link #MAX_DEPTH} 的词项，
+/// 更深的词项交给使用显式栈的解释器。编译后的闭包在运行时嵌套过深时同样退回解释器，见 {@link Eval#apply}
+public final class Compile {
+    /// 编译并求值一个闭合的词项。按需求值的会话和无法编译的词项返回 `null`
+    public static @Nullable Value eval(@NotNull Term term, @NotNull Globals.Snapshot globals) {
+        if (globals.strategy() != Eval.Strategy.CALL_BY_VALUE) {
+            return null;
+        }
+
+        Closure.Code code;
+        try {
+            code = compile(term, 0);
+        } catch (Unsupported _) {
+            return null;
+        }
+        return code.run(SkewList.nil(), globals);
+    }
+
+    /// 不经检查直接求出定义的值。定义是 λ 时会被反复调用，编译它的函数体；其他定义只解释求值
+    public static @NotNull Value evalDefinition(@NotNull Term term, @NotNull Globals.Snapshot globals) {
+        if (isLambda(term)) {
+            Value compiled = eval(term, globals);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+        return Eval.eval(term, globals);
+    }
+
+    private static boolean isLambda(@NotNull Term term) {
+        while (true) {
+            switch (term) {
+                case Term.Ann(Node _, Term e, Term _) -> term = e;
+                case Term.Inf(Node _, Term.Inferable inf) -> term = inf;
+                case Term.Lam _ -> {
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static Closure.Code compile(Term body, int depth) {
+        ArrayList<Object> constants = new ArrayList<>();
+        byte[] bytes = ClassFile.of().build(CD_COMPILED, cb -> {
+            cb.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+            cb.withSuperclass(ConstantDescs.CD_Object);
+            cb.withInterfaceSymbols(CD_CODE);
+            cb.withMethodBody(
+                    ConstantDescs.INIT_NAME,
+                    ConstantDescs.MTD_void,
+                    ClassFile.ACC_PUBLIC,
+                    cob -> {
+                        cob.aload(0);
+                        cob.invokespecial(
+                                ConstantDescs.CD_Object,
+                                ConstantDescs.INIT_NAME,
+                                ConstantDescs.MTD_void
+                        );
+                        cob.return_();
+                    }
+            );
+            cb.withMethodBody(
+                    "run",
+                    MTD_RUN,
+                    ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+                    cob -> {
+                        emit(cob, constants, body, depth);
+                        cob.areturn();
+                    }
+            );
+        });
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, List.copyOf(constants), true);
+            return (Closure.Code) lookup
+                    .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load compiled definition", e);
+        }
+    }
+
+    /// 生成求值 `term` 的代码，结果留在操作数栈顶。局部变量 1 是环境，2 是全局定义表的快照
+    private static void emit(CodeBuilder cob, ArrayList<Object> constants, Term term, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new Unsupported();
+        }
+
+        switch (term) {
+            case Term.Ann(Node _, Term e, Term _) -> emit(cob, constants, e, depth + 1);
+            case Term.Inf(Node _, Term.Inferable inf) -> emit(cob, constants, inf, depth + 1);
+            case Term.Bound(Node _, int index) -> {
+                cob.aload(1);
+                cob.loadConstant(index);
+                cob.invokevirtual(CD_SKEW_LIST, "get", MTD_SKEW_LIST_GET);
+                cob.checkcast(CD_VALUE);
+            }
+            // 粘合值会记住展开的结果，同一个引用处共享同一个值即可
+            case Term.GlobalRef(Node node, Globals.Slot slot) ->
+                    constant(cob, constants, Eval.glue(node, slot), CD_VALUE);
+            case Term.Star(Node node) -> constant(cob, constants, new Value.VStar(node), CD_VALUE);
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> {
+                emit(cob, constants, f, depth + 1);
+                emit(cob, constants, arg, depth + 1);
+                cob.invokestatic(CD_EVAL, "vApp", MTD_VAPP);
+            }
+            case Term.Lam(Node node, Term.Checkable body) -> {
+                Closure.Code code = compile(body, depth + 1);
+                cob.new_(CD_VLAM);
+                cob.dup();
+                constant(cob, constants, node, CD_NODE);
+                newClosure(cob, constants, body, code);
+                cob.invokespecial(CD_VLAM, ConstantDescs.INIT_NAME, MTD_VLAM_INIT);
+            }
+            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> {
+                Closure.Code code = compile(out, depth + 1);
+                cob.new_(CD_VPI);
+                cob.dup();
+                constant(cob, constants, node, CD_NODE);
+                emit(cob, constants, in, depth + 1);
+                cob.invokestatic(CD_TYPE, "of", MTD_TYPE_OF);
+                newClosure(cob, constants, out, code);
+                cob.invokespecial(CD_VPI, ConstantDescs.INIT_NAME, MTD_VPI_INIT);
+            }
+            // 通过类型检查的定义中，全局名字都已经链接到槽位，不会出现自由变量
+            case Term.Free _ -> throw new Unsupported();
+            case Term.InferableTF tf -> termFormer(cob, constants, tf);
+            case Term.CheckableTF tf -> termFormer(cob, constants, tf);
+        }
+    }
+
+    private static void newClosure(
+            CodeBuilder cob,
+            ArrayList<Object> constants,
+            Term.Checkable body,
+            Closure.Code code
+    ) {
+        cob.new_(CD_CLOSURE);
+        cob.dup();
+        constant(cob, constants, body, CD_CHECKABLE);
+        cob.aload(1);
+        cob.aload(2);
+        constant(cob, constants, code, CD_CODE);
+        cob.invokespecial(CD_CLOSURE, ConstantDescs.INIT_NAME, MTD_CLOSURE_INIT);
+    }
+
+    /// 项构造器的求值规则由它自己实现，编译后的代码直接调用
+    private static void termFormer(
+            CodeBuilder cob,
+            ArrayList<Object> constants,
+            Term.ITermFormer tf
+    ) {
+        constant(cob, constants, tf, CD_TERM_FORMER);
+        cob.aload(1);
+        cob.aload(2);
+        cob.invokeinterface(CD_TERM_FORMER, "eval", MTD_TERM_FORMER_EVAL);
+    }
+
+    /// 通过隐藏类的 class data 加载一个常量对象
+    private static void constant(
+            CodeBuilder cob,
+            ArrayList<Object> constants,
+            Object value,
+            ClassDesc type
+    ) {
+        int index = constants.size();
+        constants.add(value);
+        cob.loadConstant(DynamicConstantDesc.ofNamed(
+                ConstantDescs.BSM_CLASS_DATA_AT,
+                ConstantDescs.DEFAULT_NAME,
+                type,
+                index
+        ));
+    }
+
+    private static ClassDesc desc(Class<?> cls) {
+        return ClassDesc.ofDescriptor(cls.descriptorString());
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final int MAX_DEPTH = 256;
+
+    private static final ClassDesc CD_COMPILED = ClassDesc.of(
+            Compile.class.getPackageName(),
+            "Compiled"
+    );
+    private static final ClassDesc CD_VALUE = desc(Value.class);
+    private static final ClassDesc CD_VLAM = desc(Value.VLam.class);
+    private static final ClassDesc CD_VPI = desc(Value.VPi.class);
+    private static final ClassDesc CD_TYPE = desc(Type.class);
+    private static final ClassDesc CD_NODE = desc(Node.class);
+    private static final ClassDesc CD_CHECKABLE = desc(Term.Checkable.class);
+    private static final ClassDesc CD_TERM_FORMER = desc(Term.ITermFormer.class);
+    private static final ClassDesc CD_CLOSURE = desc(Closure.class);
+    private static final ClassDesc CD_CODE = desc(Closure.Code.class);
+    private static final ClassDesc CD_EVAL = desc(Eval.class);
+    private static final ClassDesc CD_SKEW_LIST = desc(SkewList.class);
+    private static final ClassDesc CD_SNAPSHOT = desc(Globals.Snapshot.class);
+
+    private static final MethodTypeDesc MTD_RUN =
+            MethodTypeDesc.of(CD_VALUE, CD_SKEW_LIST, CD_SNAPSHOT);
+    private static final MethodTypeDesc MTD_SKEW_LIST_GET =
+            MethodTypeDesc.of(ConstantDescs.CD_Object, ConstantDescs.CD_int);
+    private static final MethodTypeDesc MTD_VAPP =
+            MethodTypeDesc.of(CD_VALUE, CD_VALUE, CD_VALUE);
+    private static final MethodTypeDesc MTD_TYPE_OF =
+            MethodTypeDesc.of(CD_TYPE, CD_VALUE);
+    private static final MethodTypeDesc MTD_VLAM_INIT =
+            MethodTypeDesc.of(ConstantDescs.CD_void, CD_NODE, CD_CLOSURE);
+    private static final MethodTypeDesc MTD_VPI_INIT =
+            MethodTypeDesc.of(ConstantDescs.CD_void, CD_NODE, CD_TYPE, CD_CLOSURE);
+    private static final MethodTypeDesc MTD_CLOSURE_INIT = MethodTypeDesc.of(
+            ConstantDescs.CD_void,
+            CD_CHECKABLE,
+            CD_SKEW_LIST,
+            CD_SNAPSHOT,
+            CD_CODE
+    );
+    private static final MethodTypeDesc MTD_TERM_FORMER_EVAL =
+            MethodTypeDesc.of(CD_VALUE, CD_SKEW_LIST, CD_SNAPSHOT);
+}
@@ -0,0 +1,46 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.SkewList;
+import org.jetbrains.annotations.NotNull;
+
+/// 类型检查的上下文
+///
+/// `types` 和 `env` 都按 de Bruijn 索引排列，下标 0 是最内层的约束变量。`env` 中第 `k` 层
+/// 约束变量的值是中性值 `L^k`（{@link Name.Local}），所以检查时不必把约束变量替换进词项，
+/// 带有约束变量的词项直接在 `env` 中求值。查找变量的类型和值都是 O(log n) 的
+public record Context(
+        @NotNull SkewList<Type> types,
+        @NotNull SkewList<Value> env,
+        @NotNull Globals.Snapshot globals
+) {
+    public static @NotNull Context empty(@NotNull Globals.Snapshot globals) {
+        return new Context(SkewList.nil(), SkewList.nil(), globals);
+    }
+
+    /// 当前的绑定层数，也是下一个约束变量的层级
+    public int depth() {
+        return env.size();
+    }
+
+    /// de Bruijn 索引为 `index` 的约束变量的类型
+    public @NotNull Type type(int index) {
+        return types.get(index);
+    }
+
+    /// 当前层级的新变量
+    public @NotNull Value fresh(@NotNull Node node) {
+        return Value.vFree(node, new Name.Local(depth()));
+    }
+
+    /// 加入一个类型为 `type` 的约束变量，它的值是 {@link #fresh}
+    public @NotNull Context bind(@NotNull Node node, @NotNull Type type) {
+        return new Context(types.cons(type), env.cons(fresh(node)), globals);
+    }
+
+    /// 在当前环境中求值词项
+    public @NotNull Value eval(@NotNull Term term) {
+        return Eval.eval(term, env, globals);
+    }
+}
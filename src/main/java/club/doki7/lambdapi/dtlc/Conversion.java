@@ -0,0 +1,124 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/// 值层面的转换检查：判断两个值的正规形式是否相同，而不必把它们读回为词项
+///
+/// 两个值同步地向下比较，遇到绑定时用 de Bruijn 层级 `depth` 对应的新变量 {@link Name.Quote}
+/// 应用两边的闭包。引用相同的子值直接视为相同，头部不同时立即失败，
+/// 以同一个全局定义为头部、参数也相同的值不必展开定义。结果与比较 {@link Eval#reify}
+/// 读回的正规形式相同
+///
+/// 待比较的子值对保存在显式的栈中，所以深层嵌套的值也不会耗尽 Java 调用栈。
+/// 扩展的值通过 {@link Value.CValue#convert} 和 {@link Value.CNeutral#convert}
+/// 决定自己的头部是否匹配，并用 {@link #goal} 把需要继续比较的子值交回这里
+public final class Conversion {
+    /// 在 `depth` 个绑定之下，`a` 与 `b` 是否可转换
+    public static boolean convertible(int depth, @NotNull Value a, @NotNull Value b) {
+        Conversion conversion = new Conversion();
+        conversion.goal(depth, a, b);
+        return conversion.run();
+    }
+
+    /// 要求 `a` 与 `b` 在 `depth` 个绑定之下可转换
+    public void goal(int depth, @NotNull Value a, @NotNull Value b) {
+        if (a != b) {
+            goals.push(new Goal(depth, a, b));
+        }
+    }
+
+    private boolean run() {
+        while (!goals.isEmpty()) {
+            boolean ok = switch (goals.pop()) {
+                case Goal(int depth, Value a, Value b) -> step(depth, a, b);
+                case Under(int depth, Node node, Closure a, Closure b) -> {
+                    if (a != b) {
+                        Value x = Value.vFree(node, new Name.Quote(depth));
+                        goal(depth + 1, Eval.apply(a, x), Eval.apply(b, x));
+                    }
+                    yield true;
+                }
+            };
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean step(int depth, Value a, Value b) {
+        if (a instanceof Value.VGlobal ga
+            && b instanceof Value.VGlobal gb
+            && ga.head() == gb.head()
+            && sameArgs(depth, ga.args(), gb.args())) {
+            return true;
+        }
+
+        a = Eval.force(a);
+        b = Eval.force(b);
+        if (a == b) {
+            return true;
+        }
+
+        return switch (a) {
+            case Value.VStar _ -> b instanceof Value.VStar;
+            case Value.VPi(Node node, Type in, Closure out) -> {
+                if (!(b instanceof Value.VPi(Node _, Type otherIn, Closure otherOut))) {
+                    yield false;
+                }
+                goals.push(new Under(depth, node, out, otherOut));
+                goal(depth, in.value(), otherIn.value());
+                yield true;
+            }
+            case Value.VLam(Node node, Closure body) -> {
+                if (!(b instanceof Value.VLam(Node _, Closure otherBody))) {
+                    yield false;
+                }
+                goals.push(new Under(depth, node, body, otherBody));
+                yield true;
+            }
+            case Value.NFree(Node _, Name name) ->
+                    b instanceof Value.NFree(Node _, Name other) && name.equals(other);
+            case Value.NApp(Node _, Value.VNeutral func, Value arg) -> {
+                if (!(b instanceof Value.NApp(Node _, Value.VNeutral otherFunc, Value otherArg))) {
+                    yield false;
+                }
+                goal(depth, arg, otherArg);
+                goal(depth, func, otherFunc);
+                yield true;
+            }
+            case Value.CNeutral cn -> cn.convert(depth, b, this);
+            case Value.CValue cv -> cv.convert(depth, b, this);
+            case Value.VGlobal _, Value.VThunk _ -> throw new IllegalStateException(
+                    "Value should have been forced before conversion"
+            );
+        };
+    }
+
+    /// 同一个全局定义的两组参数是否逐个可转换。不相同时还要展开定义再比较，所以单独检查
+    private static boolean sameArgs(int depth, List<Value> args, List<Value> otherArgs) {
+        if (args.size() != otherArgs.size()) {
+            return false;
+        }
+
+        Conversion conversion = new Conversion();
+        for (int i = args.size() - 1; i >= 0; i--) {
+            conversion.goal(depth, args.get(i), otherArgs.get(i));
+        }
+        return conversion.run();
+    }
+
+    private sealed interface Frame {}
+
+    private record Goal(int depth, Value a, Value b) implements Frame {}
+
+    /// 在新变量下比较两个闭包的函数体，弹出时才应用闭包
+    private record Under(int depth, Node node, Closure a, Closure b) implements Frame {}
+
+    private final ArrayDeque<Frame> goals = new ArrayDeque<>();
+}
@@ -0,0 +1,335 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/// 已经判定过的转换问题的有界缓存，按最近最少使用的顺序淘汰
+///
+/// 键是两个值的内容指纹：只看值的前若干层，全局定义按槽位、闭包按函数体的引用和环境中的值区分，
+/// 扩展的值按 {@link Value.CValue#parts} 给出的分量区分，不调用它们自己的 `equals` 和 `hashCode`。
+/// 指纹相同时再逐层比较内容，所以哈希冲突不会给出错误的结果。超出大小限制或者含有未求值 thunk 的值不进入缓存，
+/// 比较内容时也不会强制求值其中的 thunk
+///
+/// 槽位一经创建就不再修改，重新定义全局量会分配新的槽位，所以缓存可以在会话的所有声明之间共享：
+/// 没有重新定义依赖的声明继续命中，重新定义之后的值自然不再与旧的键相同。
+/// 条目按指纹分在若干个各自加锁的分段中，并行的检查很少争用同一把锁
+public final class ConversionCache {
+    public ConversionCache(int capacity) {
+        int stripes = Integer.highestOneBit(Math.clamp(capacity / STRIPE_CAPACITY, 1, MAX_STRIPES));
+        int stripeCapacity = Math.ceilDiv(capacity, stripes);
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /// 在 `depth` 个绑定之下，`a` 与 `b` 是否可转换。已经判定过的问题直接返回记住的结果
+    public boolean convertible(int depth, @NotNull Value a, @NotNull Value b) {
+        if (a == b) {
+            return true;
+        }
+
+        Key key = Key.of(depth, a, b);
+        if (key != null) {
+            Boolean known = stripe(key).get(key);
+            if (known != null) {
+                hits.increment();
+                return known;
+            }
+            misses.increment();
+        }
+
+        boolean result = Conversion.convertible(depth, a, b);
+        if (key != null) {
+            stripe(key).put(key, result);
+        }
+        return result;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    private Stripe stripe(Key key) {
+        int hash = key.hash;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /// 一个分段，单独加锁的 LRU 表
+    private static final class Stripe {
+        Stripe(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized @Nullable Boolean get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, boolean value) {
+            entries.put(key, value);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        private final LinkedHashMap<Key, Boolean> entries;
+    }
+
+    private record Key(int depth, Value a, Value b, int hash) {
+        static @Nullable Key of(int depth, Value a, Value b) {
+            Fingerprint fingerprint = new Fingerprint();
+            int ha = fingerprint.hash(a);
+            int hb = fingerprint.hash(b);
+            if (fingerprint.budget < 0) {
+                return null;
+            }
+            return new Key(depth, a, b, (31 * depth + ha) * 31 + hb);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key
+                   && hash == key.hash
+                   && depth == key.depth
+                   && sameContent(a, key.a)
+                   && sameContent(b, key.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /// 与 {@link Fingerprint} 看的内容相同。使用显式栈逐层比较，最多比较 {@link #BUDGET} 对值；
+    /// 超出限制或者遇到未求值的 thunk 时当作不同
+    private static boolean sameContent(Value a, Value b) {
+        ArrayDeque<Value> work = new ArrayDeque<>();
+        work.push(a);
+        work.push(b);
+        int budget = BUDGET;
+        while (!work.isEmpty()) {
+            Value y = forced(work.pop());
+            Value x = forced(work.pop());
+            if (x == y) {
+                continue;
+            }
+            if (x == null || y == null || --budget < 0) {
+                return false;
+            }
+
+            switch (x) {
+                case Value.VStar _ -> {
+                    if (!(y instanceof Value.VStar)) {
+                        return false;
+                    }
+                }
+                case Value.VPi(Node _, Type in, Closure out) -> {
+                    if (!(y instanceof Value.VPi(Node _, Type otherIn, Closure otherOut))
+                        || !sameClosure(out, otherOut, work)) {
+                        return false;
+                    }
+                    work.push(in.value());
+                    work.push(otherIn.value());
+                }
+                case Value.VLam(Node _, Closure body) -> {
+                    if (!(y instanceof Value.VLam(Node _, Closure otherBody))
+                        || !sameClosure(body, otherBody, work)) {
+                        return false;
+                    }
+                }
+                case Value.NFree(Node _, Name name) -> {
+                    if (!(y instanceof Value.NFree(Node _, Name other)) || !name.equals(other)) {
+                        return false;
+                    }
+                }
+                case Value.NApp(Node _, Value.VNeutral func, Value arg) -> {
+                    if (!(y instanceof Value.NApp(Node _, Value.VNeutral otherFunc, Value otherArg))) {
+                        return false;
+                    }
+                    work.push(func);
+                    work.push(otherFunc);
+                    work.push(arg);
+                    work.push(otherArg);
+                }
+                case Value.VGlobal global -> {
+                    if (!(y instanceof Value.VGlobal other)
+                        || global.head() != other.head()
+                        || global.args().size() != other.args().size()) {
+                        return false;
+                    }
+                    for (int i = 0; i < global.args().size(); i++) {
+                        work.push(global.args().get(i));
+                        work.push(other.args().get(i));
+                    }
+                }
+                case Value.CValue value -> {
+                    if (x.getClass() != y.getClass()
+                        || !sameParts(value.parts(), ((Value.CValue) y).parts(), work)) {
+                        return false;
+                    }
+                }
+                case Value.CNeutral neutral -> {
+                    if (x.getClass() != y.getClass()
+                        || !sameParts(neutral.parts(), ((Value.CNeutral) y).parts(), work)) {
+                        return false;
+                    }
+                }
+                case Value.VThunk _ -> throw new IllegalStateException("Thunk should have been forced");
+            }
+        }
+        return true;
+    }
+
+    /// 已经求值的 thunk 换成它的值，未求值时返回 `null`
+    private static @Nullable Value forced(Value value) {
+        while (value instanceof Value.VThunk thunk) {
+            if (!thunk.isForced()) {
+                return null;
+            }
+            value = thunk.force();
+        }
+        return value;
+    }
+
+    private static boolean sameClosure(Closure a, Closure b, ArrayDeque<Value> work) {
+        if (a.body() != b.body() || a.env().size() != b.env().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.env().size(); i++) {
+            work.push(a.env().get(i));
+            work.push(b.env().get(i));
+        }
+        return true;
+    }
+
+    /// 非值的分量直接比较，子值交给调用方逐层比较
+    private static boolean sameParts(List<?> a, List<?> b, ArrayDeque<Value> work) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            Object x = a.get(i);
+            Object y = b.get(i);
+            if (x instanceof Value vx && y instanceof Value vy) {
+                work.push(vx);
+                work.push(vy);
+            } else if (x instanceof List<?> lx && y instanceof List<?> ly) {
+                if (!sameParts(lx, ly, work)) {
+                    return false;
+                }
+            } else if (x instanceof Value || y instanceof Value || !Objects.equals(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// 值的前若干层的内容哈希。超出大小限制或者遇到未求值的 thunk 时 `budget` 变为负数
+    private static final class Fingerprint {
+        int hash(Value value) {
+            if (--budget < 0) {
+                return 0;
+            }
+
+            return switch (value) {
+                case Value.VThunk thunk -> {
+                    if (!thunk.isForced()) {
+                        budget = -1;
+                        yield 0;
+                    }
+                    yield hash(thunk.force());
+                }
+                case Value.VStar _ -> 1;
+                case Value.VPi(Node _, Type in, Closure out) ->
+                        31 * (31 * 2 + hash(in.value())) + closure(out);
+                case Value.VLam(Node _, Closure body) -> 31 * 3 + closure(body);
+                case Value.NFree(Node _, Name name) -> 31 * 4 + name.hashCode();
+                case Value.NApp(Node _, Value.VNeutral func, Value arg) ->
+                        31 * (31 * 5 + hash(func)) + hash(arg);
+                case Value.VGlobal global -> {
+                    int hash = 31 * 6 + global.head().index;
+                    for (Value arg : global.args()) {
+                        hash = 31 * hash + hash(arg);
+                    }
+                    yield hash;
+                }
+                case Value.CValue c -> parts(31 * 7 + c.getClass().hashCode(), c.parts());
+                case Value.CNeutral c -> parts(31 * 7 + c.getClass().hashCode(), c.parts());
+            };
+        }
+
+        private int closure(Closure closure) {
+            int hash = System.identityHashCode(closure.body());
+            for (int i = 0; i < closure.env().size() && budget >= 0; i++) {
+                hash = 31 * hash + hash(closure.env().get(i));
+            }
+            return hash;
+        }
+
+        private int parts(int hash, List<?> parts) {
+            for (int i = 0; i < parts.size() && budget >= 0; i++) {
+                hash = 31 * hash + switch (parts.get(i)) {
+                    case Value value -> hash(value);
+                    case List<?> list -> parts(list.size(), list);
+                    case Object object -> {
+                        budget--;
+                        yield Objects.hashCode(object);
+                    }
+                };
+            }
+            return hash;
+        }
+
+        int budget = BUDGET;
+    }
+
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /// 指纹最多看的值的个数
+    private static final int BUDGET = 64;
+    /// 每个分段至少能容纳的条目数，容量较小的缓存只有一个分段，淘汰顺序是精确的 LRU
+    private static final int STRIPE_CAPACITY = 256;
+    private static final int MAX_STRIPES = 16;
+}
@@ -0,0 +1,200 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Token;
+import club.doki7.lambdapi.util.ConsList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/// 全局定义之间的依赖关系，与 {@link Globals} 一起维护
+///
+/// 每个名字记录它当前的定义来自哪个声明、这个声明用到了哪些名字。重新定义一个名字时，
+/// {@link #dependents} 给出直接或间接用到它的定义，按依赖关系排好顺序，逐个重新检查即可，
+/// 不必重新加载整个会话。反向索引只记录当前的定义，所以代价只与受影响的定义个数有关
+public final class DependencyGraph {
+    /// 名字 `name` 当前的定义来自声明 `decl`，`order` 是定义的先后
+    public record Entry(
+            @NotNull String name,
+            @NotNull PNode decl,
+            @NotNull Set<String> uses,
+            long order
+    ) {}
+
+    /// 记录 `name` 由 `decl` 定义，替换它原来的定义
+    public @NotNull Entry define(@NotNull String name, @NotNull PNode decl) {
+        Entry old = entries.get(name);
+        if (old != null) {
+            for (String used : old.uses) {
+                Set<Entry> users = usedBy.get(used);
+                users.remove(old);
+                if (users.isEmpty()) {
+                    usedBy.remove(used);
+                }
+            }
+        }
+
+        Entry entry = new Entry(name, decl, usedNames(decl), nextOrder++);
+        entries.put(name, entry);
+        for (String used : entry.uses) {
+            usedBy.computeIfAbsent(used, _ -> new HashSet<>()).add(entry);
+        }
+        return entry;
+    }
+
+    public @Nullable Entry lookup(@NotNull String name) {
+        return entries.get(name);
+    }
+
+    /// 直接或间接用到 `names` 的定义，不包括 `names` 自己
+    ///
+    /// 结果中的定义排在它用到的其他结果之后，逐个重新检查时总能看到已经更新的依赖。
+    /// 重新定义可能让较早的定义用到较晚的定义，甚至形成环，所以不能只按定义的先后排列；
+    /// 依赖关系相同时较早的定义在前，遇到环时先取环中最早的定义
+    public @NotNull List<Entry> dependents(@NotNull Collection<String> names) {
+        HashMap<String, Entry> affected = new HashMap<>();
+        ArrayDeque<String> pending = new ArrayDeque<>(names);
+        while (!pending.isEmpty()) {
+            for (Entry user : usedBy.getOrDefault(pending.pop(), Set.of())) {
+                if (!names.contains(user.name) && affected.putIfAbsent(user.name, user) == null) {
+                    pending.push(user.name);
+                }
+            }
+        }
+
+        // 每个定义还在等待的受影响的依赖个数
+        HashMap<String, Integer> waiting = new HashMap<>();
+        PriorityQueue<Entry> ready = new PriorityQueue<>(BY_ORDER);
+        for (Entry entry : affected.values()) {
+            int count = 0;
+            for (String used : entry.uses) {
+                if (!used.equals(entry.name) && affected.containsKey(used)) {
+                    count++;
+                }
+            }
+            waiting.put(entry.name, count);
+            if (count == 0) {
+                ready.add(entry);
+            }
+        }
+
+        List<Entry> byOrder = new ArrayList<>(affected.values());
+        byOrder.sort(BY_ORDER);
+        int earliest = 0;
+        HashSet<String> placed = new HashSet<>();
+        List<Entry> result = new ArrayList<>(affected.size());
+        while (result.size() < affected.size()) {
+            Entry entry = ready.poll();
+            if (entry == null) {
+                while (placed.contains(byOrder.get(earliest).name)) {
+                    earliest++;
+                }
+                entry = byOrder.get(earliest);
+            }
+            if (!placed.add(entry.name)) {
+                continue;
+            }
+
+            result.add(entry);
+            for (Entry user : usedBy.getOrDefault(entry.name, Set.of())) {
+                if (affected.containsKey(user.name) && !placed.contains(user.name)) {
+                    if (waiting.merge(user.name, -1, Integer::sum) == 0) {
+                        ready.add(user);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        usedBy.clear();
+    }
+
+    /// 声明用到的全局名字：语法树中没有被 λ 或 Pi 绑定的变量名
+    static @NotNull Set<String> usedNames(@NotNull PNode decl) {
+        HashSet<String> names = new HashSet<>();
+        ArrayDeque<Scoped> stack = new ArrayDeque<>();
+        switch (decl) {
+            case PNode.Axiom(List<Token> _, Node type) -> stack.push(new Scoped(type, ConsList.nil()));
+            case PNode.Defun(Token _, Node value) -> stack.push(new Scoped(value, ConsList.nil()));
+            case PNode.Check(Node term) -> stack.push(new Scoped(term, ConsList.nil()));
+            case PNode.Program(List<PNode> items) -> {
+                for (PNode item : items) {
+                    names.addAll(usedNames(item));
+                }
+            }
+        }
+
+        while (!stack.isEmpty()) {
+            Scoped scoped = stack.pop();
+            ConsList<String> bound = scoped.bound;
+            switch (scoped.node) {
+                case Node.Ann(Node term, Node annotation) -> {
+                    stack.push(new Scoped(term, bound));
+                    stack.push(new Scoped(annotation, bound));
+                }
+                case Node.Aster _ -> {}
+                case Node.Pi(Token param, Node paramType, Node body) -> {
+                    stack.push(new Scoped(paramType, bound));
+                    stack.push(new Scoped(
+                            body,
+                            param != null ? ConsList.cons(param.lexeme, bound) : bound
+                    ));
+                }
+                case Node.Var(Token name) -> {
+                    if (bound.findFirst(name.lexeme::equals) == null) {
+                        names.add(name.lexeme);
+                    }
+                }
+                case Node.App(Node func, List<Node> args) -> {
+                    stack.push(new Scoped(func, bound));
+                    for (Node arg : args) {
+                        stack.push(new Scoped(arg, bound));
+                    }
+                }
+                case Node.Lam(Token param, Node body) ->
+                        stack.push(new Scoped(body, ConsList.cons(param.lexeme, bound)));
+                case Node.VecLit(Token _, Node type, List<Node> elements) -> {
+                    stack.push(new Scoped(type, bound));
+                    for (Node element : elements) {
+                        stack.push(new Scoped(element, bound));
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /// 声明定义的名字
+    static @NotNull List<String> definedNames(@NotNull PNode decl) {
+        return switch (decl) {
+            case PNode.Axiom(List<Token> names, Node _) -> names.stream().map(t -> t.lexeme).toList();
+            case PNode.Defun(Token name, Node _) -> List.of(name.lexeme);
+            case PNode.Check _, PNode.Program _ -> List.of();
+        };
+    }
+
+    private record Scoped(Node node, ConsList<String> bound) {}
+
+    private static final Comparator<Entry> BY_ORDER = Comparator.comparingLong(Entry::order);
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final HashMap<String, Set<Entry>> usedBy = new HashMap<>();
+    private long nextOrder;
+}
@@ -5,16 +5,20 @@ import club.doki7.lambdapi.exc.ElabException;
 import club.doki7.lambdapi.syntax.Node;
 import club.doki7.lambdapi.syntax.Token;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Constructor;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.BiFunction;
 
 import static club.doki7.lambdapi.common.DeBruijnIndex.findInContext;
 
 public final class Elab {
-    public void registerTermFormer(Class<? extends Term.ITermFormer<?>> clazz) {
+    public void registerTermFormer(Class<? extends Term.ITermFormer> clazz) {
         String name = "_Tf_" + clazz.getSimpleName();
 
         Constructor<?>[] constructors = clazz.getConstructors();
@@ -38,123 +42,325 @@ public final class Elab {
         }
     }
 
+    /// 注册数字字面量的展开方式。没有注册时，数字和其他名字一样被当作自由变量
+    public void registerNumeral(@NotNull BiFunction<Node, BigInteger, Term.Inferable> numeral) {
+        this.numeral = numeral;
+    }
+
+    /// 注册向量字面量 `[a; x, y, z]` 的展开方式。没有注册时，向量字面量是展开错误
+    public void registerVecLiteral(@NotNull VecLiteral vecLiteral) {
+        this.vecLiteral = vecLiteral;
+    }
+
+    @FunctionalInterface
+    public interface VecLiteral {
+        @NotNull Term.Inferable make(
+                @NotNull Node node,
+                @NotNull Term.Checkable type,
+                @NotNull List<Term.Checkable> elements
+        );
+    }
+
     public @NotNull Term elab(@NotNull Node node) throws ElabException {
-        return elabInferable(node, new ArrayList<>());
+        return elab(node, new ArrayList<>(), null);
     }
 
-    private Term.Inferable elabInferable(@NotNull Node node, @NotNull List<String> ctx)
+    /// 和 {@link #elab(Node)} 相同，但会把 `globals` 中已经定义的全局变量直接链接到它们的槽位上，
+    /// 之后的求值和类型检查不再需要按名字查找
+    public @NotNull Term elab(@NotNull Node node, @NotNull Globals.Snapshot globals)
             throws ElabException
     {
-        return switch (node) {
-            case Node.Ann(Node term, Node annotation) -> {
-                Term.Checkable elabTerm = elabCheckable(term, ctx);
-                Term.Checkable elabAnnotation = elabCheckable(annotation, ctx);
-                yield new Term.Ann(node, elabTerm, elabAnnotation);
-            }
-            case Node.Aster _ -> new Term.Star(node);
-            case Node.Pi(Token param, Node paramType, Node body) -> {
-                Term.Checkable in = elabCheckable(paramType, ctx);
-                if (param != null) {
+        return elab(node, new ArrayList<>(), globals);
+    }
+
+    /// 把语法树展开为可推导类型的词项
+    ///
+    /// 和 {@link Eval#eval} 一样使用显式的续延栈：进入子树前把剩下的工作压入栈中，
+    /// 子树展开完毕后弹出。因此嵌套的应用、箭头和 λ 的深度只受堆大小限制
+    private Term.Inferable elab(
+            @NotNull Node node,
+            @NotNull List<String> ctx,
+            @Nullable Globals.Snapshot globals
+    ) throws ElabException {
+        ArrayDeque<ElabFrame> stack = new ArrayDeque<>();
+        Node control = node;
+        boolean checkable = false;
+        Term result;
+
+        descend: while (true) {
+            if (checkable) {
+                if (control instanceof Node.Lam(Token param, Node body)) {
                     ctx.add(param.lexeme);
-                } else {
-                    ctx.add("!anon");
+                    stack.push(new WrapLam(control));
+                    control = body;
+                    continue;
                 }
-                Term.Checkable out = elabCheckable(body, ctx);
-                ctx.removeLast();
-                yield new Term.Pi(node, in, out);
-            }
-            case Node.Var(Token name) -> {
-                TermFormer former = termFormers.get(name.lexeme);
-                if (former != null && former.argsKind.isEmpty()) {
-                    yield elabTermFormer(node, former, List.of(), ctx);
+
+                Term.Checkable atom = elabAtom(control, ctx, globals);
+                if (atom == null) {
+                    stack.push(new WrapInf(control));
+                    checkable = false;
+                    continue;
                 }
+                result = atom;
+            } else {
+                switch (control) {
+                    case Node.Ann(Node term, Node annotation) -> {
+                        stack.push(new AnnTerm(control, annotation));
+                        control = term;
+                        checkable = true;
+                        continue;
+                    }
+                    case Node.Aster _ -> result = new Term.Star(control);
+                    case Node.Pi(Token param, Node paramType, Node body) -> {
+                        stack.push(new PiIn(control, param, body));
+                        control = paramType;
+                        checkable = true;
+                        continue;
+                    }
+                    case Node.Var(Token name) -> result = elabVar(control, name, ctx, globals);
+                    case Node.App(Node func, List<Node> args) -> {
+                        // 最常见的情形是以普通变量为头部的应用，直接展开，不必压栈
+                        if (func instanceof Node.Var(Token name)
+                            && !termFormers.containsKey(name.lexeme)) {
+                            Term.Inferable head = elabVar(func, name, ctx, globals);
+                            result = applyAtoms(stack, control, head, args, 0, ctx, globals);
+                            if (result == null) {
+                                control = args.get(((AppArg) stack.getFirst()).index());
+                                checkable = true;
+                                continue;
+                            }
+                        } else {
+                            stack.push(new AppFunc(control, args));
+                            control = func;
+                            continue;
+                        }
+                    }
+                    case Node.Lam _ -> throw new ElabException(
+                            control.location(),
+                            "In DTLC, lambda expression must be annotated"
+                    );
+                    case Node.VecLit(Token _, Node type, List<Node> elements) -> {
+                        if (vecLiteral == null) {
+                            throw new ElabException(
+                                    control.location(),
+                                    "Vector literals are not available without vector term formers"
+                            );
+                        }
 
-                int index = findInContext(name.lexeme, ctx);
-                if (index == -1) {
-                    yield new Term.Free(node, new Name.Global(name.lexeme));
-                } else {
-                    yield new Term.Bound(node, index);
+                        stack.push(new VecType(control, elements));
+                        control = type;
+                        checkable = true;
+                        continue;
+                    }
                 }
             }
-            case Node.App(Node func, List<Node> args) -> {
-                Term.Inferable elabFunc = elabInferable(func, ctx);
-                if (elabFunc instanceof Term.Free(Node _, Name.Global(String name))) {
-                    TermFormer former = termFormers.get(name);
-                    if (former != null) {
-                        if (args.size() < former.argsKind.size()) {
+
+            while (!stack.isEmpty()) {
+                ElabFrame frame = stack.pop();
+                switch (frame) {
+                    case WrapLam(Node lam) -> {
+                        ctx.removeLast();
+                        result = new Term.Lam(lam, (Term.Checkable) result);
+                    }
+                    case WrapInf(Node inf) -> result = new Term.Inf(inf, (Term.Inferable) result);
+                    case AnnTerm(Node ann, Node annotation) -> {
+                        stack.push(new AnnDone(ann, (Term.Checkable) result));
+                        control = annotation;
+                        checkable = true;
+                        continue descend;
+                    }
+                    case AnnDone(Node ann, Term.Checkable term) ->
+                            result = new Term.Ann(ann, term, (Term.Checkable) result);
+                    case PiIn(Node pi, Token param, Node body) -> {
+                        ctx.add(param != null ? param.lexeme : "!anon");
+                        stack.push(new PiOut(pi, (Term.Checkable) result));
+                        control = body;
+                        checkable = true;
+                        continue descend;
+                    }
+                    case PiOut(Node pi, Term.Checkable in) -> {
+                        ctx.removeLast();
+                        result = new Term.Pi(pi, in, (Term.Checkable) result);
+                    }
+                    case AppFunc(Node app, List<Node> args) -> {
+                        TermFormer former = null;
+                        if (result instanceof Term.Free(Node _, Name.Global(String name))) {
+                            former = termFormers.get(name);
+                        }
+                        if (former == null) {
+                            Term.Inferable head = (Term.Inferable) result;
+                            result = applyAtoms(stack, app, head, args, 0, ctx, globals);
+                            if (result == null) {
+                                control = args.get(((AppArg) stack.getFirst()).index());
+                                checkable = true;
+                                continue descend;
+                            }
+                            continue;
+                        }
+
+                        int arity = former.argsKind.size();
+                        if (args.size() < arity) {
                             throw new ElabException(
-                                    node.location(),
+                                    app.location(),
                                     "Term former '" + former.name + "' expects "
-                                    + former.argsKind.size() + " argument(s), but got "
+                                    + arity + " argument(s), but got "
                                     + args.size() + "\n"
                                     + "Note: Term former does not support currying."
                             );
                         }
 
-                        elabFunc = elabTermFormer(node, former, args, ctx);
-                        args = args.subList(former.argsKind.size(), args.size());
+                        stack.push(new AppArgs(app, args.subList(arity, args.size())));
+                        Object[] ctorArgs = new Object[1 + arity];
+                        ctorArgs[0] = app;
+                        if (arity == 0) {
+                            result = makeTermFormer(app, former, ctorArgs);
+                            continue;
+                        }
+                        stack.push(new FormerArg(app, former, args, ctorArgs, 0));
+                        control = args.getFirst();
+                        checkable = former.argsKind.getFirst() == InferCheckKind.CHECK;
+                        continue descend;
+                    }
+                    case FormerArg(
+                            Node app,
+                            TermFormer former,
+                            List<Node> args,
+                            Object[] ctorArgs,
+                            int index
+                    ) -> {
+                        ctorArgs[index + 1] = result;
+                        if (index + 1 < former.argsKind.size()) {
+                            stack.push(new FormerArg(app, former, args, ctorArgs, index + 1));
+                            control = args.get(index + 1);
+                            checkable = former.argsKind.get(index + 1) == InferCheckKind.CHECK;
+                            continue descend;
+                        }
+                        result = makeTermFormer(app, former, ctorArgs);
+                    }
+                    case AppArgs(Node app, List<Node> args) -> {
+                        Term.Inferable head = (Term.Inferable) result;
+                        result = applyAtoms(stack, app, head, args, 0, ctx, globals);
+                        if (result == null) {
+                            control = args.get(((AppArg) stack.getFirst()).index());
+                            checkable = true;
+                            continue descend;
+                        }
+                    }
+                    case AppArg(Node app, Term.Inferable func, List<Node> args, int index) -> {
+                        Term.App applied = new Term.App(app, func, (Term.Checkable) result);
+                        result = applyAtoms(stack, app, applied, args, index + 1, ctx, globals);
+                        if (result == null) {
+                            control = args.get(((AppArg) stack.getFirst()).index());
+                            checkable = true;
+                            continue descend;
+                        }
+                    }
+                    case VecType(Node vec, List<Node> elements) -> {
+                        List<Term.Checkable> elabElements = new ArrayList<>(elements.size());
+                        if (!elements.isEmpty()) {
+                            stack.push(new VecElement(
+                                    vec,
+                                    (Term.Checkable) result,
+                                    elements,
+                                    elabElements
+                            ));
+                            control = elements.getFirst();
+                            checkable = true;
+                            continue descend;
+                        }
+                        result = vecLiteral.make(vec, (Term.Checkable) result, elabElements);
+                    }
+                    case VecElement(
+                            Node vec,
+                            Term.Checkable type,
+                            List<Node> elements,
+                            List<Term.Checkable> elabElements
+                    ) -> {
+                        elabElements.add((Term.Checkable) result);
+                        if (elabElements.size() < elements.size()) {
+                            stack.push(frame);
+                            control = elements.get(elabElements.size());
+                            checkable = true;
+                            continue descend;
+                        }
+                        result = vecLiteral.make(vec, type, elabElements);
                     }
                 }
-
-                if (args.isEmpty()) {
-                    yield elabFunc;
-                }
-
-                Term.App app;
-                for (Node arg : args) {
-                    Term.Checkable elabArg = elabCheckable(arg, ctx);
-                    app = new Term.App(node, elabFunc, elabArg);
-                    elabFunc = app;
-                }
-
-                yield elabFunc;
             }
-            case Node.Lam _ -> throw new ElabException(
-                    node.location(),
-                    "In DTLC, lambda expression must be annotated"
-            );
+            return (Term.Inferable) result;
+        }
+    }
+
+    /// 变量和 `*` 在需要可检查词项的位置直接展开，不必压栈。其他语法树返回 `null`
+    private @Nullable Term.Checkable elabAtom(
+            @NotNull Node node,
+            @NotNull List<String> ctx,
+            @Nullable Globals.Snapshot globals
+    ) throws ElabException {
+        return switch (node) {
+            case Node.Var(Token name) -> new Term.Inf(node, elabVar(node, name, ctx, globals));
+            case Node.Aster _ -> new Term.Inf(node, new Term.Star(node));
+            default -> null;
         };
     }
 
-    private Term.Checkable elabCheckable(@NotNull Node node, @NotNull List<String> ctx)
-            throws ElabException
-    {
-        if (node instanceof Node.Lam(Token param, Node body)) {
-            ctx.add(param.lexeme);
-            Term.Checkable elabBody = elabCheckable(body, ctx);
-            ctx.removeLast();
-            return new Term.Lam(node, elabBody);
+    /// 把 `func` 依次应用到从 `index` 开始的参数上，原子参数直接展开。遇到其他参数时压入
+    /// {@link AppArg} 并返回 `null`，由调用者展开 `args[index]`
+    private @Nullable Term.Inferable applyAtoms(
+            @NotNull ArrayDeque<ElabFrame> stack,
+            @NotNull Node app,
+            @NotNull Term.Inferable func,
+            @NotNull List<Node> args,
+            int index,
+            @NotNull List<String> ctx,
+            @Nullable Globals.Snapshot globals
+    ) throws ElabException {
+        for (; index < args.size(); index++) {
+            Term.Checkable arg = elabAtom(args.get(index), ctx, globals);
+            if (arg == null) {
+                stack.push(new AppArg(app, func, args, index));
+                return null;
+            }
+            func = new Term.App(app, func, arg);
         }
-
-        Term.Inferable inf = elabInferable(node, ctx);
-        return new Term.Inf(node, inf);
+        return func;
     }
 
-    private Term.Inferable elabTermFormer(
+    private Term.Inferable elabVar(
             @NotNull Node node,
-            @NotNull TermFormer former,
-            @NotNull List<Node> args,
-            @NotNull List<String> ctx
+            @NotNull Token name,
+            @NotNull List<String> ctx,
+            @Nullable Globals.Snapshot globals
     ) throws ElabException {
-        if (args.size() < former.argsKind.size()) {
-            throw new ElabException(
-                    node.location(),
-                    "Term former '" + former.name + "' expects "
-                    + former.argsKind.size() + " arguments, but got " + args.size() + "\n"
-                    + "Note: Term former does not support currying."
-            );
+        TermFormer former = termFormers.get(name.lexeme);
+        if (former != null && former.argsKind.isEmpty()) {
+            return makeTermFormer(node, former, new Object[] { node });
         }
 
-        Object[] ctorArgs = new Object[1 + former.argsKind.size()];
-        ctorArgs[0] = node;
-        for (int i = 0; i < former.argsKind.size(); i++) {
-            Node argNode = args.get(i);
-            switch (former.argsKind.get(i)) {
-                case INFER -> ctorArgs[i + 1] = elabInferable(argNode, ctx);
-                case CHECK -> ctorArgs[i + 1] = elabCheckable(argNode, ctx);
-            }
+        int index = findInContext(name.lexeme, ctx);
+        if (index != -1) {
+            return new Term.Bound(node, index);
+        }
+
+        Globals.Slot slot = globals != null && former == null
+                ? globals.lookup(name.lexeme)
+                : null;
+        if (slot != null) {
+            return new Term.GlobalRef(node, slot);
+        } else if (name.kind == Token.Kind.NUMBER && numeral != null) {
+            // 同名的局部变量和全局定义优先，例如 Church 数的库会自己定义 0、1、2
+            return numeral.apply(node, new BigInteger(name.lexeme));
+        } else {
+            return new Term.Free(node, new Name.Global(name.lexeme));
         }
+    }
 
+    private static Term.Inferable makeTermFormer(
+            @NotNull Node node,
+            @NotNull TermFormer former,
+            @NotNull Object[] ctorArgs
+    ) throws ElabException {
         try {
              return (Term.Inferable) former.ctor.newInstance(ctorArgs);
         } catch (Exception e) {
@@ -167,9 +373,60 @@ public final class Elab {
         }
     }
 
+    private sealed interface ElabFrame {}
+
+    /// 函数体展开完毕后包装成 λ，并移除 λ 引入的变量
+    private record WrapLam(Node node) implements ElabFrame {}
+
+    /// 在需要可检查词项的位置使用可推导类型的词项
+    private record WrapInf(Node node) implements ElabFrame {}
+
+    private record AnnTerm(Node node, Node annotation) implements ElabFrame {}
+
+    private record AnnDone(Node node, Term.Checkable term) implements ElabFrame {}
+
+    /// 参数类型展开完毕，接下来在加入参数后展开返回类型
+    private record PiIn(Node node, @Nullable Token param, Node body) implements ElabFrame {}
+
+    private record PiOut(Node node, Term.Checkable in) implements ElabFrame {}
+
+    /// 函数展开完毕，决定它是不是项构造器
+    private record AppFunc(Node node, List<Node> args) implements ElabFrame {}
+
+    /// 依次展开项构造器的参数，展开完毕的参数填入 `ctorArgs`
+    private record FormerArg(
+            Node node,
+            TermFormer former,
+            List<Node> args,
+            Object[] ctorArgs,
+            int index
+    ) implements ElabFrame {}
+
+    /// 把展开完毕的函数依次应用到剩下的参数上
+    private record AppArgs(Node node, List<Node> args) implements ElabFrame {}
+
+    /// 正在展开 `args[index]`，展开完毕后应用到 `func` 上
+    private record AppArg(
+            Node node,
+            Term.Inferable func,
+            List<Node> args,
+            int index
+    ) implements ElabFrame {}
+
+    private record VecType(Node node, List<Node> elements) implements ElabFrame {}
+
+    private record VecElement(
+            Node node,
+            Term.Checkable type,
+            List<Node> elements,
+            List<Term.Checkable> elabElements
+    ) implements ElabFrame {}
+
     private enum InferCheckKind { INFER, CHECK }
 
     public record TermFormer(String name, Constructor<?> ctor, List<InferCheckKind> argsKind) {}
 
     public final HashMap<String, TermFormer> termFormers = new HashMap<>();
+    private @Nullable BiFunction<Node, BigInteger, Term.Inferable> numeral;
+    private @Nullable VecLiteral vecLiteral;
 }
@@ -2,62 +2,231 @@ package club.doki7.lambdapi.dtlc;
 
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.syntax.Node;
-import club.doki7.lambdapi.util.ConsList;
+import club.doki7.lambdapi.util.SkewList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
-import java.util.function.Function;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
 
 public final class Eval {
-    public static Value eval(Term term, Map<String, Value> globals) {
-        return eval(term, ConsList.nil(), Map.copyOf(globals));
+    /// 求值策略
+    ///
+    /// 按值调用时，函数参数在应用前求值；按需调用时，函数参数被包装成 {@link Value.VThunk}，
+    /// 只在第一次被用到时求值，之后共享同一个结果
+    public enum Strategy {
+        CALL_BY_VALUE,
+        CALL_BY_NEED
     }
 
+    public static Value eval(Term term, Globals.Snapshot globals) {
+        return eval(term, SkewList.nil(), globals);
+    }
+
+    /// 完全展开全局定义后的正规形式，用于判断两个值是否相等
     public static Term reify(Value value) {
-        return reify(0, value);
+        return reify(0, value, true);
     }
 
-    public static Value eval(Term term, ConsList<Value> env, Map<String, Value> globals) {
-        return switch (term) {
-            case Term.Ann(Node _, Term e, Term _) -> eval(e, env, globals);
-            case Term.Free(Node node, Name name) -> {
-                if (name instanceof Name.Global(String strName)) {
-                    Value val = globals.get(strName);
-                    if (val != null) {
-                        yield val;
+    /// 保留全局定义名字的正规形式，用于向用户展示
+    public static Term reifyFolded(Value value) {
+        return reify(0, value, false);
+    }
+
+    /// 在环境 `env` 中求值词项
+    ///
+    /// 求值使用显式的续延栈而不是 Java 调用栈：嵌套的应用和 Pi 类型把待办的工作压入栈中，
+    /// 对闭包的应用直接在循环中继续求值函数体。因此嵌套深度只受堆大小限制，
+    /// 尾调用也不会使栈增长。带有编译后函数体的闭包（见 {@link Compile}）交给生成的代码求值，
+    /// 生成的代码嵌套过深时也在循环中解释求值，见 {@link #apply}
+    public static Value eval(Term term, SkewList<Value> env, Globals.Snapshot globals) {
+        ArrayDeque<EvalFrame> stack = null;
+        Term control = term;
+        Value result;
+
+        descend: while (true) {
+            switch (control) {
+                case Term.Ann(Node _, Term e, Term _) -> {
+                    control = e;
+                    continue;
+                }
+                case Term.Inf(Node _, Term.Inferable inf) -> {
+                    control = inf;
+                    continue;
+                }
+                case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> {
+                    // 函数和参数都是变量之类的原子词项时不必压栈，这是最常见的情形
+                    Value func = evalAtom(f, env, globals);
+                    Value argValue = func != null ? evalAtom(arg, env, globals) : null;
+                    if (func != null && argValue == null && globals.strategy() == Strategy.CALL_BY_NEED) {
+                        // 按需求值时复杂的参数也不必压栈，包装成 thunk 即可
+                        argValue = delay(arg, env, globals);
+                    }
+                    if (argValue == null) {
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        if (func != null) {
+                            stack.push(new ApplyTo(func));
+                            control = arg;
+                        } else {
+                            stack.push(new EvalArg(arg, env, globals));
+                            control = f;
+                        }
+                        continue;
+                    }
+
+                    func = forceThunk(func);
+                    if (func instanceof Value.VLam(Node _, Closure body) && interprets(body)) {
+                        control = body.body();
+                        env = body.env().cons(argValue);
+                        globals = body.globals();
+                        continue;
+                    }
+                    result = vApp(func, argValue);
+                }
+                case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> {
+                    if (stack == null) {
+                        stack = new ArrayDeque<>();
+                    }
+                    stack.push(new MakePi(node, out, env, globals));
+                    control = in;
+                    continue;
+                }
+                case Term.Free(Node node, Name name) -> {
+                    if (name instanceof Name.Global(String strName)) {
+                        Globals.Slot slot = globals.lookup(strName);
+                        if (slot == null) {
+                            throw new IllegalStateException(
+                                    "Unbound global name should have been rejected by the type checker."
+                            );
+                        }
+                        result = glue(node, slot);
                     } else {
-                        throw new IllegalStateException(
-                                "Unbound global name should have been rejected by the type checker."
-                        );
+                        result = Value.vFree(node, name);
                     }
-                } else {
-                    yield Value.vFree(node, name);
                 }
+                case Term.GlobalRef(Node node, Globals.Slot slot) -> result = glue(node, slot);
+                case Term.Bound(Node _, int index) -> result = env.get(index);
+                case Term.Lam(Node node, Term.Checkable body) -> result = new Value.VLam(
+                        node,
+                        new Closure(body, env, globals)
+                );
+                case Term.Star(Node node) -> result = new Value.VStar(node);
+                case Term.InferableTF tf -> result = tf.eval(env, globals);
+                case Term.CheckableTF tf -> result = tf.eval(env, globals);
             }
-            case Term.Bound(Node _, int index) -> env.get(index);
-            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> vApp(
-                    eval(f, env, globals),
-                    eval(arg, env, globals)
-            );
-            case Term.Inf(Node _, Term.Inferable inf) -> eval(inf, env, globals);
-            case Term.Lam(Node node, Term.Checkable body) -> new Value.VLam(
-                    node,
-                    x -> eval(body, ConsList.cons(x, env), globals)
-            );
-            case Term.Star(Node node) -> new Value.VStar(node);
-            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> new Value.VPi(
-                    node,
-                    Type.of(eval(in, env, globals)),
-                    x -> Type.of(eval(out, ConsList.cons(x, env), globals))
-            );
-            case Term.InferableTF tf -> tf.eval(env, globals);
-            case Term.CheckableTF tf -> tf.eval(env, globals);
-        };
+
+            while (stack != null && !stack.isEmpty()) {
+                switch (stack.pop()) {
+                    case EvalArg(
+                            Term.Checkable arg,
+                            SkewList<Value> argEnv,
+                            Globals.Snapshot argGlobals
+                    ) -> {
+                        stack.push(new ApplyTo(result));
+                        if (argGlobals.strategy() == Strategy.CALL_BY_NEED && !isCheap(arg)) {
+                            result = new Value.VThunk(
+                                    arg.node(),
+                                    () -> eval(arg, argEnv, argGlobals)
+                            );
+                        } else {
+                            control = arg;
+                            env = argEnv;
+                            globals = argGlobals;
+                            continue descend;
+                        }
+                    }
+                    case ApplyTo(Value applied) -> {
+                        Value func = forceThunk(applied);
+                        if (func instanceof Value.VLam(Node _, Closure body) && interprets(body)) {
+                            control = body.body();
+                            env = body.env().cons(result);
+                            globals = body.globals();
+                            continue descend;
+                        }
+                        result = vApp(func, result);
+                    }
+                    case MakePi(
+                            Node node,
+                            Term.Checkable out,
+                            SkewList<Value> outEnv,
+                            Globals.Snapshot outGlobals
+                    ) -> result = new Value.VPi(
+                            node,
+                            Type.of(result),
+                            new Closure(out, outEnv, outGlobals)
+                    );
+                }
+            }
+            return result;
+        }
+    }
+
+    /// 把闭包应用到参数上
+    ///
+    /// 生成的代码用 Java 调用栈求值嵌套的应用，动态的递归（例如很大的 Church 数）会让编译后的闭包层层嵌套。
+    /// 嵌套超过 {@link #MAX_COMPILED_DEPTH} 层后不再运行生成的代码，改由解释器求值函数体，
+    /// 其中再遇到的闭包都在解释器的循环中进入，栈深度因此仍然有界
+    public static @NotNull Value apply(@NotNull Closure closure, @NotNull Value arg) {
+        Closure.Code code = closure.code();
+        if (code != null) {
+            int[] depth = COMPILED_DEPTH.get();
+            if (depth[0] < MAX_COMPILED_DEPTH) {
+                depth[0]++;
+                try {
+                    return code.run(closure.env().cons(arg), closure.globals());
+                } finally {
+                    depth[0]--;
+                }
+            }
+        }
+        return eval(closure.body(), closure.env().cons(arg), closure.globals());
+    }
+
+    /// 解释器是否直接在循环中进入闭包，而不是交给 {@link #apply} 运行生成的代码
+    static boolean interprets(@NotNull Closure closure) {
+        return closure.code() == null || COMPILED_DEPTH.get()[0] >= MAX_COMPILED_DEPTH;
+    }
+
+    /// 按会话的求值策略推迟求值：按值调用时立即求值，按需调用时返回一个 thunk
+    public static @NotNull Value delay(Term term, SkewList<Value> env, Globals.Snapshot globals) {
+        if (globals.strategy() == Strategy.CALL_BY_VALUE || isCheap(term)) {
+            return eval(term, env, globals);
+        }
+        return new Value.VThunk(term.node(), () -> eval(term, env, globals));
+    }
+
+    public static @NotNull Value delay(
+            @NotNull Node node,
+            @NotNull Globals.Snapshot globals,
+            @NotNull Supplier<Value> supplier
+    ) {
+        if (globals.strategy() == Strategy.CALL_BY_VALUE) {
+            return supplier.get();
+        }
+        return new Value.VThunk(node, supplier);
+    }
+
+    /// 展开值头部的全局定义并强制求值 thunk，直到得到一个可以直接匹配的值
+    public static @NotNull Value force(@NotNull Value value) {
+        while (true) {
+            switch (value) {
+                case Value.VGlobal global -> value = global.unfold();
+                case Value.VThunk thunk -> value = thunk.force();
+                default -> {
+                    return value;
+                }
+            }
+        }
     }
 
     public static @NotNull Value vApp(Value func, Value arg) {
         return switch (func) {
-            case Value.VLam(Node _, Function<Value, Value> lam) -> lam.apply(arg);
+            case Value.VGlobal global -> global.apply(arg);
+            case Value.VThunk thunk -> vApp(thunk.force(), arg);
+            case Value.VLam(Node _, Closure body) -> apply(body, arg);
             case Value.VNeutral n -> new Value.NApp(n.node(), n, arg);
             case Value.CValue cv -> cv.vApp(arg);
             case Value.VPi _ -> throw new IllegalStateException("Should not apply a Pi type");
@@ -65,44 +234,245 @@ public final class Eval {
         };
     }
 
-    public static @NotNull Term.Checkable reify(int depth, Value value) {
-        return switch (value) {
-            case Value.VLam(Node node, Function<Value, Value> lam) -> new Term.Lam(
-                    node,
-                    reify(depth + 1, lam.apply(Value.vFree(node, new Name.Quote(depth))))
-            );
-            case Value.VNeutral n -> new Term.Inf(n.node(), neutralReify(depth, n));
-            case Value.VPi(Node node, Type in, Function<Value, Type> out) -> new Term.Inf(
+    /// 读回值的正规形式。`unfold` 为 `false` 时，以全局定义为头部的值读回为对全局定义的引用
+    ///
+    /// 和 {@link #eval} 一样使用显式栈，深层嵌套的 λ、Pi 类型和长的应用链都不会耗尽 Java 调用栈
+    public static @NotNull Term.Checkable reify(int depth, Value value, boolean unfold) {
+        ArrayDeque<ReifyFrame> stack = null;
+        Value control = value;
+        Term.Checkable result;
+
+        descend: while (true) {
+            switch (control) {
+                // 全局定义本身的正规形式是闭合的，在任何深度下都相同，直接使用缓存
+                case Value.VGlobal global when unfold && global.isBare() ->
+                        result = global.head().normalForm();
+                case Value.VGlobal global when unfold -> {
+                    control = force(global);
+                    continue;
+                }
+                case Value.VGlobal global -> {
+                    List<Value> args = global.args();
+                    Term.Inferable head = HashCons.globalRef(global.node(), global.head());
+                    if (args.isEmpty()) {
+                        result = HashCons.inf(global.node(), head);
+                    } else {
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        stack.push(new Spine(
+                                global.node(),
+                                head,
+                                Collections.nCopies(args.size(), global.node()),
+                                args,
+                                0,
+                                depth
+                        ));
+                        control = args.getFirst();
+                        continue;
+                    }
+                }
+                case Value.VThunk thunk -> {
+                    control = thunk.force();
+                    continue;
+                }
+                case Value.VLam(Node node, Closure body) -> {
+                    if (stack == null) {
+                        stack = new ArrayDeque<>();
+                    }
+                    stack.push(new WrapLam(node, depth));
+                    control = apply(body, Value.vFree(node, new Name.Quote(depth)));
+                    depth += 1;
+                    continue;
+                }
+                case Value.VPi(Node node, Type in, Closure out) -> {
+                    if (stack == null) {
+                        stack = new ArrayDeque<>();
+                    }
+                    stack.push(new PiIn(node, out, depth));
+                    control = in.value();
+                    continue;
+                }
+                case Value.NApp app -> {
+                    if (stack == null) {
+                        stack = new ArrayDeque<>();
+                    }
+                    if (app.func() instanceof Value.NApp) {
+                        stack.push(new AppFunc(app, depth));
+                        control = app.func();
+                    } else {
+                        // 应用链的头部可以直接读回，省去一次进出栈
+                        Term.Inferable head = neutralHeadReify(depth, app.func(), unfold);
+                        stack.push(new AppArg(app.node(), head, depth));
+                        control = app.arg();
+                    }
+                    continue;
+                }
+                case Value.VNeutral n -> result = HashCons.inf(
+                        n.node(),
+                        neutralHeadReify(depth, n, unfold)
+                );
+                case Value.VStar(Node node) -> result = HashCons.inf(node, HashCons.star(node));
+                case Value.CValue cv -> result = cv.reify(depth, unfold);
+            }
+
+            while (stack != null && !stack.isEmpty()) {
+                switch (stack.pop()) {
+                    case WrapLam(Node node, int lamDepth) -> {
+                        result = HashCons.lam(node, result);
+                        depth = lamDepth;
+                    }
+                    case PiIn(Node node, Closure out, int piDepth) -> {
+                        stack.push(new PiOut(node, result, piDepth));
+                        control = apply(out, Value.vFree(node, new Name.Quote(piDepth)));
+                        depth = piDepth + 1;
+                        continue descend;
+                    }
+                    case PiOut(Node node, Term.Checkable in, int piDepth) -> {
+                        result = HashCons.inf(node, HashCons.pi(node, in, result));
+                        depth = piDepth;
+                    }
+                    case AppFunc(Value.NApp(Node node, Value.VNeutral _, Value arg), int appDepth) -> {
+                        Term.Inferable func = ((Term.Inf) result).inferable();
+                        stack.push(new AppArg(node, func, appDepth));
+                        control = arg;
+                        depth = appDepth;
+                        continue descend;
+                    }
+                    case AppArg(Node node, Term.Inferable func, int appDepth) -> {
+                        result = HashCons.inf(node, HashCons.app(node, func, result));
+                        depth = appDepth;
+                    }
+                    case Spine(
+                            Node node,
+                            Term.Inferable acc,
+                            List<Node> nodes,
+                            List<Value> args,
+                            int next,
+                            int spineDepth
+                    ) -> {
+                        Term.Inferable applied = HashCons.app(nodes.get(next), acc, result);
+                        depth = spineDepth;
+                        if (next + 1 < args.size()) {
+                            stack.push(new Spine(node, applied, nodes, args, next + 1, spineDepth));
+                            control = args.get(next + 1);
+                            continue descend;
+                        }
+                        result = HashCons.inf(node, applied);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /// 直接求值变量、全局引用、`*` 和 λ 这样不需要续延的词项，其他词项返回 `null`
+    private static Value evalAtom(Term term, SkewList<Value> env, Globals.Snapshot globals) {
+        return switch (term) {
+            case Term.Inf(Node _, Term.Inferable inf) -> evalAtom(inf, env, globals);
+            case Term.Bound(Node _, int index) -> env.get(index);
+            case Term.GlobalRef(Node node, Globals.Slot slot) -> glue(node, slot);
+            case Term.Star(Node node) -> new Value.VStar(node);
+            case Term.Lam(Node node, Term.Checkable body) -> new Value.VLam(
                     node,
-                    new Term.Pi(
-                            node,
-                            reify(depth, in.value()),
-                            reify(
-                                    depth + 1,
-                                    out.apply(Value.vFree(node, new Name.Quote(depth))).value()
-                            )
-                    )
+                    new Closure(body, env, globals)
             );
-            case Value.VStar(Node node) -> new Term.Inf(node, new Term.Star(node));
-            case Value.CValue cv -> cv.reify(depth);
+            default -> null;
         };
     }
 
-    public static Term.Inferable neutralReify(int depth, Value.VNeutral n) {
+    private static Value forceThunk(Value value) {
+        while (value instanceof Value.VThunk thunk) {
+            value = thunk.force();
+        }
+        return value;
+    }
+
+    /// 求值代价不超过分配一个 thunk 的词项，没有必要推迟
+    private static boolean isCheap(Term term) {
+        return switch (term) {
+            case Term.Inf(Node _, Term.Inferable inf) -> isCheap(inf);
+            case Term.Bound _, Term.GlobalRef _, Term.Star _, Term.Lam _, Term.Pi _ -> true;
+            default -> false;
+        };
+    }
+
+    static @NotNull Value glue(@NotNull Node node, @NotNull Globals.Slot slot) {
+        // 公理本身就是中性值，没有可以展开的定义
+        if (slot.isAxiom()) {
+            return slot.value();
+        }
+        return new Value.VGlobal(node, slot);
+    }
+
+    public static Term.Inferable neutralReify(int depth, Value.VNeutral n, boolean unfold) {
+        if (n instanceof Value.NApp) {
+            // 中性值总是读回为 Inf
+            return ((Term.Inf) reify(depth, n, unfold)).inferable();
+        }
+        return neutralHeadReify(depth, n, unfold);
+    }
+
+    /// 读回不是应用的中性值，即应用链的头部
+    private static Term.Inferable neutralHeadReify(int depth, Value.VNeutral n, boolean unfold) {
         return switch (n) {
             case Value.NFree(Node node, Name name) -> {
                 if (name instanceof Name.Quote(int k)) {
-                    yield new Term.Bound(node, depth - k - 1);
+                    yield HashCons.bound(node, depth - k - 1);
                 } else {
-                    yield new Term.Free(node, name);
+                    yield HashCons.free(node, name);
                 }
             }
-            case Value.NApp(Node node, Value.VNeutral func, Value arg) -> new Term.App(
-                    node,
-                    neutralReify(depth, func),
-                    reify(depth, arg)
+            case Value.NApp _ -> throw new IllegalStateException(
+                    "Neutral application should have been reified by the readback loop"
             );
-            case Value.CNeutral cn -> cn.neutralReify(depth);
+            case Value.CNeutral cn -> cn.neutralReify(depth, unfold);
         };
     }
+
+    private static final int MAX_COMPILED_DEPTH = 512;
+    private static final ThreadLocal<int[]> COMPILED_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private sealed interface EvalFrame {}
+
+    /// 函数已经求值完毕，接下来求值参数
+    private record EvalArg(
+            Term.Checkable arg,
+            SkewList<Value> env,
+            Globals.Snapshot globals
+    ) implements EvalFrame {}
+
+    /// 参数已经求值完毕，接下来把函数应用到参数上
+    private record ApplyTo(Value func) implements EvalFrame {}
+
+    /// 参数类型已经求值完毕，接下来构造 Pi 类型
+    private record MakePi(
+            Node node,
+            Term.Checkable out,
+            SkewList<Value> env,
+            Globals.Snapshot globals
+    ) implements EvalFrame {}
+
+    private sealed interface ReifyFrame {}
+
+    private record WrapLam(Node node, int depth) implements ReifyFrame {}
+
+    private record PiIn(Node node, Closure out, int depth) implements ReifyFrame {}
+
+    private record PiOut(Node node, Term.Checkable in, int depth) implements ReifyFrame {}
+
+    /// 中性应用的函数部分读回完毕后，接下来读回参数
+    private record AppFunc(Value.NApp app, int depth) implements ReifyFrame {}
+
+    private record AppArg(Node node, Term.Inferable func, int depth) implements ReifyFrame {}
+
+    /// 读回全局定义的应用链 `head a₁ ... aₙ`，`acc` 是已经读回的前 `next` 个参数构成的应用
+    private record Spine(
+            Node node,
+            Term.Inferable acc,
+            List<Node> nodes,
+            List<Value> args,
+            int next,
+            int depth
+    ) implements ReifyFrame {}
 }
@@ -1,15 +1,363 @@
 package club.doki7.lambdapi.dtlc;
 
-import java.util.HashMap;
-import java.util.Map;
+import club.doki7.lambdapi.ann.ObjectIdentity;
+import club.doki7.lambdapi.util.ConsList;
+import club.doki7.lambdapi.util.PersistentMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public record Globals(Map<String, Value> values, Map<String, Type> types) {
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/// REPL 会话的全局定义表
+///
+/// 定义表的内容就是当前的 {@link Snapshot}：名字到槽位的映射是持久化的，每次定义都在上一个快照的
+/// 基础上构造新的快照，再通过一次 volatile 写发布出去。修改只能在一个线程中进行，
+/// 其他线程随时可以无锁地取得快照，快照一经取得就不会再变化
+///
+/// 除了逐个定义，还可以 {@link #load} 一个 {@link Library}：库中的定义占据一段连续的槽位，
+/// 但槽位只在第一次按名字或编号找到时才创建，槽位中的值和类型也只在第一次读取时才解码
+public final class Globals {
+    /// 延迟加载的一组定义，编号从 0 开始，按定义的顺序排列
+    ///
+    /// 实现需要支持多个线程同时调用。同一个定义的值和类型各自最多解码一次
+    public interface Library {
+        /// 定义的个数
+        int size();
+
+        /// 库中最后一个名为 `name` 的定义的编号，没有时返回 `-1`
+        int find(@NotNull String name);
+
+        @NotNull String name(int local);
+
+        /// 公理的值就是它自己，判断时不需要解码
+        boolean isAxiom(int local);
+
+        /// 解码定义的值，`globals` 是加载库之后的快照，库中的定义只会引用编号更小的槽位
+        @NotNull Value value(int local, @NotNull Snapshot globals);
+
+        @NotNull Type type(int local, @NotNull Snapshot globals);
+
+        /// 第 `local` 个定义的槽位刚刚创建，每个定义只通知一次
+        default void created(int local, @NotNull Slot slot) {}
+    }
+
+    /// 全局定义表中的一个槽位，同时保存定义的值和类型
+    ///
+    /// 槽位一经创建就不再修改。重新定义同名全局量会分配新的槽位，
+    /// 已经链接到旧槽位的词项和闭包仍然看到旧的定义。
+    /// 值和类型的读回结果在第一次需要时计算并缓存在槽位上，重新定义和 `:clear` 之后自然不再使用。
+    /// 来自 {@link Library} 的槽位的值和类型同样在第一次需要时才解码
+    @ObjectIdentity
+    public static final class Slot {
+        public final int index;
+        public final @NotNull String name;
+
+        private Slot(int index, @NotNull String name, @NotNull Value value, @NotNull Type type) {
+            this.index = index;
+            this.name = name;
+            this.value = value;
+            this.type = type;
+            this.segment = null;
+        }
+
+        private Slot(int index, @NotNull String name, @NotNull Segment segment) {
+            this.index = index;
+            this.name = name;
+            this.segment = segment;
+        }
+
+        public @NotNull Value value() {
+            Value v = value;
+            if (v == null) {
+                synchronized (this) {
+                    v = value;
+                    if (v == null) {
+                        assert segment != null;
+                        v = segment.library.value(index - segment.base, segment.snapshot);
+                        value = v;
+                    }
+                }
+            }
+            return v;
+        }
+
+        /// 槽位是否是公理。库中的槽位不必解码就能判断，所以求值时粘合全局定义不会引起解码
+        public boolean isAxiom() {
+            Value v = value;
+            if (v != null) {
+                return v instanceof Value.NFree;
+            }
+            assert segment != null;
+            return segment.library.isAxiom(index - segment.base);
+        }
+
+        public @NotNull Type type() {
+            Type t = type;
+            if (t == null) {
+                synchronized (this) {
+                    t = type;
+                    if (t == null) {
+                        assert segment != null;
+                        t = segment.library.type(index - segment.base, segment.snapshot);
+                        type = t;
+                    }
+                }
+            }
+            return t;
+        }
+
+        /// 完全展开全局定义后值的正规形式
+        public @NotNull Term.Checkable normalForm() {
+            Term.Checkable term = normalForm;
+            if (term == null) {
+                term = Eval.reify(0, value(), true);
+                normalForm = term;
+            }
+            return term;
+        }
+
+        /// 保留全局定义名字的类型，用于向用户展示
+        public @NotNull Term.Checkable foldedType() {
+            Term.Checkable term = foldedType;
+            if (term == null) {
+                term = Eval.reify(0, type().value(), false);
+                foldedType = term;
+            }
+            return term;
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return name + "#" + index;
+        }
+
+        // 解码可能引起其他槽位的解码，但只会用到编号更小的槽位，所以按槽位加锁不会死锁
+        private volatile @Nullable Value value;
+        private volatile @Nullable Type type;
+        private final @Nullable Segment segment;
+
+        // 读回的结果是不可变的，并发计算时重复计算一次也没有关系
+        private @Nullable Term.Checkable normalForm;
+        private @Nullable Term.Checkable foldedType;
+    }
+
+    /// 一个库占据的槽位 `[base, base + library.size())`，库中的槽位创建之后记在这里
+    private static final class Segment {
+        Segment(int base, @NotNull Library library) {
+            this.base = base;
+            this.library = library;
+            this.slots = new AtomicReferenceArray<>(library.size());
+        }
+
+        boolean contains(int index) {
+            return index >= base && index - base < slots.length();
+        }
+
+        @NotNull Slot slot(int local) {
+            Slot slot = slots.get(local);
+            if (slot != null) {
+                return slot;
+            }
+            // 槽位的身份很重要，同一个定义只能创建一个槽位
+            synchronized (this) {
+                slot = slots.get(local);
+                if (slot == null) {
+                    slot = new Slot(base + local, library.name(local), this);
+                    library.created(local, slot);
+                    slots.set(local, slot);
+                }
+            }
+            return slot;
+        }
+
+        final int base;
+        final @NotNull Library library;
+        final @NotNull AtomicReferenceArray<Slot> slots;
+        // 加载库之后的快照，在快照发布之前设置
+        @NotNull Snapshot snapshot;
+    }
+
+    /// 全局定义表在某一时刻的不可变视图，可以在求值和类型检查中随意共享
+    ///
+    /// 槽位数组只在末尾追加，快照只读取自己的 `size` 之内的部分，所以多个快照可以共享同一个数组。
+    /// 库占据的槽位在数组中留空，由 `segments` 中的库负责，最近加载的库排在前面
+    public static final class Snapshot {
+        private Snapshot(
+                @NotNull PersistentMap<String, Slot> names,
+                @NotNull Slot[] slots,
+                int size,
+                @NotNull ConsList<Segment> segments,
+                @NotNull Eval.Strategy strategy,
+                @NotNull ConversionCache conversionCache
+        ) {
+            this.names = names;
+            this.slots = slots;
+            this.size = size;
+            this.segments = segments;
+            this.strategy = strategy;
+            this.conversionCache = conversionCache;
+        }
+
+        /// 取得快照时会话所用的求值策略，闭包通过快照沿用同一种策略
+        public @NotNull Eval.Strategy strategy() {
+            return strategy;
+        }
+
+        /// 会话共享的转换检查缓存
+        public @NotNull ConversionCache conversionCache() {
+            return conversionCache;
+        }
+
+        public @Nullable Slot lookup(@NotNull String name) {
+            Slot slot = names.get(name);
+            // 比 slot 晚加载的库中的同名定义覆盖它
+            ConsList<Segment> current = segments;
+            while (current instanceof ConsList.Cons<Segment>(Segment segment, ConsList<Segment> rest)) {
+                if (slot != null && slot.index > segment.base) {
+                    break;
+                }
+                int local = segment.library.find(name);
+                if (local >= 0) {
+                    return segment.slot(local);
+                }
+                current = rest;
+            }
+            return slot;
+        }
+
+        public @Nullable Value value(@NotNull String name) {
+            Slot slot = lookup(name);
+            return slot != null ? slot.value() : null;
+        }
+
+        public @Nullable Type type(@NotNull String name) {
+            Slot slot = lookup(name);
+            return slot != null ? slot.type() : null;
+        }
+
+        public @NotNull Slot slot(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            Slot slot = slots[index];
+            if (slot != null) {
+                return slot;
+            }
+            Segment segment = segments.findFirst(s -> s.contains(index));
+            return segment.slot(index - segment.base);
+        }
+
+        /// 定义过的槽位个数，包括被重新定义覆盖的旧槽位
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /// 按定义顺序遍历当前可见的槽位，被重新定义覆盖的旧槽位会被跳过。库中的槽位都会被创建
+        public void forEach(@NotNull Consumer<Slot> action) {
+            for (int i = 0; i < size(); i++) {
+                Slot slot = slot(i);
+                if (lookup(slot.name) == slot) {
+                    action.accept(slot);
+                }
+            }
+        }
+
+        private final @NotNull PersistentMap<String, Slot> names;
+        private final @NotNull Slot[] slots;
+        private final int size;
+        private final @NotNull ConsList<Segment> segments;
+        private final @NotNull Eval.Strategy strategy;
+        private final @NotNull ConversionCache conversionCache;
+    }
+
+    /// 当前的快照，可以在任何线程中调用
+    public @NotNull Snapshot snapshot() {
+        return current;
+    }
+
+    public @NotNull Slot define(@NotNull String name, @NotNull Value value, @NotNull Type type) {
+        Snapshot s = current;
+        int index = s.size;
+        Slot[] slots = reserve(s.slots, index + 1);
+        Slot slot = new Slot(index, name, value, type);
+        slots[index] = slot;
+        current = new Snapshot(
+                s.names.put(name, slot),
+                slots,
+                index + 1,
+                s.segments,
+                s.strategy,
+                conversionCache
+        );
+        return slot;
+    }
+
+    /// 加载库，库中的定义按顺序占据接下来的槽位，返回第一个槽位的编号。这时还不创建任何槽位
+    public int load(@NotNull Library library) {
+        Snapshot s = current;
+        int base = s.size;
+        Segment segment = new Segment(base, library);
+        Snapshot snapshot = new Snapshot(
+                s.names,
+                reserve(s.slots, base + library.size()),
+                base + library.size(),
+                ConsList.cons(segment, s.segments),
+                s.strategy,
+                conversionCache
+        );
+        segment.snapshot = snapshot;
+        current = snapshot;
+        return base;
+    }
+
+    public @NotNull Eval.Strategy strategy() {
+        return current.strategy;
+    }
+
+    /// 切换之后取得的快照使用新的求值策略，已有的值不受影响
+    public void setStrategy(@NotNull Eval.Strategy strategy) {
+        Snapshot s = current;
+        current = new Snapshot(s.names, s.slots, s.size, s.segments, strategy, conversionCache);
+    }
+
+    /// 清空定义表。已经取得的快照不受影响
     public void clear() {
-        values.clear();
-        types.clear();
+        current = new Snapshot(
+                PersistentMap.empty(),
+                new Slot[0],
+                0,
+                ConsList.nil(),
+                current.strategy,
+                conversionCache
+        );
+        conversionCache.clear();
     }
 
     public static Globals empty() {
-        return new Globals(new HashMap<>(), new HashMap<>());
+        return new Globals();
     }
+
+    /// 保证数组至少能放下 `size` 个槽位。旧快照可以继续持有扩容前的数组
+    private static @NotNull Slot[] reserve(@NotNull Slot[] slots, int size) {
+        if (size <= slots.length) {
+            return slots;
+        }
+        return Arrays.copyOf(slots, Math.max(size, Math.max(16, slots.length * 2)));
+    }
+
+    private final ConversionCache conversionCache = new ConversionCache(4096);
+    private volatile @NotNull Snapshot current = new Snapshot(
+            PersistentMap.empty(),
+            new Slot[0],
+            0,
+            ConsList.nil(),
+            Eval.Strategy.CALL_BY_VALUE,
+            conversionCache
+    );
 }
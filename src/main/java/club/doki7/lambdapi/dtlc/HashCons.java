@@ -0,0 +1,544 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/// 词项的 hash-consing 表
+///
+/// 通过这里构造的词项是规范的：不考虑源码位置，结构相同的两个规范词项总是同一个对象。
+/// 构造规范词项时它的直接子项必须已经是规范的，所以查表只需要比较子项的引用，代价与词项的大小无关；
+/// 结构哈希在加入表时由子项缓存的哈希算出，和词项一起保存在表中，之后不加锁即可读取。读回总是构造规范词项，
+/// 因此转换检查中相同的正规形式只需要比较一次引用
+///
+/// 表中的词项是弱引用，不再被使用的词项会被垃圾回收。项构造器按 {@link Term.ITermFormer#parts}
+/// 给出的分量比较，同样可以通过 {@link #intern} 变成规范的
+public final class HashCons {
+    public static @NotNull Term.Star star(@NotNull Node node) {
+        return intern(new Term.Star(node));
+    }
+
+    public static @NotNull Term.Bound bound(@NotNull Node node, int index) {
+        return intern(new Term.Bound(node, index));
+    }
+
+    public static @NotNull Term.Free free(@NotNull Node node, @NotNull Name name) {
+        return intern(new Term.Free(node, name));
+    }
+
+    public static @NotNull Term.GlobalRef globalRef(@NotNull Node node, @NotNull Globals.Slot slot) {
+        return intern(new Term.GlobalRef(node, slot));
+    }
+
+    public static @NotNull Term.App app(
+            @NotNull Node node,
+            @NotNull Term.Inferable f,
+            @NotNull Term.Checkable arg
+    ) {
+        return intern(new Term.App(node, f, arg));
+    }
+
+    public static @NotNull Term.Pi pi(
+            @NotNull Node node,
+            @NotNull Term.Checkable in,
+            @NotNull Term.Checkable out
+    ) {
+        return intern(new Term.Pi(node, in, out));
+    }
+
+    public static @NotNull Term.Ann ann(
+            @NotNull Node node,
+            @NotNull Term.Checkable term,
+            @NotNull Term.Checkable annotation
+    ) {
+        return intern(new Term.Ann(node, term, annotation));
+    }
+
+    public static @NotNull Term.Inf inf(@NotNull Node node, @NotNull Term.Inferable inferable) {
+        return intern(new Term.Inf(node, inferable));
+    }
+
+    public static @NotNull Term.Lam lam(@NotNull Node node, @NotNull Term.Checkable body) {
+        return intern(new Term.Lam(node, body));
+    }
+
+    /// 返回与 `term` 结构相同的规范词项，表中还没有时 `term` 本身成为规范词项
+    ///
+    /// `term` 的直接子项应当已经是规范的，否则只是失去共享，结果仍然正确
+    @SuppressWarnings("unchecked")
+    public static <T extends Term> @NotNull T intern(@NotNull T term) {
+        int shallow = shallowHash(term);
+        Segment segment = segment(shallow);
+        Term existing = segment.probe(term, shallow);
+        if (existing != null) {
+            return (T) existing;
+        }
+
+        // 子项是规范的，它们的哈希都已经缓存，这里不必加锁
+        List<Term> children = children(term);
+        int[] hashes = new int[children.size()];
+        boolean deep = true;
+        for (int i = 0; i < hashes.length; i++) {
+            Segment.Entry entry = entry(children.get(i));
+            if (entry != null) {
+                hashes[i] = entry.hash;
+                deep &= entry.deep;
+            } else {
+                hashes[i] = structuralHash(children.get(i));
+                deep = false;
+            }
+        }
+        return (T) segment.intern(term, shallow, combine(term, hashes, 0), deep);
+    }
+
+    /// `term` 是否是规范词项
+    public static boolean isCanonical(@NotNull Term term) {
+        return entry(term) != null;
+    }
+
+    /// 词项的结构哈希，与 {@link #equals} 一致。规范词项直接使用缓存的结果
+    public static int hashCode(@NotNull Term term) {
+        Segment.Entry entry = entry(term);
+        return entry != null ? entry.hash : structuralHash(term);
+    }
+
+    /// 词项的结构相等性，不考虑源码位置
+    ///
+    /// 所有子项都是规范词项的两个规范词项只有是同一个对象时才相等，这时不必比较结构。
+    /// 其余情况使用显式栈逐层比较，不受词项深度的限制
+    public static boolean equals(@NotNull Term a, @NotNull Term b) {
+        if (a == b) {
+            return true;
+        }
+        Segment.Entry entryA = entry(a);
+        if (entryA != null) {
+            Segment.Entry entryB = entry(b);
+            if (entryB != null && (entryA.hash != entryB.hash || entryA.deep && entryB.deep)) {
+                return false;
+            }
+        }
+
+        ArrayDeque<Term> work = new ArrayDeque<>();
+        work.push(a);
+        work.push(b);
+        while (!work.isEmpty()) {
+            Term y = work.pop();
+            Term x = work.pop();
+            if (x == y) {
+                continue;
+            }
+            if (x.getClass() != y.getClass()) {
+                return false;
+            }
+
+            switch (x) {
+                case Term.Bound(Node _, int index) -> {
+                    if (index != ((Term.Bound) y).index()) {
+                        return false;
+                    }
+                }
+                case Term.Free(Node _, Name name) -> {
+                    if (!name.equals(((Term.Free) y).name())) {
+                        return false;
+                    }
+                }
+                // 槽位按引用比较
+                case Term.GlobalRef(Node _, Globals.Slot slot) -> {
+                    if (slot != ((Term.GlobalRef) y).slot()) {
+                        return false;
+                    }
+                }
+                case Term.ITermFormer tf -> {
+                    List<Object> xParts = flatParts(tf);
+                    List<Object> yParts = flatParts((Term.ITermFormer) y);
+                    if (xParts.size() != yParts.size()) {
+                        return false;
+                    }
+                    for (int i = 0; i < xParts.size(); i++) {
+                        Object xPart = xParts.get(i);
+                        Object yPart = yParts.get(i);
+                        if (xPart instanceof Term xTerm && yPart instanceof Term yTerm) {
+                            work.push(xTerm);
+                            work.push(yTerm);
+                        } else if (!Objects.equals(xPart, yPart)) {
+                            return false;
+                        }
+                    }
+                }
+                default -> {
+                    List<Term> xs = children(x);
+                    List<Term> ys = children(y);
+                    for (int i = 0; i < xs.size(); i++) {
+                        work.push(xs.get(i));
+                        work.push(ys.get(i));
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /// 表中存活的规范词项的个数
+    public static int size() {
+        int size = 0;
+        for (Segment segment : SEGMENTS) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static Segment.Entry entry(Term term) {
+        int shallow = shallowHash(term);
+        return segment(shallow).find(term, shallow);
+    }
+
+    /// 按后序遍历计算不在表中的词项的结构哈希。使用显式栈，不受词项深度的限制；
+    /// 不在表中查找子项，每个子项只做一次合并
+    private static int structuralHash(Term root) {
+        ArrayDeque<Object> work = new ArrayDeque<>();
+        int[] hashes = new int[8];
+        int top = 0;
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            int hash;
+            if (item instanceof Combine(Term term, int arity)) {
+                top -= arity;
+                hash = combine(term, hashes, top);
+            } else {
+                Term term = (Term) item;
+                List<Term> children = children(term);
+                if (!children.isEmpty()) {
+                    work.push(new Combine(term, children.size()));
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        work.push(children.get(i));
+                    }
+                    continue;
+                }
+                hash = combine(term, hashes, top);
+            }
+
+            if (top == hashes.length) {
+                hashes = Arrays.copyOf(hashes, top * 2);
+            }
+            hashes[top++] = hash;
+        }
+        return hashes[0];
+    }
+
+    /// 由子项的哈希 `hashes[from..]` 合并出词项的哈希。核心词项与 `Objects.hash` 的结果相同
+    private static int combine(Term term, int[] hashes, int from) {
+        return switch (term) {
+            case Term.Star _ -> Term.Star.class.hashCode();
+            case Term.Bound(Node _, int index) -> combine(Term.Bound.class, index);
+            case Term.Free(Node _, Name name) -> combine(Term.Free.class, name.hashCode());
+            case Term.GlobalRef(Node _, Globals.Slot slot) -> combine(Term.GlobalRef.class, slot.index);
+            case Term.App _ -> combine(Term.App.class, hashes[from], hashes[from + 1]);
+            case Term.Pi _ -> combine(Term.Pi.class, hashes[from], hashes[from + 1]);
+            case Term.Ann _ -> combine(Term.Ann.class, hashes[from], hashes[from + 1]);
+            case Term.Inf _ -> combine(Term.Inf.class, hashes[from]);
+            case Term.Lam _ -> combine(Term.Lam.class, hashes[from]);
+            case Term.InferableTF tf -> combineParts(tf, hashes, from);
+            case Term.CheckableTF tf -> combineParts(tf, hashes, from);
+        };
+    }
+
+    private static int combineParts(Term.ITermFormer tf, int[] hashes, int from) {
+        int hash = 31 + tf.getClass().hashCode();
+        for (Object part : flatParts(tf)) {
+            hash = 31 * hash + (part instanceof Term ? hashes[from++] : Objects.hashCode(part));
+        }
+        return hash;
+    }
+
+    /// 与 `Objects.hash(tag, a, b)` 相同
+    private static int combine(Class<?> tag, int a, int b) {
+        return (31 * (31 + tag.hashCode()) + a) * 31 + b;
+    }
+
+    /// 与 `Objects.hash(tag, a)` 相同
+    private static int combine(Class<?> tag, int a) {
+        return 31 * (31 + tag.hashCode()) + a;
+    }
+
+    /// 子项的哈希都已经算出，接下来合并成复合词项的哈希
+    private record Combine(Term term, int arity) {}
+
+    /// 直接子项，按 {@link #combine} 使用哈希的顺序排列
+    private static List<Term> children(Term term) {
+        return switch (term) {
+            case Term.Star _, Term.Bound _, Term.Free _, Term.GlobalRef _ -> List.of();
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> List.of(f, arg);
+            case Term.Pi(Node _, Term.Checkable in, Term.Checkable out) -> List.of(in, out);
+            case Term.Ann(Node _, Term.Checkable e, Term.Checkable annotation) ->
+                    List.of(e, annotation);
+            case Term.Inf(Node _, Term.Inferable inferable) -> List.of(inferable);
+            case Term.Lam(Node _, Term.Checkable body) -> List.of(body);
+            case Term.InferableTF tf -> termParts(tf);
+            case Term.CheckableTF tf -> termParts(tf);
+        };
+    }
+
+    private static List<Term> termParts(Term.ITermFormer tf) {
+        ArrayList<Term> terms = new ArrayList<>();
+        for (Object part : flatParts(tf)) {
+            if (part instanceof Term term) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /// 项构造器的分量。子项列表按元素展开并在前面加上长度，这样列表中的子项也按引用比较
+    private static List<Object> flatParts(Term.ITermFormer tf) {
+        List<?> parts = tf.parts();
+        ArrayList<Object> flat = new ArrayList<>(parts.size());
+        for (Object part : parts) {
+            if (part instanceof List<?> list) {
+                flat.add(list.size());
+                flat.addAll(list);
+            } else {
+                flat.add(part);
+            }
+        }
+        return flat;
+    }
+
+    /// 只看子项引用的浅哈希，用于在表中定位词项
+    private static int shallowHash(Term term) {
+        return switch (term) {
+            case Term.Star _ -> 1;
+            case Term.Bound(Node _, int index) -> 31 * 2 + index;
+            case Term.Free(Node _, Name name) -> 31 * 3 + name.hashCode();
+            case Term.GlobalRef(Node _, Globals.Slot slot) -> 31 * 4 + System.identityHashCode(slot);
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> mix(5, f, arg);
+            case Term.Pi(Node _, Term.Checkable in, Term.Checkable out) -> mix(6, in, out);
+            case Term.Ann(Node _, Term.Checkable e, Term.Checkable annotation) ->
+                    mix(7, e, annotation);
+            case Term.Inf(Node _, Term.Inferable inferable) ->
+                    31 * 8 + System.identityHashCode(inferable);
+            case Term.Lam(Node _, Term.Checkable body) -> 31 * 9 + System.identityHashCode(body);
+            case Term.InferableTF tf -> partsShallowHash(tf);
+            case Term.CheckableTF tf -> partsShallowHash(tf);
+        };
+    }
+
+    private static int mix(int tag, Term a, Term b) {
+        return (31 * tag + System.identityHashCode(a)) * 31 + System.identityHashCode(b);
+    }
+
+    private static int partsShallowHash(Term.ITermFormer tf) {
+        int hash = tf.getClass().hashCode();
+        for (Object part : flatParts(tf)) {
+            hash = 31 * hash + (part instanceof Term child
+                    ? System.identityHashCode(child)
+                    : Objects.hashCode(part));
+        }
+        return hash;
+    }
+
+    /// 两个词项的类相同，除源码位置外的分量中，子项引用相同，其余分量相等
+    private static boolean shallowEquals(Term a, Term b) {
+        return switch (a) {
+            case Term.Star _ -> b instanceof Term.Star;
+            case Term.Bound(Node _, int index) ->
+                    b instanceof Term.Bound(Node _, int other) && index == other;
+            case Term.Free(Node _, Name name) ->
+                    b instanceof Term.Free(Node _, Name other) && name.equals(other);
+            // 槽位按引用比较
+            case Term.GlobalRef(Node _, Globals.Slot slot) ->
+                    b instanceof Term.GlobalRef(Node _, Globals.Slot other) && slot == other;
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) ->
+                    b instanceof Term.App(Node _, Term.Inferable f1, Term.Checkable arg1)
+                    && f == f1
+                    && arg == arg1;
+            case Term.Pi(Node _, Term.Checkable in, Term.Checkable out) ->
+                    b instanceof Term.Pi(Node _, Term.Checkable in1, Term.Checkable out1)
+                    && in == in1
+                    && out == out1;
+            case Term.Ann(Node _, Term.Checkable e, Term.Checkable annotation) ->
+                    b instanceof Term.Ann(Node _, Term.Checkable e1, Term.Checkable annotation1)
+                    && e == e1
+                    && annotation == annotation1;
+            case Term.Inf(Node _, Term.Inferable inferable) ->
+                    b instanceof Term.Inf(Node _, Term.Inferable other) && inferable == other;
+            case Term.Lam(Node _, Term.Checkable body) ->
+                    b instanceof Term.Lam(Node _, Term.Checkable other) && body == other;
+            case Term.InferableTF tf -> a.getClass() == b.getClass()
+                    && partsShallowEquals(tf, (Term.ITermFormer) b);
+            case Term.CheckableTF tf -> a.getClass() == b.getClass()
+                    && partsShallowEquals(tf, (Term.ITermFormer) b);
+        };
+    }
+
+    private static boolean partsShallowEquals(Term.ITermFormer a, Term.ITermFormer b) {
+        List<Object> aParts = flatParts(a);
+        List<Object> bParts = flatParts(b);
+        if (aParts.size() != bParts.size()) {
+            return false;
+        }
+        for (int i = 0; i < aParts.size(); i++) {
+            Object x = aParts.get(i);
+            Object y = bParts.get(i);
+            if (x instanceof Term ? x != y : !Objects.equals(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Segment segment(int shallow) {
+        return SEGMENTS[(shallow ^ (shallow >>> 16)) & (SEGMENTS.length - 1)];
+    }
+
+    /// 一个分段的开放哈希表。查找不加锁，插入时每个分段单独加锁
+    ///
+    /// 条目不可变：插入时在链表头部加入新的条目，删除和扩容时复制条目，再通过 {@link AtomicReferenceArray}
+    /// 或者 volatile 字段发布。不加锁的读者总是看到完整的链表，最多错过并发插入的条目
+    private static final class Segment {
+        static final class Entry extends WeakReference<Term> {
+            Entry(
+                    Term term,
+                    int shallow,
+                    int hash,
+                    boolean deep,
+                    Entry next,
+                    ReferenceQueue<Term> queue
+            ) {
+                super(term, queue);
+                this.shallow = shallow;
+                this.hash = hash;
+                this.deep = deep;
+                this.next = next;
+            }
+
+            Entry copy(Term term, Entry next, ReferenceQueue<Term> queue) {
+                return new Entry(term, shallow, hash, deep, next, queue);
+            }
+
+            final int shallow;
+            /// 词项的结构哈希
+            final int hash;
+            /// 所有的子项（递归地）也都是规范词项
+            final boolean deep;
+            final Entry next;
+        }
+
+        /// 不加锁的查找。与插入和扩容并发时可能错过已有的条目，这时由 {@link #intern} 加锁后再查找一次，
+        /// 但找到的词项总是正确的
+        Term probe(Term term, int shallow) {
+            AtomicReferenceArray<Entry> buckets = this.buckets;
+            for (Entry e = buckets.get(shallow & (buckets.length() - 1)); e != null; e = e.next) {
+                Term existing = e.get();
+                if (e.shallow == shallow && existing != null && shallowEquals(existing, term)) {
+                    return existing;
+                }
+            }
+            return null;
+        }
+
+        synchronized Term intern(Term term, int shallow, int hash, boolean deep) {
+            Term existing = probe(term, shallow);
+            if (existing != null) {
+                return existing;
+            }
+
+            // 只在插入时清理失效的条目，查找命中时不需要额外的工作
+            expunge();
+            AtomicReferenceArray<Entry> buckets = this.buckets;
+            int index = shallow & (buckets.length() - 1);
+            buckets.set(index, new Entry(term, shallow, hash, deep, buckets.get(index), queue));
+            if (++size > buckets.length() * 3 / 4) {
+                resize();
+            }
+            return term;
+        }
+
+        /// 按引用查找词项的条目，和 {@link #probe} 一样不加锁。与插入和扩容并发时可能错过，
+        /// 调用方这时把词项当作不是规范的重新计算，结果相同
+        Entry find(Term term, int shallow) {
+            AtomicReferenceArray<Entry> buckets = this.buckets;
+            for (Entry e = buckets.get(shallow & (buckets.length() - 1)); e != null; e = e.next) {
+                if (e.get() == term) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        synchronized int size() {
+            expunge();
+            return size;
+        }
+
+        /// 删除失效的条目。被删除的条目之前的部分复制成新的链表，其中已经失效的条目一并删除；
+        /// 之后从队列中取出的旧条目不在表中，直接忽略
+        private void expunge() {
+            Object cleared;
+            while ((cleared = queue.poll()) != null) {
+                Entry entry = (Entry) cleared;
+                int index = entry.shallow & (buckets.length() - 1);
+                ArrayList<Entry> prefix = new ArrayList<>();
+                Entry e = buckets.get(index);
+                while (e != null && e != entry) {
+                    prefix.add(e);
+                    e = e.next;
+                }
+                if (e == null) {
+                    continue;
+                }
+
+                Entry chain = entry.next;
+                size--;
+                for (int i = prefix.size() - 1; i >= 0; i--) {
+                    Entry kept = prefix.get(i);
+                    Term term = kept.get();
+                    if (term == null) {
+                        size--;
+                    } else {
+                        chain = kept.copy(term, chain, queue);
+                    }
+                }
+                buckets.set(index, chain);
+            }
+        }
+
+        private void resize() {
+            AtomicReferenceArray<Entry> old = buckets;
+            AtomicReferenceArray<Entry> resized = new AtomicReferenceArray<>(old.length() * 2);
+            for (int i = 0; i < old.length(); i++) {
+                for (Entry e = old.get(i); e != null; e = e.next) {
+                    Term term = e.get();
+                    if (term == null) {
+                        size--;
+                        continue;
+                    }
+                    int index = e.shallow & (resized.length() - 1);
+                    resized.set(index, e.copy(term, resized.get(index), queue));
+                }
+            }
+            buckets = resized;
+        }
+
+        private volatile AtomicReferenceArray<Entry> buckets = new AtomicReferenceArray<>(64);
+        private int size;
+        private final ReferenceQueue<Term> queue = new ReferenceQueue<>();
+    }
+
+    private static final Segment[] SEGMENTS = new Segment[64];
+
+    static {
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            SEGMENTS[i] = new Segment();
+        }
+    }
+}
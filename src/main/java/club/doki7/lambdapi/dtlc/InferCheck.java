@@ -3,45 +3,262 @@ package club.doki7.lambdapi.dtlc;
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.exc.TypeCheckException;
 import club.doki7.lambdapi.syntax.Node;
-import club.doki7.lambdapi.util.ConsList;
-import club.doki7.lambdapi.util.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.function.Function;
+import java.util.ArrayDeque;
+import java.util.Objects;
 
 public final class InferCheck {
-    public static @NotNull Type infer(Term.Inferable inferable, Globals globals)
+    /// 推导的类型和词项的值。只推导类型时 `value` 为 `null`
+    public record Typed(@NotNull Type type, @Nullable Value value) {}
+
+    public static @NotNull Type infer(Term.Inferable inferable, Globals.Snapshot globals)
         throws TypeCheckException
     {
-        return infer(0, ConsList.nil(), globals, inferable);
+        return infer(Context.empty(globals), inferable);
     }
 
-    public static @NotNull Type infer(
-            int depth,
-            ConsList<Pair<Name.Local, Type>> ctx,
-            Globals globals,
-            Term.Inferable inferable
-    ) throws TypeCheckException {
-        return switch (inferable) {
-            case Term.Ann(Node node, Term.Checkable checkable, Term.Checkable annotation) -> {
-                Type vStar = Type.of(new Value.VStar(node));
-                check(depth, ctx, globals, annotation, vStar);
-                Type annotationEval = Type.of(Eval.eval(annotation, globals.values()));
-                check(depth, ctx, globals, checkable, annotationEval);
-                yield annotationEval;
+    /// 推导闭合词项的类型，同时求出它的值。结果的值与 {@link Eval#eval} 相同，
+    /// 但检查时已经求值过的子项不会再求值一次
+    public static @NotNull Typed inferEval(Term.Inferable inferable, Globals.Snapshot globals)
+        throws TypeCheckException
+    {
+        return inferEval(Context.empty(globals), inferable);
+    }
+
+    /// 推导词项的类型
+    ///
+    /// 约束变量不被替换，词项中的 {@link Term.Bound} 直接在上下文中查找类型，
+    /// 需要求值的子项在上下文的环境中求值，所以检查的代价与词项的大小成正比
+    public static @NotNull Type infer(Context ctx, Term.Inferable inferable)
+        throws TypeCheckException
+    {
+        return run(ctx, inferable, null, false).type();
+    }
+
+    public static @NotNull Typed inferEval(Context ctx, Term.Inferable inferable)
+        throws TypeCheckException
+    {
+        return run(ctx, inferable, null, true);
+    }
+
+    public static void check(Context ctx, Term.Checkable checkable, Type expected)
+        throws TypeCheckException
+    {
+        run(ctx, checkable, expected, false);
+    }
+
+    /// 检查词项，同时求出它在上下文的环境中的值
+    public static @NotNull Value checkEval(Context ctx, Term.Checkable checkable, Type expected)
+        throws TypeCheckException
+    {
+        return Objects.requireNonNull(run(ctx, checkable, expected, true).value());
+    }
+
+    /// 检查或推导词项的类型。`expected` 为 `null` 时推导 `term` 的类型，否则检查 `term`，
+    /// 结果的类型就是 `expected`
+    ///
+    /// `withValue` 为 `false` 时不求词项本身的值，结果的 `value` 为 `null`。检查 λ 和 Pi
+    /// 的函数体时总是如此，所以检查不会在绑定之下求值
+    ///
+    /// 和 {@link Eval#eval} 一样使用显式的续延栈，嵌套的应用、箭头和 λ 的深度只受堆大小限制。
+    /// 项构造器自己的检查规则仍然通过 {@link #check} 和 {@link #checkEval} 递归地检查参数
+    private static Typed run(Context ctx, Term term, @Nullable Type expected, boolean withValue)
+        throws TypeCheckException
+    {
+        ArrayDeque<CheckFrame> stack = null;
+        Term control = term;
+        Typed result;
+
+        descend: while (true) {
+            if (expected != null) {
+                switch ((Term.Checkable) control) {
+                    case Term.Inf(Node node, Term.Inferable inferable) -> {
+                        // 变量之类的原子词项直接推导，不必压栈，这是最常见的情形
+                        Typed inferred = atom(ctx, inferable, withValue);
+                        if (inferred == null) {
+                            if (stack == null) {
+                                stack = new ArrayDeque<>();
+                            }
+                            stack.push(new CheckInf(node, inferable, expected));
+                            control = inferable;
+                            expected = null;
+                            continue;
+                        }
+                        result = conform(ctx, node, inferable, inferred, expected);
+                    }
+                    case Term.Lam(Node node, Term.Checkable body) -> {
+                        Value expectedPi = Eval.force(expected.value());
+                        if (!(expectedPi instanceof Value.VPi(Node _, Type in, Closure out))) {
+                            throw new TypeCheckException(
+                                    node.location(),
+                                    "Lambda terms can be only checked as function type, got "
+                                    + expected
+                            );
+                        }
+
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        stack.push(new LamDone(ctx, node, body, expected, withValue));
+                        ctx = ctx.bind(node, in);
+                        control = body;
+                        expected = Type.of(Eval.apply(out, ctx.env().get(0)));
+                        withValue = false;
+                        continue;
+                    }
+                    case Term.CheckableTF tf -> {
+                        tf.check(ctx, expected);
+                        result = new Typed(
+                                expected,
+                                withValue ? tf.eval(ctx.env(), ctx.globals()) : null
+                        );
+                    }
+                }
+            } else {
+                switch ((Term.Inferable) control) {
+                    case Term.Ann(Node node, Term.Checkable checkable, Term.Checkable annotation) -> {
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        stack.push(new AnnAnnotation(ctx, checkable, withValue));
+                        control = annotation;
+                        expected = Type.of(new Value.VStar(node));
+                        withValue = true;
+                        continue;
+                    }
+                    case Term.Bound _, Term.Free _, Term.GlobalRef _, Term.Star _ ->
+                            result = Objects.requireNonNull(atom(ctx, control, withValue));
+                    case Term.App(Node node, Term.Inferable f, Term.Checkable arg) -> {
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        Typed fTyped = atom(ctx, f, withValue);
+                        if (fTyped == null) {
+                            stack.push(new AppFunc(ctx, node, arg, withValue));
+                            control = f;
+                            continue;
+                        }
+
+                        Value.VPi pi = expectPi(node, fTyped.type());
+                        Typed applied = applyAtom(ctx, pi, fTyped.value(), arg, withValue);
+                        if (applied == null) {
+                            stack.push(new AppArg(pi.out(), fTyped.value(), withValue));
+                            control = arg;
+                            expected = pi.in();
+                            withValue = true;
+                            continue;
+                        }
+                        result = applied;
+                    }
+                    case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> {
+                        if (stack == null) {
+                            stack = new ArrayDeque<>();
+                        }
+                        stack.push(new PiIn(ctx, node, out, withValue));
+                        control = in;
+                        expected = Type.of(new Value.VStar(node));
+                        withValue = true;
+                        continue;
+                    }
+                    case Term.InferableTF tf -> result = new Typed(
+                            tf.infer(ctx),
+                            withValue ? tf.eval(ctx.env(), ctx.globals()) : null
+                    );
+                }
             }
-            case Term.Free(Node node, Name name) -> {
-                @Nullable Pair<Name.Local, Type> entry = ctx.findFirst(p -> p.first().equals(name));
-                if (entry != null) {
-                    yield entry.second();
+
+            while (stack != null && !stack.isEmpty()) {
+                switch (stack.pop()) {
+                    case AnnAnnotation(Context annCtx, Term.Checkable checkable, boolean annValue) -> {
+                        Type annotationEval = Type.of(result.value());
+                        stack.push(new AnnDone(annotationEval));
+                        ctx = annCtx;
+                        control = checkable;
+                        expected = annotationEval;
+                        withValue = annValue;
+                        continue descend;
+                    }
+                    case AnnDone(Type annotationEval) ->
+                            result = new Typed(annotationEval, result.value());
+                    case AppFunc(Context appCtx, Node node, Term.Checkable arg, boolean appValue) -> {
+                        Value.VPi pi = expectPi(node, result.type());
+                        Typed applied = applyAtom(appCtx, pi, result.value(), arg, appValue);
+                        if (applied == null) {
+                            stack.push(new AppArg(pi.out(), result.value(), appValue));
+                            ctx = appCtx;
+                            control = arg;
+                            expected = pi.in();
+                            withValue = true;
+                            continue descend;
+                        }
+                        result = applied;
+                    }
+                    case AppArg(Closure out, Value func, boolean appValue) -> {
+                        Value argValue = result.value();
+                        result = new Typed(
+                                Type.of(Eval.apply(out, argValue)),
+                                appValue ? Eval.vApp(func, argValue) : null
+                        );
+                    }
+                    case PiIn(Context piCtx, Node node, Term.Checkable out, boolean piValue) -> {
+                        Type inEval = Type.of(result.value());
+                        stack.push(new PiDone(piCtx, node, inEval, out, piValue));
+                        ctx = piCtx.bind(node, inEval);
+                        control = out;
+                        expected = Type.of(new Value.VStar(node));
+                        withValue = false;
+                        continue descend;
+                    }
+                    case PiDone(
+                            Context piCtx,
+                            Node node,
+                            Type inEval,
+                            Term.Checkable out,
+                            boolean piValue
+                    ) -> {
+                        Closure outClosure = new Closure(out, piCtx.env(), piCtx.globals());
+                        result = new Typed(
+                                Type.of(new Value.VStar(node)),
+                                piValue ? new Value.VPi(node, inEval, outClosure) : null
+                        );
+                    }
+                    case CheckInf(Node node, Term.Inferable inferable, Type checkExpected) ->
+                            result = conform(ctx, node, inferable, result, checkExpected);
+                    case LamDone(
+                            Context lamCtx,
+                            Node node,
+                            Term.Checkable body,
+                            Type lamExpected,
+                            boolean lamValue
+                    ) -> {
+                        Closure closure = new Closure(body, lamCtx.env(), lamCtx.globals());
+                        result = new Typed(
+                                lamExpected,
+                                lamValue ? new Value.VLam(node, closure) : null
+                        );
+                    }
                 }
+            }
+            return result;
+        }
+    }
 
+    /// 变量、全局量和 `*` 不需要续延，直接推导类型并求值。其他词项返回 `null`
+    private static @Nullable Typed atom(Context ctx, Term term, boolean withValue)
+        throws TypeCheckException
+    {
+        Type type = switch (term) {
+            case Term.Bound(Node _, int index) -> ctx.type(index);
+            case Term.Free(Node node, Name name) -> {
                 if (name instanceof Name.Global(String strName)) {
-                    @Nullable Type type = globals.types().get(strName);
-                    if (type != null) {
-                        yield type;
+                    @Nullable Type globalType = ctx.globals().type(strName);
+                    if (globalType != null) {
+                        yield globalType;
                     }
+                } else if (name instanceof Name.Local(int level) && level < ctx.depth()) {
+                    yield ctx.type(ctx.depth() - level - 1);
                 }
 
                 throw new TypeCheckException(
@@ -49,119 +266,119 @@ public final class InferCheck {
                         "Undefined variable identifier " + name
                 );
             }
+            case Term.GlobalRef(Node _, Globals.Slot slot) -> slot.type();
             case Term.Star(Node node) -> Type.of(new Value.VStar(node));
-            case Term.App(Node node, Term.Inferable f, Term.Checkable arg) -> {
-                Type fType = infer(depth, ctx, globals, f);
-                if (!(fType instanceof Type(Value.VPi(Node _,
-                                                      Type in,
-                                                      Function<Value, Type> out)))) {
-                    throw new TypeCheckException(
-                            node.location(),
-                            "Expected function type in application"
-                    );
-                }
-                check(depth, ctx, globals, arg, in);
-                yield out.apply(Eval.eval(arg, globals.values()));
-            }
-            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> {
-                Type vStar = Type.of(new Value.VStar(node));
-                check(depth, ctx, globals, in, vStar);
-                Type inEval = Type.of(Eval.eval(in, globals.values()));
-                Name.Local local = new Name.Local(depth);
-                check(
-                        depth + 1,
-                        ConsList.cons(new Pair<>(local, inEval), ctx),
-                        globals,
-                        subst(0, new Term.Free(node, local), out),
-                        vStar
-                );
-                yield vStar;
-            }
-            case Term.Bound _ -> throw new IllegalStateException(
-                    "Unexpected bound variable in type checking phase"
-            );
-            case Term.InferableTF tf -> tf.infer(depth, ctx, globals);
+            default -> null;
         };
+        if (type == null) {
+            return null;
+        }
+        return new Typed(type, withValue ? ctx.eval(term) : null);
     }
 
-    public static void check(
-            int depth,
-            ConsList<Pair<Name.Local, Type>> ctx,
-            Globals globals,
-            Term.Checkable checkable,
-            Type expected
+    /// 参数是原子词项时直接检查参数并完成应用，不必压栈。其他参数返回 `null`
+    private static @Nullable Typed applyAtom(
+            Context ctx,
+            Value.VPi pi,
+            @Nullable Value func,
+            Term.Checkable arg,
+            boolean withValue
     ) throws TypeCheckException {
-        switch (checkable) {
-            case Term.Inf(Node node, Term.Inferable inferable) -> {
-                Type inferred = infer(depth, ctx, globals, inferable);
-                Term inferredReadback = Eval.reify(inferred.value());
-                Term expectedReadback = Eval.reify(expected.value());
-                if (!inferredReadback.equals(expectedReadback)) {
-                    throw new TypeCheckException(
-                            node.location(),
-                            "Type mismatch, expected " + expectedReadback
-                            + ", inferred " + inferredReadback
-                    );
-                }
-            }
-            case Term.Lam(Node node, Term.Checkable body) -> {
-                if (!(expected instanceof Type(Value.VPi(Node _,
-                                                         Type in,
-                                                         Function<Value, Type> out)))) {
-                    throw new TypeCheckException(
-                            node.location(),
-                            "Lambda terms can be only checked as function type, got " + expected
-                    );
-                }
-
-                Name.Local local = new Name.Local(depth);
-                check(
-                        depth + 1,
-                        ConsList.cons(new Pair<>(local, in), ctx),
-                        globals,
-                        subst(0, new Term.Free(node, local), body),
-                        out.apply(Value.vFree(node, local))
-                );
-            }
-            case Term.CheckableTF tf -> tf.check(depth, ctx, globals, expected);
+        if (!(arg instanceof Term.Inf(Node node, Term.Inferable inferable))) {
+            return null;
+        }
+        Typed inferred = atom(ctx, inferable, true);
+        if (inferred == null) {
+            return null;
         }
+
+        Value argValue = conform(ctx, node, inferable, inferred, pi.in()).value();
+        return new Typed(
+                Type.of(Eval.apply(pi.out(), argValue)),
+                withValue ? Eval.vApp(func, argValue) : null
+        );
     }
 
-    public static Term.Inferable subst(int depth, Term.Free r, Term.Inferable inferable) {
-        return switch (inferable) {
-            case Term.Ann(Node node, Term.Checkable term, Term.Checkable ann) -> new Term.Ann(
-                    node,
-                    subst(depth, r, term),
-                    subst(depth, r, ann)
-            );
-            case Term.Bound bound -> bound.index() == depth ? r : bound;
-            case Term.Free free -> free;
-            case Term.App(Node node, Term.Inferable f, Term.Checkable arg) -> new Term.App(
-                    node,
-                    subst(depth, r, f),
-                    subst(depth, r, arg)
-            );
-            case Term.Star star -> star;
-            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> new Term.Pi(
-                    node,
-                    subst(depth, r, in),
-                    subst(depth + 1, r, out)
+    private static Value.VPi expectPi(Node node, Type type) throws TypeCheckException {
+        if (!(Eval.force(type.value()) instanceof Value.VPi pi)) {
+            throw new TypeCheckException(
+                    node.location(),
+                    "Expected function type in application"
             );
-            case Term.InferableTF tf -> tf.subst(depth, r);
-        };
+        }
+        return pi;
     }
 
-    public static Term.Checkable subst(int depth, Term.Free r, Term.Checkable checkable) {
-        return switch (checkable) {
-            case Term.Inf(Node node, Term.Inferable term) -> new Term.Inf(
-                    node,
-                    subst(depth, r, term)
-            );
-            case Term.Lam(Node node, Term.Checkable body) -> new Term.Lam(
-                    node,
-                    subst(depth + 1, r, body)
-            );
-            case Term.CheckableTF tf -> tf.subst(depth, r);
-        };
+    /// 推导出的类型需要与期望的类型可转换
+    private static Typed conform(
+            Context ctx,
+            Node node,
+            Term.Inferable inferable,
+            Typed inferred,
+            Type expected
+    ) throws TypeCheckException {
+        ConversionCache cache = ctx.globals().conversionCache();
+        if (cache.convertible(0, inferred.type().value(), expected.value())) {
+            return new Typed(expected, inferred.value());
+        }
+
+        // 只在失败时读回，对全局量本身的引用使用槽位上缓存的类型读回结果
+        Term inferredFolded = inferable instanceof Term.GlobalRef ref
+                ? ref.slot().foldedType()
+                : Eval.reifyFolded(inferred.type().value());
+        throw new TypeCheckException(
+                node.location(),
+                "Type mismatch, expected " + Eval.reifyFolded(expected.value())
+                + ", inferred " + inferredFolded
+        );
     }
+
+    private sealed interface CheckFrame {}
+
+    /// 注解检查完毕，接下来用注解的值检查被注解的词项
+    private record AnnAnnotation(
+            Context ctx,
+            Term.Checkable checkable,
+            boolean withValue
+    ) implements CheckFrame {}
+
+    private record AnnDone(Type annotation) implements CheckFrame {}
+
+    /// 函数的类型推导完毕，接下来检查参数
+    private record AppFunc(
+            Context ctx,
+            Node node,
+            Term.Checkable arg,
+            boolean withValue
+    ) implements CheckFrame {}
+
+    private record AppArg(Closure out, @Nullable Value func, boolean withValue)
+            implements CheckFrame {}
+
+    /// 参数类型检查完毕，接下来在加入参数后检查返回类型
+    private record PiIn(
+            Context ctx,
+            Node node,
+            Term.Checkable out,
+            boolean withValue
+    ) implements CheckFrame {}
+
+    private record PiDone(
+            Context ctx,
+            Node node,
+            Type in,
+            Term.Checkable out,
+            boolean withValue
+    ) implements CheckFrame {}
+
+    private record CheckInf(Node node, Term.Inferable inferable, Type expected)
+            implements CheckFrame {}
+
+    private record LamDone(
+            Context ctx,
+            Node node,
+            Term.Checkable body,
+            Type expected,
+            boolean withValue
+    ) implements CheckFrame {}
 }
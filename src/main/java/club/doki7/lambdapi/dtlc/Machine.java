@@ -0,0 +1,270 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.SkewList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/// CEK 风格的抽象机，{@link Eval#eval} 之外的另一个求值器
+///
+/// 机器的状态由三个寄存器组成：控制（正在求值的词项，或者刚刚得到的值）、环境和续延。
+/// 每次调用 {@link #step} 只做一次状态转移，整个求值过程不使用 Java 调用栈。
+/// 续延是不可变的链表，所以暂停求值只需要保留机器对象，之后随时可以用 {@link #run(long)} 继续，
+/// 适合按时间片执行和统计步数。求值的结果与 {@link Eval#eval} 相同，可以交给 {@link Eval#reify} 读回
+///
+/// 项构造器通过 {@link Term.ITermFormer#step} 参与求值。默认实现调用 {@link Term.ITermFormer#eval}
+/// 一步得到结果；需要求值子项或者应用函数的项构造器可以通过 {@link Step} 把这些工作交给机器
+public final class Machine {
+    /// 项构造器的单步协议
+    ///
+    /// 在一次 {@link Term.ITermFormer#step} 或者 {@link Then#resume} 调用中，
+    /// 必须恰好调用下面的一个方法
+    public sealed interface Step permits Stepper {
+        /// 以 `value` 作为结果完成求值
+        void ret(@NotNull Value value);
+
+        /// 在机器中求值 `term`，得到的值交给 `then`
+        void eval(
+                @NotNull Term term,
+                @NotNull SkewList<Value> env,
+                @NotNull Globals.Snapshot globals,
+                @NotNull Then then
+        );
+
+        /// 在机器中把 `func` 应用到 `arg` 上，得到的值交给 `then`
+        void apply(@NotNull Value func, @NotNull Value arg, @NotNull Then then);
+    }
+
+    @FunctionalInterface
+    public interface Then {
+        void resume(@NotNull Step step, @NotNull Value value);
+    }
+
+    public Machine(
+            @NotNull Term term,
+            @NotNull SkewList<Value> env,
+            @NotNull Globals.Snapshot globals
+    ) {
+        this.control = term;
+        this.env = env;
+        this.globals = globals;
+    }
+
+    public Machine(@NotNull Term term, @NotNull Globals.Snapshot globals) {
+        this(term, SkewList.nil(), globals);
+    }
+
+    /// 一次运行到底，等价于 {@link Eval#eval}
+    public static @NotNull Value eval(@NotNull Term term, @NotNull Globals.Snapshot globals) {
+        return new Machine(term, globals).run();
+    }
+
+    public boolean isHalted() {
+        return control == null && kont == null;
+    }
+
+    /// 已经执行的状态转移次数
+    public long steps() {
+        return steps;
+    }
+
+    public @NotNull Value result() {
+        if (!isHalted()) {
+            throw new IllegalStateException("Machine has not halted yet");
+        }
+        return value;
+    }
+
+    public @NotNull Value run() {
+        while (!isHalted()) {
+            step();
+        }
+        return result();
+    }
+
+    /// 最多执行 `fuel` 次状态转移，返回机器是否已经停机。没有停机时可以再次调用以继续求值
+    public boolean run(long fuel) {
+        for (long i = 0; i < fuel; i++) {
+            if (!step()) {
+                return true;
+            }
+        }
+        return isHalted();
+    }
+
+    /// 执行一次状态转移。机器已经停机时返回 `false`
+    public boolean step() {
+        if (isHalted()) {
+            return false;
+        }
+
+        steps++;
+        if (control != null) {
+            descend(control);
+        } else {
+            ascend(kont);
+        }
+        return true;
+    }
+
+    private void descend(Term term) {
+        switch (term) {
+            case Term.Ann(Node _, Term e, Term _) -> control = e;
+            case Term.Inf(Node _, Term.Inferable inf) -> control = inf;
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> {
+                kont = new EvalArg(arg, env, globals, kont);
+                control = f;
+            }
+            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> {
+                kont = new MakePi(node, out, env, globals, kont);
+                control = in;
+            }
+            case Term.Bound(Node _, int index) -> ret(env.get(index));
+            case Term.GlobalRef(Node node, Globals.Slot slot) -> ret(Eval.glue(node, slot));
+            case Term.Lam(Node node, Term.Checkable body) -> ret(new Value.VLam(
+                    node,
+                    new Closure(body, env, globals)
+            ));
+            case Term.Star(Node node) -> ret(new Value.VStar(node));
+            // 自由变量是叶子，解释器一步就能求值
+            case Term.Free _ -> ret(Eval.eval(term, env, globals));
+            case Term.InferableTF tf -> {
+                Kont before = enterTermFormer();
+                tf.step(stepper, env, globals);
+                leaveTermFormer(before);
+            }
+            case Term.CheckableTF tf -> {
+                Kont before = enterTermFormer();
+                tf.step(stepper, env, globals);
+                leaveTermFormer(before);
+            }
+        }
+    }
+
+    private void ascend(Kont frame) {
+        switch (frame) {
+            case EvalArg(
+                    Term.Checkable arg,
+                    SkewList<Value> argEnv,
+                    Globals.Snapshot argGlobals,
+                    Kont next
+            ) -> {
+                kont = new ApplyTo(value, next);
+                if (argGlobals.strategy() == Eval.Strategy.CALL_BY_NEED) {
+                    // 按需求值时参数交给解释器创建 thunk，强制求值时也由解释器完成
+                    value = Eval.delay(arg, argEnv, argGlobals);
+                } else {
+                    control = arg;
+                    env = argEnv;
+                    globals = argGlobals;
+                }
+            }
+            case ApplyTo(Value func, Kont next) -> {
+                kont = next;
+                apply(func, value);
+            }
+            case MakePi(
+                    Node node,
+                    Term.Checkable out,
+                    SkewList<Value> outEnv,
+                    Globals.Snapshot outGlobals,
+                    Kont next
+            ) -> {
+                kont = next;
+                value = new Value.VPi(node, Type.of(value), new Closure(out, outEnv, outGlobals));
+            }
+            case Resume(Then then, Kont next) -> {
+                kont = next;
+                Value result = value;
+                Kont before = enterTermFormer();
+                then.resume(stepper, result);
+                leaveTermFormer(before);
+            }
+        }
+    }
+
+    private void apply(Value func, Value arg) {
+        while (func instanceof Value.VThunk thunk) {
+            func = thunk.force();
+        }
+        if (func instanceof Value.VLam(Node _, Closure body) && Eval.interprets(body)) {
+            control = body.body();
+            env = body.env().cons(arg);
+            globals = body.globals();
+        } else {
+            value = Eval.vApp(func, arg);
+        }
+    }
+
+    private void ret(Value result) {
+        control = null;
+        value = result;
+    }
+
+    private Kont enterTermFormer() {
+        control = null;
+        value = null;
+        return kont;
+    }
+
+    private void leaveTermFormer(Kont before) {
+        if (control == null && value == null && kont == before) {
+            throw new IllegalStateException("Term former did not make a step");
+        }
+    }
+
+    private final class Stepper implements Step {
+        @Override
+        public void ret(@NotNull Value value) {
+            Machine.this.ret(value);
+        }
+
+        @Override
+        public void eval(
+                @NotNull Term term,
+                @NotNull SkewList<Value> env,
+                @NotNull Globals.Snapshot globals,
+                @NotNull Then then
+        ) {
+            kont = new Resume(then, kont);
+            control = term;
+            Machine.this.env = env;
+            Machine.this.globals = globals;
+        }
+
+        @Override
+        public void apply(@NotNull Value func, @NotNull Value arg, @NotNull Then then) {
+            kont = new ApplyTo(func, new Resume(then, kont));
+            value = arg;
+        }
+    }
+
+    private sealed interface Kont {}
+
+    private record EvalArg(
+            Term.Checkable arg,
+            SkewList<Value> env,
+            Globals.Snapshot globals,
+            @Nullable Kont next
+    ) implements Kont {}
+
+    private record ApplyTo(Value func, @Nullable Kont next) implements Kont {}
+
+    private record MakePi(
+            Node node,
+            Term.Checkable out,
+            SkewList<Value> env,
+            Globals.Snapshot globals,
+            @Nullable Kont next
+    ) implements Kont {}
+
+    private record Resume(Then then, @Nullable Kont next) implements Kont {}
+
+    private @Nullable Term control;
+    private Value value;
+    private @NotNull SkewList<Value> env;
+    private @NotNull Globals.Snapshot globals;
+    private @Nullable Kont kont;
+    private long steps;
+    private final Stepper stepper = new Stepper();
+}
@@ -0,0 +1,675 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Token;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/// `:include` 加载过的模块的二进制缓存
+///
+/// 检查完一个文件之后，每个声明展开得到的词项和推导出的类型由 {@link TermCodec} 编码，
+/// 写进与源文件相邻的缓存文件。
+/// 缓存记录源文件内容的哈希和加载它之前会话的摘要 {@link #upstream}，两者都没有变化时，
+/// 再次加载直接读回词项，只求值而不展开和检查。
+///
+/// 会话的摘要把之前加载的模块和输入的声明依次串联起来。摘要相同说明会话经过了相同的输入，
+/// 全局定义表的内容和槽位编号也都相同，所以词项中的全局引用直接记录槽位编号；
+/// 源码位置记录为声明语法树中节点的先序编号，读回时指向重新解析得到的同一个节点。
+///
+/// 缓存文件通过内存映射读取。文件头之后是每个声明的偏移量、每个槽位的名字和位置，以及按名字排序的索引，
+/// 每个声明单独编码，所以 {@link Library} 不必解析源文件，也不必读出整个文件，
+/// 只解码真正用到的定义
+public final class ModuleCache {
+    /// 缓存中的一个声明
+    public sealed interface Decl {}
+
+    /// 公理展开得到的类型
+    public record Axiom(@NotNull Term type) implements Decl {}
+
+    /// 定义展开得到的词项和推导出的类型
+    public record Defun(@NotNull Term value, @NotNull Term type) implements Decl {}
+
+    /// `check` 求出的正规形式和类型
+    public record Check(@NotNull Term normalForm, @NotNull Term type) implements Decl {}
+
+    /// 之前加载的模块和输入的声明串联而成的摘要
+    public byte @NotNull [] upstream() {
+        return upstream.clone();
+    }
+
+    /// 记录模块 `source` 已经完整加载
+    public void loaded(byte @NotNull [] source) {
+        upstream = chain((byte) 'M', source);
+    }
+
+    /// 记录会话中输入的 `input` 修改了全局定义表
+    public void entered(@NotNull String input) {
+        upstream = chain((byte) 'I', input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /// 会话的状态无法由输入重现，例如模块只加载了一部分。之后直到 {@link #clear} 都不会命中缓存
+    public void invalidate() {
+        ThreadLocalRandom.current().nextBytes(upstream);
+    }
+
+    public void clear() {
+        upstream = new byte[DIGEST_SIZE];
+    }
+
+    public static byte @NotNull [] hash(@NotNull String content) {
+        return sha256().digest(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /// 文件内容的哈希，与 {@link #hash(String)} 对文件内容的结果相同，但不需要把文件读成字符串
+    public static byte @NotNull [] hash(@NotNull Path path) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(map(path));
+        return digest.digest();
+    }
+
+    /// 源文件 `foo.lp` 的缓存文件 `foo.lpc`
+    public static @NotNull Path cachePath(@NotNull Path source) {
+        String name = source.getFileName().toString();
+        if (name.endsWith(".lp")) {
+            name = name.substring(0, name.length() - ".lp".length());
+        }
+        return source.resolveSibling(name + ".lpc");
+    }
+
+    /// 打开缓存文件。文件不存在、格式不对，或者源文件的哈希和会话的摘要与缓存不符时返回 `null`
+    public static @Nullable Reader open(
+            @NotNull Path path,
+            byte @NotNull [] source,
+            byte @NotNull [] upstream,
+            int size
+    ) throws IOException {
+        Mapped file = Mapped.open(path, source, upstream);
+        return file != null && file.items == size ? new Reader(file) : null;
+    }
+
+    /// 把缓存文件作为库延迟加载，条件与 {@link #open} 相同，只是不需要解析源文件
+    ///
+    /// 库中的槽位创建时调用 `created`，参数是槽位和声明在 {@link ResultCache} 中的键。
+    /// 模块引用了加载时重新检查产生的槽位时，库中没有对应的定义，不能延迟加载，返回 `null`
+    public static @Nullable Library library(
+            @NotNull Path path,
+            byte @NotNull [] source,
+            byte @NotNull [] upstream,
+            @NotNull BiConsumer<Globals.Slot, String> created
+    ) throws IOException {
+        Mapped file = Mapped.open(path, source, upstream);
+        return file != null && file.base >= 0 ? new Library(file, created) : null;
+    }
+
+    /// 按声明的顺序读回缓存。每个声明在它之前的声明都提交之后再读，这时它引用的槽位都已经存在
+    public static final class Reader {
+        private Reader(@NotNull Mapped file) {
+            this.file = file;
+        }
+
+        public @NotNull Decl next(@NotNull PNode item, @NotNull Globals.Snapshot snapshot)
+            throws IOException
+        {
+            if (next == file.items) {
+                throw new IOException("Module cache has no more declarations");
+            }
+            DataInputStream in = file.item(next++);
+            // 按顺序读回时会话与写入时相同，槽位编号不需要转换
+            TermCodec.Decoder decoder = decoder(in, snapshot, index -> index);
+            List<Node> nodes = nodes(root(item));
+            int kind = in.readByte();
+            return switch (item) {
+                case PNode.Axiom _ when kind == AXIOM -> new Axiom(decoder.term(nodes));
+                case PNode.Defun _ when kind == DEFUN -> {
+                    Term type = decoder.term(nodes);
+                    yield new Defun(decoder.term(nodes), type);
+                }
+                case PNode.Check _ when kind == CHECK -> new Check(decoder.term(nodes), decoder.term(nodes));
+                default -> throw new IOException("Module cache does not match declaration " + item);
+            };
+        }
+
+        private final @NotNull Mapped file;
+        private int next;
+    }
+
+    /// 延迟加载的模块，交给 {@link Globals#load}
+    ///
+    /// 模块中的 `check` 不再输出。源文件没有被解析，读回的词项的源码位置都指向定义的名字。
+    /// 写入时模块自己的槽位之间可能夹着重新检查产生的槽位，库中的槽位却是连续的，
+    /// 所以引用模块自己的槽位时按槽位表换成库中的编号
+    public static final class Library implements Globals.Library {
+        private Library(@NotNull Mapped file, @NotNull BiConsumer<Globals.Slot, String> created) {
+            this.file = file;
+            this.created = created;
+        }
+
+        @Override
+        public int size() {
+            return file.slots;
+        }
+
+        /// 在按名字排序的索引中二分查找，同名的定义按编号排列，取最后一个
+        @Override
+        public int find(@NotNull String name) {
+            int low = 0;
+            int high = file.slots;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (name(file.indexed(mid)).compareTo(name) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == 0) {
+                return -1;
+            }
+            int local = file.indexed(low - 1);
+            return name(local).equals(name) ? local : -1;
+        }
+
+        @Override
+        public @NotNull String name(int local) {
+            return file.string(file.slotField(local, SLOT_NAME));
+        }
+
+        @Override
+        public boolean isAxiom(int local) {
+            try {
+                return file.kind(file.slotField(local, SLOT_ITEM)) == AXIOM;
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt module cache " + file.path, e);
+            }
+        }
+
+        @Override
+        public @NotNull Value value(int local, @NotNull Globals.Snapshot globals) {
+            Node node = node(local);
+            Term term = decode(local, globals, node, true);
+            if (term == null) {
+                return Value.vFree(node, new Name.Global(name(local)));
+            }
+            return Compile.evalDefinition(term, globals);
+        }
+
+        @Override
+        public @NotNull Type type(int local, @NotNull Globals.Snapshot globals) {
+            Term term = decode(local, globals, node(local), false);
+            assert term != null;
+            return Type.of(Eval.eval(term, globals));
+        }
+
+        @Override
+        public void created(int local, @NotNull Globals.Slot slot) {
+            int key = file.slotField(local, SLOT_KEY);
+            if (key >= 0) {
+                created.accept(slot, file.string(key));
+            }
+        }
+
+        /// 解码定义的值或类型。公理的值就是它自己，不需要解码，返回 `null`
+        private @Nullable Term decode(
+                int local,
+                @NotNull Globals.Snapshot globals,
+                @NotNull Node node,
+                boolean value
+        ) {
+            try {
+                DataInputStream in = file.item(file.slotField(local, SLOT_ITEM));
+                TermCodec.Decoder decoder = decoder(in, globals, this::index);
+                List<Node> nodes = Collections.nCopies(Integer.MAX_VALUE, node);
+                return switch (in.readByte()) {
+                    case AXIOM -> value ? null : decoder.term(nodes);
+                    case DEFUN -> {
+                        Term type = decoder.term(nodes);
+                        yield value ? decoder.term(nodes) : type;
+                    }
+                    default -> throw new IOException("Slot " + local + " is not defined by a declaration");
+                };
+            } catch (IOException e) {
+                // 加载时已经检查过文件头，缓存文件只会被整个替换，映射的内容不会改变
+                throw new IllegalStateException("Corrupt module cache " + file.path, e);
+            }
+        }
+
+        /// 写入时的槽位编号在库中的编号。槽位表按编号递增排列，二分查找；找不到时返回 -1
+        private int index(int written) {
+            if (written < file.base) {
+                return written;
+            }
+            int low = 0;
+            int high = file.slots - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int index = file.slotField(mid, SLOT_INDEX);
+                if (index < written) {
+                    low = mid + 1;
+                } else if (index > written) {
+                    high = mid - 1;
+                } else {
+                    return file.base + mid;
+                }
+            }
+            return -1;
+        }
+
+        private @NotNull Node node(int local) {
+            int line = file.slotField(local, SLOT_LINE);
+            int col = file.slotField(local, SLOT_COL);
+            return new Node.Var(new Token(Token.Kind.IDENT, name(local), line, col));
+        }
+
+        private final @NotNull Mapped file;
+        private final @NotNull BiConsumer<Globals.Slot, String> created;
+    }
+
+    /// 按声明的顺序收集检查结果，整个模块检查完毕后写入缓存文件
+    ///
+    /// 遇到无法写入缓存的词项时只记录下来，由 {@link #write} 报告，不影响检查本身
+    public static final class Writer {
+        /// 模块将要定义到 `globals` 中，之后每个声明在提交之前交给 {@link #add}
+        public Writer(byte @NotNull [] source, byte @NotNull [] upstream, @NotNull Globals globals) {
+            this.source = source.clone();
+            this.upstream = upstream.clone();
+            this.globals = globals;
+            this.base = globals.snapshot().size();
+        }
+
+        /// 添加一个声明，`key` 是它在 {@link ResultCache} 中的键，没有时为 `null`。
+        /// 声明还没有提交，它定义的名字接下来依次占据新的槽位
+        public void add(@NotNull PNode item, @NotNull Decl decl, @Nullable String key) {
+            if (failure != null) {
+                return;
+            }
+
+            IdentityHashMap<Node, Integer> nodes = new IdentityHashMap<>();
+            List<Node> order = nodes(root(item));
+            for (int i = 0; i < order.size(); i++) {
+                nodes.putIfAbsent(order.get(i), i);
+            }
+            // 不在声明语法树中的节点（例如读回产生的词项带着的节点）用整个声明的节点代替
+            ToIntFunction<Node> index = node -> nodes.getOrDefault(node, 0);
+
+            // 每个声明单独编码，可以不按顺序读回
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            TermCodec.Encoder encoder = new TermCodec.Encoder(out) {
+                @Override
+                protected void ref(@NotNull Globals.Slot slot) throws IOException {
+                    // 重新检查产生的槽位不属于模块，延迟加载时没有对应的定义
+                    if (slot.index >= base && !indices.contains(slot.index)) {
+                        library = false;
+                    }
+                    varint(slot.index);
+                    string(slot.name);
+                }
+            };
+            try {
+                switch (decl) {
+                    case Axiom(Term type) -> {
+                        out.writeByte(AXIOM);
+                        encoder.term(type, index);
+                    }
+                    case Defun(Term value, Term type) -> {
+                        // 先写类型，只需要类型时不必解码值
+                        out.writeByte(DEFUN);
+                        encoder.term(type, index);
+                        encoder.term(value, index);
+                    }
+                    case Check(Term normalForm, Term type) -> {
+                        out.writeByte(CHECK);
+                        encoder.term(normalForm, index);
+                        encoder.term(type, index);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+
+            int itemIndex = items.size();
+            items.add(body.toByteArray());
+            List<Token> names = switch (item) {
+                case PNode.Axiom(List<Token> axiomNames, Node _) -> axiomNames;
+                case PNode.Defun(Token name, Node _) -> List.of(name);
+                default -> List.of();
+            };
+            int next = globals.snapshot().size();
+            for (Token name : names) {
+                indices.add(next);
+                slots.add(new SlotEntry(itemIndex, name, key, next++));
+            }
+        }
+
+        /// 写入缓存文件
+        public void write(@NotNull Path path) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+
+            // 字符串区：每个槽位的名字和键
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+            DataOutputStream stringsOut = new DataOutputStream(strings);
+            int stringsStart = HEADER_SIZE
+                               + items.size() * ITEM_ENTRY_SIZE
+                               + slots.size() * (SLOT_ENTRY_SIZE + INDEX_ENTRY_SIZE);
+            int[] nameOffsets = new int[slots.size()];
+            int[] keyOffsets = new int[slots.size()];
+            for (int i = 0; i < slots.size(); i++) {
+                SlotEntry slot = slots.get(i);
+                nameOffsets[i] = stringsStart + strings.size();
+                writeString(stringsOut, slot.name.lexeme);
+                keyOffsets[i] = -1;
+                if (slot.key != null) {
+                    keyOffsets[i] = stringsStart + strings.size();
+                    writeString(stringsOut, slot.key);
+                }
+            }
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream(stringsStart + strings.size());
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(source);
+            out.write(upstream);
+            out.writeInt(library ? base : -1);
+            out.writeInt(items.size());
+            out.writeInt(slots.size());
+
+            int offset = stringsStart + strings.size();
+            for (byte[] item : items) {
+                out.writeInt(offset);
+                out.writeInt(item.length);
+                offset += item.length;
+            }
+            for (int i = 0; i < slots.size(); i++) {
+                SlotEntry slot = slots.get(i);
+                out.writeInt(slot.item);
+                out.writeInt(nameOffsets[i]);
+                out.writeInt(keyOffsets[i]);
+                out.writeInt(slot.name.line);
+                out.writeInt(slot.name.col);
+                out.writeInt(slot.index);
+            }
+            Integer[] sorted = new Integer[slots.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = i;
+            }
+            // 排序是稳定的，同名的槽位保持定义的顺序
+            Arrays.sort(sorted, Comparator.comparing(i -> slots.get(i).name.lexeme));
+            for (int local : sorted) {
+                out.writeInt(local);
+            }
+
+            strings.writeTo(file);
+            for (byte[] item : items) {
+                out.write(item);
+            }
+            writeAtomically(path, file.toByteArray());
+        }
+
+        /// `index` 是写入时的槽位编号
+        private record SlotEntry(int item, @NotNull Token name, @Nullable String key, int index) {}
+
+        private final byte @NotNull [] source;
+        private final byte @NotNull [] upstream;
+        private final @NotNull Globals globals;
+        /// 模块的第一个槽位的编号
+        private final int base;
+        private final List<byte[]> items = new ArrayList<>();
+        private final List<SlotEntry> slots = new ArrayList<>();
+        /// 模块自己的槽位的编号
+        private final HashSet<Integer> indices = new HashSet<>();
+        /// 是否可以作为库延迟加载
+        private boolean library = true;
+        private @Nullable IOException failure;
+    }
+
+    /// 映射到内存的缓存文件，只用绝对位置读取，可以在多个线程中共享
+    private static final class Mapped {
+        private Mapped(@NotNull Path path, @NotNull ByteBuffer buffer, int base, int items, int slots) {
+            this.path = path;
+            this.buffer = buffer;
+            this.base = base;
+            this.items = items;
+            this.slots = slots;
+        }
+
+        static @Nullable Mapped open(
+                @NotNull Path path,
+                byte @NotNull [] source,
+                byte @NotNull [] upstream
+        ) throws IOException {
+            ByteBuffer buffer;
+            try {
+                buffer = map(path);
+            } catch (NoSuchFileException _) {
+                return null;
+            }
+            if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION
+                || !buffer.slice(8, DIGEST_SIZE).equals(ByteBuffer.wrap(source))
+                || !buffer.slice(8 + DIGEST_SIZE, DIGEST_SIZE).equals(ByteBuffer.wrap(upstream))) {
+                return null;
+            }
+
+            int base = buffer.getInt(HEADER_SIZE - 12);
+            int items = buffer.getInt(HEADER_SIZE - 8);
+            int slots = buffer.getInt(HEADER_SIZE - 4);
+            long tables = HEADER_SIZE
+                          + (long) items * ITEM_ENTRY_SIZE
+                          + (long) slots * (SLOT_ENTRY_SIZE + INDEX_ENTRY_SIZE);
+            if (items < 0 || slots < 0 || tables > buffer.limit()) {
+                return null;
+            }
+            return new Mapped(path, buffer, base, items, slots);
+        }
+
+        @NotNull DataInputStream item(int item) throws IOException {
+            int entry = HEADER_SIZE + item * ITEM_ENTRY_SIZE;
+            try {
+                byte[] bytes = new byte[buffer.getInt(entry + 4)];
+                buffer.get(buffer.getInt(entry), bytes);
+                return new DataInputStream(new ByteArrayInputStream(bytes));
+            } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("Corrupt module cache " + path, e);
+            }
+        }
+
+        int kind(int item) throws IOException {
+            try {
+                return buffer.get(buffer.getInt(HEADER_SIZE + item * ITEM_ENTRY_SIZE));
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt module cache " + path, e);
+            }
+        }
+
+        int slotField(int local, int field) {
+            return buffer.getInt(HEADER_SIZE + items * ITEM_ENTRY_SIZE + local * SLOT_ENTRY_SIZE + field);
+        }
+
+        /// 按名字排序的第 `i` 个槽位
+        int indexed(int i) {
+            return buffer.getInt(HEADER_SIZE + items * ITEM_ENTRY_SIZE + slots * SLOT_ENTRY_SIZE
+                                 + i * INDEX_ENTRY_SIZE);
+        }
+
+        @NotNull String string(int offset) {
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            buffer.get(offset + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final @NotNull Path path;
+        final @NotNull ByteBuffer buffer;
+        /// 模块的第一个槽位的编号，不能作为库加载时为 -1
+        final int base;
+        final int items;
+        final int slots;
+    }
+
+    /// `index` 把写入时的槽位编号换成 `snapshot` 中的编号
+    private static @NotNull TermCodec.Decoder decoder(
+            @NotNull DataInputStream in,
+            @NotNull Globals.Snapshot snapshot,
+            @NotNull IntUnaryOperator index
+    ) {
+        // 全局引用记录为槽位编号和名字，名字只用来发现损坏的缓存
+        return new TermCodec.Decoder(in) {
+            @Override
+            protected @NotNull Globals.Slot ref() throws IOException {
+                Globals.Slot slot;
+                try {
+                    slot = snapshot.slot(index.applyAsInt(varint()));
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException("Module cache refers to an undefined global", e);
+                }
+                if (!slot.name.equals(string())) {
+                    throw new IOException("Module cache refers to a different global " + slot);
+                }
+                return slot;
+            }
+        };
+    }
+
+    /// 只读映射整个文件。映射在通道关闭之后仍然有效；缓存文件只会被整个替换，映射的内容不会改变
+    private static @NotNull ByteBuffer map(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @NotNull String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /// 先写临时文件再替换，同时读取的会话不会读到写了一半的文件
+    static void writeAtomically(@NotNull Path path, byte @NotNull [] bytes) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), ".lpc", ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static @NotNull Node root(@NotNull PNode item) {
+        return switch (item) {
+            case PNode.Axiom axiom -> axiom.type();
+            case PNode.Defun defun -> defun.value();
+            case PNode.Check(Node term) -> term;
+            case PNode.Program _ -> throw new IllegalArgumentException(
+                    "Nested program should be cached item by item"
+            );
+        };
+    }
+
+    /// 语法树中节点的先序排列
+    private static @NotNull List<Node> nodes(@NotNull Node root) {
+        List<Node> order = new ArrayList<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            order.add(node);
+            List<Node> children = switch (node) {
+                case Node.Ann(Node term, Node annotation) -> List.of(term, annotation);
+                case Node.Aster _, Node.Var _ -> List.of();
+                case Node.Pi(Token _, Node paramType, Node body) -> List.of(paramType, body);
+                case Node.App(Node func, List<Node> args) -> {
+                    List<Node> all = new ArrayList<>(args.size() + 1);
+                    all.add(func);
+                    all.addAll(args);
+                    yield all;
+                }
+                case Node.Lam(Token _, Node body) -> List.of(body);
+                case Node.VecLit(Token _, Node type, List<Node> elements) -> {
+                    List<Node> all = new ArrayList<>(elements.size() + 1);
+                    all.add(type);
+                    all.addAll(elements);
+                    yield all;
+                }
+            };
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        return order;
+    }
+
+    private byte @NotNull [] chain(byte tag, byte @NotNull [] data) {
+        MessageDigest digest = sha256();
+        digest.update(upstream);
+        digest.update(tag);
+        digest.update(data);
+        return digest.digest();
+    }
+
+    static @NotNull MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    private static final int MAGIC = 0x4C50494D; // "LPIM"
+    private static final int VERSION = 3;
+    private static final int DIGEST_SIZE = 32;
+
+    // 文件头依次是魔数、版本、源文件的哈希、会话的摘要、模块的第一个槽位的编号、声明个数和槽位个数
+    private static final int HEADER_SIZE = 20 + 2 * DIGEST_SIZE;
+    // 声明的偏移量和长度
+    private static final int ITEM_ENTRY_SIZE = 8;
+    // 槽位所在的声明、名字和键在字符串区的偏移量、名字的行号和列号、写入时的槽位编号
+    private static final int SLOT_ENTRY_SIZE = 24;
+    private static final int SLOT_ITEM = 0;
+    private static final int SLOT_NAME = 4;
+    private static final int SLOT_KEY = 8;
+    private static final int SLOT_LINE = 12;
+    private static final int SLOT_COL = 16;
+    private static final int SLOT_INDEX = 20;
+    // 按名字排序的槽位编号
+    private static final int INDEX_ENTRY_SIZE = 4;
+
+    private static final int AXIOM = 0;
+    private static final int DEFUN = 1;
+    private static final int CHECK = 2;
+
+    private byte @NotNull [] upstream = new byte[DIGEST_SIZE];
+}
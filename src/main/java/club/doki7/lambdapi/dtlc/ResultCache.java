@@ -0,0 +1,223 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.syntax.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// 按内容寻址的声明检查结果缓存
+///
+/// 声明的键是它展开得到的词项的哈希，其中每个全局引用都换成被引用的定义的摘要；
+/// 定义的摘要又由它自己的键和名字算出，所以键像 Merkle 树一样覆盖了声明直接和间接依赖的所有定义。
+/// 只有声明本身或者它依赖的定义真正改变时键才会改变，与声明在哪个文件、排在什么位置无关。
+///
+/// 键对应的检查结果（类型和正规形式）默认只保存在内存中；指定了目录时保存在磁盘上，不同的会话和进程可以共享。
+/// 命中的结果不再检查，所以磁盘上的目录必须是可信的，只在显式指定时使用。
+/// 结果中的全局引用同样记录为摘要，读回时换成当前会话中有相同摘要的槽位；找不到时当作没有命中。
+/// 多个检查线程可以同时查询和保存结果，提交定义仍然只在一个线程中进行
+public final class ResultCache {
+    /// 检查结果：`check` 和定义保存正规形式和类型，命中时定义的值由正规形式重建；
+    /// 公理没有需要保存的结果，两者都为 `null`
+    public record Result(@Nullable Term normalForm, @Nullable Term type) {}
+
+    /// `root` 为 `null` 时结果只保存在内存中
+    public ResultCache(@Nullable Path root) {
+        this.root = root;
+    }
+
+    /// 系统属性 `lambdapi.cache` 指定的目录，没有指定时返回 `null`
+    public static @Nullable Path configuredRoot() {
+        String property = System.getProperty("lambdapi.cache");
+        return property != null && !property.isEmpty() ? Path.of(property) : null;
+    }
+
+    /// 声明的键，`kind` 区分公理、定义和 `check`。引用了没有摘要的槽位时返回 `null`，这样的声明不缓存
+    public @Nullable String key(char kind, @NotNull Term term) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TermCodec.Encoder encoder = new TermCodec.Encoder(out) {
+            @Override
+            protected void ref(@NotNull Globals.Slot slot) throws IOException {
+                String digest = digests.get(slot);
+                if (digest == null) {
+                    throw new IOException("Global " + slot + " has no digest");
+                }
+                string(digest);
+            }
+        };
+
+        try {
+            out.writeInt(VERSION);
+            out.writeChar(kind);
+            // 键只看词项的结构，不看源码位置
+            encoder.term(term, _ -> 0);
+        } catch (IOException _) {
+            return null;
+        }
+        return HexFormat.of().formatHex(ModuleCache.sha256().digest(bytes.toByteArray()));
+    }
+
+    /// 记录 `slot` 是由键为 `key` 的声明定义的
+    public void defined(@NotNull Globals.Slot slot, @NotNull String key) {
+        MessageDigest sha = ModuleCache.sha256();
+        sha.update(key.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(slot.name.getBytes(StandardCharsets.UTF_8));
+        String digest = HexFormat.of().formatHex(sha.digest());
+        digests.put(slot, digest);
+        slots.put(digest, slot);
+    }
+
+    /// 查询键为 `key` 的检查结果，读回的词项的源码位置都指向 `node`
+    public @Nullable Result lookup(
+            @NotNull String key,
+            @NotNull Globals.Snapshot snapshot,
+            @NotNull Node node
+    ) {
+        byte[] bytes;
+        try {
+            bytes = root != null ? Files.readAllBytes(path(key)) : memory.get(key);
+        } catch (IOException _) {
+            return miss();
+        }
+        if (bytes == null) {
+            return miss();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        TermCodec.Decoder decoder = new TermCodec.Decoder(in) {
+            @Override
+            protected @NotNull Globals.Slot ref() throws IOException {
+                Globals.Slot slot = slots.get(string());
+                if (slot == null) {
+                    throw new IOException("Result refers to a global that is not defined");
+                }
+                return slot;
+            }
+
+            @Override
+            protected @NotNull String free() throws IOException {
+                String name = string();
+                Globals.Slot slot = snapshot.lookup(name);
+                String digest = slot != null ? digests.get(slot) : "";
+                if (!string().equals(digest)) {
+                    throw new IOException("Result refers to a global that has been redefined");
+                }
+                return name;
+            }
+        };
+
+        try {
+            if (in.readInt() != VERSION) {
+                return miss();
+            }
+            List<Node> nodes = List.of(node);
+            int shape = in.readByte();
+            Term normalForm = (shape & HAS_NORMAL_FORM) != 0 ? decoder.term(nodes) : null;
+            Term type = (shape & HAS_TYPE) != 0 ? decoder.term(nodes) : null;
+            hits.incrementAndGet();
+            return new Result(normalForm, type);
+        } catch (IOException _) {
+            return miss();
+        }
+    }
+
+    /// 找不到、无法读取或者无法使用的结果都算作没有命中
+    private @Nullable Result miss() {
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /// 保存键为 `key` 的检查结果。无法保存时直接放弃，下次重新检查即可
+    public void store(@NotNull String key, @NotNull Result result, @NotNull Globals.Snapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TermCodec.Encoder encoder = new TermCodec.Encoder(out) {
+            @Override
+            protected void ref(@NotNull Globals.Slot slot) throws IOException {
+                String digest = digests.get(slot);
+                if (digest == null) {
+                    throw new IOException("Global " + slot + " has no digest");
+                }
+                string(digest);
+            }
+
+            // 读回时按名字查找的全局量，同时记下它当时的定义，读回时定义不同就不能使用
+            @Override
+            protected void free(@NotNull String name) throws IOException {
+                Globals.Slot slot = snapshot.lookup(name);
+                String digest = slot != null ? digests.get(slot) : "";
+                if (digest == null) {
+                    throw new IOException("Global " + slot + " has no digest");
+                }
+                string(name);
+                string(digest);
+            }
+        };
+
+        try {
+            out.writeInt(VERSION);
+            out.writeByte((result.normalForm != null ? HAS_NORMAL_FORM : 0)
+                          | (result.type != null ? HAS_TYPE : 0));
+            if (result.normalForm != null) {
+                encoder.term(result.normalForm, _ -> 0);
+            }
+            if (result.type != null) {
+                encoder.term(result.type, _ -> 0);
+            }
+
+            if (root == null) {
+                memory.put(key, bytes.toByteArray());
+                return;
+            }
+            Path path = path(key);
+            Files.createDirectories(path.getParent());
+            ModuleCache.writeAtomically(path, bytes.toByteArray());
+        } catch (IOException _) {
+            // 缓存只是加速手段
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /// 清空会话中槽位的摘要。保存的结果与会话无关，不受影响
+    public void clear() {
+        digests.clear();
+        slots.clear();
+    }
+
+    private @NotNull Path path(@NotNull String key) {
+        assert root != null;
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    private static final int VERSION = 2;
+    private static final int HAS_NORMAL_FORM = 1;
+    private static final int HAS_TYPE = 2;
+
+    private final @Nullable Path root;
+    private final ConcurrentHashMap<String, byte[]> memory = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Globals.Slot, String> digests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Globals.Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+}
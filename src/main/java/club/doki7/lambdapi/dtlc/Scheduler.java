@@ -0,0 +1,147 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.exc.LPiException;
+import club.doki7.lambdapi.syntax.PNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/// 并行检查程序中互不依赖的声明
+///
+/// 每个声明依赖于它用到的名字在它之前最后一次被定义的位置。声明 `k` 依赖的声明中最靠后的是
+/// `d` 时，提交完 `d` 之后的快照已经包含 `k` 用到的所有全局定义，而 `d` 和 `k` 之间的声明都没有
+/// 重新定义这些名字，所以在这个快照上检查 `k` 与顺序检查的结果相同。不依赖任何前面声明的
+/// 声明直接在开始时的快照上检查
+///
+/// 检查在线程池中进行，只读取不可变的快照；提交（定义全局量、输出结果）总是在调用者的线程中按源码
+/// 顺序进行。遇到第一个失败的声明时抛出它的异常，它之前的声明都已经提交，之后的声明都不会提交
+public final class Scheduler {
+    /// 在快照上检查一个声明，不修改全局定义表
+    @FunctionalInterface
+    public interface Check<R> {
+        @NotNull R check(@NotNull PNode decl, @NotNull Globals.Snapshot snapshot)
+            throws LPiException;
+    }
+
+    /// 按源码顺序检查并提交 `decls`。嵌套的 {@link PNode.Program} 会被展开
+    public static <R> void run(
+            @NotNull ForkJoinPool pool,
+            @NotNull List<PNode> decls,
+            @NotNull Globals globals,
+            @NotNull Check<R> check,
+            @NotNull Consumer<R> commit
+    ) throws LPiException {
+        List<PNode> items = flatten(decls);
+        Globals.Snapshot snapshot = globals.snapshot();
+        int[] lastDependency = dependencies(items, snapshot);
+
+        // waiting[d] 是最后依赖于 d 的声明，提交 d 之后就可以开始检查它们
+        List<List<Integer>> waiting = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            waiting.add(new ArrayList<>());
+        }
+        List<ForkJoinTask<Outcome<R>>> tasks = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            tasks.add(null);
+            if (lastDependency[i] == -1) {
+                tasks.set(i, submit(pool, check, items.get(i), snapshot));
+            } else {
+                waiting.get(lastDependency[i]).add(i);
+            }
+        }
+
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                Outcome<R> outcome = tasks.get(i).join();
+                if (outcome.error != null) {
+                    throw outcome.error;
+                }
+                commit.accept(outcome.checked);
+
+                if (!waiting.get(i).isEmpty()) {
+                    snapshot = globals.snapshot();
+                    for (int j : waiting.get(i)) {
+                        tasks.set(j, submit(pool, check, items.get(j), snapshot));
+                    }
+                }
+            }
+        } finally {
+            // 失败之后已经开始的检查不再需要，还没开始的直接取消
+            for (ForkJoinTask<Outcome<R>> task : tasks) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /// 每个声明最后依赖的声明的下标，不依赖前面的声明时为 `-1`
+    ///
+    /// 声明用到的名字由 {@link DependencyGraph#usedNames} 给出，其中的常量名等不是全局定义的名字只会被忽略。
+    /// 重新定义已有名字的声明在提交时还会重新检查依赖这个名字的定义，之后的声明看到的可能是
+    /// 重新检查过的定义，所以它们都要等这个声明提交之后再开始
+    static int[] dependencies(@NotNull List<PNode> items, @NotNull Globals.Snapshot snapshot) {
+        int[] lastDependency = new int[items.size()];
+        HashMap<String, Integer> definedAt = new HashMap<>();
+        int lastRedefinition = -1;
+        for (int i = 0; i < items.size(); i++) {
+            PNode item = items.get(i);
+            int last = lastRedefinition;
+            for (String name : DependencyGraph.usedNames(item)) {
+                Integer at = definedAt.get(name);
+                if (at != null) {
+                    last = Math.max(last, at);
+                }
+            }
+            lastDependency[i] = last;
+
+            for (String name : DependencyGraph.definedNames(item)) {
+                if (definedAt.containsKey(name) || snapshot.lookup(name) != null) {
+                    lastRedefinition = i;
+                }
+                definedAt.put(name, i);
+            }
+        }
+        return lastDependency;
+    }
+
+    /// 展开嵌套的 {@link PNode.Program}，得到按源码顺序排列的声明
+    static List<PNode> flatten(List<PNode> decls) {
+        List<PNode> items = new ArrayList<>();
+        ArrayDeque<PNode> stack = new ArrayDeque<>(decls);
+        while (!stack.isEmpty()) {
+            PNode decl = stack.pop();
+            if (decl instanceof PNode.Program(List<PNode> nested)) {
+                nested.reversed().forEach(stack::push);
+            } else {
+                items.add(decl);
+            }
+        }
+        return items;
+    }
+
+    private static <R> ForkJoinTask<Outcome<R>> submit(
+            ForkJoinPool pool,
+            Check<R> check,
+            PNode decl,
+            Globals.Snapshot snapshot
+    ) {
+        return pool.submit(() -> {
+            try {
+                return new Outcome<>(check.check(decl, snapshot), null);
+            } catch (LPiException e) {
+                return new Outcome<>(null, e);
+            }
+        });
+    }
+
+    /// 检查的结果或者检查时抛出的异常，留到按顺序提交到它时再处理
+    private record Outcome<R>(@Nullable R checked, @Nullable LPiException error) {}
+}
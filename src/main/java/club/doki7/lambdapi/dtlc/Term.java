@@ -4,17 +4,18 @@ import club.doki7.lambdapi.common.DeBruijnIndex;
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.exc.TypeCheckException;
 import club.doki7.lambdapi.syntax.Node;
-import club.doki7.lambdapi.util.ConsList;
-import club.doki7.lambdapi.util.Pair;
+import club.doki7.lambdapi.util.SkewList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
-import java.util.Objects;
+import java.util.List;
 
+/// 核心语法的词项
+///
+/// 词项的相等性和哈希只看结构，不考虑源码位置。相等性和哈希由 {@link HashCons} 计算，规范词项的哈希只计算一次
 public sealed interface Term {
     @NotNull Node node();
 
-    sealed interface Inferable extends Term permits Ann, Star, Pi, Bound, Free, App, InferableTF {}
+    sealed interface Inferable extends Term permits Ann, Star, Pi, Bound, Free, GlobalRef, App, InferableTF {}
     sealed interface Checkable extends Term permits Inf, Lam, CheckableTF {}
 
     record Ann(@NotNull Node node, @NotNull Checkable term, @NotNull Checkable annotation)
@@ -25,18 +26,21 @@ public sealed interface Term {
             if (this == o) return true;
             if (!(o instanceof Ann ann)) return false;
 
-            return term.equals(ann.term) && annotation.equals(ann.annotation);
+            return HashCons.equals(this, ann);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(term, annotation);
+            return HashCons.hashCode(this);
         }
 
         @Override
         public @NotNull String toString() {
             if (term instanceof Checkable.Inf(Node _, Inferable inf)) {
-                if (inf instanceof Star || inf instanceof Free || inf instanceof Bound) {
+                if (inf instanceof Star
+                    || inf instanceof Free
+                    || inf instanceof GlobalRef
+                    || inf instanceof Bound) {
                     return term + " : " + annotation;
                 }
             }
@@ -53,7 +57,7 @@ public sealed interface Term {
 
         @Override
         public int hashCode() {
-            return Star.class.hashCode();
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -70,12 +74,12 @@ public sealed interface Term {
             if (this == o) return true;
             if (!(o instanceof Pi pi)) return false;
 
-            return paramType.equals(pi.paramType) && bodyType.equals(pi.bodyType);
+            return HashCons.equals(this, pi);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(paramType, bodyType);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -98,7 +102,7 @@ public sealed interface Term {
 
         @Override
         public int hashCode() {
-            return Objects.hash(Bound.class, index);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -118,7 +122,7 @@ public sealed interface Term {
 
         @Override
         public int hashCode() {
-            return Objects.hash(Free.class, name);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -127,6 +131,27 @@ public sealed interface Term {
         }
     }
 
+    /// 在 elaboration 阶段已经链接到全局定义表槽位的全局变量引用
+    record GlobalRef(@NotNull Node node, @NotNull Globals.Slot slot) implements Inferable {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GlobalRef ref)) return false;
+
+            return this.slot == ref.slot;
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCons.hashCode(this);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return slot.name;
+        }
+    }
+
     record App(@NotNull Node node, @NotNull Inferable f, @NotNull Checkable arg)
             implements Inferable
     {
@@ -135,12 +160,12 @@ public sealed interface Term {
             if (this == o) return true;
             if (!(o instanceof App app)) return false;
 
-            return this.f.equals(app.f) && this.arg.equals(app.arg);
+            return HashCons.equals(this, app);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(f, arg);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -173,12 +198,12 @@ public sealed interface Term {
             if (this == o) return true;
             if (!(o instanceof Inf inf)) return false;
 
-            return this.inferable.equals(inf.inferable);
+            return HashCons.equals(this, inf);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(inferable);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -193,12 +218,12 @@ public sealed interface Term {
             if (this == o) return true;
             if (!(o instanceof Lam lam)) return false;
 
-            return this.body.equals(lam.body);
+            return HashCons.equals(this, lam);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(body);
+            return HashCons.hashCode(this);
         }
 
         @Override
@@ -207,22 +232,23 @@ public sealed interface Term {
         }
     }
 
-    interface ITermFormer<T> {
-        Value eval(ConsList<Value> env, Map<String, Value> globals);
+    interface ITermFormer {
+        Value eval(SkewList<Value> env, Globals.Snapshot globals);
 
-        T subst(int depth, Term.Free r);
+        /// 除源码位置以外的分量，按固定的顺序排列。相等性和哈希只看这些分量，子项也可以放在列表中
+        @NotNull List<?> parts();
+
+        /// 在 {@link Machine} 中求值。默认实现直接调用 {@link #eval}，一步得到结果
+        default void step(Machine.Step step, SkewList<Value> env, Globals.Snapshot globals) {
+            step.ret(eval(env, globals));
+        }
     }
 
-    non-sealed interface CheckableTF extends Term.Checkable, ITermFormer<CheckableTF> {
-        void check(int depth,
-                   ConsList<Pair<Name.Local, Type>> ctx,
-                   Globals globals,
-                   Type expected) throws TypeCheckException;
+    non-sealed interface CheckableTF extends Term.Checkable, ITermFormer {
+        void check(Context ctx, Type expected) throws TypeCheckException;
     }
 
-    non-sealed interface InferableTF extends Term.Inferable, ITermFormer<InferableTF> {
-        Type infer(int depth,
-                   ConsList<Pair<Name.Local, Type>> ctx,
-                   Globals globals) throws TypeCheckException;
+    non-sealed interface InferableTF extends Term.Inferable, ITermFormer {
+        Type infer(Context ctx) throws TypeCheckException;
     }
 }
@@ -0,0 +1,355 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.syntax.Node;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
+
+/// 词项的二进制编码，由 {@link ModuleCache} 和 {@link ResultCache} 共用
+///
+/// 词项按后序写出：先写子词项，再写自己的标签和数据，读回时只需要一个栈，不受 Java 调用栈深度的限制。
+/// 源码位置写成节点的编号，由调用者决定编号的含义。项构造器按记录的组成部分通用地编码，
+/// 只支持源码位置、子词项、子词项的列表和大整数。
+/// 全局引用和自由的全局名字在不同的缓存中有不同的含义，由子类决定怎样编码
+final class TermCodec {
+    abstract static class Encoder {
+        Encoder(@NotNull DataOutputStream out) {
+            this.out = out;
+        }
+
+        /// 写出全局引用。无法编码时抛出异常，整个词项都不写入缓存
+        protected abstract void ref(@NotNull Globals.Slot slot) throws IOException;
+
+        /// 写出自由的全局名字，默认只写名字
+        protected void free(@NotNull String name) throws IOException {
+            string(name);
+        }
+
+        final void term(@NotNull Term root, @NotNull ToIntFunction<Node> nodes) throws IOException {
+            ArrayDeque<Object> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Object top = stack.pop();
+                if (top instanceof Emit(Term term)) {
+                    emit(term, nodes);
+                    continue;
+                }
+
+                Term term = (Term) top;
+                stack.push(new Emit(term));
+                List<Term> children = children(term);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+            out.writeByte(END);
+        }
+
+        /// 同一个编码器中重复出现的字符串只写一次
+        final void string(@NotNull String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null) {
+                varint(index);
+            } else {
+                varint(strings.size());
+                out.writeUTF(string);
+                strings.put(string, strings.size());
+            }
+        }
+
+        final void varint(int value) throws IOException {
+            writeVarint(out, value);
+        }
+
+        private void emit(@NotNull Term term, @NotNull ToIntFunction<Node> nodes) throws IOException {
+            int tag = switch (term) {
+                case Term.Star _ -> STAR;
+                case Term.Bound _ -> BOUND;
+                case Term.Free(Node _, Name name) -> switch (name) {
+                    case Name.Global _ -> FREE_GLOBAL;
+                    case Name.Local _ -> FREE_LOCAL;
+                    case Name.Quote _ -> FREE_QUOTE;
+                };
+                case Term.GlobalRef _ -> GLOBAL_REF;
+                case Term.Ann _ -> ANN;
+                case Term.Pi _ -> PI;
+                case Term.App _ -> APP;
+                case Term.Inf _ -> INF;
+                case Term.Lam _ -> LAM;
+                default -> FORMER;
+            };
+            out.writeByte(tag);
+            varint(nodes.applyAsInt(term.node()));
+
+            switch (term) {
+                case Term.Bound(Node _, int index) -> varint(index);
+                case Term.Free(Node _, Name.Global(String name)) -> free(name);
+                case Term.Free(Node _, Name.Local(int depth)) -> varint(depth);
+                case Term.Free(Node _, Name.Quote(int depth)) -> varint(depth);
+                case Term.GlobalRef(Node _, Globals.Slot slot) -> ref(slot);
+                default -> {
+                    if (tag == FORMER) {
+                        former(term);
+                    }
+                }
+            }
+        }
+
+        private void former(@NotNull Term term) throws IOException {
+            string(term.getClass().getName());
+            for (RecordComponent component : components(term.getClass())) {
+                Object value = get(component, term);
+                if (value instanceof BigInteger integer) {
+                    byte[] bytes = integer.toByteArray();
+                    varint(bytes.length);
+                    out.write(bytes);
+                } else if (value instanceof List<?> list) {
+                    varint(list.size());
+                }
+            }
+        }
+
+        private record Emit(@NotNull Term term) {}
+
+        protected final @NotNull DataOutputStream out;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+    }
+
+    abstract static class Decoder {
+        Decoder(@NotNull DataInputStream in) {
+            this.in = in;
+        }
+
+        protected abstract @NotNull Globals.Slot ref() throws IOException;
+
+        protected @NotNull String free() throws IOException {
+            return string();
+        }
+
+        /// 读回一个词项，`nodes` 是编码时的节点编号对应的节点。数据损坏时抛出 {@link IOException}
+        final @NotNull Term term(@NotNull List<Node> nodes) throws IOException {
+            try {
+                return read(nodes);
+            } catch (ClassCastException
+                     | IndexOutOfBoundsException
+                     | NoSuchElementException
+                     | NumberFormatException e) {
+                throw new IOException("Corrupt term encoding", e);
+            }
+        }
+
+        final @NotNull String string() throws IOException {
+            int index = varint();
+            if (index == strings.size()) {
+                strings.add(in.readUTF());
+            }
+            return strings.get(index);
+        }
+
+        final int varint() throws IOException {
+            return readVarint(in);
+        }
+
+        private @NotNull Term read(@NotNull List<Node> nodes) throws IOException {
+            ArrayDeque<Term> stack = new ArrayDeque<>();
+            while (true) {
+                int tag = in.readByte();
+                if (tag == END) {
+                    if (stack.size() != 1) {
+                        throw new IOException("Corrupt term encoding");
+                    }
+                    return stack.pop();
+                }
+
+                Node node = nodes.get(varint());
+                Term term = switch (tag) {
+                    case STAR -> new Term.Star(node);
+                    case BOUND -> new Term.Bound(node, varint());
+                    case FREE_GLOBAL -> new Term.Free(node, new Name.Global(free()));
+                    case FREE_LOCAL -> new Term.Free(node, new Name.Local(varint()));
+                    case FREE_QUOTE -> new Term.Free(node, new Name.Quote(varint()));
+                    case GLOBAL_REF -> new Term.GlobalRef(node, ref());
+                    case ANN -> {
+                        Term.Checkable annotation = (Term.Checkable) stack.pop();
+                        yield new Term.Ann(node, (Term.Checkable) stack.pop(), annotation);
+                    }
+                    case PI -> {
+                        Term.Checkable body = (Term.Checkable) stack.pop();
+                        yield new Term.Pi(node, (Term.Checkable) stack.pop(), body);
+                    }
+                    case APP -> {
+                        Term.Checkable arg = (Term.Checkable) stack.pop();
+                        yield new Term.App(node, (Term.Inferable) stack.pop(), arg);
+                    }
+                    case INF -> new Term.Inf(node, (Term.Inferable) stack.pop());
+                    case LAM -> new Term.Lam(node, (Term.Checkable) stack.pop());
+                    case FORMER -> former(node, stack);
+                    default -> throw new IOException("Corrupt term encoding: unknown tag " + tag);
+                };
+                stack.push(term);
+            }
+        }
+
+        private @NotNull Term former(@NotNull Node node, @NotNull ArrayDeque<Term> stack)
+            throws IOException
+        {
+            String className = string();
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, TermCodec.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown term former " + className, e);
+            }
+            RecordComponent[] components = components(clazz);
+
+            Object[] payload = new Object[components.length];
+            int children = 0;
+            for (int i = 0; i < components.length; i++) {
+                Class<?> type = components[i].getType();
+                if (type == BigInteger.class) {
+                    payload[i] = new BigInteger(in.readNBytes(varint()));
+                } else if (type == List.class) {
+                    int count = varint();
+                    payload[i] = count;
+                    children += count;
+                } else if (Term.class.isAssignableFrom(type)) {
+                    children++;
+                }
+            }
+
+            Term[] popped = new Term[children];
+            for (int i = children - 1; i >= 0; i--) {
+                popped[i] = stack.pop();
+            }
+
+            Object[] args = new Object[components.length];
+            Class<?>[] types = new Class<?>[components.length];
+            int next = 0;
+            for (int i = 0; i < components.length; i++) {
+                Class<?> type = components[i].getType();
+                types[i] = type;
+                if (type == Node.class) {
+                    args[i] = node;
+                } else if (type == BigInteger.class) {
+                    args[i] = payload[i];
+                } else if (type == List.class) {
+                    int count = (int) payload[i];
+                    args[i] = List.of(Arrays.copyOfRange(popped, next, next + count));
+                    next += count;
+                } else {
+                    args[i] = type.cast(popped[next++]);
+                }
+            }
+
+            try {
+                Constructor<?> ctor = clazz.getDeclaredConstructor(types);
+                return (Term) ctor.newInstance(args);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Cannot restore term former " + className, e);
+            }
+        }
+
+        protected final @NotNull DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+    }
+
+    static void writeVarint(@NotNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarint(@NotNull DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt term encoding: varint too long");
+    }
+
+    private static @NotNull List<Term> children(@NotNull Term term) throws IOException {
+        return switch (term) {
+            case Term.Star _, Term.Bound _, Term.Free _, Term.GlobalRef _ -> List.of();
+            case Term.Ann(Node _, Term.Checkable inner, Term.Checkable annotation) -> List.of(inner, annotation);
+            case Term.Pi(Node _, Term.Checkable paramType, Term.Checkable bodyType) ->
+                    List.of(paramType, bodyType);
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> List.of(f, arg);
+            case Term.Inf(Node _, Term.Inferable inferable) -> List.of(inferable);
+            case Term.Lam(Node _, Term.Checkable body) -> List.of(body);
+            default -> {
+                List<Term> children = new ArrayList<>();
+                for (RecordComponent component : components(term.getClass())) {
+                    Object value = get(component, term);
+                    if (value instanceof Term child) {
+                        children.add(child);
+                    } else if (value instanceof List<?> list) {
+                        for (Object element : list) {
+                            children.add((Term) element);
+                        }
+                    }
+                }
+                yield children;
+            }
+        };
+    }
+
+    private static @NotNull RecordComponent[] components(@NotNull Class<?> clazz) throws IOException {
+        if (!clazz.isRecord() || !Term.ITermFormer.class.isAssignableFrom(clazz)
+            || !Term.class.isAssignableFrom(clazz)) {
+            throw new IOException("Cannot encode term former " + clazz.getName());
+        }
+
+        RecordComponent[] components = clazz.getRecordComponents();
+        for (RecordComponent component : components) {
+            Class<?> type = component.getType();
+            if (type != Node.class
+                && type != BigInteger.class
+                && type != List.class
+                && !Term.class.isAssignableFrom(type)) {
+                throw new IOException("Cannot encode term former " + clazz.getName() + " with " + component);
+            }
+        }
+        return components;
+    }
+
+    private static Object get(@NotNull RecordComponent component, @NotNull Term term) throws IOException {
+        try {
+            return component.getAccessor().invoke(term);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot read term former " + term.getClass().getName(), e);
+        }
+    }
+
+    private static final int END = 0;
+    private static final int STAR = 1;
+    private static final int BOUND = 2;
+    private static final int FREE_GLOBAL = 3;
+    private static final int FREE_LOCAL = 4;
+    private static final int FREE_QUOTE = 5;
+    private static final int GLOBAL_REF = 6;
+    private static final int ANN = 7;
+    private static final int PI = 8;
+    private static final int APP = 9;
+    private static final int INF = 10;
+    private static final int LAM = 11;
+    private static final int FORMER = 12;
+}
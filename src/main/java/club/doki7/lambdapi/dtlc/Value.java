@@ -3,24 +3,33 @@ package club.doki7.lambdapi.dtlc;
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.syntax.Node;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.function.Function;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 public sealed interface Value {
     @NotNull Node node();
 
-    record VLam(@NotNull Node node, @NotNull Function<Value, Value> lam) implements Value {
+    record VLam(@NotNull Node node, @NotNull Closure body) implements Value {
         @Override
         public @NotNull String toString() {
             return "VLam";
         }
 
         @Override
-        public boolean equals(Object obj) {
-            throw new UnsupportedOperationException(
-                    "Cannot compare VLam values for equality. "
-                    + "Note: use reify to retrieve a syntactic representation from HOAS structures."
-            );
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VLam lam)) return false;
+
+            return body.equals(lam.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VLam.class, body);
         }
     }
 
@@ -41,26 +50,42 @@ public sealed interface Value {
         }
     }
 
-    record VPi(@NotNull Node node, @NotNull Type in, @NotNull Function<Value, Type> out)
-            implements Value
-    {
+    record VPi(@NotNull Node node, @NotNull Type in, @NotNull Closure out) implements Value {
         @Override
         public @NotNull String toString() {
             return "VPi";
         }
 
         @Override
-        public boolean equals(Object obj) {
-            throw new UnsupportedOperationException(
-                    "Cannot compare VPi values for equality. "
-                    + "Note: use reify to retrieve a syntactic representation from HOAS structures."
-            );
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VPi pi)) return false;
+
+            return in.equals(pi.in) && out.equals(pi.out);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VPi.class, in, out);
         }
     }
 
     sealed interface VNeutral extends Value permits NFree, NApp, CNeutral {}
 
     record NFree(@NotNull Node node, @NotNull Name name) implements VNeutral {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NFree free)) return false;
+
+            return name.equals(free.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(NFree.class, name);
+        }
+
         @Override
         public @NotNull String toString() {
             return name.toString();
@@ -70,23 +95,225 @@ public sealed interface Value {
     record NApp(@NotNull Node node, @NotNull VNeutral func, @NotNull Value arg)
             implements VNeutral
     {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NApp app)) return false;
+
+            return func.equals(app.func) && arg.equals(app.arg);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(NApp.class, func, arg);
+        }
+
         @Override
         public @NotNull String toString() {
             return "(" + func + " " + arg + ")";
         }
     }
 
+    /// 以全局定义为头部的粘合值 (glued value)
+    ///
+    /// 保留全局定义的槽位和已经应用的参数，展开后的值在第一次需要时才计算并缓存。
+    /// 转换检查可以先比较头部和参数，打印时也可以保留全局定义的名字。
+    /// 需要知道值的具体形状时，用 {@link Eval#force} 展开
+    final class VGlobal implements Value {
+        public VGlobal(@NotNull Node node, @NotNull Globals.Slot head) {
+            this(node, head, null, null);
+        }
+
+        private VGlobal(
+                @NotNull Node node,
+                @NotNull Globals.Slot head,
+                @Nullable VGlobal func,
+                @Nullable Value arg
+        ) {
+            this.node = node;
+            this.head = head;
+            this.func = func;
+            this.arg = arg;
+        }
+
+        @Override
+        public @NotNull Node node() {
+            return node;
+        }
+
+        public @NotNull Globals.Slot head() {
+            return head;
+        }
+
+        /// 按应用顺序返回全局定义的参数
+        public @NotNull List<Value> args() {
+            ArrayList<Value> args = new ArrayList<>();
+            for (VGlobal current = this; current.func != null; current = current.func) {
+                args.add(current.arg);
+            }
+            return args.reversed();
+        }
+
+        /// 没有应用任何参数，只是对全局定义本身的引用
+        public boolean isBare() {
+            return func == null;
+        }
+
+        public @NotNull VGlobal apply(@NotNull Value arg) {
+            return new VGlobal(node, head, this, arg);
+        }
+
+        public @NotNull Value unfold() {
+            Value cached = unfolded;
+            if (cached != null) {
+                return cached;
+            }
+
+            // 找到最近一个已经展开过的前缀，再从它开始依次应用剩下的参数
+            ArrayList<VGlobal> pending = new ArrayList<>();
+            VGlobal current = this;
+            while (current.unfolded == null && current.func != null) {
+                pending.add(current);
+                current = current.func;
+            }
+
+            // 并发展开时可能重复计算，结果相同，所以不加锁
+            Value value = current.unfolded;
+            if (value == null) {
+                value = current.head.value();
+                current.unfolded = value;
+            }
+            for (VGlobal global : pending.reversed()) {
+                value = Eval.vApp(value, global.arg);
+                global.unfolded = value;
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VGlobal global)) return false;
+
+            return head == global.head
+                   && Objects.equals(func, global.func)
+                   && Objects.equals(arg, global.arg);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VGlobal.class, head.index, func, arg);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return func == null ? head.name : "(" + func + " " + arg + ")";
+        }
+
+        private final @NotNull Node node;
+        private final @NotNull Globals.Slot head;
+        private final @Nullable VGlobal func;
+        private final @Nullable Value arg;
+        private @Nullable Value unfolded;
+    }
+
+    /// 按需求值时推迟计算的值，第一次被强制求值后记住结果并丢弃计算过程
+    ///
+    /// 需要知道值的具体形状时，用 {@link Eval#force} 强制求值
+    final class VThunk implements Value {
+        public VThunk(@NotNull Node node, @NotNull Supplier<Value> supplier) {
+            this.node = node;
+            this.supplier = supplier;
+        }
+
+        @Override
+        public @NotNull Node node() {
+            return node;
+        }
+
+        public @NotNull Value force() {
+            Value value = forced;
+            if (value == null) {
+                value = forceOnce();
+            }
+            return value;
+        }
+
+        /// 多个线程同时强制求值同一个 thunk 时只计算一次
+        private synchronized @NotNull Value forceOnce() {
+            Value value = forced;
+            if (value == null) {
+                value = supplier.get();
+                while (value instanceof VThunk thunk) {
+                    value = thunk.force();
+                }
+                forced = value;
+                supplier = null;
+            }
+            return value;
+        }
+
+        public boolean isForced() {
+            return forced != null;
+        }
+
+        /// 比较强制求值之后的结果
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof VThunk thunk) {
+                o = thunk.force();
+            }
+            return force().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return force().hashCode();
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return forced != null ? forced.toString() : "VThunk";
+        }
+
+        private final @NotNull Node node;
+        private @Nullable Supplier<Value> supplier;
+        private volatile @Nullable Value forced;
+    }
+
     static @NotNull Value vFree(@NotNull Node node, @NotNull Name name) {
         return new NFree(node, name);
     }
 
     non-sealed interface CValue extends Value {
-        @NotNull Term.Checkable reify(int depth);
+        @NotNull Term.Checkable reify(int depth, boolean unfold);
 
         @NotNull Value vApp(Value arg);
+
+        /// 除源码位置以外的分量：子值，或者可以按 {@link Object#equals} 比较的小对象，子值也可以放在列表中。
+        /// {@link ConversionCache} 按这些分量逐层计算有界的指纹，不调用值自己的 `equals` 和 `hashCode`
+        @NotNull List<?> parts();
+
+        /// 与已经展开的值 `other` 做转换检查，见 {@link Conversion}
+        ///
+        /// 头部不匹配时返回 `false`，否则用 {@link Conversion#goal} 交出还需要比较的子值。
+        /// 默认比较两个值读回的正规形式
+        default boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return reify(depth, true).equals(Eval.reify(depth, other, true));
+        }
     }
 
     non-sealed interface CNeutral extends VNeutral {
-        @NotNull Term.Inferable neutralReify(int depth);
+        @NotNull Term.Inferable neutralReify(int depth, boolean unfold);
+
+        /// 约定与 {@link CValue#parts} 相同
+        @NotNull List<?> parts();
+
+        /// 与已经展开的值 `other` 做转换检查，约定与 {@link CValue#convert} 相同
+        default boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return other instanceof VNeutral n
+                   && neutralReify(depth, true).equals(Eval.neutralReify(depth, n, true));
+        }
     }
 }
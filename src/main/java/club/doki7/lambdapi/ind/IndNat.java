@@ -1,36 +1,30 @@
 package club.doki7.lambdapi.ind;
 
-import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.dtlc.*;
 import club.doki7.lambdapi.exc.TypeCheckException;
 import club.doki7.lambdapi.syntax.Node;
-import club.doki7.lambdapi.util.ConsList;
-import club.doki7.lambdapi.util.Pair;
+import club.doki7.lambdapi.util.SkewList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.function.BinaryOperator;
 
 public final class IndNat {
     public record Nat(Node node) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) {
+        public Type infer(Context ctx) {
             return Type.of(new Value.VStar(node));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
             return new VNat(node);
         }
 
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return this;
-        }
-
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -42,6 +36,11 @@ public final class IndNat {
             return Nat.class.hashCode();
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of();
+        }
+
         @Override
         public @NotNull String toString() {
             return "Nat";
@@ -50,22 +49,15 @@ public final class IndNat {
 
     public record Zero(Node node) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) {
+        public Type infer(Context ctx) {
             return Type.of(new VNat(node));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
             return new VZero(node);
         }
 
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return this;
-        }
-
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -77,6 +69,11 @@ public final class IndNat {
             return Zero.class.hashCode();
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of();
+        }
+
         @Override
         public @NotNull String toString() {
             return "0";
@@ -85,22 +82,27 @@ public final class IndNat {
 
     public record Succ(Node node, Term.Checkable pred) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
+        public Type infer(Context ctx) throws TypeCheckException {
+            // 内层的 succ 的类型总是 Nat，沿着 succ 链循环，只检查链底
             Type natType = Type.of(new VNat(node));
-            InferCheck.check(depth, ctx, globals, pred, natType);
+            Term.Checkable current = pred;
+            while (current instanceof Term.Inf(Node _, Succ(Node _, Term.Checkable next))) {
+                current = next;
+            }
+            InferCheck.check(ctx, current, natType);
             return natType;
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
-            return new VSucc(node, Eval.eval(pred, env, globals));
-        }
-
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return new Succ(node, InferCheck.subst(depth, r, pred));
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            // 字面量形式的 succ 链可能很长，循环计数而不是递归求值
+            long count = 1;
+            Term.Checkable current = pred;
+            while (current instanceof Term.Inf(Node _, Succ(Node _, Term.Checkable next))) {
+                count++;
+                current = next;
+            }
+            return succ(node, BigInteger.valueOf(count), Eval.eval(current, env, globals));
         }
 
         @Override
@@ -115,6 +117,11 @@ public final class IndNat {
             return Objects.hash(Succ.class, pred);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(pred);
+        }
+
         @Override
         public @NotNull String toString() {
             int sCounter = 1;
@@ -134,90 +141,223 @@ public final class IndNat {
         }
     }
 
+    /// 自然数字面量，由数字记号直接展开而来，求值为 {@link VNum}
+    public record NatLit(Node node, BigInteger value) implements Term.InferableTF {
+        @Override
+        public Type infer(Context ctx) {
+            return Type.of(new VNat(node));
+        }
+
+        @Override
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            return num(node, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NatLit lit)) return false;
+            return value.equals(lit.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(NatLit.class, value);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(value);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return value.toString();
+        }
+    }
+
+    /// `succ^count pred`，只出现在对开放的自然数读回的结果中
+    public record SuccN(Node node, BigInteger count, Term.Checkable pred)
+            implements Term.InferableTF
+    {
+        @Override
+        public Type infer(Context ctx) throws TypeCheckException {
+            Type natType = Type.of(new VNat(node));
+            InferCheck.check(ctx, pred, natType);
+            return natType;
+        }
+
+        @Override
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            return succ(node, count, Eval.eval(pred, env, globals));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SuccN succN)) return false;
+            return count.equals(succN.count) && pred.equals(succN.pred);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(SuccN.class, count, pred);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(count, pred);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "(suc_" + count + " " + pred + ")";
+        }
+    }
+
     public record NatElim(Node node,
                           Term.Checkable motive,
                           Term.Checkable base,
                           Term.Checkable step,
                           Term.Checkable scrut) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
+        public Type infer(Context ctx) throws TypeCheckException {
             Type natType = Type.of(new VNat(node));
 
             // motive : forall (n : Nat) -> *
-            Type motiveType = Type.of(new Value.VPi(
-                    node,
-                    natType,
-                    _ -> Type.of(new Value.VStar(node))
+            Type motiveType = Type.of(ctx.eval(
+                    new Term.Pi(node, inf(new Nat(node)), inf(new Term.Star(node)))
             ));
-            InferCheck.check(depth, ctx, globals, motive, motiveType);
-
-            Value vMotive = Eval.eval(motive, globals.values());
+            Value vMotive = InferCheck.checkEval(ctx, motive, motiveType);
 
             // base : motive 0
             Type baseType = Type.of(Eval.vApp(vMotive, new VZero(node)));
-            InferCheck.check(depth, ctx, globals, base, baseType);
+            InferCheck.check(ctx, base, baseType);
 
             // step: forall (n : Nat) -> motive n -> motive (S n)
-            Type stepType = Type.of(new Value.VPi(
-                    node,
-                    natType,
-                    n -> Type.of(new Value.VPi(
+            Type stepType = Type.of(Eval.eval(
+                    new Term.Pi(
                             node,
-                            Type.of(Eval.vApp(vMotive, n)),
-                            _ -> Type.of(Eval.vApp(vMotive, new VSucc(node, n)))
-                    ))
+                            inf(new Nat(node)),
+                            inf(new Term.Pi(
+                                    node,
+                                    inf(new Term.App(node, bound(node, 1), inf(bound(node, 0)))),
+                                    inf(new Term.App(
+                                            node,
+                                            bound(node, 2),
+                                            inf(new Succ(node, inf(bound(node, 1))))
+                                    ))
+                            ))
+                    ),
+                    SkewList.of(vMotive),
+                    ctx.globals()
             ));
-            InferCheck.check(depth, ctx, globals, step, stepType);
+            InferCheck.check(ctx, step, stepType);
 
             // scrut : Nat
-            InferCheck.check(depth, ctx, globals, scrut, natType);
-
-            Value vScrut = Eval.eval(scrut, globals.values());
+            Value vScrut = InferCheck.checkEval(ctx, scrut, natType);
             return Type.of(Eval.vApp(vMotive, vScrut));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
-            Value vBase = Eval.eval(base, env, globals);
-            Value vStep = Eval.eval(step, env, globals);
-            Function<Value, Value> rec = new Function<>() {
-                @Override
-                public Value apply(Value v) {
-                    return switch (v) {
-                        case VZero _ -> vBase;
-                        case VSucc(Node _, Value pred) -> Eval.vApp(
-                                Eval.vApp(vStep, pred),
-                                this.apply(pred)
-                        );
-                        case Value.VNeutral vn -> new NNatElim(
-                                node,
-                                Eval.eval(motive, env, globals),
-                                vBase,
-                                vStep,
-                                vn
-                        );
-                        default -> throw new IllegalStateException(
-                                "Unexpected value in NatElim recursion: " + v
-                        );
-                    };
-                }
-            };
-            return rec.apply(Eval.eval(scrut, env, globals));
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            Value vBase = Eval.delay(base, env, globals);
+            Value vStep = Eval.delay(step, env, globals);
+            return elim(env, globals, vBase, vStep, Eval.eval(scrut, env, globals));
         }
 
         @Override
-        public InferableTF subst(int depth, Free r) {
-            return new NatElim(
-                    node,
-                    InferCheck.subst(depth, r, motive),
-                    InferCheck.subst(depth, r, base),
-                    InferCheck.subst(depth, r, step),
-                    InferCheck.subst(depth, r, scrut)
+        public void step(Machine.Step machine, SkewList<Value> env, Globals.Snapshot globals) {
+            if (globals.strategy() == Eval.Strategy.CALL_BY_NEED) {
+                machine.ret(eval(env, globals));
+                return;
+            }
+
+            // 参数和每一次步进函数的应用都交给机器求值，步数统计覆盖整个递归过程
+            machine.eval(base, env, globals, (m1, vBase) ->
+                    m1.eval(step, env, globals, (m2, vStep) ->
+                            m2.eval(scrut, env, globals, (m3, vScrut) -> {
+                                NatSpine spine = NatSpine.of(vScrut);
+                                Value bottom = bottom(env, globals, vBase, vStep, spine.bottom());
+                                int last = spine.runs().size() - 1;
+                                fold(m3, vStep, spine, last, BigInteger.ZERO, bottom);
+                            })));
+        }
+
+        private Value elim(SkewList<Value> env,
+                           Globals.Snapshot globals,
+                           Value vBase,
+                           Value vStep,
+                           Value vScrut) {
+            Value current = Eval.force(vScrut);
+            Value lazyPred = globals.strategy() == Eval.Strategy.CALL_BY_NEED
+                    ? predecessor(current)
+                    : null;
+            if (lazyPred != null) {
+                // 按需求值时只展开一层，步进函数不使用的递归结果不会被计算。递归结果被用到时
+                // 从链底开始循环折叠，对递归结果严格的步进函数也不会让强制求值逐层嵌套
+                return Eval.vApp(
+                        Eval.vApp(vStep, lazyPred),
+                        new Value.VThunk(node, () -> strictElim(env, globals, vBase, vStep, lazyPred))
+                );
+            }
+            return strictElim(env, globals, vBase, vStep, current);
+        }
+
+        /// 从链底开始向外循环折叠，每一层的递归结果都已经求出
+        private Value strictElim(SkewList<Value> env,
+                                 Globals.Snapshot globals,
+                                 Value vBase,
+                                 Value vStep,
+                                 Value vScrut) {
+            NatSpine spine = NatSpine.of(vScrut);
+            return spine.fold(
+                    bottom(env, globals, vBase, vStep, spine.bottom()),
+                    (pred, rec) -> Eval.vApp(Eval.vApp(vStep, pred), rec)
             );
         }
 
+        /// 对剥去所有后继之后的链底的消去结果
+        private Value bottom(SkewList<Value> env,
+                             Globals.Snapshot globals,
+                             Value vBase,
+                             Value vStep,
+                             Value bottom) {
+            return switch (bottom) {
+                case VZero _ -> vBase;
+                case Value.VNeutral vn -> new NNatElim(
+                        node,
+                        Eval.eval(motive, env, globals),
+                        vBase,
+                        vStep,
+                        vn
+                );
+                default -> throw new IllegalStateException(
+                        "Unexpected value in NatElim recursion: " + bottom
+                );
+            };
+        }
+
+        /// 在机器中从第 `run` 段的第 `i` 个前驱开始向外应用步进函数
+        private static void fold(Machine.Step machine,
+                                 Value vStep,
+                                 NatSpine spine,
+                                 int run,
+                                 BigInteger i,
+                                 Value acc) {
+            if (run < 0) {
+                machine.ret(acc);
+                return;
+            }
+            NatSpine.Run current = spine.runs().get(run);
+            BigInteger next = i.add(BigInteger.ONE);
+            int nextRun = next.equals(current.count()) ? run - 1 : run;
+            BigInteger nextI = nextRun == run ? next : BigInteger.ZERO;
+            machine.apply(vStep, current.pred(i), (m1, partial) ->
+                    m1.apply(partial, acc, (m2, result) ->
+                            fold(m2, vStep, spine, nextRun, nextI, result)));
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -233,46 +373,245 @@ public final class IndNat {
             return Objects.hash(NatElim.class, motive, base, step, scrut);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(motive, base, step, scrut);
+        }
+
         @Override
         public @NotNull String toString() {
             return "(natElim " + motive + " " + base + " " + step + " " + scrut + ")";
         }
     }
 
+    /// 自然数的脊：从外到内排列的后继段，以及剥去所有后继之后的链底
+    ///
+    /// 每一段 `succ^count pred` 的前驱依次是 `succ^(count-1) pred`、……、`pred`，只在折叠时逐个生成，
+    /// 所以用二进制表示的大数字不会先被展开成一元的前驱列表。脊本身只占用与段数成正比的空间
+    public record NatSpine(List<Run> runs, Value bottom) {
+        public record Run(Node node, BigInteger count, Value pred) {
+            /// 这一段中从内向外的第 `i` 个前驱，即 `succ^i pred`
+            public @NotNull Value pred(@NotNull BigInteger i) {
+                return succ(node, i, pred);
+            }
+        }
+
+        /// 沿着后继链走到底。沿途遇到的 thunk 和全局定义都会被展开，整个过程不使用递归
+        public static @NotNull NatSpine of(@NotNull Value value) {
+            ArrayList<Run> runs = new ArrayList<>();
+            Value current = Eval.force(value);
+            while (true) {
+                switch (current) {
+                    case VSucc(Node node, Value pred) -> {
+                        runs.add(new Run(node, BigInteger.ONE, pred));
+                        current = Eval.force(pred);
+                    }
+                    case VSuccN(Node node, BigInteger count, Value pred) -> {
+                        runs.add(new Run(node, count, pred));
+                        current = Eval.force(pred);
+                    }
+                    case VNum(Node node, BigInteger count) -> {
+                        VZero zero = new VZero(node);
+                        runs.add(new Run(node, count, zero));
+                        return new NatSpine(runs, zero);
+                    }
+                    default -> {
+                        return new NatSpine(runs, current);
+                    }
+                }
+            }
+        }
+
+        /// 链上后继的总数
+        public @NotNull BigInteger count() {
+            BigInteger count = BigInteger.ZERO;
+            for (Run run : runs) {
+                count = count.add(run.count);
+            }
+            return count;
+        }
+
+        /// 从链底开始向外折叠：对每一个前驱 `pred`，`acc = step(pred, acc)`
+        public @NotNull Value fold(@NotNull Value acc, @NotNull BinaryOperator<Value> step) {
+            for (Run run : runs.reversed()) {
+                for (BigInteger i = BigInteger.ZERO;
+                     i.compareTo(run.count) < 0;
+                     i = i.add(BigInteger.ONE)) {
+                    acc = step.apply(run.pred(i), acc);
+                }
+            }
+            return acc;
+        }
+    }
+
     public record VNat(Node node) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Inf(node, new Nat(node));
+        public boolean equals(Object o) {
+            return o instanceof VNat;
+        }
+
+        @Override
+        public int hashCode() {
+            return VNat.class.hashCode();
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of();
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return HashCons.inf(node, HashCons.intern(new Nat(node)));
         }
 
         @Override
         public @NotNull Value vApp(Value arg) {
             throw new IllegalStateException("Cannot apply natural number type to an argument.");
         }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return other instanceof VNat;
+        }
     }
 
     public record VZero(Node node) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Inf(node, new Zero(node));
+        public boolean equals(Object o) {
+            return o instanceof VZero;
+        }
+
+        @Override
+        public int hashCode() {
+            return VZero.class.hashCode();
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of();
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return HashCons.inf(node, HashCons.intern(new Zero(node)));
         }
 
         @Override
         public @NotNull Value vApp(Value arg) {
             throw new IllegalStateException("Cannot apply zero constructor to an argument.");
         }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertNat(depth, this, other, conversion);
+        }
     }
 
     public record VSucc(Node node, Value pred) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Inf(node, new Succ(node, Eval.reify(depth, pred)));
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VSucc succ)) return false;
+            return pred.equals(succ.pred);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VSucc.class, pred);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(pred);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return reifyNat(node, depth, this, unfold);
         }
 
         @Override
         public @NotNull Value vApp(Value arg) {
             throw new IllegalStateException("Cannot apply successor constructor to an argument.");
         }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertNat(depth, this, other, conversion);
+        }
+    }
+
+    /// 以二进制形式保存的正整数，等价于 `succ (succ ... zero)`
+    ///
+    /// 零总是表示为 {@link VZero}。占用的空间和读回、比较的代价只与数字的位数有关
+    public record VNum(Node node, BigInteger value) implements Value.CValue {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VNum num)) return false;
+            return value.equals(num.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VNum.class, value);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(value);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return HashCons.inf(node, HashCons.intern(new NatLit(node, value)));
+        }
+
+        @Override
+        public @NotNull Value vApp(Value arg) {
+            throw new IllegalStateException("Cannot apply natural number to an argument.");
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertNat(depth, this, other, conversion);
+        }
+    }
+
+    /// `succ^count pred`，其中 `count` 至少为 2，`pred` 不是已知的数字
+    public record VSuccN(Node node, BigInteger count, Value pred) implements Value.CValue {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VSuccN succN)) return false;
+            return count.equals(succN.count) && pred.equals(succN.pred);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VSuccN.class, count, pred);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(count, pred);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return reifyNat(node, depth, this, unfold);
+        }
+
+        @Override
+        public @NotNull Value vApp(Value arg) {
+            throw new IllegalStateException("Cannot apply successor constructor to an argument.");
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertNat(depth, this, other, conversion);
+        }
     }
 
     public record NNatElim(Node node,
@@ -281,15 +620,144 @@ public final class IndNat {
                            Value step,
                            Value.VNeutral nScrut) implements Value.CNeutral {
         @Override
-        public @NotNull Term.Inferable neutralReify(int depth) {
-            Term.Inferable scrutReify = Eval.neutralReify(depth, nScrut);
-            return new NatElim(
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NNatElim natElim)) return false;
+            return motive.equals(natElim.motive)
+                    && base.equals(natElim.base)
+                    && step.equals(natElim.step)
+                    && nScrut.equals(natElim.nScrut);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(NNatElim.class, motive, base, step, nScrut);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(motive, base, step, nScrut);
+        }
+
+        @Override
+        public @NotNull Term.Inferable neutralReify(int depth, boolean unfold) {
+            Term.Inferable scrutReify = Eval.neutralReify(depth, nScrut, unfold);
+            return HashCons.intern(new NatElim(
                     node,
-                    Eval.reify(depth, motive),
-                    Eval.reify(depth, base),
-                    Eval.reify(depth, step),
-                    new Term.Inf(scrutReify.node(), scrutReify)
-            );
+                    Eval.reify(depth, motive, unfold),
+                    Eval.reify(depth, base, unfold),
+                    Eval.reify(depth, step, unfold),
+                    HashCons.inf(scrutReify.node(), scrutReify)
+            ));
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            if (!(other instanceof NNatElim natElim)) {
+                return false;
+            }
+            conversion.goal(depth, nScrut, natElim.nScrut);
+            conversion.goal(depth, step, natElim.step);
+            conversion.goal(depth, base, natElim.base);
+            conversion.goal(depth, motive, natElim.motive);
+            return true;
+        }
+    }
+
+    /// 自然数 `value` 的值，零表示为 {@link VZero}
+    public static @NotNull Value num(@NotNull Node node, @NotNull BigInteger value) {
+        return value.signum() == 0 ? new VZero(node) : new VNum(node, value);
+    }
+
+    /// `succ^count pred` 的值。已知的数字直接相加，连续的 succ 合并成一个 {@link VSuccN}
+    public static @NotNull Value succ(
+            @NotNull Node node,
+            @NotNull BigInteger count,
+            @NotNull Value pred
+    ) {
+        if (count.signum() == 0) {
+            return pred;
+        }
+        return switch (pred) {
+            case VZero _ -> new VNum(node, count);
+            case VNum(Node _, BigInteger value) -> new VNum(node, value.add(count));
+            case VSucc(Node _, Value innerPred) ->
+                    new VSuccN(node, count.add(BigInteger.ONE), innerPred);
+            case VSuccN(Node _, BigInteger inner, Value innerPred) ->
+                    new VSuccN(node, inner.add(count), innerPred);
+            default -> count.equals(BigInteger.ONE)
+                    ? new VSucc(node, pred)
+                    : new VSuccN(node, count, pred);
+        };
+    }
+
+    /// 已经强制求值的自然数的前驱，不是后继时返回 `null`
+    public static @Nullable Value predecessor(@NotNull Value value) {
+        return switch (value) {
+            case VSucc(Node _, Value pred) -> pred;
+            case VSuccN(Node node, BigInteger count, Value pred) ->
+                    succ(node, count.subtract(BigInteger.ONE), pred);
+            case VNum(Node node, BigInteger n) -> num(node, n.subtract(BigInteger.ONE));
+            default -> null;
+        };
+    }
+
+    /// 自然数的转换检查：两边后继的个数相同，链底同为零或者可转换。
+    /// 与 {@link #reifyNat} 一样，不区分数字的各种表示形式
+    private static boolean convertNat(int depth, Value a, Value b, Conversion conversion) {
+        NatSpine spineA = NatSpine.of(a);
+        NatSpine spineB = NatSpine.of(b);
+        if (!spineA.count().equals(spineB.count())) {
+            return false;
+        }
+        if (spineA.bottom() instanceof VZero || spineB.bottom() instanceof VZero) {
+            return spineA.bottom() instanceof VZero && spineB.bottom() instanceof VZero;
         }
+        // 链底不是自然数的构造子，不会再回到这里
+        conversion.goal(depth, spineA.bottom(), spineB.bottom());
+        return true;
+    }
+
+    /// 把自然数读回为规范的形式：闭合的数字读回为字面量，开放的读回为 `succ^n x`，
+    /// 所以同一个数字无论以哪种形式表示，读回的结果都相同
+    private static Term.Checkable reifyNat(Node node, int depth, Value value, boolean unfold) {
+        BigInteger count = BigInteger.ZERO;
+        Value current = value;
+        while (true) {
+            switch (current) {
+                // 读回总要强制求值 thunk，在这里就地展开，按需求值产生的 succ 链也不会递归
+                case Value.VThunk thunk -> current = thunk.force();
+                case Value.VGlobal global when unfold -> current = global.unfold();
+                case VSucc(Node _, Value pred) -> {
+                    count = count.add(BigInteger.ONE);
+                    current = pred;
+                }
+                case VSuccN(Node _, BigInteger n, Value pred) -> {
+                    count = count.add(n);
+                    current = pred;
+                }
+                case VNum(Node _, BigInteger n) -> {
+                    return HashCons.inf(node, HashCons.intern(new NatLit(node, count.add(n))));
+                }
+                case VZero _ -> {
+                    return HashCons.inf(node, HashCons.intern(new NatLit(node, count)));
+                }
+                default -> {
+                    Term.Checkable term = Eval.reify(depth, current, unfold);
+                    Term.Inferable succ = count.equals(BigInteger.ONE)
+                            ? new Succ(node, term)
+                            : new SuccN(node, count, term);
+                    return HashCons.inf(node, HashCons.intern(succ));
+                }
+            }
+        }
+    }
+
+    static Term.Checkable inf(Term.Inferable inferable) {
+        return new Term.Inf(inferable.node(), inferable);
+    }
+
+    static Term.Inferable bound(Node node, int index) {
+        return new Term.Bound(node, index);
     }
 }
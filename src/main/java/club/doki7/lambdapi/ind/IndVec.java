@@ -1,33 +1,35 @@
 package club.doki7.lambdapi.ind;
 
-import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.dtlc.*;
 import club.doki7.lambdapi.exc.TypeCheckException;
 import club.doki7.lambdapi.syntax.Node;
-import club.doki7.lambdapi.util.ConsList;
-import club.doki7.lambdapi.util.Pair;
+import club.doki7.lambdapi.util.SkewList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.BiFunction;
 
+import static club.doki7.lambdapi.ind.IndNat.bound;
+import static club.doki7.lambdapi.ind.IndNat.inf;
+
 public final class IndVec {
     public record Vec(Node node,
                       Term.Checkable type,
                       Term.Checkable len) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
-            InferCheck.check(depth, ctx, globals, type, Type.of(new Value.VStar(node)));
-            InferCheck.check(depth, ctx, globals, len, Type.of(new IndNat.VNat(node)));
+        public Type infer(Context ctx) throws TypeCheckException {
+            InferCheck.check(ctx, type, Type.of(new Value.VStar(node)));
+            InferCheck.check(ctx, len, Type.of(new IndNat.VNat(node)));
             return Type.of(new Value.VStar(node));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
             return new VVec(
                     node,
                     Type.of(Eval.eval(type, env, globals)),
@@ -35,15 +37,6 @@ public final class IndVec {
             );
         }
 
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return new Vec(
-                    node,
-                    InferCheck.subst(depth, r, type),
-                    InferCheck.subst(depth, r, len)
-            );
-        }
-
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -56,6 +49,11 @@ public final class IndVec {
             return Objects.hash(Vec.class, type, len);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type, len);
+        }
+
         @Override
         public @NotNull String toString() {
             return "Vec<" + type + ", " + len + ">";
@@ -64,33 +62,19 @@ public final class IndVec {
 
     public record Nil(Node node, Term.Checkable type) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
-            InferCheck.check(depth, ctx, globals, type, Type.of(new Value.VStar(node)));
-            return Type.of(new VVec(
-                    node,
-                    Type.of(Eval.eval(type, globals.values())),
-                    new IndNat.VZero(node)
-            ));
+        public Type infer(Context ctx) throws TypeCheckException {
+            Value vType = InferCheck.checkEval(ctx, type, Type.of(new Value.VStar(node)));
+            return Type.of(new VVec(node, Type.of(vType), new IndNat.VZero(node)));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
             return new VNil(
                     node,
                     Eval.eval(type, env, globals)
             );
         }
 
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return new Nil(
-                    node,
-                    InferCheck.subst(depth, r, type)
-            );
-        }
-
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -103,6 +87,11 @@ public final class IndVec {
             return Objects.hash(Nil.class, type);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type);
+        }
+
         @Override
         public @NotNull String toString() {
             return "Vec<" + type + ", 0>[]";
@@ -116,42 +105,40 @@ public final class IndVec {
                        Term.Checkable tail) implements Term.InferableTF {
 
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
-            InferCheck.check(depth, ctx, globals, type, Type.of(new Value.VStar(node)));
-            InferCheck.check(depth, ctx, globals, len, Type.of(new IndNat.VNat(node)));
+        public Type infer(Context ctx) throws TypeCheckException {
+            Type tvType = Type.of(InferCheck.checkEval(ctx, type, Type.of(new Value.VStar(node))));
+            Value vLen = InferCheck.checkEval(ctx, len, Type.of(new IndNat.VNat(node)));
 
-            Type tvType = Type.of(Eval.eval(type, globals.values()));
-            Value vLen = Eval.eval(len, globals.values());
-            InferCheck.check(depth, ctx, globals, head, tvType);
+            InferCheck.check(ctx, head, tvType);
 
             Type vecType = Type.of(new VVec(node, tvType, vLen));
-            InferCheck.check(depth, ctx, globals, tail, vecType);
+            InferCheck.check(ctx, tail, vecType);
 
-            return Type.of(new VVec(node, tvType, new IndNat.VSucc(node, vLen)));
+            return Type.of(new VVec(node, tvType, IndNat.succ(node, BigInteger.ONE, vLen)));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
-            return new IndVec.VCons(
-                    node,
-                    Type.of(Eval.eval(type, env, globals)),
-                    Eval.eval(len, env, globals),
-                    Eval.eval(head, env, globals),
-                    Eval.eval(tail, env, globals)
-            );
-        }
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            // 字面量形式的向量可能很长，先沿着尾部循环，再从最后一个元素开始构造
+            ArrayList<Cons> cells = new ArrayList<>();
+            cells.add(this);
+            Term.Checkable current = tail;
+            while (current instanceof Term.Inf(Node _, Cons cons)) {
+                cells.add(cons);
+                current = cons.tail;
+            }
 
-        @Override
-        public InferableTF subst(int depth, Free r) {
-            return new Cons(
-                    node,
-                    InferCheck.subst(depth, r, type),
-                    InferCheck.subst(depth, r, len),
-                    InferCheck.subst(depth, r, head),
-                    InferCheck.subst(depth, r, tail)
-            );
+            Value result = Eval.eval(current, env, globals);
+            for (Cons cons : cells.reversed()) {
+                result = new IndVec.VCons(
+                        cons.node,
+                        Type.of(Eval.eval(cons.type, env, globals)),
+                        Eval.eval(cons.len, env, globals),
+                        Eval.eval(cons.head, env, globals),
+                        result
+                );
+            }
+            return result;
         }
 
         @Override
@@ -169,6 +156,11 @@ public final class IndVec {
             return Objects.hash(Cons.class, type, len, head, tail);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type, len, head, tail);
+        }
+
         @Override
         public @NotNull String toString() {
             ArrayList<Term> elements = new ArrayList<>();
@@ -187,6 +179,58 @@ public final class IndVec {
         }
     }
 
+    /// 向量字面量 `[a; x, y, z]`，求值为紧凑存储的 {@link VPacked}
+    public record VecLit(Node node, Term.Checkable type, List<Term.Checkable> elements)
+            implements Term.InferableTF
+    {
+        @Override
+        public Type infer(Context ctx) throws TypeCheckException {
+            Type tvType = Type.of(InferCheck.checkEval(ctx, type, Type.of(new Value.VStar(node))));
+            for (Term.Checkable element : elements) {
+                InferCheck.check(ctx, element, tvType);
+            }
+            return Type.of(new VVec(
+                    node,
+                    tvType,
+                    IndNat.num(node, BigInteger.valueOf(elements.size()))
+            ));
+        }
+
+        @Override
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            Value[] values = new Value[elements.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Eval.delay(elements.get(i), env, globals);
+            }
+            return packed(node, Type.of(Eval.eval(type, env, globals)), values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VecLit vecLit)) return false;
+            return type.equals(vecLit.type) && elements.equals(vecLit.elements);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VecLit.class, type, elements);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type, elements);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "Vec["
+                   + type + "; "
+                   + String.join(", ", elements.stream().map(Object::toString).toList())
+                   + "]";
+        }
+    }
+
     public record VecElim(Node node,
                           Term.Checkable type,
                           Term.Checkable motive,
@@ -195,120 +239,203 @@ public final class IndVec {
                           Term.Checkable len,
                           Term.Checkable scrut) implements Term.InferableTF {
         @Override
-        public Type infer(int depth,
-                          ConsList<Pair<Name.Local, Type>> ctx,
-                          Globals globals) throws TypeCheckException {
+        public Type infer(Context ctx) throws TypeCheckException {
             Type univType = Type.of(new Value.VStar(node));
             Type natType = Type.of(new IndNat.VNat(node));
 
-            InferCheck.check(depth, ctx, globals, type, univType);
-            Type tvType = Type.of(Eval.eval(type, globals.values()));
+            Type tvType = Type.of(InferCheck.checkEval(ctx, type, univType));
 
-            Type motiveType = Type.of(new Value.VPi(
-                    node,
-                    natType,
-                    k -> Type.of(new Value.VPi(
+            // motive : forall (k : Nat) -> Vec a k -> *
+            Type motiveType = Type.of(Eval.eval(
+                    new Term.Pi(
                             node,
-                            Type.of(new VVec(node, tvType, k)),
-                            _ -> univType
-                    ))
+                            inf(new IndNat.Nat(node)),
+                            inf(new Term.Pi(
+                                    node,
+                                    inf(new Vec(node, inf(bound(node, 1)), inf(bound(node, 0)))),
+                                    inf(new Term.Star(node))
+                            ))
+                    ),
+                    SkewList.of(tvType.value()),
+                    ctx.globals()
             ));
-            InferCheck.check(depth, ctx, globals, motive, motiveType);
-            Value vMotive = Eval.eval(motive, globals.values());
+            Value vMotive = InferCheck.checkEval(ctx, motive, motiveType);
 
             Value vBaseCaseType = Eval.vApp(vMotive, new IndNat.VZero(node));
             vBaseCaseType = Eval.vApp(vBaseCaseType, new VNil(node, tvType.value()));
-            InferCheck.check(depth, ctx, globals, base, Type.of(vBaseCaseType));
+            InferCheck.check(ctx, base, Type.of(vBaseCaseType));
 
-            Type stepType = Type.of(new Value.VPi(
-                    node,
-                    natType,
-                    l -> Type.of(new Value.VPi(
+            // step : forall (l : Nat) -> forall (y : a) -> forall (ys : Vec a l) ->
+            //        motive l ys -> motive (S l) (cons a l y ys)
+            Type stepType = Type.of(Eval.eval(
+                    new Term.Pi(
                             node,
-                            tvType,
-                            y -> Type.of(new Value.VPi(
+                            inf(new IndNat.Nat(node)),
+                            inf(new Term.Pi(
                                     node,
-                                    Type.of(new VVec(node, tvType, l)),
-                                    ys -> Type.of(new Value.VPi(
+                                    inf(bound(node, 2)),
+                                    inf(new Term.Pi(
                                             node,
-                                            Type.of(Eval.vApp(Eval.vApp(vMotive, l), ys)),
-                                            _ -> Type.of(Eval.vApp(
-                                                    Eval.vApp(
-                                                            vMotive,
-                                                            new IndNat.VSucc(node, l)
-                                                    ),
-                                                    new VCons(node, tvType, l, y, ys)
+                                            inf(new Vec(
+                                                    node,
+                                                    inf(bound(node, 3)),
+                                                    inf(bound(node, 1))
+                                            )),
+                                            inf(new Term.Pi(
+                                                    node,
+                                                    inf(new Term.App(
+                                                            node,
+                                                            new Term.App(
+                                                                    node,
+                                                                    bound(node, 3),
+                                                                    inf(bound(node, 2))
+                                                            ),
+                                                            inf(bound(node, 0))
+                                                    )),
+                                                    inf(new Term.App(
+                                                            node,
+                                                            new Term.App(
+                                                                    node,
+                                                                    bound(node, 4),
+                                                                    inf(new IndNat.Succ(
+                                                                            node,
+                                                                            inf(bound(node, 3))
+                                                                    ))
+                                                            ),
+                                                            inf(new Cons(
+                                                                    node,
+                                                                    inf(bound(node, 5)),
+                                                                    inf(bound(node, 3)),
+                                                                    inf(bound(node, 2)),
+                                                                    inf(bound(node, 1))
+                                                            ))
+                                                    ))
                                             ))
                                     ))
                             ))
-                    ))
+                    ),
+                    SkewList.of(tvType.value()).cons(vMotive),
+                    ctx.globals()
             ));
-            InferCheck.check(depth, ctx, globals, step, stepType);
-
-            InferCheck.check(depth, ctx, globals, len, natType);
-            Value vLen = Eval.eval(len, globals.values());
+            InferCheck.check(ctx, step, stepType);
 
-            InferCheck.check(
-                    depth,
-                    ctx,
-                    globals,
-                    scrut,
-                    Type.of(new VVec(node, tvType, vLen))
-            );
-            Value vScrut = Eval.eval(scrut, globals.values());
+            Value vLen = InferCheck.checkEval(ctx, len, natType);
+            Value vScrut = InferCheck.checkEval(ctx, scrut, Type.of(new VVec(node, tvType, vLen)));
             return Type.of(Eval.vApp(Eval.vApp(vMotive, vLen), vScrut));
         }
 
         @Override
-        public Value eval(ConsList<Value> env, Map<String, Value> globals) {
-            Value vBase = Eval.eval(base, env, globals);
-            Value vStep = Eval.eval(step, env, globals);
-
-            BiFunction<Value, Value, Value> rec = new BiFunction<>() {
-                @Override
-                public Value apply(Value vLen, Value vVec) {
-                    return switch (vVec) {
-                        case VNil _ -> vBase;
-                        case VCons(Node _, Type _, Value len1, Value head, Value tail) -> {
-                            Value step1 = Eval.vApp(vStep, len1);
-                            Value step2 = Eval.vApp(step1, head);
-                            Value step3 = Eval.vApp(step2, tail);
-                            yield Eval.vApp(step3, this.apply(len1, tail));
-                        }
-                        case Value.VNeutral vn -> new NVecElim(
-                                node,
-                                Eval.eval(type, env, globals),
-                                Eval.eval(motive, env, globals),
-                                vBase,
-                                vStep,
-                                vLen,
-                                vn
-                        );
-                        default -> throw new IllegalStateException(
-                                "Unexpected value in VecElim recursion: " + vVec
-                        );
-                    };
-                }
-            };
-
-            Value vLen = Eval.eval(len, env, globals);
-            Value vScrut = Eval.eval(scrut, env, globals);
-            return rec.apply(vLen, vScrut);
+        public Value eval(SkewList<Value> env, Globals.Snapshot globals) {
+            Value vBase = Eval.delay(base, env, globals);
+            Value vStep = Eval.delay(step, env, globals);
+            Value vLen = Eval.delay(len, env, globals);
+            return elim(env, globals, vBase, vStep, vLen, Eval.eval(scrut, env, globals));
         }
 
         @Override
-        public InferableTF subst(int depth, Free r) {
-            return new VecElim(
-                    node,
-                    InferCheck.subst(depth, r, type),
-                    InferCheck.subst(depth, r, motive),
-                    InferCheck.subst(depth, r, base),
-                    InferCheck.subst(depth, r, step),
-                    InferCheck.subst(depth, r, len),
-                    InferCheck.subst(depth, r, scrut)
+        public void step(Machine.Step machine, SkewList<Value> env, Globals.Snapshot globals) {
+            if (globals.strategy() == Eval.Strategy.CALL_BY_NEED) {
+                machine.ret(eval(env, globals));
+                return;
+            }
+
+            // 参数和每一次步进函数的应用都交给机器求值，步数统计覆盖整个递归过程
+            machine.eval(base, env, globals, (m1, vBase) ->
+                    m1.eval(step, env, globals, (m2, vStep) ->
+                            m2.eval(len, env, globals, (m3, vLen) ->
+                                    m3.eval(scrut, env, globals, (m4, vVec) -> {
+                                        VecSpine spine = VecSpine.of(vLen, vVec);
+                                        Value bottom = bottom(env, globals, vBase, vStep, spine);
+                                        fold(m4, vStep, spine, spine.size() - 1, bottom);
+                                    }))));
+        }
+
+        private Value elim(SkewList<Value> env,
+                           Globals.Snapshot globals,
+                           Value vBase,
+                           Value vStep,
+                           Value vLen,
+                           Value vVec) {
+            Value current = Eval.force(vVec);
+            if (globals.strategy() == Eval.Strategy.CALL_BY_NEED
+                && uncons(current) instanceof VCons(
+                        Node _, Type _, Value len1, Value head, Value tail
+                )) {
+                // 按需求值时只展开一层，步进函数不使用的递归结果不会被计算。递归结果被用到时
+                // 从链底开始循环折叠，对递归结果严格的步进函数也不会让强制求值逐层嵌套
+                return applyStep(
+                        vStep,
+                        len1,
+                        head,
+                        tail,
+                        new Value.VThunk(node, () -> strictElim(env, globals, vBase, vStep, len1, tail))
+                );
+            }
+            return strictElim(env, globals, vBase, vStep, vLen, current);
+        }
+
+        /// 从链底开始向外循环折叠，每一层的递归结果都已经求出
+        private Value strictElim(SkewList<Value> env,
+                                 Globals.Snapshot globals,
+                                 Value vBase,
+                                 Value vStep,
+                                 Value vLen,
+                                 Value vVec) {
+            VecSpine spine = VecSpine.of(vLen, vVec);
+            return spine.fold(
+                    bottom(env, globals, vBase, vStep, spine),
+                    (cons, rec) -> applyStep(vStep, cons.len, cons.head, cons.tail, rec)
             );
         }
 
+        /// 对剥去所有 cons 单元之后的链底的消去结果
+        private Value bottom(SkewList<Value> env,
+                             Globals.Snapshot globals,
+                             Value vBase,
+                             Value vStep,
+                             VecSpine spine) {
+            return switch (spine.bottom()) {
+                case VNil _ -> vBase;
+                case Value.VNeutral vn -> new NVecElim(
+                        node,
+                        Eval.eval(type, env, globals),
+                        Eval.eval(motive, env, globals),
+                        vBase,
+                        vStep,
+                        spine.bottomLen(),
+                        vn
+                );
+                default -> throw new IllegalStateException(
+                        "Unexpected value in VecElim recursion: " + spine.bottom()
+                );
+            };
+        }
+
+        /// 在机器中从第 `i` 个单元开始向外应用步进函数
+        private static void fold(Machine.Step machine,
+                                 Value vStep,
+                                 VecSpine spine,
+                                 int i,
+                                 Value acc) {
+            if (i < 0) {
+                machine.ret(acc);
+                return;
+            }
+            VCons cons = spine.cell(i);
+            machine.apply(vStep, cons.len, (m1, step1) ->
+                    m1.apply(step1, cons.head, (m2, step2) ->
+                            m2.apply(step2, cons.tail, (m3, step3) ->
+                                    m3.apply(step3, acc, (m4, result) ->
+                                            fold(m4, vStep, spine, i - 1, result)))));
+        }
+
+        private static Value applyStep(Value vStep, Value len, Value head, Value tail, Value rec) {
+            Value step1 = Eval.vApp(vStep, len);
+            Value step2 = Eval.vApp(step1, head);
+            Value step3 = Eval.vApp(step2, tail);
+            return Eval.vApp(step3, rec);
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -326,6 +453,11 @@ public final class IndVec {
             return Objects.hash(VecElim.class, type, motive, base, step, len, scrut);
         }
 
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type, motive, base, step, len, scrut);
+        }
+
         @Override
         public @NotNull String toString() {
             return "(vecElim "
@@ -339,12 +471,91 @@ public final class IndVec {
         }
     }
 
+    /// 向量的脊：从外到内排列的 cons 单元，以及剥去所有单元之后的链底和它的长度
+    ///
+    /// 紧凑存储的部分 {@link VPacked} 总是位于链的最内侧，它的元素不会被复制到单元列表里，
+    /// 折叠时才逐个生成对应的 cons 单元
+    public record VecSpine(
+            List<VCons> cells,
+            @Nullable VPacked packed,
+            Value bottom,
+            Value bottomLen
+    ) {
+        /// 沿着 cons 链走到底，`len` 是整个向量的长度。沿途遇到的 thunk 和全局定义都会被展开
+        public static @NotNull VecSpine of(@NotNull Value len, @NotNull Value vec) {
+            ArrayList<VCons> cells = new ArrayList<>();
+            Value current = Eval.force(vec);
+            while (current instanceof VCons cons) {
+                cells.add(cons);
+                len = cons.len;
+                current = Eval.force(cons.tail);
+            }
+
+            if (current instanceof VPacked packed) {
+                Node node = packed.node();
+                return new VecSpine(
+                        cells,
+                        packed,
+                        new VNil(node, packed.type().value()),
+                        new IndNat.VZero(node)
+                );
+            }
+            return new VecSpine(cells, null, current, len);
+        }
+
+        /// 单元的个数
+        public int size() {
+            return cells.size() + (packed != null ? packed.size() : 0);
+        }
+
+        /// 从外向内的第 `i` 个单元
+        public @NotNull VCons cell(int i) {
+            if (i < cells.size()) {
+                return cells.get(i);
+            }
+            assert packed != null;
+            return packed.cell(i - cells.size());
+        }
+
+        /// 从链底开始向外折叠：对每一个单元 `cons`，`acc = step(cons, acc)`
+        public @NotNull Value fold(
+                @NotNull Value acc,
+                @NotNull BiFunction<VCons, Value, Value> step
+        ) {
+            for (int i = size() - 1; i >= 0; i--) {
+                acc = step.apply(cell(i), acc);
+            }
+            return acc;
+        }
+    }
+
     public record VVec(Node node, Type type, Value len) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Checkable.Inf(
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VVec vec)) return false;
+            return type.equals(vec.type) && len.equals(vec.len);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VVec.class, type, len);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type.value(), len);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return HashCons.inf(
                     node,
-                    new Vec(node, Eval.reify(depth, type.value()), Eval.reify(depth, len))
+                    HashCons.intern(new Vec(
+                            node,
+                            Eval.reify(depth, type.value(), unfold),
+                            Eval.reify(depth, len, unfold)
+                    ))
             );
         }
 
@@ -352,14 +563,41 @@ public final class IndVec {
         public @NotNull Value vApp(Value arg) {
             throw new IllegalStateException("Cannot apply vector type to an argument.");
         }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            if (!(other instanceof VVec vec)) {
+                return false;
+            }
+            conversion.goal(depth, len, vec.len);
+            conversion.goal(depth, type.value(), vec.type.value());
+            return true;
+        }
     }
 
     public record VNil(Node node, Value type) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Checkable.Inf(
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VNil nil)) return false;
+            return type.equals(nil.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VNil.class, type);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return HashCons.inf(
                     node,
-                    new Nil(node, Eval.reify(depth, type))
+                    HashCons.intern(new Nil(node, Eval.reify(depth, type, unfold)))
             );
         }
 
@@ -367,6 +605,15 @@ public final class IndVec {
         public @NotNull Value vApp(Value arg) {
             throw new IllegalStateException("Cannot apply nil to an argument.");
         }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            if (!(other instanceof VNil nil)) {
+                return false;
+            }
+            conversion.goal(depth, type, nil.type);
+            return true;
+        }
     }
 
     public record VCons(Node node,
@@ -375,22 +622,106 @@ public final class IndVec {
                         Value head,
                         Value tail) implements Value.CValue {
         @Override
-        public @NotNull Term.Checkable reify(int depth) {
-            return new Term.Checkable.Inf(
+        public boolean equals(Object o) {
+            return this == o || o instanceof Value v && vecEquals(this, v);
+        }
+
+        @Override
+        public int hashCode() {
+            return vecHash(this);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type.value(), len, head, tail);
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return reifyVec(depth, this, unfold);
+        }
+
+        @Override
+        public @NotNull Value vApp(Value arg) {
+            throw new IllegalStateException("Cannot apply cons to an argument.");
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertVec(depth, this, other, conversion);
+        }
+    }
+
+    /// 紧凑存储的非空向量，元素是 `elements[from..]`
+    ///
+    /// 只保存一次元素的类型，长度和按下标访问都是 O(1) 的。{@link #drop} 与原向量共享同一个数组，
+    /// 所以逐个取出尾部也不需要复制。对外它与由 {@link VCons} 组成、以 {@link VNil} 结尾的链等价：
+    /// 相等性、散列值和读回的结果都与对应的 cons 链相同
+    public record VPacked(Node node, Type type, Value[] elements, int from) implements Value.CValue {
+        public int size() {
+            return elements.length - from;
+        }
+
+        public @NotNull Value len() {
+            return IndNat.num(node, BigInteger.valueOf(size()));
+        }
+
+        public @NotNull Value get(int i) {
+            return elements[from + i];
+        }
+
+        /// 去掉前 `n` 个元素之后的向量
+        public @NotNull Value drop(int n) {
+            if (n == size()) {
+                return new VNil(node, type.value());
+            }
+            return n == 0 ? this : new VPacked(node, type, elements, from + n);
+        }
+
+        /// 第 `i` 个元素所在的 cons 单元
+        public @NotNull VCons cell(int i) {
+            return new VCons(
                     node,
-                    new Cons(
-                            node,
-                            Eval.reify(depth, type.value()),
-                            Eval.reify(depth, len),
-                            Eval.reify(depth, head),
-                            Eval.reify(depth, tail)
-                    )
+                    type,
+                    IndNat.num(node, BigInteger.valueOf(size() - i - 1)),
+                    get(i),
+                    drop(i + 1)
             );
         }
 
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Value v && vecEquals(this, v);
+        }
+
+        @Override
+        public int hashCode() {
+            return vecHash(this);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type.value(), Arrays.asList(elements).subList(from, elements.length));
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "VPacked[" + type + "; " + size() + " element(s)]";
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return reifyVec(depth, this, unfold);
+        }
+
         @Override
         public @NotNull Value vApp(Value arg) {
-            throw new IllegalStateException("Cannot apply cons to an argument.");
+            throw new IllegalStateException("Cannot apply vector to an argument.");
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return convertVec(depth, this, other, conversion);
         }
     }
 
@@ -402,17 +733,169 @@ public final class IndVec {
                            Value len,
                            Value.VNeutral nScrut) implements Value.CNeutral {
         @Override
-        public @NotNull Term.Inferable neutralReify(int depth) {
-            Term.Inferable scrutReify = Eval.neutralReify(depth, nScrut);
-            return new VecElim(
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NVecElim vecElim)) return false;
+            return type.equals(vecElim.type)
+                    && motive.equals(vecElim.motive)
+                    && base.equals(vecElim.base)
+                    && step.equals(vecElim.step)
+                    && len.equals(vecElim.len)
+                    && nScrut.equals(vecElim.nScrut);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(NVecElim.class, type, motive, base, step, len, nScrut);
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of(type, motive, base, step, len, nScrut);
+        }
+
+        @Override
+        public @NotNull Term.Inferable neutralReify(int depth, boolean unfold) {
+            Term.Inferable scrutReify = Eval.neutralReify(depth, nScrut, unfold);
+            return HashCons.intern(new VecElim(
                     node,
-                    Eval.reify(depth, type),
-                    Eval.reify(depth, motive),
-                    Eval.reify(depth, base),
-                    Eval.reify(depth, step),
-                    Eval.reify(depth, len),
-                    new Term.Inf(scrutReify.node(), scrutReify)
+                    Eval.reify(depth, type, unfold),
+                    Eval.reify(depth, motive, unfold),
+                    Eval.reify(depth, base, unfold),
+                    Eval.reify(depth, step, unfold),
+                    Eval.reify(depth, len, unfold),
+                    HashCons.inf(scrutReify.node(), scrutReify)
+            ));
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            if (!(other instanceof NVecElim vecElim)) {
+                return false;
+            }
+            conversion.goal(depth, nScrut, vecElim.nScrut);
+            conversion.goal(depth, len, vecElim.len);
+            conversion.goal(depth, step, vecElim.step);
+            conversion.goal(depth, base, vecElim.base);
+            conversion.goal(depth, motive, vecElim.motive);
+            conversion.goal(depth, type, vecElim.type);
+            return true;
+        }
+    }
+
+    /// `elements` 组成的向量的值，没有元素时是 {@link VNil}
+    public static @NotNull Value packed(
+            @NotNull Node node,
+            @NotNull Type type,
+            Value @NotNull [] elements
+    ) {
+        if (elements.length == 0) {
+            return new VNil(node, type.value());
+        }
+        return new VPacked(node, type, elements, 0);
+    }
+
+    /// 非空向量的第一个 cons 单元，其他值返回 `null`。不会强制求值 thunk
+    public static @Nullable VCons uncons(@NotNull Value value) {
+        return switch (value) {
+            case VCons cons -> cons;
+            case VPacked packed -> packed.cell(0);
+            default -> null;
+        };
+    }
+
+    /// 逐个单元比较两个向量，不区分 cons 链和紧凑存储
+    private static boolean vecEquals(Value a, Value b) {
+        while (true) {
+            if (a == b) {
+                return true;
+            }
+            if (a instanceof VPacked pa
+                && b instanceof VPacked pb
+                && pa.elements == pb.elements
+                && pa.from == pb.from) {
+                return pa.type.equals(pb.type);
+            }
+
+            VCons ca = uncons(a);
+            VCons cb = uncons(b);
+            if (ca == null || cb == null) {
+                return ca == cb && a.equals(b);
+            }
+            if (!ca.type.equals(cb.type) || !ca.len.equals(cb.len) || !ca.head.equals(cb.head)) {
+                return false;
+            }
+            a = ca.tail;
+            b = cb.tail;
+        }
+    }
+
+    /// 比较两个非空向量的第一个单元，尾部交给转换检查继续比较。与 {@link #vecEquals} 一样不区分存储形式
+    private static boolean convertVec(int depth, Value a, Value b, Conversion conversion) {
+        if (a instanceof VPacked pa
+            && b instanceof VPacked pb
+            && pa.elements == pb.elements
+            && pa.from == pb.from) {
+            conversion.goal(depth, pa.type.value(), pb.type.value());
+            return true;
+        }
+
+        VCons ca = uncons(a);
+        VCons cb = uncons(b);
+        if (ca == null || cb == null) {
+            return false;
+        }
+        conversion.goal(depth, ca.tail, cb.tail);
+        conversion.goal(depth, ca.head, cb.head);
+        conversion.goal(depth, ca.len, cb.len);
+        conversion.goal(depth, ca.type.value(), cb.type.value());
+        return true;
+    }
+
+    /// 与递归地计算 `Objects.hash(VCons.class, type, len, head, tail)` 的结果相同
+    private static int vecHash(Value vec) {
+        ArrayList<VCons> cells = new ArrayList<>();
+        Value current = vec;
+        for (VCons cons = uncons(current); cons != null; cons = uncons(current)) {
+            cells.add(cons);
+            current = cons.tail;
+        }
+
+        int hash = current.hashCode();
+        for (VCons cons : cells.reversed()) {
+            hash = Objects.hash(VCons.class, cons.type, cons.len, cons.head, hash);
+        }
+        return hash;
+    }
+
+    /// 把向量读回为 cons 链。紧凑存储的向量和 cons 链读回的结果相同
+    private static Term.Checkable reifyVec(int depth, Value vec, boolean unfold) {
+        ArrayList<VCons> cells = new ArrayList<>();
+        Value current = vec;
+        while (true) {
+            if (current instanceof Value.VThunk thunk) {
+                current = thunk.force();
+            } else if (uncons(current) instanceof VCons cons) {
+                cells.add(cons);
+                current = cons.tail;
+            } else {
+                break;
+            }
+        }
+
+        Term.Checkable result = Eval.reify(depth, current, unfold);
+        for (VCons cons : cells.reversed()) {
+            result = HashCons.inf(
+                    cons.node,
+                    HashCons.intern(new Cons(
+                            cons.node,
+                            Eval.reify(depth, cons.type.value(), unfold),
+                            Eval.reify(depth, cons.len, unfold),
+                            Eval.reify(depth, cons.head, unfold),
+                            result
+                    ))
             );
         }
+        return result;
     }
 }
@@ -10,12 +10,13 @@ import club.doki7.lambdapi.syntax.Node;
 import club.doki7.lambdapi.syntax.PNode;
 import club.doki7.lambdapi.syntax.Parse;
 import club.doki7.lambdapi.syntax.Token;
+import club.doki7.lambdapi.util.VersionedMap;
 
 import java.util.*;
 
 public final class Application implements AsciiColor {
     static void main() {
-        HashMap<String, Value> env = new HashMap<>();
+        VersionedMap<String, Value> env = new VersionedMap<>();
         HashMap<String, InferCheck.Kind> typeContext = new HashMap<>();
 
         System.out.println("=== Simply Typed Lambda Calculus ===");
@@ -57,10 +58,9 @@ public final class Application implements AsciiColor {
                     );
                     continue;
                 case ":env":
-                    if (!env.isEmpty()) {
-                        for (Map.Entry<String, Value> entry : env.entrySet()) {
-                            String name = entry.getKey();
-                            Value value = entry.getValue();
+                    VersionedMap.Snapshot<String, Value> snapshot = env.snapshot();
+                    if (!snapshot.isEmpty()) {
+                        snapshot.forEach((name, value) -> {
                             InferCheck.Kind kind = typeContext.get(name);
                             boolean isAxiom = value instanceof Value.NFree;
                             System.out.println(
@@ -71,7 +71,7 @@ public final class Application implements AsciiColor {
                                     + kind
                                     + ANSI_RESET
                             );
-                        }
+                        });
                     } else {
                         System.out.println(ANSI_GREEN + "Environment is empty." + ANSI_RESET);
                     }
@@ -99,7 +99,7 @@ public final class Application implements AsciiColor {
 
     private static void processInput(
             String input,
-            Map<String, Value> env,
+            VersionedMap<String, Value> env,
             Map<String, InferCheck.Kind> typeContext
     ) throws ParseException, ElabException, TypeCheckException {
         ArrayList<Token> tokens = Token.tokenize(input);
@@ -125,7 +125,7 @@ public final class Application implements AsciiColor {
 
     private static void processDeclaration(
             PNode decl,
-            Map<String, Value> env,
+            VersionedMap<String, Value> env,
             Map<String, InferCheck.Kind> typeContext
     ) throws ElabException, TypeCheckException {
         switch (decl) {
@@ -158,7 +158,7 @@ public final class Application implements AsciiColor {
             case PNode.Defun(Token name, Node valueNode) -> {
                 Term term = Elab.elab(valueNode);
                 Type type = InferCheck.infer(typeContext, (Term.Inferable) term);
-                Value value = Eval.eval(term, env);
+                Value value = Eval.eval(term, env.snapshot());
 
                 env.put(name.lexeme, value);
                 typeContext.put(name.lexeme, new InferCheck.HasType(type));
@@ -180,12 +180,12 @@ public final class Application implements AsciiColor {
 
     private static void checkAndEval(
             Node expr,
-            Map<String, Value> env,
+            VersionedMap<String, Value> env,
             Map<String, InferCheck.Kind> typeContext
     ) throws ElabException, TypeCheckException {
         Term term = Elab.elab(expr);
         Type type = InferCheck.infer(typeContext, (Term.Inferable) term);
-        Value value = Eval.eval(term, env);
+        Value value = Eval.eval(term, env.snapshot());
         Term normalForm = Eval.reify(value);
 
         System.out.println(ANSI_GREEN + normalForm + " : " + type + ANSI_RESET);
@@ -46,6 +46,10 @@ public final class Elab {
                     aster.location(),
                     "In STLC, type universes (*) are not supported, unless in axiom declarations"
             );
+            case Node.VecLit vec -> throw new ElabException(
+                    vec.location(),
+                    "In STLC, vector literal is not allowed at type/kind level"
+            );
         };
     }
 
@@ -100,6 +104,10 @@ public final class Elab {
                     aster,
                     "STLC does not support type universes (*)"
             );
+            case Node.VecLit vec -> throw new ElabException(
+                    vec.location(),
+                    "STLC does not support vector literals"
+            );
         };
     }
 
@@ -3,21 +3,25 @@ package club.doki7.lambdapi.stlc;
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.syntax.Node;
 import club.doki7.lambdapi.util.ConsList;
+import club.doki7.lambdapi.util.VersionedMap;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
 import java.util.function.Function;
 
 public final class Eval {
-    public static Value eval(Term term, Map<String, Value> globals) {
-        return eval(term, ConsList.nil(), Map.copyOf(globals));
+    public static Value eval(Term term, VersionedMap.Snapshot<String, Value> globals) {
+        return eval(term, ConsList.nil(), globals);
     }
 
     public static Term reify(Value value) {
         return reify(0, value);
     }
 
-    private static Value eval(Term term, ConsList<Value> env, Map<String, Value> globals) {
+    private static Value eval(
+            Term term,
+            ConsList<Value> env,
+            VersionedMap.Snapshot<String, Value> globals
+    ) {
         return switch (term) {
             case Term.Ann(Node _, Term t, Type _) -> eval(t, env, globals);
             case Term.Free(Node _, Name name) -> {
@@ -15,6 +15,7 @@ import java.util.List;
 ///           | x            (4) 变量 // @link substring=(4) target=Var
 ///           | e e'         (5) 应用 // @link substring=(5) target=App
 ///           | λx . e       (6) Lambda 抽象 // @link substring=(6) target=Lam
+///           | [ρ; e, ...]  (7) 向量字面量 // @link substring=(7) target=VecLit
 /// }
 ///
 /// 规则 3 同时用于 λ<sub>→</sub> 和 λ<sub>Π</sub>，
@@ -162,4 +163,35 @@ public sealed interface Node {
             }
         }
     }
+
+    record VecLit(
+            @NotNull Token lbracket,
+            @NotNull Node type,
+            @NotNull List<@NotNull Node> elements
+    ) implements Node {
+        @Override
+        public @NotNull Token location() {
+            return lbracket;
+        }
+
+        @TestOnly
+        public VecLit(@NotNull Node type, @NotNull List<@NotNull Node> elements) {
+            this(Token.symbol(Token.Kind.LBRACKET), type, elements);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            StringBuilder sb = new StringBuilder("[").append(type).append(";");
+            for (int i = 0; i < elements.size(); i++) {
+                Node element = elements.get(i);
+                sb.append(i == 0 ? " " : ", ");
+                if (element instanceof Lam || element instanceof Pi || element instanceof Ann) {
+                    sb.append("(").append(element).append(")");
+                } else {
+                    sb.append(element);
+                }
+            }
+            return sb.append("]").toString();
+        }
+    }
 }
@@ -32,12 +32,15 @@ import java.util.Set;
 ///            | simple-expr
 ///
 /// simple-expr ::= '(' expr ')'
+///               | '[' expr ';' app-expr-list? ']'
 ///               | identifier
+///               | number
 ///               | '*'
 ///
 /// forall ::= 'forall' | 'Π' | '∀'
 /// in ::= ':' | '::' | '<:' | '∈' | 'in'
 /// identifier-list ::= identifier (',' identifier)*
+/// app-expr-list ::= app-expr (',' app-expr)*
 /// generic-arrow ::= '->' | '→' | '.' | ','
 /// lambda ::= 'λ' | 'lambda' | '\'
 /// lambda-arrow ::= '→' | '->' | '.'
@@ -75,7 +78,7 @@ public final class Parse {
             Node type = parseExpr();
             return new PNode.Axiom(names, type);
         } else if (token.kind == Token.Kind.KW_DEFUN) {
-            Token name = expectConsume(Token.Kind.IDENT);
+            Token name = expectConsume(DEFUN_NAME_KINDS);
             expectConsume(Token.Kind.EQ);
             Node value = parseExpr();
             return new PNode.Defun(name, value);
@@ -188,7 +191,9 @@ public final class Parse {
                 expectConsume(Token.Kind.RPAREN);
                 yield inner;
             }
-            case IDENT -> {
+            case LBRACKET -> parseVecLit();
+            // 数字也作为变量解析，由展开阶段决定它是字面量还是对同名定义的引用
+            case IDENT, NUMBER -> {
                 consume();
                 yield new Node.Var(t);
             }
@@ -200,6 +205,25 @@ public final class Parse {
         };
     }
 
+    /// 向量字面量 `[a; x, y, z]`。逗号在表达式中是箭头，所以元素只能是应用表达式，
+    /// 更复杂的元素需要加括号
+    private @NotNull Node parseVecLit() throws ParseException {
+        Token lbracket = expectConsume(Token.Kind.LBRACKET);
+        Node type = parseExpr();
+        expectConsume(Token.Kind.SEMICOLON);
+
+        List<Node> elements = new ArrayList<>();
+        if (!check(Token.Kind.RBRACKET)) {
+            elements.add(parseAppExpr());
+            while (check(Token.Kind.COMMA)) {
+                consume();
+                elements.add(parseAppExpr());
+            }
+        }
+        expectConsume(Token.Kind.RBRACKET);
+        return new Node.VecLit(lbracket, type, elements);
+    }
+
     private @NotNull Node parseSimpleExpr() throws ParseException {
         Node result = tryParseSimpleExpr();
         if (result == null) {
@@ -286,6 +310,11 @@ public final class Parse {
             Token.Kind.KW_CHECK
     );
 
+    private static final @NotNull Set<Token.Kind> DEFUN_NAME_KINDS = Set.of(
+            Token.Kind.IDENT,
+            Token.Kind.NUMBER
+    );
+
     private static final @NotNull Set<Token.Kind> GENERIC_ARROW_KINDS = Set.of(
             Token.Kind.ARROW,
             Token.Kind.DOT,
@@ -11,10 +11,18 @@ public final class Token {
     public enum Kind {
         /// 标识符
         IDENT,
+        /// 只由十进制数字组成的数字字面量，也可以用作定义的名字
+        NUMBER,
         /// 左括号
         LPAREN,
         /// 右括号
         RPAREN,
+        /// `[`
+        LBRACKET,
+        /// `]`
+        RBRACKET,
+        /// `;`
+        SEMICOLON,
         /// `λ` 或者 `\`
         LAMBDA,
         /// `->` 和 `→`
@@ -41,8 +49,12 @@ public final class Token {
         public @NotNull String toString() {
             return switch (this) {
                 case IDENT -> "identifier";
+                case NUMBER -> "number";
                 case LPAREN -> "(";
                 case RPAREN -> ")";
+                case LBRACKET -> "[";
+                case RBRACKET -> "]";
+                case SEMICOLON -> ";";
                 case LAMBDA -> "λ";
                 case ARROW -> "→";
                 case DOT -> ".";
@@ -79,7 +91,7 @@ public final class Token {
         if (obj == null || getClass() != obj.getClass()) return false;
         Token other = (Token) obj;
         if (this.kind != other.kind) return false;
-        if (this.kind == Kind.IDENT) {
+        if (this.kind == Kind.IDENT || this.kind == Kind.NUMBER) {
             return this.lexeme.equals(other.lexeme);
         } else {
             return true;
@@ -93,7 +105,7 @@ public final class Token {
 
     @Override
     public int hashCode() {
-        if (this.kind == Kind.IDENT) {
+        if (this.kind == Kind.IDENT || this.kind == Kind.NUMBER) {
             return Objects.hash(kind, lexeme);
         } else {
             // Token(COLON, "::") == Token(COLON, ":") 但 Token(COLON, ":") != ":"
@@ -108,11 +120,19 @@ public final class Token {
         return new Token(Kind.IDENT, lexeme, -1, -1);
     }
 
+    @TestOnly
+    public static @NotNull Token number(@NotNull String lexeme) {
+        return new Token(Kind.NUMBER, lexeme, -1, -1);
+    }
+
     @TestOnly
     public static @NotNull Token symbol(@NotNull Kind kind) {
         return new Token(kind, switch (kind) {
             case LPAREN -> "(";
             case RPAREN -> ")";
+            case LBRACKET -> "[";
+            case RBRACKET -> "]";
+            case SEMICOLON -> ";";
             case LAMBDA -> "λ";
             case ARROW -> "→";
             case DOT -> ".";
@@ -122,6 +142,7 @@ public final class Token {
             case COLON -> ":";
             case EQ -> "=";
             case IDENT -> throw new IllegalArgumentException("IDENT token requires a lexeme");
+            case NUMBER -> throw new IllegalArgumentException("NUMBER token requires a lexeme");
             case KW_AXIOM -> "axiom";
             case KW_DEFUN -> "defun";
             case KW_CHECK -> "check";
@@ -164,6 +185,21 @@ public final class Token {
                         tokens.add(new Token(Kind.RPAREN, ")", line, col));
                         col++;
                     }
+                    case '[' -> {
+                        concludeToken();
+                        tokens.add(new Token(Kind.LBRACKET, "[", line, col));
+                        col++;
+                    }
+                    case ']' -> {
+                        concludeToken();
+                        tokens.add(new Token(Kind.RBRACKET, "]", line, col));
+                        col++;
+                    }
+                    case ';' -> {
+                        concludeToken();
+                        tokens.add(new Token(Kind.SEMICOLON, ";", line, col));
+                        col++;
+                    }
                     case 'λ', '\\' -> {
                         concludeToken();
                         tokens.add(new Token(Kind.LAMBDA, String.valueOf(c), line, col));
@@ -276,10 +312,21 @@ public final class Token {
                 return;
             }
 
-            tokens.add(new Token(Kind.IDENT, lexeme, line, col - lexeme.length()));
+            Kind kind = isNumber(lexeme) ? Kind.NUMBER : Kind.IDENT;
+            tokens.add(new Token(kind, lexeme, line, col - lexeme.length()));
             currentToken.setLength(0);
         }
 
+        private static boolean isNumber(String lexeme) {
+            for (int i = 0; i < lexeme.length(); i++) {
+                char c = lexeme.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private static final @NotNull HashMap<@NotNull String, @NotNull Kind> KEYWORDS;
         static {
             KEYWORDS = new HashMap<>();
@@ -0,0 +1,190 @@
+package club.doki7.lambdapi.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/// 持久化的哈希数组映射前缀树 (Bagwell, *Ideal Hash Trees*, 2001)
+///
+/// 每层用哈希值的 5 位选择分支，分支节点用位图压缩空位，所以查找最多经过 7 层。
+/// {@link #put} 只复制从根到被修改的叶子的路径，其余节点与原来的映射共享。
+/// 映射本身不可变，发布之后可以被任意多个线程同时读取而不需要加锁
+public final class PersistentMap<K, V> {
+    private final @NotNull Branch root;
+    private final int size;
+
+    private PersistentMap(@NotNull Branch root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static <K, V> @NotNull PersistentMap<K, V> empty() {
+        // noinspection unchecked
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public @Nullable V get(@NotNull K key) {
+        Leaf leaf = find(key);
+        // noinspection unchecked
+        return leaf != null ? (V) leaf.value : null;
+    }
+
+    public boolean containsKey(@NotNull K key) {
+        return find(key) != null;
+    }
+
+    /// 返回把 `key` 映射到 `value` 的新映射，原来的映射不变
+    public @NotNull PersistentMap<K, V> put(@NotNull K key, @NotNull V value) {
+        Leaf leaf = new Leaf(key.hashCode(), key, value);
+        int newSize = containsKey(key) ? size : size + 1;
+        return new PersistentMap<>(insert(root, 0, leaf), newSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /// 遍历所有条目，顺序由哈希值决定
+    public void forEach(@NotNull BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    private @Nullable Leaf find(@NotNull Object key) {
+        int hash = key.hashCode();
+        Object node = root;
+        int shift = 0;
+        while (true) {
+            if (node instanceof Branch branch) {
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((branch.bitmap & bit) == 0) {
+                    return null;
+                }
+                node = branch.children[branch.index(bit)];
+                shift += BITS;
+            } else if (node instanceof Leaf leaf) {
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            } else {
+                Collision collision = (Collision) node;
+                if (collision.hash != hash) {
+                    return null;
+                }
+                for (Leaf leaf : collision.leaves) {
+                    if (leaf.key.equals(key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    private static @NotNull Branch insert(@NotNull Branch branch, int shift, @NotNull Leaf leaf) {
+        int bit = 1 << ((leaf.hash >>> shift) & MASK);
+        int index = branch.index(bit);
+        if ((branch.bitmap & bit) == 0) {
+            Object[] children = new Object[branch.children.length + 1];
+            System.arraycopy(branch.children, 0, children, 0, index);
+            children[index] = leaf;
+            System.arraycopy(
+                    branch.children, index,
+                    children, index + 1,
+                    branch.children.length - index
+            );
+            return new Branch(branch.bitmap | bit, children);
+        }
+
+        Object child = branch.children[index];
+        Object replacement = switch (child) {
+            case Branch b -> insert(b, shift + BITS, leaf);
+            case Leaf l when l.hash == leaf.hash -> l.key.equals(leaf.key)
+                    ? leaf
+                    : new Collision(leaf.hash, new Leaf[] { l, leaf });
+            case Collision c when c.hash == leaf.hash -> c.with(leaf);
+            default -> split(child, hashOf(child), leaf, shift + BITS);
+        };
+        Object[] children = branch.children.clone();
+        children[index] = replacement;
+        return new Branch(branch.bitmap, children);
+    }
+
+    /// 哈希值不同的两个节点原本落在同一个位置，向下建立分支直到它们分开
+    private static @NotNull Branch split(
+            @NotNull Object existing,
+            int existingHash,
+            @NotNull Leaf leaf,
+            int shift
+    ) {
+        int existingBit = 1 << ((existingHash >>> shift) & MASK);
+        int bit = 1 << ((leaf.hash >>> shift) & MASK);
+        if (existingBit == bit) {
+            return new Branch(bit, new Object[] { split(existing, existingHash, leaf, shift + BITS) });
+        }
+        // 1 << 31 是负数，要按无符号数比较
+        return Integer.compareUnsigned(existingBit, bit) < 0
+                ? new Branch(existingBit | bit, new Object[] { existing, leaf })
+                : new Branch(existingBit | bit, new Object[] { leaf, existing });
+    }
+
+    private static int hashOf(@NotNull Object node) {
+        return node instanceof Leaf leaf ? leaf.hash : ((Collision) node).hash;
+    }
+
+    private static <K, V> void forEach(
+            @NotNull Object node,
+            @NotNull BiConsumer<? super K, ? super V> action
+    ) {
+        switch (node) {
+            case Branch branch -> {
+                for (Object child : branch.children) {
+                    forEach(child, action);
+                }
+            }
+            case Leaf leaf -> {
+                // noinspection unchecked
+                action.accept((K) leaf.key, (V) leaf.value);
+            }
+            case Collision collision -> {
+                for (Leaf leaf : collision.leaves) {
+                    // noinspection unchecked
+                    action.accept((K) leaf.key, (V) leaf.value);
+                }
+            }
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    /// 分支节点，`children[i]` 对应 `bitmap` 中从低到高第 `i` 个置位的位置
+    private record Branch(int bitmap, @NotNull Object[] children) {
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    private record Leaf(int hash, @NotNull Object key, @NotNull Object value) {}
+
+    /// 哈希值完全相同的键，只能逐个比较
+    private record Collision(int hash, @NotNull Leaf[] leaves) {
+        @NotNull Collision with(@NotNull Leaf leaf) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    Leaf[] replaced = leaves.clone();
+                    replaced[i] = leaf;
+                    return new Collision(hash, replaced);
+                }
+            }
+            Leaf[] extended = Arrays.copyOf(leaves, leaves.length + 1);
+            extended[leaves.length] = leaf;
+            return new Collision(hash, extended);
+        }
+    }
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Branch(0, new Object[0]), 0);
+}
@@ -0,0 +1,113 @@
+package club.doki7.lambdapi.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/// 持久化的斜二进制随机访问列表 (Okasaki, *Purely Functional Data Structures*, 9.3.1)
+///
+/// 在表头追加元素是 O(1) 的，按下标访问第 `i` 个元素是 O(min(i, log n)) 的。
+/// 下标从表头开始计数，因此可以直接用 de Bruijn 索引访问求值环境
+public final class SkewList<T> {
+    private final int size;
+    private final @Nullable Digit<T> digits;
+
+    private SkewList(int size, @Nullable Digit<T> digits) {
+        this.size = size;
+        this.digits = digits;
+    }
+
+    public static <T> @NotNull SkewList<T> nil() {
+        // noinspection unchecked
+        return (SkewList<T>) NIL;
+    }
+
+    public static <T> @NotNull SkewList<T> of(@NotNull T head) {
+        return SkewList.<T>nil().cons(head);
+    }
+
+    public @NotNull SkewList<T> cons(@NotNull T head) {
+        if (digits != null
+            && digits.next != null
+            && digits.weight == digits.next.weight) {
+            Digit<T> next = digits.next;
+            return new SkewList<>(
+                    size + 1,
+                    new Digit<>(
+                            1 + 2 * digits.weight,
+                            new Tree<>(head, digits.tree, next.tree),
+                            next.next
+                    )
+            );
+        }
+        return new SkewList<>(size + 1, new Digit<>(1, new Tree<>(head, null, null), digits));
+    }
+
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        int i = index;
+        Digit<T> digit = digits;
+        while (i >= digit.weight) {
+            i -= digit.weight;
+            digit = digit.next;
+        }
+
+        Tree<T> tree = digit.tree;
+        int weight = digit.weight;
+        while (i != 0) {
+            weight /= 2;
+            if (i <= weight) {
+                tree = tree.left;
+                i -= 1;
+            } else {
+                tree = tree.right;
+                i -= 1 + weight;
+            }
+        }
+        return tree.value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SkewList<?> other)) return false;
+
+        // 斜二进制表示由长度唯一决定，所以长度相同的列表形状也相同
+        return size == other.size && Objects.equals(digits, other.digits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, digits);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            sb.append(get(i));
+        }
+        return sb.append("]").toString();
+    }
+
+    private record Digit<T>(int weight, @NotNull Tree<T> tree, @Nullable Digit<T> next) {}
+
+    private record Tree<T>(@NotNull T value, @Nullable Tree<T> left, @Nullable Tree<T> right) {}
+
+    private static final SkewList<?> NIL = new SkewList<>(0, null);
+}
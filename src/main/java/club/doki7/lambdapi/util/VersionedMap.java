@@ -0,0 +1,83 @@
+package club.doki7.lambdapi.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/// 带版本号的映射表，用于 REPL 会话中的全局定义
+///
+/// 每次 {@link #put} 都会使版本号加一，并把新值挂在同名旧值之前，旧值不会被覆盖。
+/// {@link #snapshot} 是 O(1) 的：快照只记录当时的版本号，查找时跳过比它新的条目，
+/// 因此快照在之后的修改下保持不变，可以被闭包长期持有而无需复制整张表
+///
+/// 修改只能在一个线程中进行。底层的表是并发安全的，所以其他线程可以同时通过快照查找
+public final class VersionedMap<K, V> {
+    public @NotNull Snapshot<K, V> snapshot() {
+        Snapshot<K, V> s = snapshot;
+        if (s == null) {
+            s = new Snapshot<>(table, version);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    public void put(@NotNull K key, @NotNull V value) {
+        table.put(key, new Entry<>(version, value, table.get(key)));
+        version++;
+        snapshot = null;
+    }
+
+    /// 清空映射表。已经取得的快照仍然指向旧的表，不受影响
+    public void clear() {
+        table = new ConcurrentHashMap<>();
+        version = 0;
+        snapshot = null;
+    }
+
+    public static final class Snapshot<K, V> {
+        private Snapshot(@NotNull ConcurrentHashMap<K, Entry<V>> table, int version) {
+            this.table = table;
+            this.version = version;
+        }
+
+        public @Nullable V get(@NotNull K key) {
+            Entry<V> entry = table.get(key);
+            while (entry != null && entry.version >= version) {
+                entry = entry.prev;
+            }
+            return entry != null ? entry.value : null;
+        }
+
+        public int version() {
+            return version;
+        }
+
+        public boolean isEmpty() {
+            return version == 0;
+        }
+
+        public void forEach(@NotNull BiConsumer<? super K, ? super V> action) {
+            for (Map.Entry<K, Entry<V>> e : table.entrySet()) {
+                Entry<V> entry = e.getValue();
+                while (entry != null && entry.version >= version) {
+                    entry = entry.prev;
+                }
+                if (entry != null) {
+                    action.accept(e.getKey(), entry.value);
+                }
+            }
+        }
+
+        private final @NotNull ConcurrentHashMap<K, Entry<V>> table;
+        private final int version;
+    }
+
+    private record Entry<V>(int version, @NotNull V value, @Nullable Entry<V> prev) {}
+
+    private @NotNull ConcurrentHashMap<K, Entry<V>> table = new ConcurrentHashMap<>();
+    private int version;
+    private @Nullable Snapshot<K, V> snapshot;
+}
@@ -0,0 +1,94 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+
+/// 按值调用与按需调用的基准测试
+///
+/// 用 Church 数 `n` 迭代 `λacc. (λd. λa. a) heavy acc`，其中 `heavy` 是对自然数 `m` 的
+/// `natElim`。每一步都丢弃 `heavy`，按值调用仍然要计算它 n 次，按需调用则一次也不计算
+public final class BenchCallByNeed {
+    static void main() {
+        System.out.println("n\tm\tby-value(ms)\tby-need(ms)");
+        for (int n = 100; n <= 1600; n *= 4) {
+            for (int m = 100; m <= 1600; m *= 4) {
+                Term term = workload(n, m);
+                double byValue = measure(term, Eval.Strategy.CALL_BY_VALUE);
+                double byNeed = measure(term, Eval.Strategy.CALL_BY_NEED);
+                System.out.printf("%d\t%d\t%.3f\t%.3f%n", n, m, byValue, byNeed);
+            }
+        }
+    }
+
+    /// 构造 `cₙ Nat (λacc. (λd. λa. a) heavy acc) zero`，不经过类型检查直接求值
+    private static Term workload(int n, int m) {
+        Node node = new Node.Aster();
+        Term.Checkable nat = inf(new IndNat.Nat(node));
+
+        // cₙ = λt. λs. λz. s (s (... z))
+        Term.Checkable body = inf(bound(node, 0));
+        for (int i = 0; i < n; i++) {
+            body = inf(new Term.App(node, bound(node, 1), body));
+        }
+        Term.Checkable church = new Term.Lam(node, new Term.Lam(node, new Term.Lam(node, body)));
+
+        Term.Checkable big = inf(new IndNat.Zero(node));
+        for (int i = 0; i < m; i++) {
+            big = inf(new IndNat.Succ(node, big));
+        }
+        Term.Inferable heavy = new IndNat.NatElim(
+                node,
+                new Term.Lam(node, nat),
+                inf(new IndNat.Zero(node)),
+                new Term.Lam(
+                        node,
+                        new Term.Lam(node, inf(new IndNat.Succ(node, inf(bound(node, 0)))))
+                ),
+                big
+        );
+
+        Term.Checkable discard = new Term.Lam(node, new Term.Lam(node, inf(bound(node, 0))));
+        Term.Inferable discardApp = new Term.App(
+                node,
+                new Term.App(node, new Term.Ann(node, discard, nat), inf(heavy)),
+                inf(bound(node, 0))
+        );
+        Term.Checkable step = new Term.Lam(node, inf(discardApp));
+
+        Term.Inferable app = new Term.Ann(node, church, nat);
+        app = new Term.App(node, app, nat);
+        app = new Term.App(node, app, step);
+        app = new Term.App(node, app, inf(new IndNat.Zero(node)));
+        return app;
+    }
+
+    private static double measure(Term term, Eval.Strategy strategy) {
+        Globals globals = Globals.empty();
+        globals.setStrategy(strategy);
+        Globals.Snapshot snapshot = globals.snapshot();
+
+        for (int i = 0; i < 10; i++) {
+            sink ^= System.identityHashCode(Eval.force(Eval.eval(term, snapshot)));
+        }
+
+        int iterations = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink ^= System.identityHashCode(Eval.force(Eval.eval(term, snapshot)));
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private static Term.Checkable inf(Term.Inferable inferable) {
+        return new Term.Inf(inferable.node(), inferable);
+    }
+
+    private static Term.Inferable bound(Node node, int index) {
+        return new Term.Bound(node, index);
+    }
+
+    private static int sink;
+}
@@ -0,0 +1,84 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Compile;
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.dtlc.Value;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+import java.util.function.Supplier;
+
+/// 编译后的定义与解释执行的定义的基准测试
+///
+/// 分别用编译器和解释器定义 Church 数的乘法和数字 `cₙ`，然后对 `cmul cₙ cₙ` 求值并读回正规形式。
+/// 读回时反复应用定义中的闭包，编译后的函数体直接在 JVM 上运行
+public final class BenchCompile {
+    static void main() throws Exception {
+        System.out.println("n*n\tinterpreted(us)\tcompiled(us)");
+        for (int n = 4; n <= 64; n *= 2) {
+            double interpreted = measure(prepare(n, false));
+            double compiled = measure(prepare(n, true));
+            System.out.printf("%d\t%.2f\t%.2f%n", n * n, interpreted / 1000, compiled / 1000);
+        }
+    }
+
+    private static Supplier<Object> prepare(int n, boolean compile) throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *", compile);
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat", compile);
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat", compile);
+        define(globals, "c", "(λt. λs. λz. z) : CNat", compile);
+        for (int i = 0; i < n; i++) {
+            define(globals, "c", "csuc c", compile);
+        }
+
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term term = elab("cmul c c", snapshot);
+        return () -> Eval.reify(Eval.eval(term, snapshot));
+    }
+
+    private static void define(
+            Globals globals,
+            String name,
+            String code,
+            boolean compile
+    ) throws Exception {
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) elab(code, snapshot);
+        Type type = InferCheck.infer(term, snapshot);
+        Value value = compile ? Compile.eval(term, snapshot) : null;
+        if (value == null) {
+            value = Eval.eval(term, snapshot);
+        }
+        globals.define(name, value, type);
+    }
+
+    private static Term elab(String code, Globals.Snapshot snapshot) throws Exception {
+        return new Elab().elab(Parse.parseExpr(Token.tokenize(code)), snapshot);
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 2_000; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink ^= System.identityHashCode(action.get());
+            }
+            iterations += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
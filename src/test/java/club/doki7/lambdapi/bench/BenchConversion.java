@@ -0,0 +1,100 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Conversion;
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.dtlc.Value;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+import java.util.function.Supplier;
+
+/// 值层面的转换检查与读回后比较的基准测试
+///
+/// 比较 `cmul cₙ cₙ` 与另外两个值是否可转换：`cmul dₙ dₙ`，其中 `dₙ` 是单独定义的同一个数字；
+/// 以及 `czro`。相同时两种做法都要走遍整个正规形式；不同时转换检查在第一个不同的头部就停下，
+/// 读回仍然要构造两个完整的正规形式
+public final class BenchConversion {
+    static void main() throws Exception {
+        System.out.println("n*n\tsame-reify(us)\tsame-conv(us)\tdiff-reify(us)\tdiff-conv(us)");
+        for (int n = 4; n <= 64; n *= 2) {
+            Globals.Snapshot snapshot = churchGlobals(n).snapshot();
+            Term lhs = elab("cmul c c", snapshot);
+            Term same = elab("cmul d d", snapshot);
+            Term diff = elab("czro", snapshot);
+
+            double sameReify = measure(() -> byReadback(lhs, same, snapshot));
+            double sameConv = measure(() -> byConversion(lhs, same, snapshot));
+            double diffReify = measure(() -> byReadback(lhs, diff, snapshot));
+            double diffConv = measure(() -> byConversion(lhs, diff, snapshot));
+            System.out.printf(
+                    "%d\t%.2f\t%.2f\t%.2f\t%.2f%n",
+                    n * n,
+                    sameReify / 1000,
+                    sameConv / 1000,
+                    diffReify / 1000,
+                    diffConv / 1000
+            );
+        }
+    }
+
+    private static boolean byReadback(Term a, Term b, Globals.Snapshot snapshot) {
+        return Eval.reify(Eval.eval(a, snapshot)).equals(Eval.reify(Eval.eval(b, snapshot)));
+    }
+
+    private static boolean byConversion(Term a, Term b, Globals.Snapshot snapshot) {
+        Value va = Eval.eval(a, snapshot);
+        Value vb = Eval.eval(b, snapshot);
+        return Conversion.convertible(0, va, vb);
+    }
+
+    private static Globals churchGlobals(int n) throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "c", "czro");
+        define(globals, "d", "czro");
+        for (int i = 0; i < n; i++) {
+            define(globals, "c", "csuc c");
+            define(globals, "d", "csuc d");
+        }
+        return globals;
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) elab(code, snapshot);
+        Type type = InferCheck.infer(term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    private static Term elab(String code, Globals.Snapshot snapshot) throws Exception {
+        return new Elab().elab(Parse.parseExpr(Token.tokenize(code)), snapshot);
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 2_000; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink ^= System.identityHashCode(action.get());
+            }
+            iterations += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
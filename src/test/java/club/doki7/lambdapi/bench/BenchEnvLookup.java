@@ -0,0 +1,80 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.ConsList;
+import club.doki7.lambdapi.util.SkewList;
+
+import java.util.function.Supplier;
+
+/// 求值环境查找的基准测试
+///
+/// 第一部分直接比较 `ConsList.get` 和 `SkewList.get` 访问最深处元素的开销；
+/// 第二部分对 `λ x₁ ... xₙ. x₁` 应用 n 个参数求值，每一层都会访问最外层的绑定。
+/// 使用 `SkewList` 后，单次查找的开销不再随绑定深度线性增长
+public final class BenchEnvLookup {
+    static void main() {
+        System.out.println("depth\tConsList.get(ns)\tSkewList.get(ns)");
+        for (int depth = 1; depth <= 16384; depth *= 4) {
+            ConsList<Integer> cons = ConsList.nil();
+            SkewList<Integer> skew = SkewList.nil();
+            for (int i = 0; i < depth; i++) {
+                cons = ConsList.cons(i, cons);
+                skew = skew.cons(i);
+            }
+
+            final ConsList<Integer> consEnv = cons;
+            final SkewList<Integer> skewEnv = skew;
+            final int index = depth - 1;
+            double consNs = measure(() -> consEnv.get(index));
+            double skewNs = measure(() -> skewEnv.get(index));
+            System.out.printf("%d\t%.1f\t%.1f%n", depth, consNs, skewNs);
+        }
+
+        System.out.println();
+        System.out.println("binders\teval(ns)\tns/binder");
+        for (int depth = 16; depth <= 4096; depth *= 4) {
+            Term term = deepProjection(depth);
+            double ns = measure(() -> Eval.eval(term, Globals.empty().snapshot()));
+            System.out.printf("%d\t%.1f\t%.2f%n", depth, ns, ns / depth);
+        }
+    }
+
+    /// 构造 `(λ x₁ ... xₙ. x₁) * ... *`，不经过类型检查直接求值
+    private static Term deepProjection(int depth) {
+        Node node = new Node.Aster();
+        Term.Checkable body = new Term.Inf(node, new Term.Bound(node, depth - 1));
+        for (int i = 0; i < depth; i++) {
+            body = new Term.Lam(node, body);
+        }
+
+        Term.Checkable star = new Term.Inf(node, new Term.Star(node));
+        Term.Inferable app = new Term.Ann(node, body, star);
+        for (int i = 0; i < depth; i++) {
+            app = new Term.App(node, app, star);
+        }
+        return app;
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 20_000; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                sink ^= System.identityHashCode(action.get());
+            }
+            iterations += 1000;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 200_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
@@ -0,0 +1,91 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+import java.util.function.Supplier;
+
+/// 规范词项的相等性比较的基准测试
+///
+/// 分别求值 `cmul cₙ cₙ` 与 `cmul cₙ (csuc ... czro)` 并读回正规形式，然后比较两个正规形式。
+/// 读回构造的是规范词项，所以比较只需要看引用，与正规形式的大小无关
+public final class BenchHashCons {
+    static void main() throws Exception {
+        System.out.println("n*n\treify(us)\tequals(ns)");
+        for (int n = 4; n <= 64; n *= 2) {
+            Globals globals = churchGlobals(n);
+            Globals.Snapshot snapshot = globals.snapshot();
+            Term lhs = elab("cmul c c", snapshot);
+            Term rhs = elab("cmul c " + unary(n), snapshot);
+
+            double reify = measure(() -> Eval.reify(Eval.eval(lhs, snapshot)));
+            Term lhsNormal = Eval.reify(Eval.eval(lhs, snapshot));
+            Term rhsNormal = Eval.reify(Eval.eval(rhs, snapshot));
+            if (!lhsNormal.equals(rhsNormal)) {
+                throw new IllegalStateException("normal forms differ");
+            }
+            double equals = measure(() -> lhsNormal.equals(rhsNormal));
+            System.out.printf("%d\t%.2f\t%.2f%n", n * n, reify / 1000, equals);
+        }
+    }
+
+    private static Globals churchGlobals(int n) throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "c", "czro");
+        for (int i = 0; i < n; i++) {
+            define(globals, "c", "csuc c");
+        }
+        return globals;
+    }
+
+    private static String unary(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append("(csuc ");
+        }
+        sb.append("czro");
+        sb.append(")".repeat(n));
+        return sb.toString();
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) elab(code, snapshot);
+        Type type = InferCheck.infer(term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    private static Term elab(String code, Globals.Snapshot snapshot) throws Exception {
+        return new Elab().elab(Parse.parseExpr(Token.tokenize(code)), snapshot);
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 2_000; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink ^= System.identityHashCode(action.get());
+            }
+            iterations += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
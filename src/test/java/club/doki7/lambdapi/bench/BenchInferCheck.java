@@ -0,0 +1,93 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.exc.TypeCheckException;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+/// 类型检查对绑定层数的基准测试
+///
+/// 检查 `λa. λx₁. ... λxₙ. x₁ : ∀(a : *) → a → ... → a`。每进入一层 λ 都把新变量替换进函数体时，
+/// 总代价是 O(n²)；在上下文中查找约束变量时是 O(n log n)，每层的耗时基本不随 `n` 增长
+///
+/// 第二组比较处理一个声明的两种做法：先检查再单独求值，以及检查时一并求值。声明是
+/// `f (f (... (f z)))`。检查每个应用都需要参数的值，如果每次都单独求值参数，总代价是 O(n²)；
+/// 检查时一并求值则每个子项只走一遍，单独求值也只是多一遍线性的遍历
+public final class BenchInferCheck {
+    static void main() throws Exception {
+        System.out.println("n\ttotal(us)\tper-binder(ns)");
+        for (int n = 64; n <= 512; n *= 2) {
+            Globals.Snapshot snapshot = Globals.empty().snapshot();
+            Term.Inferable term = elab(project(n), snapshot);
+
+            double nanos = measure(() -> InferCheck.infer(term, snapshot));
+            System.out.printf("%d\t%.2f\t%.2f%n", n, nanos / 1000, nanos / n);
+        }
+
+        System.out.println("n\tseparate(us)\tfused(us)");
+        for (int n = 64; n <= 512; n *= 2) {
+            Globals globals = Globals.empty();
+            define(globals, "T", "(∀(a : *) → a → a) : *");
+            define(globals, "f", "(λx. x) : T → T");
+            define(globals, "z", "(λa. λx. x) : T");
+            Globals.Snapshot snapshot = globals.snapshot();
+            Term.Inferable term = elab("f (".repeat(n) + "z" + ")".repeat(n), snapshot);
+
+            double separate = measure(() -> {
+                InferCheck.infer(term, snapshot);
+                return Eval.eval(term, snapshot);
+            });
+            double fused = measure(() -> InferCheck.inferEval(term, snapshot).value());
+            System.out.printf("%d\t%.2f\t%.2f%n", n, separate / 1000, fused / 1000);
+        }
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Globals.Snapshot snapshot = globals.snapshot();
+        InferCheck.Typed typed = InferCheck.inferEval(elab(code, snapshot), snapshot);
+        globals.define(name, typed.value(), typed.type());
+    }
+
+    private static Term.Inferable elab(String code, Globals.Snapshot snapshot) throws Exception {
+        return (Term.Inferable) new Elab().elab(Parse.parseExpr(Token.tokenize(code)), snapshot);
+    }
+
+    private static String project(int n) {
+        StringBuilder term = new StringBuilder("(λa. ");
+        StringBuilder type = new StringBuilder("∀(a : *) → ");
+        for (int i = 1; i <= n; i++) {
+            term.append("λx").append(i).append(". ");
+            type.append("a → ");
+        }
+        return term.append("x1) : ").append(type).append("a").toString();
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        Object run() throws TypeCheckException;
+    }
+
+    private static double measure(Action action) throws TypeCheckException {
+        for (int i = 0; i < 200; i++) {
+            sink ^= System.identityHashCode(action.run());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 10; i++) {
+                sink ^= System.identityHashCode(action.run());
+            }
+            iterations += 10;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
@@ -0,0 +1,123 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Compile;
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.ModuleCache;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/// 延迟加载库的基准测试
+///
+/// 库中有 `n` 个 Church 数的定义，每个定义用到前一个定义。按 `:include` 的方式从模块缓存读回时，
+/// 每个定义都要解码和求值，耗时与 `n` 成正比；作为库加载时只读文件头，然后只解码用到的一个定义，
+/// 耗时基本不随 `n` 变化
+public final class BenchLazyLoad {
+    static void main() throws Exception {
+        Path dir = Files.createTempDirectory("lpi-bench");
+        System.out.println("n\treplay(ms)\tlazy(ms)");
+        for (int n = 1000; n <= 16000; n *= 2) {
+            List<PNode> items = program(n);
+            byte[] source = ModuleCache.hash("bench " + n);
+            Path path = dir.resolve("lib" + n + ".lpc");
+            write(items, source, path);
+            String name = "c" + n / 2;
+            System.out.printf(
+                    "%d\t%.3f\t%.3f%n",
+                    n,
+                    measure(() -> replay(items, source, path)) / 1e6,
+                    measure(() -> lazy(source, path, name)) / 1e6
+            );
+        }
+    }
+
+    private static List<PNode> program(int n) throws Exception {
+        StringBuilder code = new StringBuilder("""
+                defun CNat = (∀(t : *) → (t → t) → t → t) : *
+                defun c0 = (λt. λs. λz. z) : CNat
+                """);
+        for (int i = 1; i <= n; i++) {
+            code.append("defun c").append(i)
+                .append(" = (λt. λs. λz. s (c").append(i - 1).append(" t s z)) : CNat\n");
+        }
+        return ((PNode.Program) Parse.parseProgram(Token.tokenize(code.toString()))).items();
+    }
+
+    private static void write(List<PNode> items, byte[] source, Path path) throws Exception {
+        Elab elab = new Elab();
+        Globals globals = Globals.empty();
+        ModuleCache.Writer writer = new ModuleCache.Writer(source, new ModuleCache().upstream(), globals);
+        for (PNode item : items) {
+            PNode.Defun defun = (PNode.Defun) item;
+            Term term = elab.elab(defun.value(), globals.snapshot());
+            InferCheck.Typed typed = InferCheck.inferEval((Term.Inferable) term, globals.snapshot());
+            writer.add(item, new ModuleCache.Defun(term, Eval.reifyFolded(typed.type().value())), null);
+            globals.define(defun.name().lexeme, typed.value(), typed.type());
+        }
+        writer.write(path);
+    }
+
+    private static void replay(List<PNode> items, byte[] source, Path path) throws Exception {
+        Globals globals = Globals.empty();
+        ModuleCache.Reader reader = ModuleCache.open(path, source, new ModuleCache().upstream(), items.size());
+        assert reader != null;
+        for (PNode item : items) {
+            Globals.Snapshot snapshot = globals.snapshot();
+            ModuleCache.Defun defun = (ModuleCache.Defun) reader.next(item, snapshot);
+            globals.define(
+                    ((PNode.Defun) item).name().lexeme,
+                    Compile.evalDefinition(defun.value(), snapshot),
+                    Type.of(Eval.eval(defun.type(), snapshot))
+            );
+        }
+        sink ^= globals.snapshot().size();
+    }
+
+    private static void lazy(byte[] source, Path path, String name) throws Exception {
+        Globals globals = Globals.empty();
+        ModuleCache.Library library = ModuleCache.library(
+                path,
+                source,
+                new ModuleCache().upstream(),
+                (_, _) -> {}
+        );
+        assert library != null;
+        globals.load(library);
+        Globals.Slot slot = globals.snapshot().lookup(name);
+        assert slot != null;
+        sink ^= System.identityHashCode(slot.type());
+        sink ^= System.identityHashCode(slot.value());
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static double measure(Action action) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            action.run();
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            action.run();
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 1_000_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
@@ -0,0 +1,77 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.Machine;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+
+import java.util.function.Supplier;
+
+/// 抽象机与显式栈求值器的基准测试
+///
+/// 求值 `natElim (λ_. Nat) zero (λk. λr. succ r) n`，同时给出抽象机执行的步数。
+/// 抽象机每一步都要经过一次调度，用来衡量按步执行相对于 {@link Eval#eval} 的额外开销
+public final class BenchMachine {
+    static void main() {
+        Globals.Snapshot globals = Globals.empty().snapshot();
+
+        System.out.println("n\tsteps\teval(us)\tmachine(us)");
+        for (int n = 1000; n <= 64000; n *= 4) {
+            Term term = natElimCopy(n);
+            Machine machine = new Machine(term, globals);
+            machine.run();
+
+            double eval = measure(() -> Eval.eval(term, globals));
+            double machineTime = measure(() -> Machine.eval(term, globals));
+            System.out.printf(
+                    "%d\t%d\t%.2f\t%.2f%n",
+                    n,
+                    machine.steps(),
+                    eval / 1000,
+                    machineTime / 1000
+            );
+        }
+    }
+
+    private static Term natElimCopy(int n) {
+        Node node = new Node.Aster();
+        Term.Checkable scrut = inf(new IndNat.Zero(node));
+        for (int i = 0; i < n; i++) {
+            scrut = inf(new IndNat.Succ(node, scrut));
+        }
+        return new IndNat.NatElim(
+                node,
+                new Term.Lam(node, inf(new IndNat.Nat(node))),
+                inf(new IndNat.Zero(node)),
+                new Term.Lam(node, new Term.Lam(
+                        node,
+                        inf(new IndNat.Succ(node, inf(new Term.Bound(node, 0))))
+                )),
+                scrut
+        );
+    }
+
+    private static Term.Checkable inf(Term.Inferable inferable) {
+        return new Term.Inf(inferable.node(), inferable);
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 20; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink ^= System.identityHashCode(action.get());
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
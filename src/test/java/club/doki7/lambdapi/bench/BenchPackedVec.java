@@ -0,0 +1,129 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.dtlc.Value;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.ind.IndVec;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.SkewList;
+
+import java.math.BigInteger;
+import java.util.function.Supplier;
+
+/// cons 链与紧凑存储的向量的基准测试
+///
+/// 分别构造 n 个元素的两种向量，给出每个元素占用的内存，以及用 `vecElim` 计算长度所需的时间
+public final class BenchPackedVec {
+    static void main() {
+        System.out.println("n\tcons(B/elem)\tpacked(B/elem)\tcons(us)\tpacked(us)");
+        for (int n = 16_000; n <= 1_024_000; n *= 4) {
+            int size = n;
+            Value[] elements = elements(size);
+            Term term = vecLength(size);
+            Globals.Snapshot globals = Globals.empty().snapshot();
+
+            double consBytes = bytesPerElement(size, () -> consChain(elements));
+            double packedBytes = bytesPerElement(size, () -> packed(elements));
+
+            SkewList<Value> consEnv = SkewList.of(consChain(elements));
+            SkewList<Value> packedEnv = SkewList.of(packed(elements));
+            double consTime = measure(() -> Eval.eval(term, consEnv, globals));
+            double packedTime = measure(() -> Eval.eval(term, packedEnv, globals));
+            System.out.printf(
+                    "%d\t%.1f\t%.1f\t%.2f\t%.2f%n",
+                    n,
+                    consBytes,
+                    packedBytes,
+                    consTime / 1000,
+                    packedTime / 1000
+            );
+        }
+    }
+
+    private static Value[] elements(int n) {
+        Value[] elements = new Value[n];
+        for (int i = 0; i < n; i++) {
+            elements[i] = new IndNat.VZero(NODE);
+        }
+        return elements;
+    }
+
+    private static Value consChain(Value[] elements) {
+        Value vec = new IndVec.VNil(NODE, NAT.value());
+        for (int i = elements.length - 1; i >= 0; i--) {
+            vec = new IndVec.VCons(
+                    NODE,
+                    NAT,
+                    IndNat.num(NODE, BigInteger.valueOf(elements.length - i - 1)),
+                    elements[i],
+                    vec
+            );
+        }
+        return vec;
+    }
+
+    private static Value packed(Value[] elements) {
+        return IndVec.packed(NODE, NAT, elements.clone());
+    }
+
+    // vecElim Nat (λ_. λ_. Nat) zero (λl. λh. λt. λr. succ r) n D⁰
+    private static Term vecLength(int n) {
+        Term.Checkable nat = new Term.Inf(NODE, new IndNat.Nat(NODE));
+        Term.Checkable step = new Term.Inf(
+                NODE,
+                new IndNat.Succ(NODE, new Term.Inf(NODE, new Term.Bound(NODE, 0)))
+        );
+        for (int i = 0; i < 4; i++) {
+            step = new Term.Lam(NODE, step);
+        }
+        return new IndVec.VecElim(
+                NODE,
+                nat,
+                new Term.Lam(NODE, new Term.Lam(NODE, nat)),
+                new Term.Inf(NODE, new IndNat.Zero(NODE)),
+                step,
+                new Term.Inf(NODE, new IndNat.NatLit(NODE, BigInteger.valueOf(n))),
+                new Term.Inf(NODE, new Term.Bound(NODE, 0))
+        );
+    }
+
+    private static double bytesPerElement(int n, Supplier<Object> build) {
+        long before = usedMemory();
+        Object kept = build.get();
+        long after = usedMemory();
+        sink ^= System.identityHashCode(kept);
+        return (double) (after - before) / n;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 5; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink ^= System.identityHashCode(action.get());
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static final Node NODE = new Node.Aster();
+    private static final Type NAT = Type.of(new IndNat.VNat(NODE));
+
+    private static int sink;
+}
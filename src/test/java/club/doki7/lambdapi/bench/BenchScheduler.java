@@ -0,0 +1,108 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.dtlc.Elab;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.InferCheck;
+import club.doki7.lambdapi.dtlc.Scheduler;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.exc.LPiException;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/// 并行检查声明的基准测试
+///
+/// 程序先定义 Church 数和乘法，然后是 `n` 个只依赖这几个定义、彼此独立的声明，每个声明计算并读回
+/// 两个 Church 数的乘积。逐个检查时总耗时与 `n` 成正比；并行检查时在定义完乘法之后，
+/// 剩下的声明同时开始检查，耗时随线程数下降，直到线程数超过 CPU 核数
+public final class BenchScheduler {
+    static void main() throws Exception {
+        int n = 64;
+        List<PNode> decls = program(n);
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("threads\ttotal(ms)");
+        System.out.printf("seq\t%.2f%n", measure(() -> sequential(decls)) / 1e6);
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+                System.out.printf("%d\t%.2f%n", threads, measure(() -> parallel(pool, decls)) / 1e6);
+            }
+        }
+    }
+
+    private static List<PNode> program(int n) throws Exception {
+        StringBuilder code = new StringBuilder("""
+                defun CNat = (∀(t : *) → (t → t) → t → t) : *
+                defun czro = (λt. λs. λz. z) : CNat
+                defun csuc = (λn. λt. λs. λz. s (n t s z)) : CNat → CNat
+                defun cmul = (λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat
+                """);
+        for (int i = 0; i < n; i++) {
+            String num = "csuc (".repeat(12 + i % 4) + "czro" + ")".repeat(12 + i % 4);
+            code.append("defun p").append(i).append(" = cmul (").append(num)
+                .append(") (").append(num).append(")\n");
+        }
+        return ((PNode.Program) Parse.parseProgram(Token.tokenize(code.toString()))).items();
+    }
+
+    private static InferCheck.Typed check(PNode decl, Globals.Snapshot snapshot)
+        throws LPiException
+    {
+        Node node = ((PNode.Defun) decl).value();
+        Term.Inferable term = (Term.Inferable) new Elab().elab(node, snapshot);
+        InferCheck.Typed typed = InferCheck.inferEval(term, snapshot);
+        sink ^= System.identityHashCode(Eval.reify(typed.value()));
+        return typed;
+    }
+
+    private static void commit(Globals globals, PNode decl, InferCheck.Typed typed) {
+        globals.define(((PNode.Defun) decl).name().lexeme, typed.value(), typed.type());
+    }
+
+    private static void sequential(List<PNode> decls) throws Exception {
+        Globals globals = Globals.empty();
+        for (PNode decl : decls) {
+            commit(globals, decl, check(decl, globals.snapshot()));
+        }
+    }
+
+    private record Checked(PNode decl, InferCheck.Typed typed) {}
+
+    private static void parallel(ForkJoinPool pool, List<PNode> decls) throws Exception {
+        Globals globals = Globals.empty();
+        Scheduler.run(
+                pool,
+                decls,
+                globals,
+                (decl, snapshot) -> new Checked(decl, check(decl, snapshot)),
+                checked -> commit(globals, checked.decl, checked.typed)
+        );
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static double measure(Action action) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            action.run();
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            action.run();
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 1_000_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
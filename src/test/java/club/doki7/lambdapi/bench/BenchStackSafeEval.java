@@ -0,0 +1,160 @@
+package club.doki7.lambdapi.bench;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.dtlc.Closure;
+import club.doki7.lambdapi.dtlc.Eval;
+import club.doki7.lambdapi.dtlc.Globals;
+import club.doki7.lambdapi.dtlc.Term;
+import club.doki7.lambdapi.dtlc.Type;
+import club.doki7.lambdapi.dtlc.Value;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.util.SkewList;
+
+import java.util.function.Supplier;
+
+/// 显式栈求值器与递归求值器的基准测试
+///
+/// 对 Church 数乘法 `mult cₘ cₙ` 求值并读回正规形式。这些词项都很浅，
+/// 用来确认显式栈没有让常见情形变慢。递归版本是改写之前的 `Eval.eval` 和 `Eval.reify`，
+/// 只保留了这里用到的情形
+public final class BenchStackSafeEval {
+    static void main() {
+        Globals.Snapshot globals = Globals.empty().snapshot();
+
+        System.out.println("m*n\trecursive(us)\texplicit-stack(us)");
+        for (int size = 4; size <= 64; size *= 2) {
+            Term term = mult(size, size);
+            double recursive = measure(
+                    () -> recursiveReify(0, recursiveEval(term, SkewList.nil(), globals))
+            );
+            double explicit = measure(() -> Eval.reify(0, Eval.eval(term, globals), true));
+            System.out.printf("%d\t%.2f\t%.2f%n", size * size, recursive / 1000, explicit / 1000);
+        }
+    }
+
+    /// 构造 `(λm. λn. λt. λs. m t (n t s)) cₘ cₙ`
+    private static Term mult(int m, int n) {
+        Node node = new Node.Aster();
+        Term.Checkable star = new Term.Inf(node, new Term.Star(node));
+
+        // m t (n t s)，其中 m = D³, n = D², t = D¹, s = D⁰
+        Term.Inferable nts = new Term.App(
+                node,
+                new Term.App(node, bound(node, 2), inf(bound(node, 1))),
+                inf(bound(node, 0))
+        );
+        Term.Inferable body = new Term.App(
+                node,
+                new Term.App(node, bound(node, 3), inf(bound(node, 1))),
+                inf(nts)
+        );
+        Term.Checkable multTerm = inf(body);
+        for (int i = 0; i < 4; i++) {
+            multTerm = new Term.Lam(node, multTerm);
+        }
+
+        Term.Inferable app = new Term.Ann(node, multTerm, star);
+        app = new Term.App(node, app, church(node, m));
+        app = new Term.App(node, app, church(node, n));
+        return app;
+    }
+
+    /// cₖ = λt. λs. λz. s (s (... z))
+    private static Term.Checkable church(Node node, int k) {
+        Term.Checkable body = inf(bound(node, 0));
+        for (int i = 0; i < k; i++) {
+            body = inf(new Term.App(node, bound(node, 1), body));
+        }
+        return new Term.Lam(node, new Term.Lam(node, new Term.Lam(node, body)));
+    }
+
+    private static Value recursiveEval(Term term, SkewList<Value> env, Globals.Snapshot globals) {
+        return switch (term) {
+            case Term.Ann(Node _, Term e, Term _) -> recursiveEval(e, env, globals);
+            case Term.Bound(Node _, int index) -> env.get(index);
+            case Term.App(Node _, Term.Inferable f, Term.Checkable arg) -> recursiveApp(
+                    recursiveEval(f, env, globals),
+                    recursiveEval(arg, env, globals)
+            );
+            case Term.Inf(Node _, Term.Inferable inf) -> recursiveEval(inf, env, globals);
+            case Term.Lam(Node node, Term.Checkable body) -> new Value.VLam(
+                    node,
+                    new Closure(body, env, globals)
+            );
+            case Term.Star(Node node) -> new Value.VStar(node);
+            case Term.Pi(Node node, Term.Checkable in, Term.Checkable out) -> new Value.VPi(
+                    node,
+                    Type.of(recursiveEval(in, env, globals)),
+                    new Closure(out, env, globals)
+            );
+            default -> throw new IllegalStateException("Unsupported term in benchmark: " + term);
+        };
+    }
+
+    private static Value recursiveApply(Closure closure, Value arg) {
+        return recursiveEval(closure.body(), closure.env().cons(arg), closure.globals());
+    }
+
+    private static Value recursiveApp(Value func, Value arg) {
+        return switch (func) {
+            case Value.VLam(Node _, Closure body) -> recursiveApply(body, arg);
+            case Value.VNeutral n -> new Value.NApp(n.node(), n, arg);
+            default -> throw new IllegalStateException("Unsupported application in benchmark");
+        };
+    }
+
+    private static Term.Checkable recursiveReify(int depth, Value value) {
+        return switch (value) {
+            case Value.VLam(Node node, Closure body) -> new Term.Lam(
+                    node,
+                    recursiveReify(
+                            depth + 1,
+                            recursiveApply(body, Value.vFree(node, new Name.Quote(depth)))
+                    )
+            );
+            case Value.VNeutral n -> new Term.Inf(n.node(), recursiveNeutralReify(depth, n));
+            case Value.VStar(Node node) -> new Term.Inf(node, new Term.Star(node));
+            default -> throw new IllegalStateException("Unsupported value in benchmark");
+        };
+    }
+
+    private static Term.Inferable recursiveNeutralReify(int depth, Value.VNeutral n) {
+        return switch (n) {
+            case Value.NFree(Node node, Name.Quote(int k)) -> new Term.Bound(node, depth - k - 1);
+            case Value.NApp(Node node, Value.VNeutral func, Value arg) -> new Term.App(
+                    node,
+                    recursiveNeutralReify(depth, func),
+                    recursiveReify(depth, arg)
+            );
+            default -> throw new IllegalStateException("Unsupported neutral in benchmark");
+        };
+    }
+
+    private static Term.Checkable inf(Term.Inferable inferable) {
+        return new Term.Inf(inferable.node(), inferable);
+    }
+
+    private static Term.Inferable bound(Node node, int index) {
+        return new Term.Bound(node, index);
+    }
+
+    private static double measure(Supplier<Object> action) {
+        for (int i = 0; i < 2_000; i++) {
+            sink ^= System.identityHashCode(action.get());
+        }
+
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink ^= System.identityHashCode(action.get());
+            }
+            iterations += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500_000_000L);
+        return (double) elapsed / iterations;
+    }
+
+    private static int sink;
+}
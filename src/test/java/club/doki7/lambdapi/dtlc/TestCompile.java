@@ -0,0 +1,187 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompile {
+    private static final Elab ELAB = new Elab();
+
+    static {
+        ELAB.registerTermFormer(IndNat.Nat.class);
+        ELAB.registerTermFormer(IndNat.Zero.class);
+        ELAB.registerTermFormer(IndNat.Succ.class);
+        ELAB.registerTermFormer(IndNat.NatElim.class);
+    }
+
+    // 辅助方法：检查表达式并返回词项
+    private static Term.Inferable check(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) ELAB.elab(node, snapshot);
+        InferCheck.infer(term, snapshot);
+        return term;
+    }
+
+    // 辅助方法：编译并定义一个全局量，要求编译成功
+    private static Value define(Globals globals, String name, String code) throws Exception {
+        Term.Inferable term = check(code, globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Type type = InferCheck.infer(term, snapshot);
+        Value value = Compile.eval(term, snapshot);
+        assertNotNull(value);
+        globals.define(name, value, type);
+        return value;
+    }
+
+    // 辅助方法：同时用编译器和解释器求值，比较读回的正规形式
+    private static void assertSameAsInterpreter(String code, Globals globals) throws Exception {
+        Term.Inferable term = check(code, globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Value compiled = Compile.eval(term, snapshot);
+        assertNotNull(compiled);
+        Value interpreted = Eval.eval(term, snapshot);
+        assertEquals(Eval.reify(interpreted), Eval.reify(compiled));
+        assertEquals(Eval.reifyFolded(interpreted), Eval.reifyFolded(compiled));
+    }
+
+    private static Globals churchGlobals() throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "cadd", "(λm. λn. λt. λs. λz. m t s (n t s z)) : CNat → CNat → CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        return globals;
+    }
+
+    @Test
+    void testLambdaCarriesCompiledBody() throws Exception {
+        Globals globals = Globals.empty();
+        Value id = define(globals, "id", "(λa. λx. x) : ∀(a : *) → a → a");
+        Value.VLam lam = assertInstanceOf(Value.VLam.class, id);
+        assertNotNull(lam.body().code());
+
+        // 编译后的闭包应用结果与解释器一致
+        Value star = new Value.VStar(new Node.Aster());
+        Value.VLam inner = assertInstanceOf(Value.VLam.class, Eval.apply(lam.body(), star));
+        assertNotNull(inner.body().code());
+        assertEquals(star, Eval.apply(inner.body(), star));
+    }
+
+    @Test
+    void testCompiledClosureEqualsInterpretedClosure() throws Exception {
+        // code 不参与闭包的相等性比较
+        Globals globals = Globals.empty();
+        Term.Inferable term = check("(λx. λy. x) : * → * → *", globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Value compiled = Compile.eval(term, snapshot);
+        Value interpreted = Eval.eval(term, snapshot);
+        assertEquals(interpreted, compiled);
+        assertEquals(interpreted.hashCode(), compiled.hashCode());
+    }
+
+    @Test
+    void testChurchArithmetic() throws Exception {
+        Globals globals = churchGlobals();
+        define(globals, "two", "csuc (csuc czro)");
+        define(globals, "three", "csuc two");
+        assertSameAsInterpreter("cadd two three", globals);
+        assertSameAsInterpreter("cmul three (cmul two three)", globals);
+        assertSameAsInterpreter("(λn. cmul n n) : CNat → CNat", globals);
+    }
+
+    @Test
+    void testDeepRecursionThroughCompiledCode() throws Exception {
+        // 用编译后的 csuc 逐次构造很大的 Church 数，读回时编译后的函数体层层嵌套调用
+        Globals globals = churchGlobals();
+        Globals.Snapshot snapshot = globals.snapshot();
+        Value csuc = Compile.evalDefinition(check("(λn. λt. λs. λz. s (n t s z)) : CNat → CNat", globals), snapshot);
+        assertNotNull(assertInstanceOf(Value.VLam.class, csuc).body().code());
+        Value n = Compile.evalDefinition(check("(λt. λs. λz. z) : CNat", globals), snapshot);
+        for (int i = 0; i < 100_000; i++) {
+            n = Eval.vApp(csuc, n);
+        }
+
+        Term.Checkable result = Eval.reify(0, n, true);
+        for (int i = 0; i < 3; i++) {
+            result = assertInstanceOf(Term.Lam.class, result).body();
+        }
+        int count = 0;
+        while (result instanceof Term.Inf(Node _, Term.App(Node _, Term.Inferable _, Term.Checkable arg))) {
+            count++;
+            result = arg;
+        }
+        assertEquals(100_000, count);
+    }
+
+    @Test
+    void testDefinitionIsCompiledOnlyWhenLambda() throws Exception {
+        Globals globals = churchGlobals();
+        Globals.Snapshot snapshot = globals.snapshot();
+        Value two = Compile.evalDefinition(check("csuc (csuc czro)", globals), snapshot);
+        assertInstanceOf(Value.VGlobal.class, two);
+        Value id = Compile.evalDefinition(check("(λx. x) : CNat → CNat", globals), snapshot);
+        assertNotNull(assertInstanceOf(Value.VLam.class, id).body().code());
+    }
+
+    @Test
+    void testPiTypes() throws Exception {
+        Globals globals = churchGlobals();
+        assertSameAsInterpreter("∀(a : *) → a → a", globals);
+        assertSameAsInterpreter("(λt. ∀(P : t → *) → ∀(x : t) → P x) : * → *", globals);
+    }
+
+    @Test
+    void testTermFormers() throws Exception {
+        // 项构造器的求值规则由解释器部分实现，编译后的代码直接调用
+        Globals globals = Globals.empty();
+        define(globals, "Nat", "_Tf_Nat");
+        define(globals, "zero", "_Tf_Zero");
+        define(globals, "succ", "λx. _Tf_Succ x : Nat → Nat");
+        define(globals, "plus", """
+                (λm. λn. _Tf_NatElim (λ_. Nat) n (λk. λr. succ r) m) : Nat → Nat → Nat
+                """);
+        define(globals, "two", "succ (succ zero)");
+        assertSameAsInterpreter("plus two (plus two two)", globals);
+        assertSameAsInterpreter("(λn. plus n two) : Nat → Nat", globals);
+    }
+
+    @Test
+    void testGlobalsStayFolded() throws Exception {
+        Globals globals = churchGlobals();
+        Value v = define(globals, "two", "csuc (csuc czro)");
+        assertEquals("csuc (csuc czro)", Eval.reifyFolded(v).toString());
+        assertEquals("λ λ λ D¹ (D¹ D⁰)", Eval.reify(v).toString());
+    }
+
+    @Test
+    void testUnsupportedTermsFallBack() throws Exception {
+        Node node = new Node.Aster();
+        Globals.Snapshot snapshot = Globals.empty().snapshot();
+
+        // 自由变量只出现在未经链接的词项中
+        Term free = new Term.Free(node, new Name.Global("x"));
+        assertNull(Compile.eval(free, snapshot));
+
+        // 嵌套过深的词项交给使用显式栈的解释器
+        Term.Checkable deep = new Term.Inf(node, new Term.Star(node));
+        for (int i = 0; i < 10_000; i++) {
+            deep = new Term.Lam(node, deep);
+        }
+        assertNull(Compile.eval(new Term.Ann(node, deep, deep), snapshot));
+    }
+
+    @Test
+    void testCallByNeedUsesInterpreter() throws Exception {
+        Globals globals = Globals.empty();
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        Term.Inferable term = check("(λx. x) : * → *", globals);
+        assertNull(Compile.eval(term, globals.snapshot()));
+    }
+}
@@ -0,0 +1,352 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.exc.TypeCheckException;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.ind.IndVec;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestConversion {
+    // 辅助方法：注册自然数和向量的项构造器
+    private static Elab indElab() {
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
+        elab.registerTermFormer(IndVec.Vec.class);
+        elab.registerTermFormer(IndVec.Nil.class);
+        elab.registerTermFormer(IndVec.Cons.class);
+        elab.registerTermFormer(IndVec.VecElim.class);
+        elab.registerVecLiteral(IndVec.VecLit::new);
+        return elab;
+    }
+
+    private static Value eval(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) indElab().elab(node, snapshot);
+        InferCheck.infer(term, snapshot);
+        return Eval.eval(term, snapshot);
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) indElab().elab(node, snapshot);
+        Type type = InferCheck.infer(term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    private static Globals globals() throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "Nat", "_Tf_Nat");
+        define(globals, "succ", "λx. _Tf_Succ x : Nat → Nat");
+        define(globals, "plus", """
+                (λm. λn. _Tf_NatElim (λ_. Nat) n (λk. λr. succ r) m) : Nat → Nat → Nat
+                """);
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        define(globals, "two", "csuc (csuc czro)");
+        define(globals, "Vec", "λa. λl. _Tf_Vec a l : ∀ (a : *), ∀ (l : Nat), *");
+        return globals;
+    }
+
+    // 转换检查的结果应当与比较读回的正规形式相同
+    private static void assertAgrees(boolean expected, Value a, Value b) {
+        assertEquals(expected, Eval.reify(a).equals(Eval.reify(b)));
+        assertEquals(expected, Conversion.convertible(0, a, b));
+        assertEquals(expected, Conversion.convertible(0, b, a));
+    }
+
+    @Test
+    void testAgreesWithReadback() throws Exception {
+        Globals globals = globals();
+        String[] codes = {
+                "cmul two two",
+                "csuc (csuc (csuc (csuc czro)))",
+                "csuc (csuc czro)",
+                "two",
+                "(λt. λs. λz. s (s z)) : CNat",
+                "(λx. x) : * → *",
+                "(λy. y) : * → *",
+                "∀(a : *) → a → a",
+                "∀(b : *) → b → b",
+                "∀(a : *) → * → a",
+                "CNat",
+                "Nat",
+                "*",
+        };
+        Value[] values = new Value[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            values[i] = eval(codes[i], globals);
+        }
+        for (Value a : values) {
+            for (Value b : values) {
+                assertAgrees(Eval.reify(a).equals(Eval.reify(b)), a, b);
+            }
+        }
+    }
+
+    @Test
+    void testNatRepresentations() throws Exception {
+        Globals globals = globals();
+        // 数字、succ 链和 natElim 算出的结果都是同一个自然数
+        Value literal = eval("5", globals);
+        Value chain = eval("succ (succ (succ (succ (succ _Tf_Zero))))", globals);
+        Value sum = eval("plus 2 3", globals);
+        assertAgrees(true, literal, chain);
+        assertAgrees(true, literal, sum);
+        assertAgrees(false, literal, eval("4", globals));
+        assertAgrees(false, eval("0", globals), eval("_Tf_Nat", globals));
+
+        // 开放的后继链只比较后继的个数和链底
+        Node node = new Node.Aster();
+        Value x = Value.vFree(node, new Name.Local(0));
+        Value y = Value.vFree(node, new Name.Local(1));
+        Value two = IndNat.succ(node, BigInteger.TWO, x);
+        assertAgrees(true, two, new IndNat.VSucc(node, new IndNat.VSucc(node, x)));
+        assertAgrees(false, two, new IndNat.VSucc(node, x));
+        assertAgrees(false, two, IndNat.succ(node, BigInteger.TWO, y));
+        assertAgrees(false, two, IndNat.num(node, BigInteger.TWO));
+    }
+
+    @Test
+    void testPackedAndConsVectors() throws Exception {
+        Globals globals = globals();
+        Value packed = eval("[Nat; 1, 2, 3]", globals);
+        Value chain = eval(
+                "_Tf_Cons Nat 2 1 (_Tf_Cons Nat 1 2 (_Tf_Cons Nat 0 3 (_Tf_Nil Nat)))",
+                globals
+        );
+        assertAgrees(true, packed, chain);
+        assertAgrees(false, packed, eval("[Nat; 1, 2, 4]", globals));
+        assertAgrees(false, packed, eval("[Nat; 1, 2]", globals));
+        assertAgrees(true, eval("Vec Nat 3", globals), eval("_Tf_Vec Nat (plus 1 2)", globals));
+    }
+
+    @Test
+    void testSameGlobalHeadWithoutUnfolding() throws Exception {
+        // 以同一个全局定义为头部、参数也相同时不展开定义
+        Globals globals = globals();
+        Value a = eval("cmul two two", globals);
+        Value b = eval("cmul two two", globals);
+        Value.VGlobal ga = assertInstanceOf(Value.VGlobal.class, a);
+        assertNotSame(a, b);
+        assertTrue(Conversion.convertible(0, a, b));
+        assertTrue(ga.args().getFirst() instanceof Value.VGlobal);
+
+        // 参数不同时展开之后仍然可以相同
+        assertTrue(Conversion.convertible(0, a, eval("cmul (csuc (csuc czro)) two", globals)));
+    }
+
+    @Test
+    void testMismatchMessageReifiesOnFailure() throws Exception {
+        Globals globals = globals();
+        TypeCheckException e = assertThrows(
+                TypeCheckException.class,
+                () -> eval("(λx. x) : CNat → Nat", globals)
+        );
+        assertTrue(e.getMessage().contains("Type mismatch"));
+        assertTrue(e.getMessage().contains("Nat"));
+    }
+
+    @Test
+    void testLongNeutralSpine() {
+        // 比较很长的中性应用链不会耗尽 Java 调用栈
+        Node node = new Node.Aster();
+        Value a = Value.vFree(node, new Name.Global("f"));
+        Value b = Value.vFree(node, new Name.Global("f"));
+        for (int i = 0; i < 100_000; i++) {
+            a = Eval.vApp(a, new Value.VStar(node));
+            b = Eval.vApp(b, new Value.VStar(node));
+        }
+        assertTrue(Conversion.convertible(0, a, b));
+        assertFalse(Conversion.convertible(0, a, Eval.vApp(b, new Value.VStar(node))));
+    }
+
+    // =================== 转换缓存测试 ===================
+
+    @Test
+    void testCacheHitsRepeatedProblems() throws Exception {
+        Globals globals = globals();
+        ConversionCache cache = globals.snapshot().conversionCache();
+        long hits = cache.hits();
+        long misses = cache.misses();
+
+        // 每个 succ 的参数都要检查一次 Nat 与 Nat，重复的问题都命中缓存，不再增加条目
+        eval("succ (succ (succ (succ _Tf_Zero)))", globals);
+        assertTrue(cache.hits() >= hits + 3);
+        assertEquals(misses, cache.misses());
+        assertTrue(cache.size() > 0);
+    }
+
+    @Test
+    void testCacheKeysOnContent() throws Exception {
+        ConversionCache cache = new ConversionCache(16);
+        Node node = new Node.Aster();
+        Value nat = new IndNat.VNat(node);
+        Value x = Value.vFree(node, new Name.Global("x"));
+
+        // 内容相同的不同对象共享同一个条目
+        assertFalse(cache.convertible(0, nat, x));
+        assertFalse(cache.convertible(0, new IndNat.VNat(node), Value.vFree(node, new Name.Global("x"))));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // 内容不同的问题不会命中
+        assertTrue(cache.convertible(0, nat, new IndNat.VNat(node)));
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        ConversionCache cache = new ConversionCache(4);
+        Node node = new Node.Aster();
+        for (int i = 0; i < 16; i++) {
+            Value a = IndNat.num(node, BigInteger.valueOf(i));
+            Value b = IndNat.num(node, BigInteger.valueOf(i + 1));
+            assertFalse(cache.convertible(0, a, b));
+        }
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void testRedefinitionMissesCache() throws Exception {
+        Globals globals = globals();
+        define(globals, "T", "Nat");
+        define(globals, "t", "_Tf_Zero : T");
+        eval("((λx. x) : Nat → Nat) t", globals);
+
+        // 重新定义 T 之后，依赖它的问题不会命中旧的结果
+        define(globals, "T", "*");
+        assertThrows(TypeCheckException.class, () -> eval("_Tf_Zero : T", globals));
+    }
+
+    @Test
+    void testUnforcedThunkNotCached() {
+        ConversionCache cache = new ConversionCache(16);
+        Node node = new Node.Aster();
+        Value thunk = new Value.VThunk(node, () -> new Value.VStar(node));
+        assertTrue(cache.convertible(0, thunk, new Value.VStar(node)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.misses());
+    }
+
+    // 内容很大的扩展值，计算它的哈希时计数
+    private record Opaque(Node node, AtomicInteger hashed) implements Value.CValue {
+        @Override
+        public int hashCode() {
+            hashed.incrementAndGet();
+            return 0;
+        }
+
+        @Override
+        public @NotNull Term.Checkable reify(int depth, boolean unfold) {
+            return new Term.Inf(node, new Term.Star(node));
+        }
+
+        @Override
+        public @NotNull Value vApp(Value arg) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public boolean convert(int depth, @NotNull Value other, @NotNull Conversion conversion) {
+            return false;
+        }
+
+        @Override
+        public @NotNull List<?> parts() {
+            return List.of();
+        }
+    }
+
+    @Test
+    void testFingerprintDoesNotHashExtensionValues() {
+        // 计算键时按 parts 看扩展值，不调用它自己的 hashCode
+        ConversionCache cache = new ConversionCache(16);
+        Node node = new Node.Aster();
+        AtomicInteger hashed = new AtomicInteger();
+        assertFalse(cache.convertible(0, new Opaque(node, hashed), new IndNat.VNat(node)));
+        assertFalse(cache.convertible(0, new Opaque(node, hashed), new IndNat.VNat(node)));
+        assertEquals(0, hashed.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testExtensionValuesKeyedOnParts() {
+        // 扩展值按分量区分：内容相同的不同对象命中，内容不同的不会当作相同的问题
+        ConversionCache cache = new ConversionCache(16);
+        Node node = new Node.Aster();
+        Value zero = new IndNat.VZero(node);
+        assertFalse(cache.convertible(0, new IndNat.VSucc(node, zero), zero));
+        assertFalse(cache.convertible(0, new IndNat.VSucc(node, new IndNat.VSucc(node, zero)), zero));
+        assertFalse(cache.convertible(0, new IndNat.VSucc(node, new IndNat.VZero(node)), zero));
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testLargeExtensionValueNotCached() {
+        // 很长的向量超出指纹的大小限制，不进入缓存，也不会逐个计算元素的哈希
+        ConversionCache cache = new ConversionCache(16);
+        Node node = new Node.Aster();
+        AtomicInteger hashed = new AtomicInteger();
+        Value[] elements = new Value[100_000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = new Opaque(node, hashed);
+        }
+        Value vec = IndVec.packed(node, Type.of(new IndNat.VNat(node)), elements);
+        assertFalse(cache.convertible(0, vec, new IndVec.VNil(node, new IndNat.VNat(node))));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.misses());
+        assertEquals(0, hashed.get());
+    }
+
+    @Test
+    void testConcurrentLookups() throws Exception {
+        // 多个线程共享同一个缓存，每次查询都计入命中或者没有命中
+        ConversionCache cache = new ConversionCache(4096);
+        int threads = 8;
+        int rounds = 2_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                Node node = new Node.Aster();
+                for (int i = 0; i < rounds; i++) {
+                    Value a = IndNat.num(node, BigInteger.valueOf(i % 100));
+                    Value b = IndNat.num(node, BigInteger.valueOf(i % 100 + 1));
+                    cache.convertible(0, a, b);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals((long) threads * rounds, cache.hits() + cache.misses());
+        assertEquals(100, cache.size());
+        assertTrue(cache.hits() >= (long) threads * rounds - 100L * threads);
+    }
+}
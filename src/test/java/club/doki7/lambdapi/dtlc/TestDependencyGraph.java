@@ -0,0 +1,95 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDependencyGraph {
+    // 辅助方法：把程序中的每个声明按顺序加入依赖图
+    private static DependencyGraph graph(String code) throws Exception {
+        DependencyGraph graph = new DependencyGraph();
+        for (PNode decl : ((PNode.Program) Parse.parseProgram(Token.tokenize(code))).items()) {
+            define(graph, decl);
+        }
+        return graph;
+    }
+
+    private static void define(DependencyGraph graph, PNode decl) {
+        for (String name : DependencyGraph.definedNames(decl)) {
+            graph.define(name, decl);
+        }
+    }
+
+    private static List<String> dependents(DependencyGraph graph, String... names) {
+        return graph.dependents(List.of(names)).stream().map(DependencyGraph.Entry::name).toList();
+    }
+
+    @Test
+    void testUsedNames() throws Exception {
+        PNode decl = Parse.parseProgram(Token.tokenize("defun f = λx. g x [Nat; 1, y] : ∀(a : T) → a"));
+        PNode defun = ((PNode.Program) decl).items().getFirst();
+        // 被 λ 和 Pi 绑定的 x、a 不算，Pi 的参数类型 T 在绑定范围之外
+        assertEquals(
+                Set.of("g", "Nat", "1", "y", "T"),
+                DependencyGraph.usedNames(defun)
+        );
+    }
+
+    @Test
+    void testTransitiveDependentsInOrder() throws Exception {
+        DependencyGraph graph = graph("""
+                defun Nat = _Tf_Nat
+                defun succ = λx. _Tf_Succ x : Nat → Nat
+                axiom a, b : Nat
+                defun two = succ (succ _Tf_Zero)
+                defun Unit = * → *
+                defun plus = λm. λn. m : Nat → Nat → Nat
+                defun four = plus two two
+                """);
+        // 间接依赖的定义也在其中，排在它们用到的定义之后，不包括被重新定义的名字自己
+        assertEquals(List.of("succ", "a", "b", "two", "plus", "four"), dependents(graph, "Nat"));
+        assertEquals(List.of("two", "four"), dependents(graph, "succ"));
+        assertEquals(List.of(), dependents(graph, "Unit"));
+        assertEquals(List.of(), dependents(graph, "four"));
+    }
+
+    @Test
+    void testRedefinitionReplacesEdges() throws Exception {
+        DependencyGraph graph = graph("""
+                defun A = *
+                defun B = *
+                defun f = λx. x : A → A
+                defun g = f
+                """);
+        assertEquals(List.of("f", "g"), dependents(graph, "A"));
+
+        // f 换成只用到 B 的定义之后，A 不再影响 f 和 g，f 的位置移到最后
+        define(graph, ((PNode.Program) Parse.parseProgram(Token.tokenize(
+                "defun f = λx. x : B → B"
+        ))).items().getFirst());
+        assertEquals(List.of(), dependents(graph, "A"));
+        // f 现在比 g 晚定义，但 g 用到 f，所以 f 仍然排在前面
+        assertEquals(List.of("f", "g"), dependents(graph, "B"));
+        assertEquals(List.of("g"), dependents(graph, "f"));
+        assertTrue(graph.lookup("f").order() > graph.lookup("g").order());
+        assertEquals(4, graph.size());
+    }
+
+    @Test
+    void testRedefinedNameExcluded() throws Exception {
+        // 新的 n 通过 m 间接用到旧的 n，但被重新定义的名字自己不会出现在结果中
+        DependencyGraph graph = graph("""
+                defun n = *
+                defun m = n
+                defun n = m
+                """);
+        assertEquals(List.of("m"), dependents(graph, "n"));
+        assertEquals(List.of("n"), dependents(graph, "m"));
+    }
+}
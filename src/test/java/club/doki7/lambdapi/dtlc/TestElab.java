@@ -3,6 +3,7 @@ package club.doki7.lambdapi.dtlc;
 import club.doki7.lambdapi.common.Name;
 import club.doki7.lambdapi.exc.ElabException;
 import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Token;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -393,5 +394,134 @@ public class TestElab {
         ElabException ex = assertThrows(ElabException.class, () -> new Elab().elab(lam));
         assertTrue(ex.getMessage().contains("lambda expression must be annotated"));
     }
-}
 
+    // =================== 全局变量链接测试 ===================
+
+    @Test
+    void testElabLinksDefinedGlobal() throws ElabException {
+        // 已定义的全局变量应该直接链接到槽位，未定义的仍然是自由变量
+        Globals globals = Globals.empty();
+        Globals.Slot slot = globals.define(
+                "A",
+                new Value.VStar(new Node.Aster()),
+                Type.of(new Value.VStar(new Node.Aster()))
+        );
+
+        Node typeA = new Node.Var("A");
+        Node typeB = new Node.Var("B");
+        Node pi = new Node.Pi((String) null, typeA, typeB);
+
+        Term result = new Elab().elab(pi, globals.snapshot());
+
+        Term.Checkable expectedA = new Term.Inf(typeA, new Term.GlobalRef(typeA, slot));
+        Term.Checkable expectedB = new Term.Inf(typeB, new Term.Free(typeB, new Name.Global("B")));
+        Term.Inferable expected = new Term.Pi(pi, expectedA, expectedB);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testElabLocalShadowsGlobal() throws ElabException {
+        // ∀(A : *) → A，其中 A 是约束变量，不应链接到同名全局变量
+        Globals globals = Globals.empty();
+        globals.define(
+                "A",
+                new Value.VStar(new Node.Aster()),
+                Type.of(new Value.VStar(new Node.Aster()))
+        );
+
+        Node aster = new Node.Aster();
+        Node typeA = new Node.Var("A");
+        Node pi = new Node.Pi("A", aster, typeA);
+
+        Term result = new Elab().elab(pi, globals.snapshot());
+
+        Term.Checkable expectedAster = new Term.Inf(aster, new Term.Star(aster));
+        Term.Checkable expectedA = new Term.Inf(typeA, new Term.Bound(typeA, 0));
+        Term.Inferable expected = new Term.Pi(pi, expectedAster, expectedA);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testElabRedefinitionAllocatesNewSlot() throws ElabException {
+        // 重新定义后，之前链接的词项仍然指向旧槽位
+        Globals globals = Globals.empty();
+        Value star = new Value.VStar(new Node.Aster());
+        globals.define("A", star, Type.of(star));
+
+        Node typeA = new Node.Var("A");
+        Term before = new Elab().elab(typeA, globals.snapshot());
+
+        globals.define("A", star, Type.of(star));
+        Term after = new Elab().elab(typeA, globals.snapshot());
+
+        Term.GlobalRef beforeRef = assertInstanceOf(Term.GlobalRef.class, before);
+        Term.GlobalRef afterRef = assertInstanceOf(Term.GlobalRef.class, after);
+        assertNotEquals(beforeRef, afterRef);
+        assertEquals(0, beforeRef.slot().index);
+        assertEquals(1, afterRef.slot().index);
+        assertSame(afterRef.slot(), globals.snapshot().lookup("A"));
+    }
+
+    // =================== 栈安全测试 ===================
+
+    private static final int DEEP = 100_000;
+
+    @Test
+    void testElabDeeplyNestedApplications() throws ElabException {
+        // f (f (... (f x)))
+        Node node = new Node.Var("x");
+        for (int i = 0; i < DEEP; i++) {
+            node = new Node.App(new Node.Var("f"), node);
+        }
+
+        Term current = new Elab().elab(node);
+        int count = 0;
+        while (current instanceof Term.App(Node _, Term.Inferable _, Term.Inf(Node _, var arg))) {
+            count++;
+            current = arg;
+        }
+        assertEquals(DEEP, count);
+        assertInstanceOf(Term.Free.class, current);
+    }
+
+    @Test
+    void testElabDeepPiTelescope() throws ElabException {
+        // ∀(a : *) → ∀(a : *) → ... → a，每个 a 都指向最内层的绑定
+        Node node = new Node.Var("a");
+        for (int i = 0; i < DEEP; i++) {
+            node = new Node.Pi("a", new Node.Aster(), node);
+        }
+
+        Term current = new Elab().elab(node);
+        int count = 0;
+        while (current instanceof Term.Pi(Node _, Term.Checkable _, Term.Inf(Node _, var out))) {
+            count++;
+            current = out;
+        }
+        assertEquals(DEEP, count);
+        assertEquals(0, assertInstanceOf(Term.Bound.class, current).index());
+    }
+
+    @Test
+    void testElabDeeplyNestedLambda() throws ElabException {
+        // (λx. λy. ... λy. x) : *，x 的 de Bruijn 索引等于它之后的绑定个数
+        Node body = new Node.Var("x");
+        for (int i = 0; i < DEEP; i++) {
+            body = new Node.Lam(Token.ident("y"), body);
+        }
+        Node node = new Node.Ann(new Node.Lam(Token.ident("x"), body), new Node.Aster());
+
+        Term.Ann ann = assertInstanceOf(Term.Ann.class, new Elab().elab(node));
+        Term.Checkable current = ann.term();
+        int count = 0;
+        while (current instanceof Term.Lam(Node _, Term.Checkable inner)) {
+            count++;
+            current = inner;
+        }
+        assertEquals(DEEP + 1, count);
+        Term.Inf inf = assertInstanceOf(Term.Inf.class, current);
+        assertEquals(DEEP, assertInstanceOf(Term.Bound.class, inf.inferable()).index());
+    }
+}
@@ -0,0 +1,815 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.exc.TypeCheckException;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.ind.IndVec;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import club.doki7.lambdapi.util.SkewList;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestEval {
+    // 辅助方法：解析表达式，elaborate，然后在空的全局环境中求值
+    private static Value eval(String code) throws Exception {
+        return eval(code, Globals.empty());
+    }
+
+    // 辅助方法：在给定的全局环境中检查并求值表达式
+    private static Value eval(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term term = new Elab().elab(node, snapshot);
+        if (term instanceof Term.Inferable inferable) {
+            InferCheck.infer(inferable, snapshot);
+        }
+        return Eval.eval(term, snapshot);
+    }
+
+    // 辅助方法：检查并定义一个全局量
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) new Elab().elab(node, snapshot);
+        Type type = InferCheck.infer(term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    // 辅助方法：定义 Church 数的类型和后继函数
+    private static Globals churchGlobals() throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        return globals;
+    }
+
+    // =================== 闭包相等性测试 ===================
+
+    @Test
+    void testAlphaEquivalentLambdasAreEqual() throws Exception {
+        // λx. x 和 λy. y 只有约束变量名不同
+        Value v1 = eval("(λx. x) : ∀(a : *) → *");
+        Value v2 = eval("(λy. y) : ∀(b : *) → *");
+        assertEquals(v1, v2);
+        assertEquals(v1.hashCode(), v2.hashCode());
+    }
+
+    @Test
+    void testDifferentLambdasAreNotEqual() throws Exception {
+        // λx. λy. x 和 λx. λy. y
+        Value v1 = eval("(λx. λy. x) : * → * → *");
+        Value v2 = eval("(λx. λy. y) : * → * → *");
+        assertNotEquals(v1, v2);
+    }
+
+    @Test
+    void testAlphaEquivalentPiTypesAreEqual() throws Exception {
+        Value v1 = eval("∀(a : *) → a → a");
+        Value v2 = eval("∀(b : *) → ∀(x : b) → b");
+        assertEquals(v1, v2);
+        assertEquals(v1.hashCode(), v2.hashCode());
+    }
+
+    @Test
+    void testClosuresCompareCapturedEnvironment() throws Exception {
+        // 两个闭包的函数体相同，但捕获的环境不同
+        Value f = eval("(λx. λy. x) : * → * → *");
+        Value applied1 = Eval.vApp(f, eval("*"));
+        Value applied2 = Eval.vApp(f, eval("* → *"));
+        Value applied3 = Eval.vApp(f, eval("∀(a : *) → *"));
+        assertNotEquals(applied1, applied2);
+        assertEquals(applied2, applied3);
+    }
+
+    // =================== 闭包应用测试 ===================
+
+    @Test
+    void testApplyClosure() throws Exception {
+        Value id = eval("(λx. x) : * → *");
+        Value star = eval("*");
+        Value.VLam lam = assertInstanceOf(Value.VLam.class, id);
+        assertEquals(star, Eval.apply(lam.body(), star));
+    }
+
+    // =================== 粘合求值测试 ===================
+
+    @Test
+    void testGlobalIsNotUnfoldedEagerly() throws Exception {
+        Globals globals = churchGlobals();
+        Value v = eval("csuc czro", globals);
+        Value.VGlobal global = assertInstanceOf(Value.VGlobal.class, v);
+        assertEquals("csuc", global.head().name);
+        assertEquals(1, global.args().size());
+    }
+
+    @Test
+    void testFoldedAndUnfoldedReadback() throws Exception {
+        Globals globals = churchGlobals();
+        Value v = eval("csuc (csuc czro)", globals);
+        assertEquals("csuc (csuc czro)", Eval.reifyFolded(v).toString());
+        assertEquals("λ λ λ D¹ (D¹ D⁰)", Eval.reify(v).toString());
+    }
+
+    @Test
+    void testForceUnfoldsHead() throws Exception {
+        Globals globals = churchGlobals();
+        Value v = eval("CNat", globals);
+        assertInstanceOf(Value.VGlobal.class, v);
+        assertInstanceOf(Value.VPi.class, Eval.force(v));
+    }
+
+    @Test
+    void testGluedValuesCompareByHeadAndArgs() throws Exception {
+        Globals globals = churchGlobals();
+        assertEquals(eval("csuc czro", globals), eval("csuc czro", globals));
+        assertNotEquals(eval("csuc czro", globals), eval("csuc (csuc czro)", globals));
+    }
+
+    @Test
+    void testConversionUnfoldsWhenHeadsDiffer() throws Exception {
+        Globals globals = churchGlobals();
+        define(globals, "one", "csuc czro");
+        // one 与 csuc czro 的头部不同，需要展开后才能判断相等
+        Value v = eval("(λP. λx. x) : ∀(P : CNat → *) → P one → P (csuc czro)", globals);
+        assertInstanceOf(Value.VLam.class, v);
+    }
+
+    @Test
+    void testAxiomIsNotGlued() throws Exception {
+        Globals globals = Globals.empty();
+        Node node = new Node.Var("A");
+        Value star = new Value.VStar(node);
+        globals.define("A", Value.vFree(node, new Name.Global("A")), Type.of(star));
+        assertInstanceOf(Value.NFree.class, eval("A", globals));
+    }
+
+    // =================== 正规形式缓存测试 ===================
+
+    @Test
+    void testSlotCachesNormalForms() throws Exception {
+        Globals globals = churchGlobals();
+        define(globals, "two", "csuc (csuc czro)");
+        Globals.Slot slot = globals.snapshot().lookup("two");
+        assertNotNull(slot);
+
+        assertSame(slot.normalForm(), slot.normalForm());
+        assertEquals(Eval.reify(slot.value()), slot.normalForm());
+        assertSame(slot.foldedType(), slot.foldedType());
+        assertEquals("CNat", slot.foldedType().toString());
+    }
+
+    @Test
+    void testReifyUsesCachedNormalForm() throws Exception {
+        // 对全局量本身的引用直接读回为槽位上缓存的正规形式
+        Globals globals = churchGlobals();
+        Globals.Slot slot = globals.snapshot().lookup("csuc");
+        assertNotNull(slot);
+        assertSame(slot.normalForm(), Eval.reify(eval("csuc", globals)));
+    }
+
+    @Test
+    void testRedefinitionGetsFreshNormalForm() throws Exception {
+        Globals globals = churchGlobals();
+        define(globals, "n", "czro");
+        Globals.Slot old = globals.snapshot().lookup("n");
+        assertNotNull(old);
+        assertEquals("λ λ λ D⁰", old.normalForm().toString());
+
+        define(globals, "n", "csuc czro");
+        Globals.Slot slot = globals.snapshot().lookup("n");
+        assertNotNull(slot);
+        assertNotSame(old, slot);
+        assertEquals("λ λ λ D¹ D⁰", slot.normalForm().toString());
+        assertEquals("λ λ λ D¹ D⁰", Eval.reify(eval("n", globals)).toString());
+
+        globals.clear();
+        assertNull(globals.snapshot().lookup("n"));
+    }
+
+    @Test
+    void testConcurrentReadersSeeConsistentSnapshots() throws Exception {
+        // 一个线程不断定义新的全局量，其他线程取得的每个快照都恰好包含某个前缀
+        Globals globals = Globals.empty();
+        Value star = new Value.VStar(new Node.Aster());
+        Type type = Type.of(star);
+        int count = 5000;
+        AtomicInteger failures = new AtomicInteger();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                int size = 0;
+                while (size < count) {
+                    Globals.Snapshot snapshot = globals.snapshot();
+                    size = snapshot.size();
+                    for (int i = 0; i < size; i += 97) {
+                        if (snapshot.lookup("n" + i) != snapshot.slot(i)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    if (snapshot.lookup("n" + size) != null) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < count; i++) {
+            globals.define("n" + i, star, type);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    // =================== 自然数字面量测试 ===================
+
+    // 辅助方法：注册自然数和向量的项构造器，以及它们的字面量
+    private static Elab indElab() {
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
+        elab.registerTermFormer(IndVec.Vec.class);
+        elab.registerTermFormer(IndVec.Nil.class);
+        elab.registerTermFormer(IndVec.Cons.class);
+        elab.registerTermFormer(IndVec.VecElim.class);
+        elab.registerVecLiteral(IndVec.VecLit::new);
+        return elab;
+    }
+
+    private static Term.Inferable checkInd(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term.Inferable term = (Term.Inferable) indElab().elab(node, snapshot);
+        InferCheck.infer(term, snapshot);
+        return term;
+    }
+
+    private static void defineInd(Globals globals, String name, String code) throws Exception {
+        Term.Inferable term = checkInd(code, globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Type type = InferCheck.infer(term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    private static Globals natGlobals(Eval.Strategy strategy) throws Exception {
+        Globals globals = Globals.empty();
+        globals.setStrategy(strategy);
+        defineInd(globals, "Nat", "_Tf_Nat");
+        defineInd(globals, "zero", "_Tf_Zero");
+        defineInd(globals, "succ", "λx. _Tf_Succ x : Nat → Nat");
+        defineInd(globals, "plus", """
+                (λm. λn. _Tf_NatElim (λ_. Nat) n (λk. λr. succ r) m) : Nat → Nat → Nat
+                """);
+        return globals;
+    }
+
+    @Test
+    void testNumeralEvaluatesToBinaryValue() throws Exception {
+        Globals globals = natGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Term.Inferable term = checkInd("1000000000000000000000", globals);
+        Value value = Eval.eval(term, globals.snapshot());
+        IndNat.VNum num = assertInstanceOf(IndNat.VNum.class, value);
+        assertEquals("1000000000000000000000", num.value().toString());
+        assertEquals("1000000000000000000000", Eval.reify(value).toString());
+    }
+
+    @Test
+    void testUnaryAndBinaryAgree() throws Exception {
+        // 无论写成 succ 链还是字面量，值和读回的结果都相同
+        Globals globals = natGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Value unary = Eval.eval(checkInd("succ (succ (succ zero))", globals), snapshot);
+        Value binary = Eval.eval(checkInd("3", globals), snapshot);
+        Value mixed = Eval.eval(checkInd("succ (succ 1)", globals), snapshot);
+        assertEquals(Eval.reify(binary), Eval.reify(unary));
+        assertEquals(Eval.reify(binary), Eval.reify(mixed));
+        assertEquals(3, natLiteral(Eval.reify(0, unary, true)));
+    }
+
+    @Test
+    void testSuccMergesIntoRuns() {
+        Node node = new Node.Aster();
+        Value x = Value.vFree(node, new Name.Global("x"));
+        Value two = IndNat.succ(node, BigInteger.ONE, IndNat.succ(node, BigInteger.ONE, x));
+        IndNat.VSuccN run = assertInstanceOf(IndNat.VSuccN.class, two);
+        assertEquals(BigInteger.TWO, run.count());
+        assertEquals("(suc_2 x)", Eval.reify(two).toString());
+        assertEquals("(suc x)", Eval.reify(IndNat.predecessor(two)).toString());
+
+        // 已知的数字直接相加
+        Value five = IndNat.succ(node, BigInteger.TWO, IndNat.num(node, BigInteger.valueOf(3)));
+        assertEquals(BigInteger.valueOf(5), assertInstanceOf(IndNat.VNum.class, five).value());
+        assertInstanceOf(IndNat.VZero.class, IndNat.predecessor(IndNat.num(node, BigInteger.ONE)));
+        assertNull(IndNat.predecessor(x));
+    }
+
+    @Test
+    void testNatElimOverNumeral() throws Exception {
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = natGlobals(strategy);
+            Term.Inferable term = checkInd("plus 3 (plus (succ 2) 4)", globals);
+            Value value = Eval.eval(term, globals.snapshot());
+            assertEquals(10, natLiteral(Eval.reify(0, value, true)));
+        }
+    }
+
+    @Test
+    void testAddingToHugeNumeral() throws Exception {
+        // 第二个参数只被 succ 包裹，不会展开成一元表示
+        Globals globals = natGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Term.Inferable term = checkInd("plus 2 1000000000000", globals);
+        Value value = Eval.eval(term, globals.snapshot());
+        assertEquals("1000000000002", Eval.reify(value).toString());
+    }
+
+    @Test
+    void testGlobalShadowsNumeral() throws Exception {
+        // 名字为数字的全局定义优先于字面量
+        Globals globals = natGlobals(Eval.Strategy.CALL_BY_VALUE);
+        defineInd(globals, "2", "5");
+        Term.Inferable term = checkInd("succ 2", globals);
+        assertEquals(6, natLiteral(Eval.reify(0, Eval.eval(term, globals.snapshot()), true)));
+    }
+
+    // =================== 按需求值测试 ===================
+
+    // 辅助方法：不经过类型检查，直接按给定策略求值。未定义的全局变量一旦被求值就会抛出异常
+    private static Value evalUnchecked(String code, Eval.Strategy strategy) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Term term = new Elab().elab(node);
+        Globals globals = Globals.empty();
+        globals.setStrategy(strategy);
+        return Eval.eval(term, globals.snapshot());
+    }
+
+    @Test
+    void testCallByNeedSkipsUnusedArgument() throws Exception {
+        String code = "((λx. λy. y) : * → * → *) (undefined *) *";
+        assertThrows(
+                IllegalStateException.class,
+                () -> evalUnchecked(code, Eval.Strategy.CALL_BY_VALUE)
+        );
+        assertInstanceOf(Value.VStar.class, evalUnchecked(code, Eval.Strategy.CALL_BY_NEED));
+    }
+
+    @Test
+    void testCallByNeedSkipsUnusedArgumentOfGlobal() throws Exception {
+        // 函数是全局定义、参数是应用时同样要推迟参数的求值
+        Globals globals = Globals.empty();
+        define(globals, "const", "(λx. λy. y) : * → * → *");
+        Node node = Parse.parseExpr(Token.tokenize("const (undefined *) *"));
+        Term term = new Elab().elab(node, globals.snapshot());
+        assertThrows(IllegalStateException.class, () -> Eval.eval(term, globals.snapshot()));
+
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        assertInstanceOf(Value.VStar.class, Eval.force(Eval.eval(term, globals.snapshot())));
+    }
+
+    @Test
+    void testThunkIsForcedAtMostOnce() {
+        Globals globals = Globals.empty();
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        Node node = new Node.Aster();
+        AtomicInteger count = new AtomicInteger();
+        Value thunk = Eval.delay(node, globals.snapshot(), () -> {
+            count.incrementAndGet();
+            return new Value.VStar(node);
+        });
+
+        assertEquals(0, count.get());
+        assertInstanceOf(Value.VStar.class, Eval.force(thunk));
+        assertInstanceOf(Value.VStar.class, Eval.force(thunk));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    void testCallByValueDoesNotDelay() {
+        Node node = new Node.Aster();
+        Value value = Eval.delay(node, Globals.empty().snapshot(), () -> new Value.VStar(node));
+        assertInstanceOf(Value.VStar.class, value);
+    }
+
+    @Test
+    void testNatElimDelaysBaseAndRecursion() {
+        // natElim (λ_. Nat) undefined (λk. λr. k) (succ zero)，步进函数丢弃递归结果，
+        // 因此基础情形在按需求值时不会被计算
+        Node node = new Node.Aster();
+        Term.Checkable motive = new Term.Lam(node, new Term.Inf(node, new IndNat.Nat(node)));
+        Term.Checkable base = new Term.Inf(node, new Term.Free(node, new Name.Global("undefined")));
+        Term.Checkable step = new Term.Lam(
+                node,
+                new Term.Lam(node, new Term.Inf(node, new Term.Bound(node, 1)))
+        );
+        Term.Checkable scrut = new Term.Inf(
+                node,
+                new IndNat.Succ(node, new Term.Inf(node, new IndNat.Zero(node)))
+        );
+        Term term = new IndNat.NatElim(node, motive, base, step, scrut);
+
+        Globals globals = Globals.empty();
+        assertThrows(
+                IllegalStateException.class,
+                () -> Eval.eval(term, SkewList.nil(), globals.snapshot())
+        );
+
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        Value result = Eval.eval(term, SkewList.nil(), globals.snapshot());
+        assertInstanceOf(IndNat.VZero.class, Eval.force(result));
+    }
+
+    // =================== 栈安全测试 ===================
+
+    private static final int DEEP = 100_000;
+
+    @Test
+    void testDeeplyNestedLambda() {
+        // λ λ ... λ D⁰，求值后读回
+        Node node = new Node.Aster();
+        Term.Checkable body = new Term.Inf(node, new Term.Bound(node, 0));
+        for (int i = 0; i < DEEP; i++) {
+            body = new Term.Lam(node, body);
+        }
+        Term.Inferable term = new Term.Ann(node, body, new Term.Inf(node, new Term.Star(node)));
+
+        Term.Checkable result = Eval.reify(0, Eval.eval(term, Globals.empty().snapshot()), true);
+        int count = 0;
+        while (result instanceof Term.Lam(Node _, Term.Checkable inner)) {
+            count++;
+            result = inner;
+        }
+        assertEquals(DEEP, count);
+        assertEquals(new Term.Inf(node, new Term.Bound(node, 0)), result);
+    }
+
+    @Test
+    void testLongNeutralSpine() {
+        // x * * ... *，其中 x 是公理
+        Node node = new Node.Aster();
+        Globals globals = Globals.empty();
+        Value axiom = Value.vFree(node, new Name.Global("x"));
+        globals.define("x", axiom, Type.of(new Value.VStar(node)));
+
+        Term.Inferable term = new Term.Free(node, new Name.Global("x"));
+        for (int i = 0; i < DEEP; i++) {
+            term = new Term.App(node, term, new Term.Inf(node, new Term.Star(node)));
+        }
+
+        Term.Checkable result = Eval.reify(0, Eval.eval(term, globals.snapshot()), true);
+        Term.Inferable current = assertInstanceOf(Term.Inf.class, result).inferable();
+        int count = 0;
+        while (current instanceof Term.App(Node _, Term.Inferable f, Term.Checkable _)) {
+            count++;
+            current = f;
+        }
+        assertEquals(DEEP, count);
+        assertEquals(new Term.Free(node, new Name.Global("x")), current);
+    }
+
+    @Test
+    void testDeeplyNestedPi() {
+        // ∀ * → ∀ * → ... → *
+        Node node = new Node.Aster();
+        Term.Checkable star = new Term.Inf(node, new Term.Star(node));
+        Term.Inferable term = new Term.Star(node);
+        for (int i = 0; i < DEEP; i++) {
+            term = new Term.Pi(node, star, new Term.Inf(node, term));
+        }
+
+        Term.Checkable result = Eval.reify(0, Eval.eval(term, Globals.empty().snapshot()), true);
+        int count = 0;
+        while (result instanceof Term.Inf(Node _, Term.Pi pi)) {
+            count++;
+            result = pi.bodyType();
+        }
+        assertEquals(DEEP, count);
+    }
+
+    // natElim (λ_. Nat) zero (λk. λr. succ r) n，结果是与 n 相同的自然数
+    private static Term natElimCopy(int n) {
+        Node node = new Node.Aster();
+        Term.Checkable scrut = new Term.Inf(node, new IndNat.Zero(node));
+        for (int i = 0; i < n; i++) {
+            scrut = new Term.Inf(node, new IndNat.Succ(node, scrut));
+        }
+        return new IndNat.NatElim(
+                node,
+                new Term.Lam(node, new Term.Inf(node, new IndNat.Nat(node))),
+                new Term.Inf(node, new IndNat.Zero(node)),
+                new Term.Lam(node, new Term.Lam(node, new Term.Inf(
+                        node,
+                        new IndNat.Succ(node, new Term.Inf(node, new Term.Bound(node, 0)))
+                ))),
+                scrut
+        );
+    }
+
+    // 闭合的自然数总是读回为字面量
+    private static int natLiteral(Term.Checkable term) {
+        Term.Inferable inferable = assertInstanceOf(Term.Inf.class, term).inferable();
+        return assertInstanceOf(IndNat.NatLit.class, inferable).value().intValueExact();
+    }
+
+    @Test
+    void testNatElimOverLargeNumber() {
+        Globals globals = Globals.empty();
+        Value result = Eval.eval(natElimCopy(DEEP), SkewList.nil(), globals.snapshot());
+        assertEquals(DEEP, natLiteral(Eval.reify(0, result, true)));
+    }
+
+    @Test
+    void testNatElimOverLargeNumberByNeed() {
+        Globals globals = Globals.empty();
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        Value result = Eval.eval(natElimCopy(DEEP), SkewList.nil(), globals.snapshot());
+        assertEquals(DEEP, natLiteral(Eval.reify(0, result, true)));
+    }
+
+    // =================== 消去子折叠测试 ===================
+
+    private static final int MILLION = 1_000_000;
+
+    // vecElim Nat (λ_. λ_. Nat) zero (λl. λh. λt. λr. succ r) len D⁰，结果是向量的长度
+    private static Term vecLength(Value len) {
+        Node node = new Node.Aster();
+        Term.Checkable nat = new Term.Inf(node, new IndNat.Nat(node));
+        Term.Checkable step = new Term.Inf(
+                node,
+                new IndNat.Succ(node, new Term.Inf(node, new Term.Bound(node, 0)))
+        );
+        for (int i = 0; i < 4; i++) {
+            step = new Term.Lam(node, step);
+        }
+        return new IndVec.VecElim(
+                node,
+                nat,
+                new Term.Lam(node, new Term.Lam(node, nat)),
+                new Term.Inf(node, new IndNat.Zero(node)),
+                step,
+                Eval.reify(0, len, true),
+                new Term.Inf(node, new Term.Bound(node, 0))
+        );
+    }
+
+    // 直接构造值，不经过类型检查
+    private static Value bigVec(int n) {
+        Node node = new Node.Aster();
+        Type nat = Type.of(new IndNat.VNat(node));
+        Value vec = new IndVec.VNil(node, nat.value());
+        for (int i = 0; i < n; i++) {
+            vec = new IndVec.VCons(
+                    node,
+                    nat,
+                    IndNat.num(node, BigInteger.valueOf(i)),
+                    IndNat.num(node, BigInteger.valueOf(i)),
+                    vec
+            );
+        }
+        return vec;
+    }
+
+    // natElim (λ_. Nat) zero (λ_. λ_. zero) D⁰：检查 D⁰ 是不是零，对 D⁰ 是严格的
+    private static Term.Checkable strictInBound0() {
+        Node node = new Node.Aster();
+        Term.Checkable nat = new Term.Inf(node, new IndNat.Nat(node));
+        Term.Checkable zero = new Term.Inf(node, new IndNat.Zero(node));
+        return new Term.Inf(node, new IndNat.NatElim(
+                node,
+                new Term.Lam(node, nat),
+                zero,
+                new Term.Lam(node, new Term.Lam(node, zero)),
+                new Term.Inf(node, new Term.Bound(node, 0))
+        ));
+    }
+
+    @Test
+    void testStrictStepByNeedOverLargeNumber() {
+        // 步进函数总是用到递归结果时，按需求值也不会逐层嵌套地强制求值 thunk
+        Node node = new Node.Aster();
+        Term.Checkable zero = new Term.Inf(node, new IndNat.Zero(node));
+        Term term = new IndNat.NatElim(
+                node,
+                new Term.Lam(node, new Term.Inf(node, new IndNat.Nat(node))),
+                zero,
+                new Term.Lam(node, new Term.Lam(node, strictInBound0())),
+                new Term.Inf(node, new Term.Bound(node, 0))
+        );
+        SkewList<Value> env = SkewList.of(IndNat.num(node, BigInteger.valueOf(MILLION)));
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = Globals.empty();
+            globals.setStrategy(strategy);
+            Value result = Eval.eval(term, env, globals.snapshot());
+            assertInstanceOf(IndNat.VZero.class, Eval.force(result));
+        }
+    }
+
+    @Test
+    void testStrictStepByNeedOverMillionElements() {
+        Node node = new Node.Aster();
+        Term.Checkable nat = new Term.Inf(node, new IndNat.Nat(node));
+        Term.Checkable step = strictInBound0();
+        for (int i = 0; i < 4; i++) {
+            step = new Term.Lam(node, step);
+        }
+        Term term = new IndVec.VecElim(
+                node,
+                nat,
+                new Term.Lam(node, new Term.Lam(node, nat)),
+                new Term.Inf(node, new IndNat.Zero(node)),
+                step,
+                Eval.reify(0, IndNat.num(node, BigInteger.valueOf(MILLION)), true),
+                new Term.Inf(node, new Term.Bound(node, 0))
+        );
+        SkewList<Value> env = SkewList.of(bigVec(MILLION));
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = Globals.empty();
+            globals.setStrategy(strategy);
+            Value result = Eval.eval(term, env, globals.snapshot());
+            assertInstanceOf(IndNat.VZero.class, Eval.force(result));
+        }
+    }
+
+    @Test
+    void testVecElimOverMillionElements() {
+        Node node = new Node.Aster();
+        Value len = IndNat.num(node, BigInteger.valueOf(MILLION));
+        Term term = vecLength(len);
+        SkewList<Value> env = SkewList.of(bigVec(MILLION));
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = Globals.empty();
+            globals.setStrategy(strategy);
+            Value result = Eval.eval(term, env, globals.snapshot());
+            assertEquals(MILLION, natLiteral(Eval.reify(0, result, true)));
+        }
+
+        Value result = new Machine(term, env, Globals.empty().snapshot()).run();
+        assertEquals(MILLION, natLiteral(Eval.reify(0, result, true)));
+    }
+
+    @Test
+    void testNatElimOverMillionLiteral() throws Exception {
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = natGlobals(strategy);
+            Term.Inferable term = checkInd("plus 1000000 (plus 1000000 1)", globals);
+            Value value = Eval.eval(term, globals.snapshot());
+            assertEquals(2 * MILLION + 1, natLiteral(Eval.reify(0, value, true)));
+        }
+
+        Globals globals = natGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Term.Inferable term = checkInd("plus 1000000 1", globals);
+        Value value = Machine.eval(term, globals.snapshot());
+        assertEquals(MILLION + 1, natLiteral(Eval.reify(0, value, true)));
+    }
+
+    @Test
+    void testNatSpineKeepsRunsCompact() {
+        // 二进制表示的数字和连续的 succ 在脊上都只占一段
+        Node node = new Node.Aster();
+        Value x = Value.vFree(node, new Name.Global("x"));
+        IndNat.NatSpine spine = IndNat.NatSpine.of(
+                IndNat.succ(node, BigInteger.TEN.pow(30), x)
+        );
+        assertEquals(1, spine.runs().size());
+        assertEquals(x, spine.bottom());
+
+        // 折叠时从链底开始依次生成每一个前驱
+        spine = IndNat.NatSpine.of(IndNat.succ(node, BigInteger.valueOf(3), x));
+        ArrayList<String> preds = new ArrayList<>();
+        spine.fold(x, (pred, acc) -> {
+            preds.add(Eval.reify(pred).toString());
+            return acc;
+        });
+        assertEquals(List.of("x", "(suc x)", "(suc_2 x)"), preds);
+
+        spine = IndNat.NatSpine.of(IndNat.num(node, BigInteger.valueOf(MILLION)));
+        assertEquals(1, spine.runs().size());
+        assertInstanceOf(IndNat.VZero.class, spine.bottom());
+    }
+
+    // =================== 紧凑向量测试 ===================
+
+    private static Globals vecGlobals(Eval.Strategy strategy) throws Exception {
+        Globals globals = natGlobals(strategy);
+        defineInd(globals, "Vec", "λa. λl. _Tf_Vec a l : ∀ (a : *), ∀ (l : Nat), *");
+        defineInd(globals, "nil", "λa. _Tf_Nil a : ∀ (a : *) -> Vec a 0");
+        defineInd(globals, "cons", """
+                λa. λn. λx. λxs. _Tf_Cons a n x xs
+                : ∀ (a : *), ∀ (n : Nat), a -> Vec a n -> Vec a (succ n)
+                """);
+        defineInd(globals, "length", """
+                λa. λn. λv. _Tf_VecElim a (λk. λ_. Nat) zero (λk. λx. λxs. λr. succ r) n v
+                : ∀ (a : *), ∀ (n : Nat), Vec a n -> Nat
+                """);
+        return globals;
+    }
+
+    private static Value evalInd(String code, Globals globals) throws Exception {
+        return Eval.eval(checkInd(code, globals), globals.snapshot());
+    }
+
+    @Test
+    void testVecLiteralIsPacked() throws Exception {
+        Globals globals = vecGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Value value = evalInd("[Nat; 1, succ 1, 3]", globals);
+        IndVec.VPacked packed = assertInstanceOf(IndVec.VPacked.class, value);
+        assertEquals(3, packed.size());
+        assertEquals(3, natLiteral(Eval.reify(0, packed.len(), true)));
+        assertEquals(2, natLiteral(Eval.reify(0, packed.get(1), true)));
+
+        // 空的字面量就是 nil
+        assertInstanceOf(IndVec.VNil.class, evalInd("[Nat;]", globals));
+    }
+
+    @Test
+    void testPackedAgreesWithConsChain() throws Exception {
+        // 紧凑存储的向量与 cons 链的相等性、散列值和读回结果都相同
+        Globals globals = vecGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Value packed = evalInd("[Nat; 1, 2, 3]", globals);
+        // 直接使用项构造器，避免得到对全局定义的粘合的应用
+        Value chain = evalInd(
+                "_Tf_Cons Nat 2 1 (_Tf_Cons Nat 1 2 (_Tf_Cons Nat 0 3 (_Tf_Nil Nat)))",
+                globals
+        );
+        assertInstanceOf(IndVec.VCons.class, chain);
+        assertEquals(chain, packed);
+        assertEquals(packed, chain);
+        assertEquals(chain.hashCode(), packed.hashCode());
+        assertEquals(Eval.reify(chain), Eval.reify(packed));
+
+        // 字面量的类型与 cons 链的类型可以互相转换
+        checkInd("(λv. v) : Vec Nat 3 → Vec Nat 3", globals);
+        Term.Inferable term = checkInd(
+                "((λv. v) : Vec Nat 3 → Vec Nat 3) [Nat; 1, 2, 3]",
+                globals
+        );
+        assertEquals(Eval.reify(chain), Eval.reify(Eval.eval(term, globals.snapshot())));
+
+        // 在紧凑存储的向量前面追加元素得到混合的链
+        Value mixed = evalInd("_Tf_Cons Nat 2 1 [Nat; 2, 3]", globals);
+        assertEquals(chain, mixed);
+        assertEquals(chain.hashCode(), mixed.hashCode());
+    }
+
+    @Test
+    void testVecLiteralTypeMismatch() throws Exception {
+        Globals globals = vecGlobals(Eval.Strategy.CALL_BY_VALUE);
+        assertThrows(TypeCheckException.class, () -> checkInd("[Nat; 1, *]", globals));
+        assertThrows(
+                TypeCheckException.class,
+                () -> checkInd("((λv. v) : Vec Nat 2 → Vec Nat 2) [Nat; 1, 2, 3]", globals)
+        );
+    }
+
+    @Test
+    void testVecElimOverPacked() throws Exception {
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = vecGlobals(strategy);
+            Value value = evalInd("length Nat 4 (cons Nat 3 0 [Nat; 1, 2, 3])", globals);
+            assertEquals(4, natLiteral(Eval.reify(0, value, true)));
+        }
+
+        Globals globals = vecGlobals(Eval.Strategy.CALL_BY_VALUE);
+        Term.Inferable term = checkInd("length Nat 3 [Nat; 1, 2, 3]", globals);
+        Value value = Machine.eval(term, globals.snapshot());
+        assertEquals(3, natLiteral(Eval.reify(0, value, true)));
+    }
+
+    @Test
+    void testVecElimOverMillionPacked() {
+        Node node = new Node.Aster();
+        Value[] elements = new Value[MILLION];
+        for (int i = 0; i < MILLION; i++) {
+            elements[i] = IndNat.num(node, BigInteger.valueOf(i));
+        }
+        Value vec = IndVec.packed(node, Type.of(new IndNat.VNat(node)), elements);
+        Value len = IndNat.num(node, BigInteger.valueOf(MILLION));
+
+        IndVec.VecSpine spine = IndVec.VecSpine.of(len, vec);
+        assertTrue(spine.cells().isEmpty());
+        assertEquals(MILLION, spine.size());
+
+        Term term = vecLength(len);
+        SkewList<Value> env = SkewList.of(vec);
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = Globals.empty();
+            globals.setStrategy(strategy);
+            Value result = Eval.eval(term, env, globals.snapshot());
+            assertEquals(MILLION, natLiteral(Eval.reify(0, result, true)));
+        }
+
+        Value result = new Machine(term, env, Globals.empty().snapshot()).run();
+        assertEquals(MILLION, natLiteral(Eval.reify(0, result, true)));
+    }
+}
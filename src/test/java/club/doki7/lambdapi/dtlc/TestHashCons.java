@@ -0,0 +1,169 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestHashCons {
+    private static Term check(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term term = new Elab().elab(node, snapshot);
+        InferCheck.infer((Term.Inferable) term, snapshot);
+        return term;
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Term term = check(code, globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Type type = InferCheck.infer((Term.Inferable) term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    @Test
+    void testSourceLocationIgnored() {
+        // 不同位置的相同结构得到同一个规范词项
+        Term.Star a = HashCons.star(new Node.Aster());
+        Term.Star b = HashCons.star(new Node.Aster());
+        assertSame(a, b);
+
+        Term.Checkable star = HashCons.inf(new Node.Aster(), a);
+        Term.Pi p1 = HashCons.pi(new Node.Aster(), star, star);
+        Term.Pi p2 = HashCons.pi(new Node.Aster(), HashCons.inf(new Node.Aster(), b), star);
+        assertSame(p1, p2);
+        assertTrue(HashCons.isCanonical(p1));
+        assertNotSame(p1, HashCons.pi(new Node.Aster(), star, HashCons.lam(new Node.Aster(), star)));
+    }
+
+    @Test
+    void testReifySharesNormalForms() throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        define(globals, "three", "csuc (csuc (csuc czro))");
+
+        // 两次独立的求值读回同一个对象
+        Term t1 = check("cmul three three", globals);
+        Term t2 = check("cmul three (csuc (csuc (csuc czro)))", globals);
+        Term nf1 = Eval.reify(Eval.eval(t1, globals.snapshot()));
+        Term nf2 = Eval.reify(Eval.eval(t2, globals.snapshot()));
+        assertSame(nf1, nf2);
+        assertTrue(HashCons.isCanonical(nf1));
+    }
+
+    @Test
+    void testHashConsistentWithEquals() throws Exception {
+        // 繁饰的结果不是规范的，它的哈希仍然与结构相同的规范词项一致
+        Globals globals = Globals.empty();
+        Term elaborated = check("(λa. λx. x) : ∀(a : *) → a → a", globals);
+        Term canonical = Eval.reify(Eval.eval(elaborated, globals.snapshot()));
+        Term.Checkable annotation = ((Term.Ann) elaborated).annotation();
+        assertFalse(HashCons.isCanonical(annotation));
+
+        Term reified = Eval.reify(
+                Eval.eval(annotation, globals.snapshot())
+        );
+        assertEquals(annotation, reified);
+        assertEquals(annotation.hashCode(), reified.hashCode());
+        assertNotEquals(canonical, reified);
+    }
+
+    @Test
+    void testHashOfDeepTerm() {
+        // 很深的非规范词项的哈希不会耗尽 Java 调用栈，并且与结构相同的规范词项一致
+        Node node = new Node.Aster();
+        Term.Checkable plain = new Term.Inf(node, new Term.Star(node));
+        Term.Checkable canonical = HashCons.inf(node, HashCons.star(node));
+        for (int i = 0; i < 100_000; i++) {
+            plain = new Term.Lam(node, plain);
+            canonical = HashCons.lam(node, canonical);
+        }
+        assertFalse(HashCons.isCanonical(plain));
+        assertTrue(HashCons.isCanonical(canonical));
+        assertEquals(canonical.hashCode(), plain.hashCode());
+    }
+
+    @Test
+    void testTermFormerInterned() {
+        IndNat.NatLit a = HashCons.intern(new IndNat.NatLit(new Node.Aster(), BigInteger.TEN));
+        IndNat.NatLit b = HashCons.intern(new IndNat.NatLit(new Node.Aster(), BigInteger.TEN));
+        assertSame(a, b);
+        assertNotSame(a, HashCons.intern(new IndNat.NatLit(new Node.Aster(), BigInteger.TWO)));
+
+        Term.Checkable pred = HashCons.inf(new Node.Aster(), a);
+        IndNat.Succ s1 = HashCons.intern(new IndNat.Succ(new Node.Aster(), pred));
+        IndNat.Succ s2 = HashCons.intern(new IndNat.Succ(new Node.Aster(), pred));
+        assertSame(s1, s2);
+        assertEquals(new IndNat.Succ(new Node.Aster(), pred).hashCode(), s1.hashCode());
+    }
+
+    @Test
+    void testEqualsOfDeepTerm() {
+        // 很深的词项的比较不会耗尽 Java 调用栈；项构造器按 parts 比较
+        Node node = new Node.Aster();
+        Term.Checkable zero = new Term.Inf(node, new IndNat.NatLit(node, BigInteger.ZERO));
+        Term.Checkable plain = new Term.Inf(node, new IndNat.Succ(node, zero));
+        Term.Checkable other = new Term.Inf(node, new IndNat.Succ(node, zero));
+        Term.Checkable canonical = HashCons.inf(node, HashCons.intern(new IndNat.Succ(
+                node,
+                HashCons.inf(node, HashCons.intern(new IndNat.NatLit(node, BigInteger.ZERO)))
+        )));
+        Term.Checkable distinct = HashCons.inf(node, HashCons.intern(new IndNat.Succ(
+                node,
+                HashCons.inf(node, HashCons.intern(new IndNat.NatLit(node, BigInteger.ONE)))
+        )));
+        for (int i = 0; i < 100_000; i++) {
+            plain = new Term.Lam(node, plain);
+            other = new Term.Lam(node, other);
+            canonical = HashCons.lam(node, canonical);
+            distinct = HashCons.lam(node, distinct);
+        }
+        assertEquals(plain, other);
+        assertEquals(plain, canonical);
+        assertEquals(canonical, plain);
+        assertNotEquals(plain, distinct);
+        assertNotEquals(canonical, distinct);
+    }
+
+    @Test
+    void testConcurrentInterning() throws Exception {
+        // 多个线程同时构造相同的词项，插入、扩容与不加锁的查找交错进行，结果仍然是同一批规范词项
+        int threads = 8;
+        int count = 20_000;
+        Term[][] results = new Term[threads][];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int self = t;
+            workers[t] = new Thread(() -> {
+                Node node = new Node.Aster();
+                Term[] terms = new Term[count];
+                for (int i = 0; i < count; i++) {
+                    Term.Checkable body = HashCons.inf(node, HashCons.bound(node, i));
+                    terms[i] = HashCons.lam(node, HashCons.lam(node, body));
+                }
+                results[self] = terms;
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(HashCons.isCanonical(results[0][i]));
+        }
+        for (int t = 1; t < threads; t++) {
+            for (int i = 0; i < count; i++) {
+                assertSame(results[0][i], results[t][i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.exc.TypeCheckException;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInferCheck {
+    // 辅助方法：解析表达式并 elaborate
+    private static Term.Inferable elab(String code, Globals.Snapshot snapshot) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
+        return (Term.Inferable) elab.elab(node, snapshot);
+    }
+
+    // 辅助方法：推导类型并读回
+    private static Term infer(String code) throws Exception {
+        Globals.Snapshot snapshot = Globals.empty().snapshot();
+        return Eval.reify(InferCheck.infer(elab(code, snapshot), snapshot).value());
+    }
+
+    // 辅助方法：检查一个类型表达式并读回它的正规形式
+    private static Term type(String code) throws Exception {
+        Globals.Snapshot snapshot = Globals.empty().snapshot();
+        Term.Inferable term = elab(code, snapshot);
+        InferCheck.infer(term, snapshot);
+        return Eval.reify(Eval.eval(term, snapshot));
+    }
+
+    // 辅助方法：构造 `λa. λx1. ... λxn. x{pick} : ∀(a : *) → a → ... → a`
+    private static String project(int n, int pick) {
+        StringBuilder term = new StringBuilder("(λa. ");
+        StringBuilder type = new StringBuilder("∀(a : *) → ");
+        for (int i = 1; i <= n; i++) {
+            term.append("λx").append(i).append(". ");
+            type.append("a → ");
+        }
+        term.append("x").append(pick).append(")");
+        type.append("a");
+        return term + " : " + type;
+    }
+
+    @Test
+    void testBoundVariableTypesUnderBinders() throws Exception {
+        // 约束变量的类型依赖更外层的约束变量
+        assertEquals(
+                type("∀(a : *) → a → a"),
+                infer("(λa. λx. x) : ∀(a : *) → a → a")
+        );
+        assertEquals(
+                type("∀(a : *) → ∀(b : *) → a → b → a"),
+                infer("(λa. λb. λx. λy. x) : ∀(a : *) → ∀(b : *) → a → b → a")
+        );
+    }
+
+    @Test
+    void testMismatchUnderBinders() {
+        // y : b 不能作为 a 返回
+        assertThrows(
+                TypeCheckException.class,
+                () -> infer("(λa. λb. λx. λy. y) : ∀(a : *) → ∀(b : *) → a → b → a")
+        );
+    }
+
+    @Test
+    void testDependentApplicationUnderBinders() throws Exception {
+        // 函数的返回类型在约束变量上求值
+        assertEquals(
+                type("∀(f : ∀(a : *) → a → a) → ∀(b : *) → b → b"),
+                infer("(λf. λb. λy. f b y) : ∀(f : ∀(a : *) → a → a) → ∀(b : *) → b → b")
+        );
+    }
+
+    @Test
+    void testTermFormersUnderBinders() throws Exception {
+        // 项构造器的参数也在上下文的环境中求值
+        assertEquals(
+                type("∀(n : _Tf_Nat) → _Tf_Nat"),
+                infer("(λn. _Tf_NatElim (λ_. _Tf_Nat) _Tf_Zero (λk. λr. r) n) "
+                      + ": ∀(n : _Tf_Nat) → _Tf_Nat")
+        );
+    }
+
+    @Test
+    void testManyBinders() throws Exception {
+        // 每个约束变量都只在上下文中查找一次，不把新变量替换进函数体
+        int n = 500;
+        infer(project(n, 1));
+        infer(project(n, n));
+        infer(project(n, n / 2));
+    }
+
+    @Test
+    void testInferEvalAgreesWithEval() throws Exception {
+        // 检查时一并求出的值与单独求值的结果相同
+        for (Eval.Strategy strategy : Eval.Strategy.values()) {
+            Globals globals = Globals.empty();
+            globals.setStrategy(strategy);
+            String[] codes = {
+                    "(λa. λx. x) : ∀(a : *) → a → a",
+                    "((λa. λx. x) : ∀(a : *) → a → a) (∀(b : *) → b)",
+                    "∀(a : *) → ∀(f : a → *) → ∀(x : a) → f x",
+                    "_Tf_NatElim (λ_. _Tf_Nat) _Tf_Zero (λk. λr. k) 5",
+                    "(λn. _Tf_NatElim (λ_. _Tf_Nat) _Tf_Zero (λk. λr. r) n) "
+                    + ": ∀(n : _Tf_Nat) → _Tf_Nat",
+                    "*",
+            };
+            for (String code : codes) {
+                Globals.Snapshot snapshot = globals.snapshot();
+                Term.Inferable term = elab(code, snapshot);
+                InferCheck.Typed typed = InferCheck.inferEval(term, snapshot);
+                assertEquals(
+                        Eval.reify(InferCheck.infer(term, snapshot).value()),
+                        Eval.reify(typed.type().value())
+                );
+                assertEquals(
+                        Eval.reify(Eval.eval(term, snapshot)),
+                        Eval.reify(typed.value())
+                );
+            }
+        }
+    }
+
+    // =================== 栈安全测试 ===================
+
+    private static final int DEEP = 100_000;
+
+    private static Globals natGlobals() throws Exception {
+        Globals globals = Globals.empty();
+        for (String[] def : new String[][] {
+                { "Nat", "_Tf_Nat" },
+                { "succ", "(λn. _Tf_Succ n) : Nat → Nat" },
+        }) {
+            Globals.Snapshot snapshot = globals.snapshot();
+            InferCheck.Typed typed = InferCheck.inferEval(elab(def[1], snapshot), snapshot);
+            globals.define(def[0], typed.value(), typed.type());
+        }
+        return globals;
+    }
+
+    private static Type inferNode(Node node, Globals globals) throws Exception {
+        Globals.Snapshot snapshot = globals.snapshot();
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        Term.Inferable term = (Term.Inferable) elab.elab(node, snapshot);
+        return InferCheck.inferEval(term, snapshot).type();
+    }
+
+    @Test
+    void testDeeplyNestedApplications() throws Exception {
+        // succ (succ (... (succ _Tf_Zero)))
+        Globals globals = natGlobals();
+        Node node = new Node.Var("_Tf_Zero");
+        for (int i = 0; i < DEEP; i++) {
+            node = new Node.App(new Node.Var("succ"), node);
+        }
+        Type type = inferNode(node, globals);
+        assertInstanceOf(IndNat.VNat.class, Eval.force(type.value()));
+    }
+
+    @Test
+    void testDeepSuccChain() throws Exception {
+        // _Tf_Succ (_Tf_Succ (... _Tf_Zero))
+        Node node = new Node.Var("_Tf_Zero");
+        for (int i = 0; i < DEEP; i++) {
+            node = new Node.App(new Node.Var("_Tf_Succ"), node);
+        }
+        assertInstanceOf(IndNat.VNat.class, inferNode(node, Globals.empty()).value());
+    }
+
+    @Test
+    void testDeepPiTelescope() throws Exception {
+        // ∀(a : *) → a → a → ... → a
+        Node type = new Node.Var("a");
+        for (int i = 0; i < DEEP; i++) {
+            type = new Node.Pi((String) null, new Node.Var("a"), type);
+        }
+        type = new Node.Pi("a", new Node.Aster(), type);
+        assertInstanceOf(Value.VStar.class, inferNode(type, Globals.empty()).value());
+
+        // λa. λx. λy. ... λy. x 检查为上面的类型
+        Node body = new Node.Var("x");
+        for (int i = 1; i < DEEP; i++) {
+            body = new Node.Lam(Token.ident("y"), body);
+        }
+        Node lam = new Node.Lam(Token.ident("a"), new Node.Lam(Token.ident("x"), body));
+        Type lamType = inferNode(new Node.Ann(lam, type), Globals.empty());
+        assertInstanceOf(Value.VPi.class, lamType.value());
+
+        // 最内层返回 *，与期望的 a 不符
+        Node bad = new Node.Aster();
+        for (int i = 1; i < DEEP; i++) {
+            bad = new Node.Lam(Token.ident("y"), bad);
+        }
+        Node badLam = new Node.Lam(Token.ident("a"), new Node.Lam(Token.ident("x"), bad));
+        Node badNode = new Node.Ann(badLam, type);
+        TypeCheckException e = assertThrows(
+                TypeCheckException.class,
+                () -> inferNode(badNode, Globals.empty())
+        );
+        assertTrue(e.getMessage().contains("Type mismatch"));
+    }
+}
@@ -0,0 +1,178 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMachine {
+    // 辅助方法：检查表达式并返回词项
+    private static Term check(String code, Globals globals) throws Exception {
+        Node node = Parse.parseExpr(Token.tokenize(code));
+        Globals.Snapshot snapshot = globals.snapshot();
+        Term term = new Elab().elab(node, snapshot);
+        InferCheck.infer((Term.Inferable) term, snapshot);
+        return term;
+    }
+
+    private static void define(Globals globals, String name, String code) throws Exception {
+        Term term = check(code, globals);
+        Globals.Snapshot snapshot = globals.snapshot();
+        Type type = InferCheck.infer((Term.Inferable) term, snapshot);
+        globals.define(name, Eval.eval(term, snapshot), type);
+    }
+
+    private static Globals churchGlobals() throws Exception {
+        Globals globals = Globals.empty();
+        define(globals, "CNat", "(∀(t : *) → (t → t) → t → t) : *");
+        define(globals, "csuc", "(λn. λt. λs. λz. s (n t s z)) : CNat → CNat");
+        define(globals, "czro", "(λt. λs. λz. z) : CNat");
+        define(globals, "cmul", "(λm. λn. λt. λs. m t (n t s)) : CNat → CNat → CNat");
+        define(globals, "two", "csuc (csuc czro)");
+        define(globals, "three", "csuc two");
+        return globals;
+    }
+
+    // natElim (λ_. Nat) zero (λk. λr. succ r) n，结果是与 n 相同的自然数
+    private static Term natElimCopy(int n) {
+        Node node = new Node.Aster();
+        Term.Checkable scrut = new Term.Inf(node, new IndNat.Zero(node));
+        for (int i = 0; i < n; i++) {
+            scrut = new Term.Inf(node, new IndNat.Succ(node, scrut));
+        }
+        return new IndNat.NatElim(
+                node,
+                new Term.Lam(node, new Term.Inf(node, new IndNat.Nat(node))),
+                new Term.Inf(node, new IndNat.Zero(node)),
+                new Term.Lam(node, new Term.Lam(node, new Term.Inf(
+                        node,
+                        new IndNat.Succ(node, new Term.Inf(node, new Term.Bound(node, 0)))
+                ))),
+                scrut
+        );
+    }
+
+    @Test
+    void testAgreesWithEval() throws Exception {
+        Globals globals = churchGlobals();
+        for (String code : new String[] {
+                "cmul three (cmul two three)",
+                "(λn. cmul n n) : CNat → CNat",
+                "∀(a : *) → a → a",
+        }) {
+            Term term = check(code, globals);
+            Value expected = Eval.eval(term, globals.snapshot());
+            Value actual = Machine.eval(term, globals.snapshot());
+            assertEquals(Eval.reify(expected), Eval.reify(actual));
+            assertEquals(Eval.reifyFolded(expected), Eval.reifyFolded(actual));
+        }
+    }
+
+    @Test
+    void testSuspendAndResume() throws Exception {
+        Globals globals = churchGlobals();
+        Term term = check("cmul three three", globals);
+        Machine machine = new Machine(term, globals.snapshot());
+
+        // 每次只给少量的燃料，机器在两次运行之间暂停
+        int slices = 0;
+        while (!machine.run(2)) {
+            slices++;
+            assertThrows(IllegalStateException.class, machine::result);
+        }
+        assertTrue(slices > 0);
+        assertEquals(
+                Eval.reify(Eval.eval(term, globals.snapshot())),
+                Eval.reify(machine.result())
+        );
+
+        // 停机之后不再转移
+        long steps = machine.steps();
+        assertFalse(machine.step());
+        assertEquals(steps, machine.steps());
+    }
+
+    @Test
+    void testStepCountIsDeterministic() throws Exception {
+        Globals globals = churchGlobals();
+        Term term = check("cmul two three", globals);
+        Machine m1 = new Machine(term, globals.snapshot());
+        m1.run();
+        Machine m2 = new Machine(term, globals.snapshot());
+        while (m2.step()) {
+        }
+        assertEquals(m1.steps(), m2.steps());
+        assertTrue(m1.steps() > 0);
+    }
+
+    @Test
+    void testTermFormerStepsRunInMachine() {
+        // 消去子的每一次步进函数应用都由机器完成，步数随数字的大小增长
+        Globals.Snapshot globals = Globals.empty().snapshot();
+        Machine small = new Machine(natElimCopy(10), globals);
+        Machine large = new Machine(natElimCopy(100), globals);
+        small.run();
+        large.run();
+        assertTrue(large.steps() > small.steps() * 5);
+        assertEquals(
+                Eval.reify(Eval.eval(natElimCopy(100), globals)),
+                Eval.reify(large.result())
+        );
+    }
+
+    @Test
+    void testCallByNeed() throws Exception {
+        // 按需求值时参数交给解释器创建 thunk，未使用的参数不会被求值
+        Node node = Parse.parseExpr(Token.tokenize("((λx. λy. y) : * → * → *) (undefined *) *"));
+        Term term = new Elab().elab(node);
+        Globals globals = Globals.empty();
+        assertThrows(IllegalStateException.class, () -> Machine.eval(term, globals.snapshot()));
+
+        globals.setStrategy(Eval.Strategy.CALL_BY_NEED);
+        assertInstanceOf(Value.VStar.class, Machine.eval(term, globals.snapshot()));
+        assertEquals(
+                Eval.reify(Machine.eval(natElimCopy(50), globals.snapshot())),
+                Eval.reify(Eval.eval(natElimCopy(50), globals.snapshot()))
+        );
+    }
+
+    // =================== 栈安全测试 ===================
+
+    private static final int DEEP = 100_000;
+
+    @Test
+    void testLongNeutralSpine() {
+        // x * * ... *，其中 x 是公理
+        Node node = new Node.Aster();
+        Globals globals = Globals.empty();
+        Value axiom = Value.vFree(node, new Name.Global("x"));
+        globals.define("x", axiom, Type.of(new Value.VStar(node)));
+
+        Term.Inferable term = new Term.Free(node, new Name.Global("x"));
+        for (int i = 0; i < DEEP; i++) {
+            term = new Term.App(node, term, new Term.Inf(node, new Term.Star(node)));
+        }
+
+        Term.Checkable result = Eval.reify(0, Machine.eval(term, globals.snapshot()), true);
+        Term.Inferable current = assertInstanceOf(Term.Inf.class, result).inferable();
+        int count = 0;
+        while (current instanceof Term.App(Node _, Term.Inferable f, Term.Checkable _)) {
+            count++;
+            current = f;
+        }
+        assertEquals(DEEP, count);
+        assertEquals(new Term.Free(node, new Name.Global("x")), current);
+    }
+
+    @Test
+    void testNatElimOverLargeNumber() {
+        Globals.Snapshot globals = Globals.empty().snapshot();
+        Value result = Machine.eval(natElimCopy(DEEP), globals);
+        Term.Inferable term = assertInstanceOf(Term.Inf.class, Eval.reify(result)).inferable();
+        assertEquals(DEEP, assertInstanceOf(IndNat.NatLit.class, term).value().intValueExact());
+    }
+}
@@ -0,0 +1,388 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.exc.LPiException;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.ind.IndVec;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestModuleCache {
+    private static Elab indElab() {
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
+        elab.registerTermFormer(IndVec.Vec.class);
+        elab.registerTermFormer(IndVec.Nil.class);
+        elab.registerTermFormer(IndVec.Cons.class);
+        elab.registerTermFormer(IndVec.VecElim.class);
+        elab.registerVecLiteral(IndVec.VecLit::new);
+        return elab;
+    }
+
+    private static List<PNode> parse(String code) throws Exception {
+        return Scheduler.flatten(List.of(Parse.parseProgram(Token.tokenize(code))));
+    }
+
+    private static String sample(String name) throws Exception {
+        try (InputStream in = TestModuleCache.class.getResourceAsStream("/sample/dtlc/" + name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // 检查声明，得到写入缓存的内容
+    private static ModuleCache.Decl check(Elab elab, PNode decl, Globals.Snapshot snapshot)
+        throws LPiException
+    {
+        return switch (decl) {
+            case PNode.Axiom(List<Token> _, Node typeNode) -> {
+                Term term = elab.elab(typeNode, snapshot);
+                Value type = InferCheck.inferEval((Term.Inferable) term, snapshot).value();
+                yield new ModuleCache.Axiom(Eval.reifyFolded(type));
+            }
+            case PNode.Defun(Token _, Node valueNode) -> {
+                Term term = elab.elab(valueNode, snapshot);
+                InferCheck.Typed typed = InferCheck.inferEval((Term.Inferable) term, snapshot);
+                yield new ModuleCache.Defun(term, Eval.reifyFolded(typed.type().value()));
+            }
+            case PNode.Check(Node termNode) -> {
+                Term term = elab.elab(termNode, snapshot);
+                InferCheck.Typed typed = InferCheck.inferEval((Term.Inferable) term, snapshot);
+                yield new ModuleCache.Check(
+                        Eval.reify(typed.value()),
+                        Eval.reifyFolded(typed.type().value())
+                );
+            }
+            case PNode.Program _ -> throw new IllegalStateException();
+        };
+    }
+
+    // 提交缓存中的声明：只求值，不检查，并把结果按提交顺序记录为字符串
+    private static void commit(Globals globals, PNode item, ModuleCache.Decl decl, List<String> log) {
+        Globals.Snapshot snapshot = globals.snapshot();
+        switch (decl) {
+            case ModuleCache.Axiom(Term type) -> {
+                for (Token name : ((PNode.Axiom) item).names()) {
+                    Value value = Value.vFree(((PNode.Axiom) item).type(), new Name.Global(name.lexeme));
+                    Globals.Slot slot = globals.define(name.lexeme, value, Type.of(Eval.eval(type, snapshot)));
+                    log.add(name.lexeme + " : " + slot.foldedType());
+                }
+            }
+            case ModuleCache.Defun(Term value, Term type) -> {
+                String name = ((PNode.Defun) item).name().lexeme;
+                Globals.Slot slot = globals.define(
+                        name,
+                        Eval.eval(value, snapshot),
+                        Type.of(Eval.eval(type, snapshot))
+                );
+                log.add(name + " : " + slot.foldedType() + " = " + slot.normalForm());
+            }
+            case ModuleCache.Check(Term normalForm, Term type) ->
+                    log.add("check " + normalForm + " : " + Eval.reifyFolded(Eval.eval(type, snapshot)));
+        }
+    }
+
+    // 逐个检查并提交声明，同时写入缓存
+    private static List<String> checkAndWrite(List<PNode> items, Globals globals, ModuleCache.Writer writer)
+        throws LPiException
+    {
+        Elab elab = indElab();
+        List<String> log = new ArrayList<>();
+        for (PNode item : items) {
+            ModuleCache.Decl decl = check(elab, item, globals.snapshot());
+            writer.add(item, decl, null);
+            commit(globals, item, decl, log);
+        }
+        return log;
+    }
+
+    private static List<String> replay(List<PNode> items, Globals globals, ModuleCache.Reader reader)
+        throws IOException
+    {
+        List<String> log = new ArrayList<>();
+        for (PNode item : items) {
+            commit(globals, item, reader.next(item, globals.snapshot()), log);
+        }
+        return log;
+    }
+
+    @Test
+    void testReplayMatchesChecking(@TempDir Path dir) throws Exception {
+        // 读回的模块与检查时提交的结果相同，后一个模块引用前一个模块定义的槽位
+        for (String[] files : new String[][] {
+                { "nat-vec.lp", "nat-vec-test.lp" },
+                { "church-base.lp", "church-pair.lp" },
+        }) {
+            ModuleCache checkedModules = new ModuleCache();
+            ModuleCache cachedModules = new ModuleCache();
+            Globals checked = Globals.empty();
+            Globals cached = Globals.empty();
+            for (String file : files) {
+                String content = sample(file);
+                byte[] source = ModuleCache.hash(content);
+                List<PNode> items = parse(content);
+                Path path = ModuleCache.cachePath(dir.resolve(file));
+
+                ModuleCache.Writer writer = new ModuleCache.Writer(source, checkedModules.upstream(), checked);
+                List<String> expected = checkAndWrite(items, checked, writer);
+                writer.write(path);
+                checkedModules.loaded(source);
+
+                ModuleCache.Reader reader = ModuleCache.open(
+                        path,
+                        source,
+                        cachedModules.upstream(),
+                        items.size()
+                );
+                assertNotNull(reader, file);
+                assertEquals(expected, replay(items, cached, reader));
+                cachedModules.loaded(source);
+            }
+            assertEquals(checked.snapshot().size(), cached.snapshot().size());
+        }
+    }
+
+    @Test
+    void testStaleCacheIsIgnored(@TempDir Path dir) throws Exception {
+        String content = "defun id = λx. x : * → *\ncheck id *";
+        byte[] source = ModuleCache.hash(content);
+        List<PNode> items = parse(content);
+        ModuleCache modules = new ModuleCache();
+        Path path = dir.resolve("id.lpc");
+
+        Globals globals = Globals.empty();
+        ModuleCache.Writer writer = new ModuleCache.Writer(source, modules.upstream(), globals);
+        checkAndWrite(items, globals, writer);
+        writer.write(path);
+        assertNotNull(ModuleCache.open(path, source, modules.upstream(), items.size()));
+
+        // 源文件或者之前的会话有变化时不使用缓存
+        assertNull(ModuleCache.open(path, ModuleCache.hash(content + "\n"), modules.upstream(), items.size()));
+        assertNull(ModuleCache.open(path, source, modules.upstream(), items.size() + 1));
+        modules.entered("axiom a : *");
+        assertNull(ModuleCache.open(path, source, modules.upstream(), items.size()));
+
+        // 相同的输入得到相同的摘要，加载到一半失败之后不再命中
+        ModuleCache again = new ModuleCache();
+        again.entered("axiom a : *");
+        assertArrayEquals(modules.upstream(), again.upstream());
+        again.invalidate();
+        assertFalse(Arrays.equals(modules.upstream(), again.upstream()));
+        again.clear();
+        assertNotNull(ModuleCache.open(path, source, again.upstream(), items.size()));
+
+        // 不存在或者格式不对的文件
+        assertNull(ModuleCache.open(dir.resolve("missing.lpc"), source, again.upstream(), items.size()));
+        Files.write(path, new byte[] { 1, 2, 3 });
+        assertNull(ModuleCache.open(path, source, again.upstream(), items.size()));
+    }
+
+    @Test
+    void testLibraryDecodesOnDemand(@TempDir Path dir) throws Exception {
+        String content = sample("nat-vec.lp");
+        byte[] source = ModuleCache.hash(content);
+        List<PNode> items = parse(content);
+        Path path = dir.resolve("nat-vec.lpc");
+
+        // 检查并写入缓存，每个声明的键就是它的名字
+        Elab elab = indElab();
+        Globals checked = Globals.empty();
+        ModuleCache.Writer writer = new ModuleCache.Writer(source, new ModuleCache().upstream(), checked);
+        for (PNode item : items) {
+            ModuleCache.Decl decl = check(elab, item, checked.snapshot());
+            writer.add(item, decl, "key-" + ((PNode.Defun) item).name().lexeme);
+            commit(checked, item, decl, new ArrayList<>());
+        }
+        writer.write(path);
+
+        Files.writeString(dir.resolve("nat-vec.lp"), content);
+        assertArrayEquals(source, ModuleCache.hash(dir.resolve("nat-vec.lp")));
+        assertNull(ModuleCache.library(path, ModuleCache.hash("changed"), new ModuleCache().upstream(), (_, _) -> {}));
+
+        List<String> created = new ArrayList<>();
+        ModuleCache.Library library = ModuleCache.library(
+                path,
+                source,
+                new ModuleCache().upstream(),
+                (slot, key) -> created.add(slot.name + "=" + key)
+        );
+        assertNotNull(library);
+        Globals lazy = Globals.empty();
+        assertEquals(0, lazy.load(library));
+        assertEquals(checked.snapshot().size(), lazy.snapshot().size());
+        assertEquals(-1, library.find("missing"));
+
+        // 加载时不创建槽位；按名字找到的定义只创建它自己，读取类型时再创建类型用到的槽位
+        assertEquals(List.of(), created);
+        Globals.Slot plus = lazy.snapshot().lookup("plus");
+        assertNotNull(plus);
+        assertSame(plus, lazy.snapshot().lookup("plus"));
+        assertEquals(List.of("plus=key-plus"), created);
+        assertEquals(checked.snapshot().lookup("plus").foldedType().toString(), plus.foldedType().toString());
+        assertEquals(List.of("plus=key-plus", "Nat=key-Nat"), created);
+        assertFalse(created.contains("vecElim=key-vecElim"));
+
+        // 求值的结果与逐个检查的定义相同
+        Term.Inferable term = (Term.Inferable) elab.elab(
+                ((PNode.Check) parse("check plus 2 3").getFirst()).term(),
+                lazy.snapshot()
+        );
+        InferCheck.Typed typed = InferCheck.inferEval(term, lazy.snapshot());
+        assertEquals("5", Eval.reify(typed.value()).toString());
+
+        List<String> expected = new ArrayList<>();
+        checked.snapshot().forEach(slot -> expected.add(slot + " : " + slot.foldedType() + " = " + slot.normalForm()));
+        List<String> actual = new ArrayList<>();
+        lazy.snapshot().forEach(slot -> actual.add(slot + " : " + slot.foldedType() + " = " + slot.normalForm()));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testLibraryShadowing(@TempDir Path dir) throws Exception {
+        // 库中的槽位编号与写入缓存时的会话相同，所以先在同样的会话中定义 f 再检查
+        Node node = new Node.Var("g");
+        Value value = Value.vFree(node, new Name.Global("f"));
+        Type type = Type.of(new Value.VStar(node));
+        Globals writing = Globals.empty();
+        writing.define("f", value, type);
+
+        String content = "axiom A : *\ndefun f = λx. x : A -> A\naxiom a : A\ndefun f = a";
+        byte[] source = ModuleCache.hash(content);
+        ModuleCache modules = new ModuleCache();
+        modules.entered("f");
+        ModuleCache.Writer writer = new ModuleCache.Writer(source, modules.upstream(), writing);
+        checkAndWrite(parse(content), writing, writer);
+        Path path = dir.resolve("shadow.lpc");
+        writer.write(path);
+
+        // 库中同名的定义取最后一个，并且覆盖之前的定义
+        Globals globals = Globals.empty();
+        Globals.Slot before = globals.define("f", value, type);
+        ModuleCache.Library library = ModuleCache.library(path, source, modules.upstream(), (_, _) -> {});
+        assertNotNull(library);
+        assertEquals(1, globals.load(library));
+        assertEquals(3, library.find("f"));
+        Globals.Slot f = globals.snapshot().lookup("f");
+        assertNotNull(f);
+        assertEquals(4, f.index);
+        assertEquals("a", f.normalForm().toString());
+        assertSame(f, globals.snapshot().slot(4));
+        assertSame(before, globals.snapshot().slot(0));
+        assertEquals("f#2", globals.snapshot().slot(2).toString());
+        assertEquals("λ D⁰", globals.snapshot().slot(2).normalForm().toString());
+
+        // 之后的定义覆盖库中的定义，被覆盖的定义不再出现在环境中
+        Globals.Slot after = globals.define("f", value, type);
+        assertSame(after, globals.snapshot().lookup("f"));
+        List<String> visible = new ArrayList<>();
+        globals.snapshot().forEach(slot -> visible.add(slot.toString()));
+        assertEquals(List.of("A#1", "a#3", "f#5"), visible);
+    }
+
+    // 一次 REPL 会话，通过 Application 加载文件
+    private static final class Session {
+        void include(Path path) throws Exception {
+            Application.includeFile(path.toString(), elab, globals, graph, modules, results);
+        }
+
+        void load(Path path) throws Exception {
+            Application.loadLibrary(path.toString(), elab, globals, graph, modules, results);
+        }
+
+        String normalForm(String name) {
+            Globals.Slot slot = globals.snapshot().lookup(name);
+            assertNotNull(slot, name);
+            return slot.normalForm().toString();
+        }
+
+        final Elab elab = indElab();
+        final Globals globals = Globals.empty();
+        final DependencyGraph graph = new DependencyGraph();
+        final ModuleCache modules = new ModuleCache();
+        final ResultCache results = new ResultCache(null);
+    }
+
+    @Test
+    void testLibraryAfterRedefinitionInFile(@TempDir Path dir) throws Exception {
+        // 文件中途重新定义 f，重新检查 g 产生的槽位夹在模块自己的槽位之间；
+        // 延迟加载时之后的声明引用的 b 仍然是模块自己的定义
+        Path path = dir.resolve("redefine.lp");
+        Files.writeString(path, """
+                axiom A : *
+                axiom a : A
+                defun f = λx. x : A -> A
+                defun g = f a
+                defun f = λx. a : A -> A
+                axiom B : *
+                axiom b : B
+                defun h = b
+                """);
+        Session writing = new Session();
+        writing.include(path);
+        Path cache = ModuleCache.cachePath(path);
+        assertNotNull(ModuleCache.library(cache, ModuleCache.hash(path), new ModuleCache().upstream(), (_, _) -> {}));
+
+        Session loading = new Session();
+        loading.load(path);
+        for (String name : List.of("f", "g", "h")) {
+            assertEquals(writing.normalForm(name), loading.normalForm(name));
+        }
+        assertEquals("b", loading.normalForm("h"));
+
+        // 引用了重新检查产生的槽位时不能延迟加载，:load 按 :include 检查整个文件
+        Files.writeString(path, Files.readString(path) + "defun k = g\n");
+        new Session().include(path);
+        assertNull(ModuleCache.library(cache, ModuleCache.hash(path), new ModuleCache().upstream(), (_, _) -> {}));
+        Session fallback = new Session();
+        fallback.load(path);
+        assertEquals("a", fallback.normalForm("k"));
+    }
+
+    @Test
+    void testDeepTermRoundTrip(@TempDir Path dir) throws Exception {
+        // 词项按后序读写，不受 Java 调用栈深度的限制
+        int depth = 100_000;
+        PNode item = parse("defun deep = *").getFirst();
+        Node node = ((PNode.Defun) item).value();
+        Term.Checkable deep = new Term.Inf(node, new Term.Bound(node, 0));
+        for (int i = 0; i < depth; i++) {
+            deep = new Term.Lam(node, deep);
+        }
+
+        byte[] source = ModuleCache.hash("deep");
+        byte[] upstream = new ModuleCache().upstream();
+        ModuleCache.Writer writer = new ModuleCache.Writer(source, upstream, Globals.empty());
+        writer.add(item, new ModuleCache.Defun(deep, new Term.Star(node)), null);
+        Path path = dir.resolve("deep.lpc");
+        writer.write(path);
+
+        ModuleCache.Reader reader = ModuleCache.open(path, source, upstream, 1);
+        assertNotNull(reader);
+        ModuleCache.Defun defun = (ModuleCache.Defun) reader.next(item, Globals.empty().snapshot());
+        Term term = defun.value();
+        for (int i = 0; i < depth; i++) {
+            term = assertInstanceOf(Term.Lam.class, term).body();
+            assertSame(node, term.node());
+        }
+        assertEquals("D⁰", term.toString());
+    }
+}
@@ -0,0 +1,215 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestResultCache {
+    private static Elab natElab() {
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        return elab;
+    }
+
+    /// 一次 REPL 会话：逐行交给 {@link Application} 处理，记下每一行是否命中结果缓存和输出的内容
+    private static final class Session {
+        Session(Path root) {
+            this(new ResultCache(root));
+        }
+
+        Session(ResultCache results) {
+            this.results = results;
+        }
+
+        void run(String code) throws Exception {
+            PrintStream stdout = System.out;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+            try {
+                for (String line : code.lines().toList()) {
+                    long before = results.hits();
+                    Application.processInput(line, elab, globals, graph, results);
+                    hit.add(results.hits() > before);
+                }
+            } finally {
+                System.setOut(stdout);
+            }
+            output.append(bytes.toString(StandardCharsets.UTF_8));
+        }
+
+        final ResultCache results;
+        final Globals globals = Globals.empty();
+        final DependencyGraph graph = new DependencyGraph();
+        final Elab elab = natElab();
+        final List<Boolean> hit = new ArrayList<>();
+        final StringBuilder output = new StringBuilder();
+    }
+
+    private static final String PROGRAM = """
+            axiom A : *
+            axiom a : A
+            defun id = λx. x : A -> A
+            defun twice = λf. λx. f (f x) : (A -> A) -> A -> A
+            defun Nat = _Tf_Nat
+            defun two = _Tf_Succ (_Tf_Succ _Tf_Zero)
+            check twice id a
+            """;
+
+    @Test
+    void testSecondSessionHitsEveryDeclaration(@TempDir Path dir) throws Exception {
+        // 第一次会话全部没有命中，第二次会话全部命中，输出相同
+        Session first = new Session(dir);
+        first.run(PROGRAM);
+        assertEquals(0, first.results.hits());
+        assertEquals(7, first.results.misses());
+
+        Session second = new Session(dir);
+        second.run(PROGRAM);
+        assertEquals(7, second.results.hits());
+        assertEquals(0, second.results.misses());
+        assertEquals(first.output.toString(), second.output.toString());
+    }
+
+    @Test
+    void testResultsStayInMemoryByDefault() throws Exception {
+        // 没有指定目录时结果只在同一个缓存对象中共享，不写入磁盘
+        String property = System.clearProperty("lambdapi.cache");
+        try {
+            assertNull(ResultCache.configuredRoot());
+        } finally {
+            if (property != null) {
+                System.setProperty("lambdapi.cache", property);
+            }
+        }
+
+        ResultCache results = new ResultCache(null);
+        new Session(results).run(PROGRAM);
+        Session second = new Session(results);
+        second.run(PROGRAM);
+        assertEquals(7, second.results.hits());
+
+        Session fresh = new Session(new ResultCache(null));
+        fresh.run(PROGRAM);
+        assertEquals(0, fresh.results.hits());
+        assertEquals(7, fresh.results.misses());
+    }
+
+    @Test
+    void testKeysFollowDependencies(@TempDir Path dir) throws Exception {
+        new Session(dir).run(PROGRAM);
+
+        // 修改 A 之后，直接或间接用到它的声明都不再命中，与它无关的定义仍然命中
+        Session changed = new Session(dir);
+        changed.run(PROGRAM.replace("axiom A : *", "axiom A : * -> *\naxiom B : *")
+                           .replace("A -> A", "A B -> A B")
+                           .replace("axiom a : A", "axiom a : A B"));
+        assertEquals(
+                List.of(false, true, false, false, false, true, true, false),
+                changed.hit
+        );
+
+        // 调整声明的顺序、换一个名字，结构相同的定义仍然命中
+        Session reordered = new Session(dir);
+        reordered.run("""
+                defun two = _Tf_Succ (_Tf_Succ _Tf_Zero)
+                axiom A : *
+                defun identity = λy. y : A -> A
+                """);
+        assertEquals(List.of(true, true, true), reordered.hit);
+    }
+
+    @Test
+    void testHitSkipsTypeChecking(@TempDir Path dir) throws Exception {
+        // 命中时直接使用缓存的结果，不再检查。这里事先为无法通过检查的声明写入结果，以此确认没有重新检查
+        Session session = new Session(dir);
+        session.run("axiom A : *\naxiom a : A");
+        Globals.Snapshot snapshot = session.globals.snapshot();
+        Node star = new Node.Aster();
+
+        Node axiomType = ((PNode.Axiom) parse("axiom bad : a")).type();
+        String axiomKey = session.results.key('A', session.elab.elab(axiomType, snapshot));
+        assertNotNull(axiomKey);
+        session.results.store(axiomKey, new ResultCache.Result(null, null), snapshot);
+
+        Node defunValue = ((PNode.Defun) parse("defun worse = a a")).value();
+        String defunKey = session.results.key('D', session.elab.elab(defunValue, snapshot));
+        assertNotNull(defunKey);
+        Term.Checkable starTerm = new Term.Inf(star, new Term.Star(star));
+        session.results.store(defunKey, new ResultCache.Result(starTerm, starTerm), snapshot);
+
+        Node checkTerm = ((PNode.Check) parse("check a a")).term();
+        String checkKey = session.results.key('C', session.elab.elab(checkTerm, snapshot));
+        assertNotNull(checkKey);
+        session.results.store(checkKey, new ResultCache.Result(starTerm, starTerm), snapshot);
+
+        session.run("axiom bad : a\ndefun worse = a a\ncheck a a");
+        assertEquals(List.of(false, false, true, true, true), session.hit);
+        assertNotNull(session.globals.snapshot().lookup("bad"));
+        // 定义的值由缓存的正规形式重建，不再求值 `a a`
+        Globals.Slot worse = session.globals.snapshot().lookup("worse");
+        assertNotNull(worse);
+        assertEquals(starTerm, worse.normalForm());
+    }
+
+    @Test
+    void testUnreadableResultsCountAsMisses(@TempDir Path dir) throws Exception {
+        new Session(dir).run(PROGRAM);
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.write(file, new byte[] { 0x7F, 0, 0, 0 });
+            }
+        }
+
+        // 版本不同或者损坏的结果不能使用，每个声明都重新检查并算作没有命中
+        Session session = new Session(dir);
+        session.run(PROGRAM);
+        assertEquals(0, session.results.hits());
+        assertEquals(7, session.results.misses());
+    }
+
+    @Test
+    void testResultsReferToCurrentDefinitions(@TempDir Path dir) throws Exception {
+        // 结果中按名字引用的公理在另一次会话中定义不同时，结果不能使用
+        Session first = new Session(dir);
+        first.run("axiom A : *\naxiom a : A\ncheck a");
+        Node node = ((PNode.Check) parse("check a")).term();
+        String key = first.results.key('C', first.elab.elab(node, first.globals.snapshot()));
+        assertNotNull(key);
+        assertNotNull(first.results.lookup(key, first.globals.snapshot(), node));
+
+        Session other = new Session(dir);
+        other.run("axiom A : *\naxiom B : *\naxiom a : B");
+        assertNull(other.results.lookup(key, other.globals.snapshot(), node));
+
+        // 没有记录摘要的槽位不能出现在键中
+        Globals globals = Globals.empty();
+        Globals.Slot slot = globals.define(
+                "X",
+                Value.vFree(node, new Name.Global("X")),
+                Type.of(new Value.VStar(node))
+        );
+        assertNull(first.results.key('C', new Term.GlobalRef(node, slot)));
+    }
+
+    private static PNode parse(String code) throws Exception {
+        return ((PNode.Program) Parse.parseProgram(Token.tokenize(code))).items().getFirst();
+    }
+}
@@ -0,0 +1,221 @@
+package club.doki7.lambdapi.dtlc;
+
+import club.doki7.lambdapi.common.Name;
+import club.doki7.lambdapi.exc.LPiException;
+import club.doki7.lambdapi.exc.TypeCheckException;
+import club.doki7.lambdapi.ind.IndNat;
+import club.doki7.lambdapi.ind.IndVec;
+import club.doki7.lambdapi.syntax.Node;
+import club.doki7.lambdapi.syntax.PNode;
+import club.doki7.lambdapi.syntax.Parse;
+import club.doki7.lambdapi.syntax.Token;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestScheduler {
+    private static Elab indElab() {
+        Elab elab = new Elab();
+        elab.registerTermFormer(IndNat.Nat.class);
+        elab.registerTermFormer(IndNat.Zero.class);
+        elab.registerTermFormer(IndNat.Succ.class);
+        elab.registerTermFormer(IndNat.NatElim.class);
+        elab.registerNumeral(IndNat.NatLit::new);
+        elab.registerTermFormer(IndVec.Vec.class);
+        elab.registerTermFormer(IndVec.Nil.class);
+        elab.registerTermFormer(IndVec.Cons.class);
+        elab.registerTermFormer(IndVec.VecElim.class);
+        elab.registerVecLiteral(IndVec.VecLit::new);
+        return elab;
+    }
+
+    private static List<PNode> parse(String code) throws Exception {
+        PNode program = Parse.parseProgram(Token.tokenize(code));
+        return ((PNode.Program) program).items();
+    }
+
+    private static String sample(String name) throws Exception {
+        try (InputStream in = TestScheduler.class.getResourceAsStream("/sample/dtlc/" + name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // 检查的结果：公理的名字和类型，定义的名字、值和类型，或者 check 的值和类型
+    private record Checked(List<String> names, boolean axiom, Node node, Value value, Type type) {}
+
+    private static Checked check(Elab elab, PNode decl, Globals.Snapshot snapshot)
+        throws LPiException
+    {
+        return switch (decl) {
+            case PNode.Axiom(List<Token> names, Node typeNode) -> {
+                Term.Inferable term = (Term.Inferable) elab.elab(typeNode, snapshot);
+                Type type = Type.of(InferCheck.inferEval(term, snapshot).value());
+                List<String> strNames = names.stream().map(t -> t.lexeme).toList();
+                yield new Checked(strNames, true, typeNode, type.value(), type);
+            }
+            case PNode.Defun(Token name, Node valueNode) -> {
+                Term.Inferable term = (Term.Inferable) elab.elab(valueNode, snapshot);
+                InferCheck.Typed typed = InferCheck.inferEval(term, snapshot);
+                yield new Checked(List.of(name.lexeme), false, valueNode, typed.value(), typed.type());
+            }
+            case PNode.Check(Node termNode) -> {
+                Term.Inferable term = (Term.Inferable) elab.elab(termNode, snapshot);
+                InferCheck.Typed typed = InferCheck.inferEval(term, snapshot);
+                yield new Checked(List.of(), false, termNode, typed.value(), typed.type());
+            }
+            case PNode.Program _ -> throw new IllegalStateException();
+        };
+    }
+
+    // 提交检查结果，并把结果按提交顺序记录为字符串
+    private static void commit(Globals globals, Checked checked, List<String> log) {
+        if (checked.names.isEmpty()) {
+            log.add("check " + Eval.reify(checked.value) + " : " + Eval.reifyFolded(checked.type.value()));
+            return;
+        }
+        for (String name : checked.names) {
+            Value value = checked.axiom
+                    ? Value.vFree(checked.node, new Name.Global(name))
+                    : checked.value;
+            Globals.Slot slot = globals.define(name, value, checked.type);
+            log.add(name + " : " + slot.foldedType() + " = " + slot.normalForm());
+        }
+    }
+
+    private static List<String> runParallel(ForkJoinPool pool, List<PNode> decls, Globals globals)
+        throws LPiException
+    {
+        Elab elab = indElab();
+        List<String> log = new ArrayList<>();
+        Scheduler.run(
+                pool,
+                decls,
+                globals,
+                (decl, snapshot) -> check(elab, decl, snapshot),
+                checked -> commit(globals, checked, log)
+        );
+        return log;
+    }
+
+    private static List<String> runSequential(List<PNode> decls, Globals globals)
+        throws LPiException
+    {
+        Elab elab = indElab();
+        List<String> log = new ArrayList<>();
+        for (PNode decl : decls) {
+            commit(globals, check(elab, decl, globals.snapshot()), log);
+        }
+        return log;
+    }
+
+    @Test
+    void testDependencies() throws Exception {
+        List<PNode> decls = parse("""
+                defun x = *
+                defun y = x
+                axiom u, v : *
+                defun x = y
+                check x
+                check v
+                defun z = λx. x : * → *
+                check z u
+                """);
+        // 每个声明依赖于它用到的名字最后一次被定义的位置。重新定义 x 的声明提交时会重新检查 y，
+        // 所以它之后的声明都要等它提交
+        assertArrayEquals(
+                new int[] { -1, 0, -1, 1, 3, 3, 3, 6 },
+                Scheduler.dependencies(decls, Globals.empty().snapshot())
+        );
+
+        // 会话中已有的名字被重新定义时也一样
+        Globals globals = Globals.empty();
+        globals.define("u", new Value.VStar(new Node.Aster()), Type.of(new Value.VStar(new Node.Aster())));
+        assertArrayEquals(
+                new int[] { -1, 0, -1, 2 },
+                Scheduler.dependencies(
+                        parse("defun x = *\ndefun y = x\naxiom u : *\ncheck *"),
+                        globals.snapshot()
+                )
+        );
+    }
+
+    @Test
+    void testSamplesMatchSequential() throws Exception {
+        // 并行加载的提交顺序和结果与逐个检查相同
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            for (String[] files : new String[][] {
+                    { "nat-vec.lp", "nat-vec-test.lp" },
+                    { "church-base.lp", "church-pair.lp" },
+            }) {
+                Globals parallel = Globals.empty();
+                Globals sequential = Globals.empty();
+                for (String file : files) {
+                    List<PNode> decls = parse(sample(file));
+                    assertEquals(
+                            runSequential(decls, sequential),
+                            runParallel(pool, decls, parallel)
+                    );
+                }
+                assertEquals(sequential.snapshot().size(), parallel.snapshot().size());
+            }
+        }
+    }
+
+    @Test
+    void testStopsAtFirstError() throws Exception {
+        List<PNode> decls = parse("""
+                defun id = λx. x : * → *
+                defun a = id *
+                check id id
+                defun b = id *
+                check b b
+                """);
+        Globals globals = Globals.empty();
+        List<String> log = new ArrayList<>();
+        Elab elab = indElab();
+
+        // 第一个失败的声明之前的声明都已提交，之后的声明都不提交，即使它们也失败了
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            TypeCheckException e = assertThrows(
+                    TypeCheckException.class,
+                    () -> Scheduler.run(
+                            pool,
+                            decls,
+                            globals,
+                            (decl, snapshot) -> check(elab, decl, snapshot),
+                            checked -> commit(globals, checked, log)
+                    )
+            );
+            assertTrue(e.getMessage().startsWith("3:"), e.getMessage());
+        }
+        assertEquals(2, log.size());
+        assertNotNull(globals.snapshot().lookup("a"));
+        assertNull(globals.snapshot().lookup("b"));
+    }
+
+    @Test
+    void testRedefinitionUsesLatestDefinition() throws Exception {
+        List<PNode> decls = parse("""
+                axiom T : *
+                axiom t : T
+                defun T = * → *
+                defun f = λx. x : T
+                check f t
+                """);
+        // f 依赖于重新定义之后的 T，所以 f t 的检查失败与顺序检查一致
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            TypeCheckException e = assertThrows(
+                    TypeCheckException.class,
+                    () -> runParallel(pool, decls, Globals.empty())
+            );
+            assertTrue(e.getMessage().startsWith("5:"), e.getMessage());
+        }
+    }
+}
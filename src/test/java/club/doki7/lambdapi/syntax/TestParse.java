@@ -221,6 +221,20 @@ public class TestParse {
         Assertions.assertEquals(expected, result);
     }
 
+    @Test
+    void testParseProgramNumbers() throws ParseException {
+        // 数字既可以出现在表达式中，也可以作为定义的名字
+        PNode result = parseProgram("defun 0 = zero\ncheck succ 42");
+        PNode expected = new PNode.Program(List.of(
+                new PNode.Defun(Token.number("0"), new Node.Var("zero")),
+                new PNode.Check(new Node.App(
+                        new Node.Var("succ"),
+                        new Node.Var(Token.number("42"))
+                ))
+        ));
+        Assertions.assertEquals(expected, result);
+    }
+
     @Test
     void testParseProgramExpr() throws ParseException {
         PNode result = parseProgram("check f x");
@@ -241,6 +255,46 @@ public class TestParse {
         Assertions.assertEquals(expected, result);
     }
 
+    // =================== 向量字面量测试 ===================
+
+    @Test
+    void testParseVecLit() throws ParseException {
+        Node result = parseExpr("[a; x, f y, (λz. z)]");
+        Node expected = new Node.VecLit(new Node.Var("a"), List.of(
+                new Node.Var("x"),
+                new Node.App(new Node.Var("f"), new Node.Var("y")),
+                new Node.Lam("z", new Node.Var("z"))
+        ));
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals("[a; x, f y, (λz. z)]", result.toString());
+    }
+
+    @Test
+    void testParseEmptyVecLit() throws ParseException {
+        Node result = parseExpr("[a → a;]");
+        Node expected = new Node.VecLit(
+                new Node.Pi((String) null, new Node.Var("a"), new Node.Var("a")),
+                List.of()
+        );
+        Assertions.assertEquals(expected, result);
+    }
+
+    @Test
+    void testParseVecLitAsArgument() throws ParseException {
+        Node result = parseExpr("f [a; x] y");
+        Node expected = new Node.App(new Node.Var("f"), List.of(
+                new Node.VecLit(new Node.Var("a"), List.of(new Node.Var("x"))),
+                new Node.Var("y")
+        ));
+        Assertions.assertEquals(expected, result);
+    }
+
+    @Test
+    void testParseErrorUnclosedVecLit() {
+        Assertions.assertThrows(ParseException.class, () -> parseExpr("[a; x, y"));
+        Assertions.assertThrows(ParseException.class, () -> parseExpr("[a x]"));
+    }
+
     // =================== 错误处理测试 ===================
 
     @Test
@@ -77,4 +77,36 @@ public class TestTokenize {
         );
         Assertions.assertEquals(expectedTokens, tokens);
     }
+
+    @Test
+    void testNumbers() {
+        // 全部由数字组成的词素是数字，其余仍是标识符
+        String source = "succ 42 x1 007";
+        List<Token> tokens = Token.tokenize(source);
+        List<Token> expectedTokens = List.of(
+                Token.ident("succ"),
+                Token.number("42"),
+                Token.ident("x1"),
+                Token.number("007")
+        );
+        Assertions.assertEquals(expectedTokens, tokens);
+        Assertions.assertEquals(Token.Kind.NUMBER, tokens.get(1).kind);
+        Assertions.assertEquals(Token.Kind.IDENT, tokens.get(2).kind);
+    }
+
+    @Test
+    void testBrackets() {
+        String source = "[a; x, y]";
+        List<Token> tokens = Token.tokenize(source);
+        List<Token> expectedTokens = List.of(
+                Token.symbol(Token.Kind.LBRACKET),
+                Token.ident("a"),
+                Token.symbol(Token.Kind.SEMICOLON),
+                Token.ident("x"),
+                Token.symbol(Token.Kind.COMMA),
+                Token.ident("y"),
+                Token.symbol(Token.Kind.RBRACKET)
+        );
+        Assertions.assertEquals(expectedTokens, tokens);
+    }
 }
@@ -0,0 +1,77 @@
+package club.doki7.lambdapi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPersistentMap {
+    // 哈希值由构造者指定的键，用来制造冲突
+    private record Key(String name, int hash) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    void testPutKeepsOldVersion() {
+        PersistentMap<String, Integer> m0 = PersistentMap.empty();
+        PersistentMap<String, Integer> m1 = m0.put("a", 1);
+        PersistentMap<String, Integer> m2 = m1.put("a", 2).put("b", 3);
+
+        assertTrue(m0.isEmpty());
+        assertNull(m0.get("a"));
+        assertEquals(1, m1.get("a"));
+        assertNull(m1.get("b"));
+        assertEquals(1, m1.size());
+        assertEquals(2, m2.get("a"));
+        assertEquals(3, m2.get("b"));
+        assertEquals(2, m2.size());
+    }
+
+    @Test
+    void testHashCollisions() {
+        // 哈希值完全相同的键放在同一个冲突节点中，低位相同的键在更深的层次分开
+        Key a = new Key("a", 7);
+        Key b = new Key("b", 7);
+        Key c = new Key("c", 7 | (1 << 30));
+        PersistentMap<Key, Integer> map = PersistentMap.<Key, Integer>empty().put(a, 1).put(b, 2);
+        PersistentMap<Key, Integer> more = map.put(c, 3).put(b, 20);
+
+        assertEquals(1, map.get(a));
+        assertEquals(2, map.get(b));
+        assertNull(map.get(c));
+        assertNull(map.get(new Key("d", 7)));
+        assertEquals(2, map.size());
+
+        assertEquals(1, more.get(a));
+        assertEquals(20, more.get(b));
+        assertEquals(3, more.get(c));
+        assertEquals(3, more.size());
+    }
+
+    @Test
+    void testMatchesHashMap() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000) * 0x9E3779B9;
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+
+        Map<Integer, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+    }
+}
@@ -0,0 +1,61 @@
+package club.doki7.lambdapi.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSkewList {
+    @Test
+    void testEmpty() {
+        SkewList<Integer> list = SkewList.nil();
+        assertEquals(0, list.size());
+        assertTrue(list.isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(0));
+    }
+
+    @Test
+    void testGetMatchesConsList() {
+        // 对每个长度都和 ConsList 逐个下标比较，覆盖所有可能的树形状
+        SkewList<Integer> skew = SkewList.nil();
+        ConsList<Integer> cons = ConsList.nil();
+        for (int n = 0; n < 300; n++) {
+            skew = skew.cons(n);
+            cons = ConsList.cons(n, cons);
+            assertEquals(n + 1, skew.size());
+            for (int i = 0; i <= n; i++) {
+                assertEquals(cons.get(i), skew.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testOutOfBounds() {
+        SkewList<String> list = SkewList.of("a").cons("b");
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+
+    @Test
+    void testPersistence() {
+        // 在同一个列表上分别扩展，两个结果互不影响
+        SkewList<String> base = SkewList.of("x").cons("y").cons("z");
+        SkewList<String> left = base.cons("l");
+        SkewList<String> right = base.cons("r");
+        assertEquals("l", left.get(0));
+        assertEquals("r", right.get(0));
+        assertEquals("z", base.get(0));
+        assertEquals("x", left.get(3));
+        assertEquals("x", right.get(3));
+    }
+
+    @Test
+    void testEquality() {
+        SkewList<String> a = SkewList.of("x").cons("y").cons("z");
+        SkewList<String> b = SkewList.of("x").cons("y").cons("z");
+        SkewList<String> c = SkewList.of("x").cons("y").cons("w");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+        assertNotEquals(a, a.cons("z"));
+    }
+}
@@ -0,0 +1,68 @@
+package club.doki7.lambdapi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestVersionedMap {
+    @Test
+    void testSnapshotIsStable() {
+        VersionedMap<String, Integer> map = new VersionedMap<>();
+        map.put("a", 1);
+        VersionedMap.Snapshot<String, Integer> s1 = map.snapshot();
+
+        map.put("a", 2);
+        map.put("b", 3);
+        VersionedMap.Snapshot<String, Integer> s2 = map.snapshot();
+
+        // 旧快照看不到之后的修改
+        assertEquals(1, s1.get("a"));
+        assertNull(s1.get("b"));
+        assertEquals(2, s2.get("a"));
+        assertEquals(3, s2.get("b"));
+    }
+
+    @Test
+    void testRepeatedSnapshotIsShared() {
+        VersionedMap<String, Integer> map = new VersionedMap<>();
+        map.put("a", 1);
+        assertSame(map.snapshot(), map.snapshot());
+
+        VersionedMap.Snapshot<String, Integer> before = map.snapshot();
+        map.put("b", 2);
+        assertNotSame(before, map.snapshot());
+    }
+
+    @Test
+    void testClearKeepsOldSnapshots() {
+        VersionedMap<String, Integer> map = new VersionedMap<>();
+        map.put("a", 1);
+        VersionedMap.Snapshot<String, Integer> before = map.snapshot();
+
+        map.clear();
+        assertTrue(map.snapshot().isEmpty());
+        assertNull(map.snapshot().get("a"));
+        assertEquals(1, before.get("a"));
+    }
+
+    @Test
+    void testForEachSeesLatestVisibleValues() {
+        VersionedMap<String, Integer> map = new VersionedMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        VersionedMap.Snapshot<String, Integer> snapshot = map.snapshot();
+        map.put("a", 10);
+        map.put("c", 3);
+
+        Map<String, Integer> seen = new HashMap<>();
+        snapshot.forEach(seen::put);
+        assertEquals(Map.of("a", 1, "b", 2), seen);
+
+        seen.clear();
+        map.snapshot().forEach(seen::put);
+        assertEquals(Map.of("a", 10, "b", 2, "c", 3), seen);
+    }
+}